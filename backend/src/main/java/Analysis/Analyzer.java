@@ -0,0 +1,348 @@
+package Analysis;
+
+// General imports
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.text.Normalizer;
+
+/**
+ * The Analyzer class turns text into the terms of the index, and is shared by
+ * the downloaders, which analyze the crawled pages, and the barrels, which
+ * analyze the search queries, so that both sides agree on every term.
+ * <p>
+ * The analysis is a chain of steps over a reusable character buffer:
+ * <ul>
+ * <li>a tokenizer that splits the text into runs of letters and digits, joined
+ * by apostrophes and hyphens inside words and by dots and commas inside
+ * numbers;</li>
+ * <li>a folding step that lowercases the characters independently of the
+ * locale and removes the accents of Latin letters, so that "Ação" and "acao"
+ * are the same term;</li>
+ * <li>an optional stopword filter, dropping the most common English and
+ * Portuguese words;</li>
+ * <li>an optional stemmer, reducing English plurals to their singular.</li>
+ * </ul>
+ * Tokens of a single character, plain integers and tokens longer than
+ * {@link #MAX_TOKEN_LENGTH} are dropped.
+ * <p>
+ * No string is built while a token is analyzed. The terms are returned through
+ * a small per-thread cache of recent strings, so the frequent terms of a text
+ * do not allocate either. An Analyzer can be shared between threads.
+ */
+public class Analyzer {
+    /**
+     * The maximum length of a token, longer tokens are dropped.
+     */
+    public static final int MAX_TOKEN_LENGTH = 64;
+    /**
+     * The number of slots of the per-thread term cache, a power of two.
+     */
+    private static final int CACHE_SIZE = 4096;
+    /**
+     * The folded form of the characters up to U+024F, covering the Latin
+     * letters with accents.
+     */
+    private static final char[] LATIN_FOLDING = new char[0x250];
+    /**
+     * The stopwords, in folded form.
+     */
+    private static final Set<String> STOPWORDS = Set.of(
+            // English
+            "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "if", "in", "into", "is", "it",
+            "its", "no", "not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these",
+            "they", "this", "to", "was", "were", "will", "with",
+            // Portuguese
+            "ao", "aos", "com", "da", "das", "de", "do", "dos", "em", "na", "nas", "nos", "num",
+            "numa", "os", "ou", "para", "pela", "pelo", "por", "que", "se", "sem", "um", "uma");
+
+    /**
+     * The length of the longest stopword.
+     */
+    private static final int MAX_STOPWORD_LENGTH = STOPWORDS.stream().mapToInt(String::length).max().orElse(0);
+
+    static {
+        for (char c = 0; c < LATIN_FOLDING.length; c++) {
+            char lower = Character.toLowerCase(c);
+            String decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+            // Keep the base letter of a letter followed by combining accents
+            LATIN_FOLDING[c] = decomposed.length() > 1 && Character.isLetter(decomposed.charAt(0))
+                    ? decomposed.charAt(0)
+                    : lower;
+        }
+    }
+
+    /**
+     * The reusable state of the analysis on one thread.
+     */
+    private static class State {
+        /**
+         * The characters of the current token.
+         */
+        private final char[] buffer = new char[MAX_TOKEN_LENGTH + 2];
+        /**
+         * The recently returned terms, by hash of their characters.
+         */
+        private final String[] cache = new String[CACHE_SIZE];
+    }
+
+    /**
+     * Receives the terms of an analyzed text along with their location.
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        /**
+         * Receives a term.
+         *
+         * @param term  the term
+         * @param start the offset of the first character of its token in the text
+         * @param end   the offset after the last character of its token
+         */
+        void accept(String term, int start, int end);
+    }
+
+    /**
+     * The state of the analysis of each thread.
+     */
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * Whether the stopwords are dropped.
+     */
+    private final boolean removeStopwords;
+    /**
+     * Whether the plurals are stemmed.
+     */
+    private final boolean stem;
+
+    /**
+     * Constructs an Analyzer with the given filters.
+     *
+     * @param removeStopwords whether to drop the stopwords
+     * @param stem            whether to reduce English plurals to their singular
+     */
+    public Analyzer(boolean removeStopwords, boolean stem) {
+        this.removeStopwords = removeStopwords;
+        this.stem = stem;
+    }
+
+    /**
+     * Returns whether the analyzer has any filter after folding.
+     *
+     * @return true if stopwords are dropped or plurals stemmed
+     */
+    public boolean hasFilters() {
+        return removeStopwords || stem;
+    }
+
+    /**
+     * Analyzes a text into its terms.
+     *
+     * @param text the text
+     * @return the terms of the text, in order
+     */
+    public List<String> analyze(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        analyze(text, terms);
+        return terms;
+    }
+
+    /**
+     * Analyzes a text, appending its terms to the given list.
+     *
+     * @param text  the text
+     * @param terms the list receiving the terms, in order
+     */
+    public void analyze(CharSequence text, List<String> terms) {
+        analyze(text, (term, start, end) -> terms.add(term));
+    }
+
+    /**
+     * Analyzes a text, passing each term and the location of its token to the
+     * given consumer, in order.
+     *
+     * @param text     the text
+     * @param consumer the consumer receiving the terms
+     */
+    public void analyze(CharSequence text, TermConsumer consumer) {
+        State state = STATE.get();
+        char[] buffer = state.buffer;
+        int length = text.length();
+        int position = 0;
+        while (position < length) {
+            // Skip to the start of the next token
+            while (position < length && !isTokenChar(Character.codePointAt(text, position)))
+                position += Character.charCount(Character.codePointAt(text, position));
+            if (position == length)
+                break;
+
+            int start = position;
+            int size = 0;
+            boolean overflow = false;
+            boolean numeric = true;
+            boolean separated = false;
+            while (position < length) {
+                int codePoint = Character.codePointAt(text, position);
+                int width = Character.charCount(codePoint);
+                if (!isTokenChar(codePoint)) {
+                    // A joiner stays inside the token if a token character follows it
+                    if (position + 1 >= length || !isTokenChar(Character.codePointAt(text, position + 1))
+                            || !isJoiner(codePoint, numeric))
+                        break;
+                    separated = true;
+                    codePoint = codePoint == '’' ? '\'' : codePoint;
+                } else
+                    numeric &= Character.isDigit(codePoint);
+
+                if (size + 2 > buffer.length)
+                    overflow = true;
+                else if (codePoint < LATIN_FOLDING.length)
+                    buffer[size++] = LATIN_FOLDING[codePoint];
+                else
+                    size += Character.toChars(Character.toLowerCase(codePoint), buffer, size);
+                position += width;
+            }
+
+            // Integers without separators are not indexed, as the numbers of a page
+            // are mostly dates, counters and identifiers
+            if (overflow || size <= 1 || size > MAX_TOKEN_LENGTH || (numeric && !separated))
+                continue;
+            String term = applyFilters(state, buffer, size);
+            if (term != null)
+                consumer.accept(term, start, position);
+        }
+    }
+
+    /**
+     * Applies the filters of the analyzer to terms produced by an analyzer
+     * without filters, such as the tokens sent by the downloaders.
+     *
+     * @param tokens the folded tokens, in order
+     * @return the remaining terms, in order, or the given list if the analyzer
+     *         has no filters
+     */
+    public List<String> filter(List<String> tokens) {
+        if (!hasFilters())
+            return tokens;
+        State state = STATE.get();
+        char[] buffer = state.buffer;
+        List<String> terms = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            if (token.length() > MAX_TOKEN_LENGTH)
+                continue;
+            token.getChars(0, token.length(), buffer, 0);
+            String term = applyFilters(state, buffer, token.length());
+            if (term != null)
+                terms.add(term);
+        }
+        return terms;
+    }
+
+    /**
+     * Folds a text without splitting it, such as a prefix being typed.
+     *
+     * @param text the text
+     * @return the lowercased text without accents
+     */
+    public static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        text.codePoints().forEach(codePoint -> {
+            if (codePoint < LATIN_FOLDING.length)
+                folded.append(LATIN_FOLDING[codePoint]);
+            else
+                folded.appendCodePoint(Character.toLowerCase(codePoint));
+        });
+        return folded.toString();
+    }
+
+    /**
+     * Applies the stopword filter and the stemmer to a folded token.
+     *
+     * @param state  the state of the analysis of the current thread
+     * @param buffer the characters of the token, modified by the stemmer
+     * @param size   the length of the token
+     * @return the term, or null if the token is dropped
+     */
+    private String applyFilters(State state, char[] buffer, int size) {
+        if (removeStopwords && size <= MAX_STOPWORD_LENGTH && STOPWORDS.contains(term(state, buffer, size)))
+            return null;
+        if (stem)
+            size = stemPlural(buffer, size);
+        return term(state, buffer, size);
+    }
+
+    /**
+     * Reduces an English plural to its singular, following the S-stemmer of
+     * Harman: "ies" becomes "y", "es" becomes "e" and a final "s" is dropped,
+     * except after another "s" or a "u", and in words of three letters or less.
+     *
+     * @param buffer the characters of the token, modified in place
+     * @param size   the length of the token
+     * @return the length of the stemmed token
+     */
+    private static int stemPlural(char[] buffer, int size) {
+        if (size <= 3 || buffer[size - 1] != 's')
+            return size;
+        char previous = buffer[size - 2];
+        if (previous == 'e' && buffer[size - 3] == 'i' && buffer[size - 4] != 'e' && buffer[size - 4] != 'a') {
+            buffer[size - 3] = 'y';
+            return size - 2;
+        }
+        if (previous == 'e' && (buffer[size - 3] == 'a' || buffer[size - 3] == 'e' || buffer[size - 3] == 'o'))
+            return size;
+        if (previous == 'u' || previous == 's')
+            return size;
+        return size - 1;
+    }
+
+    /**
+     * Returns the string holding the characters of a term, from the cache of
+     * the current thread if the term was recently seen.
+     *
+     * @param state  the state of the analysis of the current thread
+     * @param buffer the characters of the term
+     * @param size   the length of the term
+     * @return the term
+     */
+    private static String term(State state, char[] buffer, int size) {
+        int hash = 0;
+        for (int i = 0; i < size; i++)
+            hash = 31 * hash + buffer[i];
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = state.cache[slot];
+        if (cached != null && cached.length() == size) {
+            int i = 0;
+            while (i < size && cached.charAt(i) == buffer[i])
+                i++;
+            if (i == size)
+                return cached;
+        }
+        String term = new String(buffer, 0, size);
+        state.cache[slot] = term;
+        return term;
+    }
+
+    /**
+     * Checks whether a character belongs to a token.
+     *
+     * @param codePoint the character
+     * @return true for letters and digits
+     */
+    private static boolean isTokenChar(int codePoint) {
+        return Character.isLetterOrDigit(codePoint);
+    }
+
+    /**
+     * Checks whether a character between two token characters joins them into a
+     * single token.
+     *
+     * @param codePoint the character
+     * @param numeric   whether the token only has digits so far
+     * @return true for apostrophes and hyphens, and for dots and commas inside
+     *         numbers
+     */
+    private static boolean isJoiner(int codePoint, boolean numeric) {
+        return codePoint == '\'' || codePoint == '’' || codePoint == '-'
+                || (numeric && (codePoint == '.' || codePoint == ','));
+    }
+}
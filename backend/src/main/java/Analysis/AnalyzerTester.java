@@ -0,0 +1,145 @@
+package Analysis;
+
+// General imports
+import java.util.List;
+import java.util.Random;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+import java.util.function.Supplier;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
+import com.sun.management.ThreadMXBean;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The AnalyzerTester class compares the throughput and the allocations of the
+ * Analyzer with the tokenizer the downloaders used before it, which ran two
+ * regular expressions and built several strings for every token.
+ * <p>
+ * The text is read from a file, or generated with a Zipfian distribution of
+ * words with accents, capitals, punctuation and numbers.
+ */
+public class AnalyzerTester {
+    /**
+     * The words the synthetic text is drawn from, before decoration.
+     */
+    private static final String[] WORDS = { "the", "de", "search", "engine", "índice", "barrel", "página",
+            "informação", "distributed", "systems", "coimbra", "universidade", "query", "ação", "and", "que",
+            "crawler", "download", "multicast", "são", "para", "results", "ranking", "network", "über", "naïve" };
+
+    /**
+     * The main method of the AnalyzerTester class.
+     *
+     * @param args -file (text file to analyze), -size (characters of synthetic
+     *             text) and -rounds (number of measured rounds), all optional
+     * @throws IOException if the text file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        String file = null;
+        int size = 8_000_000;
+        int rounds = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-file" -> file = args[++i];
+                case "-size" -> size = Integer.parseInt(args[++i]);
+                case "-rounds" -> rounds = Integer.parseInt(args[++i]);
+                default -> {
+                    System.out.println("-file <text file> -size <characters> -rounds <rounds>");
+                    System.exit(1);
+                }
+            }
+        }
+        String text = file != null ? Files.readString(Path.of(file)) : generate(size);
+        System.out.printf("Analyzing %d characters, %d rounds%n%n", text.length(), rounds);
+
+        Analyzer plain = new Analyzer(false, false);
+        Analyzer filtered = new Analyzer(true, true);
+        System.out.printf("%-24s %10s %12s %12s %14s%n", "Tokenizer", "Tokens", "MB/s", "Mtokens/s",
+                "Bytes/token");
+        for (int round = 0; round <= rounds; round++) {
+            // The first round warms up the compiler and is not printed
+            boolean print = round > 0;
+            measure("Regex tokenizer (old)", print, () -> legacyTokens(text), text.length());
+            measure("Analyzer", print, () -> plain.analyze(text), text.length());
+            measure("Analyzer + filters", print, () -> filtered.analyze(text), text.length());
+            if (print && round < rounds)
+                System.out.println();
+        }
+    }
+
+    /**
+     * Generates a synthetic text.
+     *
+     * @param size the number of characters
+     * @return the text
+     */
+    private static String generate(int size) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(size + 32);
+        while (text.length() < size) {
+            int kind = random.nextInt(20);
+            if (kind == 0)
+                text.append(random.nextInt(3000));
+            else if (kind == 1)
+                text.append(random.nextInt(100)).append(',').append(random.nextInt(100));
+            else if (kind == 2)
+                text.append("word").append(random.nextInt(50000));
+            else {
+                // Zipfian choice of a common word
+                String word = WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), 3))];
+                text.append(random.nextInt(8) == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            int separator = random.nextInt(12);
+            text.append(separator == 0 ? ". " : separator == 1 ? ", " : separator == 2 ? " (" : " ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Runs a tokenizer over the text and prints its throughput and allocations.
+     *
+     * @param name       the name of the tokenizer
+     * @param print      whether to print the measurement
+     * @param tokenizer  the tokenizer run over the text
+     * @param characters the number of characters of the text
+     */
+    private static void measure(String name, boolean print, Supplier<List<String>> tokenizer, int characters) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        List<String> tokens = tokenizer.get();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        if (print)
+            System.out.printf("%-24s %10d %12.1f %12.2f %14.1f%n", name, tokens.size(),
+                    characters / seconds / 1e6, tokens.size() / seconds / 1e6, (double) allocated / tokens.size());
+    }
+
+    /**
+     * Splits a text into tokens the way the downloaders did before the
+     * Analyzer.
+     *
+     * @param text the text
+     * @return the tokens, in order
+     */
+    private static List<String> legacyTokens(String text) {
+        StringTokenizer tokens = new StringTokenizer(text);
+        List<String> tokenList = new ArrayList<>();
+        while (tokens.hasMoreElements()) {
+            String token = tokens.nextToken().toLowerCase();
+            token = token.trim();
+            token = token.replaceAll("[\\[\\](){}?!,.:]", "");
+            if (token.length() <= 1)
+                continue;
+            if (token.matches("\\d+")) {
+                if (token.contains(".") || token.contains(","))
+                    tokenList.add(token);
+            } else
+                tokenList.add(token);
+        }
+        return tokenList;
+    }
+}
@@ -4,6 +4,7 @@ package Client;
 import Server.Controller.RMIGateway;
 import Server.Controller.RMIGatewayInterface;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
 // Logging
 import Logger.LogUtil;
 
@@ -133,7 +134,8 @@ public class RMIClient implements Serializable {
         switch (choice) {
             case 1:
                 String query = readQuery();
-                List<SearchData> searchResults = rmiGateway.searchQuery(query, 1);
+                SearchPage searchPage = rmiGateway.openSearch(query);
+                List<SearchData> searchResults = searchPage.results();
 
                 if (searchResults.size() == 0) {
                     System.out.println("No results.");
@@ -151,7 +153,8 @@ public class RMIClient implements Serializable {
                     int pageNumber = readChoice();
                     if (pageNumber == 0)
                         break;
-                    searchResults = rmiGateway.searchQuery(query, pageNumber);
+                    searchPage = rmiGateway.fetchSearchPage(query, searchPage.cursor(), pageNumber);
+                    searchResults = searchPage.results();
                 } while (true);
                 break;
             case 2:
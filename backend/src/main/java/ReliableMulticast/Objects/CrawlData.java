@@ -19,7 +19,8 @@ public class CrawlData implements Serializable {
      */
     public String title;
     /**
-     * The description of the web page.
+     * The description of the web page: its whole text, which the barrels store
+     * apart from the website and only use to build the snippets of the results.
      */
     public String description;
     /**
@@ -10,6 +10,7 @@ import Logger.LogUtil;
 
 // General imports
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 // Error imports
 import java.io.IOException;
@@ -109,4 +110,27 @@ public class ReliableMulticast {
             return null;
         }
     }
+
+    /**
+     * Retrieves the next available data object, waiting at most the given time.
+     * If the protocol is shutting down, the shutdown signal is kept for the next
+     * call to getData.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return the next available data object, or null if none arrived in time or
+     *         protocol is shutting down
+     */
+    public Object pollData(long timeout) {
+        try {
+            Object data = receiver.getWorkerQueue().poll(timeout, TimeUnit.MILLISECONDS);
+            if (data == ReceiverWorker.STOP_PILL) {
+                receiver.getWorkerQueue().add(data);
+                return null;
+            }
+            return data;
+        } catch (InterruptedException e) {
+            LogUtil.logError(LogUtil.ANSI_WHITE, ReliableMulticast.class, e);
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package Server.Controller;
 
 // Package imports
 import Server.IndexStorageBarrel.IndexStorageBarrelInterface;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
 
 // Logging imports
 import Logger.LogUtil;
@@ -27,19 +29,32 @@ public class BarrelTimestamp {
      * The barrel ID of this BarrelTimestamp.
      */
     private final int barrelID;
+    /**
+     * The term partition indexed by the barrel.
+     */
+    private final TermPartition termPartition;
+    /**
+     * The document partition indexed by the barrel.
+     */
+    private final DocumentPartition documentPartition;
 
     /**
      * Constructs a BarrelTimestamp object with the specified remote barrel,
-     * timestamp, and barrel ID.
+     * timestamp, barrel ID and partitions.
      * 
-     * @param remoteBarrel the remote barrel object
-     * @param timestamp    the timestamp value
-     * @param barrelId     the barrel ID
+     * @param remoteBarrel      the remote barrel object
+     * @param timestamp         the timestamp value
+     * @param barrelId          the barrel ID
+     * @param termPartition     the term partition indexed by the barrel
+     * @param documentPartition the document partition indexed by the barrel
      */
-    public BarrelTimestamp(IndexStorageBarrelInterface remoteBarrel, long timestamp, int barrelId) {
+    public BarrelTimestamp(IndexStorageBarrelInterface remoteBarrel, long timestamp, int barrelId,
+            TermPartition termPartition, DocumentPartition documentPartition) {
         this.remoteBarrel = remoteBarrel;
         this.timestamp = timestamp;
         this.barrelID = barrelId;
+        this.termPartition = termPartition;
+        this.documentPartition = documentPartition;
     }
 
     /**
@@ -78,6 +93,24 @@ public class BarrelTimestamp {
         return barrelID;
     }
 
+    /**
+     * Returns the term partition indexed by the barrel.
+     * 
+     * @return the term partition
+     */
+    public TermPartition getTermPartition() {
+        return termPartition;
+    }
+
+    /**
+     * Returns the document partition indexed by the barrel.
+     * 
+     * @return the document partition
+     */
+    public DocumentPartition getDocumentPartition() {
+        return documentPartition;
+    }
+
     /**
      * Returns the average response time of this BarrelTimestamp.
      * 
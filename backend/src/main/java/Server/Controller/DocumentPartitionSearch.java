@@ -0,0 +1,157 @@
+package Server.Controller;
+
+// Package imports
+import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.PartitionHits;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Set;
+import java.util.List;
+import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+// Exception imports
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The DocumentPartitionSearch class answers queries over a document
+ * partitioned index, where each barrel indexes the websites of its partition
+ * and the barrels of a partition are its replicas.
+ * <p>
+ * A query is sent to one replica of every partition in parallel, falling back
+ * to the next replica of a partition when one fails. The partitions first
+ * return the collection statistics of the query keywords, which the gateway
+ * sums so that every partition weights the keywords with the IDF of the whole
+ * index. Each partition then returns its best results, and the gateway merges
+ * these ranked lists with a heap. A partition that misses the deadline of the
+ * query is left out of the results instead of delaying them.
+ */
+public class DocumentPartitionSearch {
+    /**
+     * The time a query waits for the partitions, in milliseconds.
+     */
+    public static final long SEARCH_DEADLINE = 2000;
+    /**
+     * The cursor token of the pages of a document partitioned index, which are
+     * searched again for every page instead of being held by a barrel.
+     */
+    public static final String CURSOR = "partitions";
+
+    /**
+     * A page of results merged over every partition.
+     *
+     * @param results   the results of the page, in rank order
+     * @param totalHits the number of matching documents in the partitions that
+     *                  answered, an upper bound since the duplicate URLs are
+     *                  only collapsed in the merged results
+     * @param hasMore   whether a result past the page survived the collapsing of
+     *                  the duplicate URLs
+     */
+    public record Page(List<SearchData> results, int totalHits, boolean hasMore) {
+    }
+
+    /**
+     * The threads calling the partitions of a query in parallel.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Document Partition Search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Calls one replica of every partition in parallel, trying the replicas of
+     * a partition in order until one answers, and waits for the answers until
+     * the deadline.
+     *
+     * @param replicas the replicas of each partition, by partition index
+     * @param call     the call made to each partition
+     * @param deadline the time by which the partitions must answer, in
+     *                 milliseconds since the epoch
+     * @param <T>      the type of the result
+     * @return the result of each partition, by partition index, null for the
+     *         partitions that failed or missed the deadline
+     */
+    public <T> List<T> gather(List<List<BarrelTimestamp>> replicas, TermPartitionSearch.RemoteCall<T> call,
+            long deadline) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (List<BarrelTimestamp> partitionReplicas : replicas)
+            futures.add(executor.submit(() -> TermPartitionSearch.callReplicas(partitionReplicas, call)));
+
+        List<T> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            T result = null;
+            try {
+                result = futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                LogUtil.logInfo(LogUtil.ANSI_RED, DocumentPartitionSearch.class,
+                        "Partition " + i + " missed the deadline, leaving it out");
+            } catch (InterruptedException | ExecutionException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, DocumentPartitionSearch.class, e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Merges the ranked lists of the partitions into a page of results. A heap
+     * holds the best remaining result of each partition, so that only the
+     * results up to the end of the page are compared. The partitions are asked
+     * for one result past the page, which tells whether there is a next page.
+     *
+     * @param partitions the best results of each partition, null for the
+     *                   partitions left out
+     * @param start      the rank of the first result of the page
+     * @param length     the number of results per page
+     * @return the results of the page and the number of matching documents
+     */
+    public Page merge(List<PartitionHits> partitions, int start, int length) {
+        // The next result of each partition, as {partition, rank}, best rank value first
+        PriorityQueue<int[]> heap = new PriorityQueue<>((a, b) -> {
+            int order = Float.compare(partitions.get(b[0]).rankValues()[b[1]],
+                    partitions.get(a[0]).rankValues()[a[1]]);
+            return order != 0 ? order : Integer.compare(a[0], b[0]);
+        });
+        int totalHits = 0;
+        for (int i = 0; i < partitions.size(); i++) {
+            PartitionHits partition = partitions.get(i);
+            if (partition == null)
+                continue;
+            totalHits += partition.totalHits();
+            if (!partition.hits().isEmpty())
+                heap.add(new int[] { i, 0 });
+        }
+
+        List<SearchData> results = new ArrayList<>();
+        Set<String> urls = new HashSet<>();
+        int rank = 0;
+        boolean hasMore = false;
+        while (!heap.isEmpty() && !hasMore) {
+            int[] next = heap.poll();
+            List<SearchData> hits = partitions.get(next[0]).hits();
+            SearchData hit = hits.get(next[1]);
+            if (next[1] + 1 < hits.size())
+                heap.add(new int[] { next[0], next[1] + 1 });
+            // A barrel restarted with another number of partitions keeps its old websites
+            if (!urls.add(hit.url()))
+                continue;
+            if (rank == start + length)
+                hasMore = true;
+            else if (rank++ >= start)
+                results.add(hit);
+        }
+        return new Page(results, totalHits, hasMore);
+    }
+}
@@ -6,12 +6,26 @@ import Server.Controller.Objects.Stats;
 import Server.IndexStorageBarrel.IndexStorageBarrel;
 import Server.IndexStorageBarrel.Operations.BarrelPinger;
 import Server.IndexStorageBarrel.IndexStorageBarrelInterface;
+import Server.IndexStorageBarrel.Objects.CacheStats;
+import Server.IndexStorageBarrel.Objects.DuplicateStats;
+import Server.IndexStorageBarrel.Objects.IngestStats;
+import Server.IndexStorageBarrel.Objects.PageRankStats;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.PartitionPostings;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Objects.IndexPartition;
+import Server.IndexStorageBarrel.Objects.CollectionStats;
+import Server.IndexStorageBarrel.Objects.PartitionHits;
+import Server.IndexStorageBarrel.Operations.BarrelRetriever;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
 // Logging imports
 import Logger.LogUtil;
 
 // General imports
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -66,6 +80,19 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
      * The list of timed barrels.
      */
     private final ArrayList<BarrelTimestamp> timedBarrels = new ArrayList<>();
+    /**
+     * The rotation applied to the replicas of each term partition, so that the
+     * queries are spread over them.
+     */
+    private int currentReplica = 0;
+    /**
+     * The scatter-gather of the queries over a term partitioned index.
+     */
+    private final TermPartitionSearch termPartitionSearch = new TermPartitionSearch();
+    /**
+     * The scatter-gather of the queries over a document partitioned index.
+     */
+    private final DocumentPartitionSearch documentPartitionSearch = new DocumentPartitionSearch();
     /**
      * The search queries and their counts.
      */
@@ -128,6 +155,30 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
                     "", "URL Indexed.", "", 0, SearchData.EXCEPTION));
         }
 
+        if (partitionCount(BarrelTimestamp::getDocumentPartition) > 1) {
+            SearchPage page = searchDocumentPartitions(query, pageNumber);
+            searchQueries.put(query, searchQueries.getOrDefault(query, 0) + 1);
+            sendStats();
+            return page.results();
+        }
+
+        if (partitionCount(BarrelTimestamp::getTermPartition) > 1) {
+            // The page is ranked from the merged partitions without keeping a cursor
+            TermPartitionSearch.Matches matches = mergeTermPartitions(query);
+            int barrel = getAvailableBarrel();
+            if (matches == null || barrel == -1)
+                return Collections.singletonList(new SearchData(
+                        "", "Index partition unavailable.", "", 0, SearchData.EXCEPTION));
+            BarrelTimestamp timedBarrel = timedBarrels.get(barrel);
+            long startTime = System.currentTimeMillis();
+            List<SearchData> results = timedBarrel.getRemoteBarrel().searchMerged(query, matches.docIds(),
+                    matches.scores(), pageNumber);
+            timedBarrel.setAvgResponseTime(System.currentTimeMillis() - startTime);
+            searchQueries.put(query, searchQueries.getOrDefault(query, 0) + 1);
+            sendStats();
+            return results;
+        }
+
         int barrel = getAvailableBarrel();
         if (barrel == -1)
             return Collections.singletonList(new SearchData(
@@ -151,6 +202,233 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
         return results;
     }
 
+    /**
+     * Searches for the given query and opens a cursor over the ranked results on
+     * one of the barrels.
+     * The returned cursor token is prefixed with the ID of the barrel holding it.
+     * 
+     * @param query The search query.
+     * @return The first page of search results and the cursor token.
+     * @throws RemoteException if a remote error occurs.
+     */
+    public SearchPage openSearch(String query) throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_BLUE, RMIGateway.class, "Got query: " + query);
+
+        if (isValidURL(query)) {
+            // The query is a URL so send it to the URL Queue
+            priorityEnqueueURL(query);
+            return new SearchPage(null, 1, Collections.singletonList(new SearchData(
+                    "", "URL Indexed.", "", 0, SearchData.EXCEPTION)), false);
+        }
+
+        SearchPage page = openCursorSearch(query, true);
+        if (page == null)
+            return new SearchPage(null, 1, Collections.singletonList(new SearchData(
+                    "", "No barrels available.", "", 0, SearchData.EXCEPTION)), false);
+
+        // Update the count of the search query
+        searchQueries.put(query, searchQueries.getOrDefault(query, 0) + 1);
+
+        // Send the statistics to the web application
+        sendStats();
+
+        return page;
+    }
+
+    /**
+     * Executes the given query and opens a cursor over the ranked results on one
+     * of the barrels, without updating the statistics of the gateway.
+     * 
+     * @param query       The search query.
+     * @param countSearch Whether the barrel counts the search in its statistics.
+     * @return The first page of search results and the cursor token, or null if
+     *         no barrel is available.
+     * @throws RemoteException if a remote error occurs.
+     */
+    private SearchPage openCursorSearch(String query, boolean countSearch) throws RemoteException {
+        if (partitionCount(BarrelTimestamp::getDocumentPartition) > 1)
+            return searchDocumentPartitions(query, 1);
+
+        if (partitionCount(BarrelTimestamp::getTermPartition) > 1)
+            return openPartitionedSearch(query, countSearch);
+
+        int barrel = getAvailableBarrel();
+        if (barrel == -1)
+            return null;
+
+        BarrelTimestamp timedBarrel = timedBarrels.get(barrel);
+        long startTime = System.currentTimeMillis();
+        SearchPage page = timedBarrel.getRemoteBarrel().openCursor(query, countSearch);
+        timedBarrel.setAvgResponseTime(System.currentTimeMillis() - startTime);
+        return withBarrelCursor(timedBarrel.getBarrelID(), page);
+    }
+
+    /**
+     * Searches for the given query over a term partitioned index.
+     * The postings of the query keywords are gathered from one replica of every
+     * partition and merged by the gateway, then one of the barrels ranks the
+     * matching documents, opens a cursor over them and reads the websites of the
+     * first page, the websites being replicated in every partition.
+     * 
+     * @param query       The search query.
+     * @param countSearch Whether the barrel counts the search in its statistics.
+     * @return The first page of search results and the cursor token.
+     * @throws RemoteException if a remote error occurs.
+     */
+    private SearchPage openPartitionedSearch(String query, boolean countSearch) throws RemoteException {
+        TermPartitionSearch.Matches matches = mergeTermPartitions(query);
+        int barrel = getAvailableBarrel();
+        if (matches == null || barrel == -1)
+            return new SearchPage(null, 1, Collections.singletonList(new SearchData(
+                    "", "Index partition unavailable.", "", 0, SearchData.EXCEPTION)), false);
+
+        BarrelTimestamp timedBarrel = timedBarrels.get(barrel);
+        long startTime = System.currentTimeMillis();
+        SearchPage page = timedBarrel.getRemoteBarrel().openMergedCursor(query, matches.docIds(), matches.scores(),
+                countSearch);
+        timedBarrel.setAvgResponseTime(System.currentTimeMillis() - startTime);
+        return withBarrelCursor(timedBarrel.getBarrelID(), page);
+    }
+
+    /**
+     * Gathers the postings of the query keywords from one replica of every term
+     * partition and matches and scores the query over them.
+     * 
+     * @param query The search query.
+     * @return The matching documents and their scores, or null if a partition
+     *         has no replica that answered.
+     */
+    private TermPartitionSearch.Matches mergeTermPartitions(String query) {
+        List<List<BarrelTimestamp>> replicas = partitionReplicas(BarrelTimestamp::getTermPartition);
+        List<PartitionPostings> partitions = replicas == null ? null
+                : termPartitionSearch.gather(replicas, remoteBarrel -> remoteBarrel.fetchPartitionPostings(query));
+        if (partitions == null)
+            return null;
+
+        TermPartitionSearch.Matches matches = termPartitionSearch.merge(partitions);
+        LogUtil.logInfo(LogUtil.ANSI_BLUE, RMIGateway.class,
+                "Merged " + partitions.size() + " partitions: " + matches.docIds().length + " matches");
+        return matches;
+    }
+
+    /**
+     * Searches for the given query over a document partitioned index.
+     * The collection statistics of the query keywords are summed over one
+     * replica of every partition, then every partition ranks its own websites
+     * with these global IDF weights, down to the requested page, and the ranked
+     * lists are merged by the gateway. The partitions that miss the deadline are
+     * left out of the results. Pages past the depth of a barrel search are
+     * empty, and are not sent to the partitions.
+     * 
+     * @param query      The search query.
+     * @param pageNumber The page number of the search results.
+     * @return The requested page of search results.
+     */
+    private SearchPage searchDocumentPartitions(String query, int pageNumber) {
+        if ((long) Math.max(0, pageNumber - 1) * BarrelRetriever.PAGE_SIZE >= InvertedIndex.MAX_DEPTH)
+            return new SearchPage(null, pageNumber, Collections.emptyList(), false);
+        List<List<BarrelTimestamp>> replicas = partitionReplicas(BarrelTimestamp::getDocumentPartition);
+        if (replicas == null)
+            return new SearchPage(null, pageNumber, Collections.singletonList(new SearchData(
+                    "", "Index partition unavailable.", "", 0, SearchData.EXCEPTION)), false);
+
+        long deadline = System.currentTimeMillis() + DocumentPartitionSearch.SEARCH_DEADLINE;
+        CollectionStats globalStats = null;
+        for (CollectionStats stats : documentPartitionSearch.gather(replicas,
+                remoteBarrel -> remoteBarrel.getCollectionStats(query), deadline))
+            if (stats != null)
+                globalStats = globalStats == null ? stats : globalStats.plus(stats);
+        if (globalStats == null)
+            return new SearchPage(null, pageNumber, Collections.singletonList(new SearchData(
+                    "", "Index partition unavailable.", "", 0, SearchData.EXCEPTION)), false);
+
+        CollectionStats weights = globalStats;
+        int depth = Math.min(Math.max(1, pageNumber) * BarrelRetriever.PAGE_SIZE, InvertedIndex.MAX_DEPTH);
+        // One result past the page tells whether there is a next page
+        int searchDepth = Math.min(depth + 1, InvertedIndex.MAX_DEPTH);
+        List<PartitionHits> partitions = documentPartitionSearch.gather(replicas,
+                remoteBarrel -> remoteBarrel.searchPartition(query, weights, searchDepth), deadline);
+        DocumentPartitionSearch.Page page = documentPartitionSearch.merge(partitions, depth - BarrelRetriever.PAGE_SIZE,
+                BarrelRetriever.PAGE_SIZE);
+        LogUtil.logInfo(LogUtil.ANSI_BLUE, RMIGateway.class, "Merged " + partitions.stream().filter(Objects::nonNull)
+                .count() + " of " + partitions.size() + " partitions: " + page.totalHits() + " matches");
+        return new SearchPage(DocumentPartitionSearch.CURSOR, pageNumber, page.results(),
+                page.hasMore() && depth < InvertedIndex.MAX_DEPTH);
+    }
+
+    /**
+     * Retrieves a page of search results from the barrel holding the cursor.
+     * If the barrel is gone or the cursor expired, the query is executed again.
+     * 
+     * @param query      The search query.
+     * @param cursor     The cursor token returned by openSearch.
+     * @param pageNumber The page number of the search results.
+     * @return The requested page of search results.
+     * @throws RemoteException if a remote error occurs.
+     */
+    public SearchPage fetchSearchPage(String query, String cursor, int pageNumber) throws RemoteException {
+        if (DocumentPartitionSearch.CURSOR.equals(cursor))
+            return searchDocumentPartitions(query, pageNumber);
+
+        SearchPage page = fetchFromCursor(cursor, pageNumber);
+        if (page != null)
+            return page;
+
+        // The search was already counted when it was first opened
+        LogUtil.logInfo(LogUtil.ANSI_BLUE, RMIGateway.class, "Cursor expired, executing query again: " + query);
+        SearchPage firstPage = openCursorSearch(query, false);
+        if (firstPage == null)
+            return new SearchPage(null, pageNumber, Collections.singletonList(new SearchData(
+                    "", "No barrels available.", "", 0, SearchData.EXCEPTION)), false);
+        if (firstPage.cursor() == null || pageNumber <= 1)
+            return firstPage;
+
+        page = fetchFromCursor(firstPage.cursor(), pageNumber);
+        return page != null ? page : firstPage;
+    }
+
+    /**
+     * Retrieves a page of search results from the barrel holding the cursor.
+     * 
+     * @param cursor     The cursor token, prefixed with the barrel ID.
+     * @param pageNumber The page number of the search results.
+     * @return The requested page, or null if the barrel or the cursor is gone.
+     */
+    private SearchPage fetchFromCursor(String cursor, int pageNumber) {
+        int separator = cursor == null ? -1 : cursor.indexOf(':');
+        if (separator == -1)
+            return null;
+
+        try {
+            int barrelID = Integer.parseInt(cursor.substring(0, separator));
+            for (BarrelTimestamp timedBarrel : timedBarrels) {
+                if (timedBarrel.getBarrelID() != barrelID)
+                    continue;
+
+                long startTime = System.currentTimeMillis();
+                SearchPage page = timedBarrel.getRemoteBarrel()
+                        .fetchCursorPage(cursor.substring(separator + 1), pageNumber);
+                timedBarrel.setAvgResponseTime(System.currentTimeMillis() - startTime);
+                return page == null ? null : withBarrelCursor(barrelID, page);
+            }
+        } catch (NumberFormatException | RemoteException e) {
+            LogUtil.logInfo(LogUtil.ANSI_RED, RMIGateway.class, "Unable to fetch page from cursor: " + cursor);
+        }
+        return null;
+    }
+
+    /**
+     * Prefixes the cursor token of a page with the ID of the barrel holding it.
+     * 
+     * @param barrelID The ID of the barrel.
+     * @param page     The page returned by the barrel.
+     * @return The page with the prefixed cursor token.
+     */
+    private static SearchPage withBarrelCursor(int barrelID, SearchPage page) {
+        return new SearchPage(barrelID + ":" + page.cursor(), page.pageNumber(), page.results(),
+                page.hasNextPage());
+    }
+
     /**
      * Retrieves the websites that are linking to the target URL.
      * 
@@ -260,7 +538,8 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
                         + (IndexStorageBarrel.REMOTE_REFERENCE_NAME + barrelID));
 
         if (remoteBarrel != null) {
-            timedBarrels.add(new BarrelTimestamp(remoteBarrel, System.currentTimeMillis(), barrelID));
+            timedBarrels.add(new BarrelTimestamp(remoteBarrel, System.currentTimeMillis(), barrelID,
+                    remoteBarrel.getTermPartition(), remoteBarrel.getDocumentPartition()));
             sendStats();
         }
     }
@@ -308,6 +587,67 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
         return timedBarrels.size();
     }
 
+    /**
+     * Retrieves the number of active barrels of a term and document partition.
+     * 
+     * @param partition         The term partition.
+     * @param documentPartition The document partition.
+     * @return The number of active replicas of the partition.
+     * @throws RemoteException if a remote error occurs.
+     */
+    public synchronized int getActiveReplicas(TermPartition partition, DocumentPartition documentPartition)
+            throws RemoteException {
+        return (int) timedBarrels.stream()
+                .filter(timedBarrel -> timedBarrel.getTermPartition().equals(partition)
+                        && timedBarrel.getDocumentPartition().equals(documentPartition))
+                .count();
+    }
+
+    /**
+     * Gets the number of partitions of the index, from the live barrels.
+     * 
+     * @param partitionOf The term or document partition of a barrel.
+     * @return The number of partitions, 1 if the index is not partitioned.
+     */
+    private synchronized int partitionCount(Function<BarrelTimestamp, IndexPartition> partitionOf) {
+        int count = 1;
+        for (BarrelTimestamp timedBarrel : timedBarrels)
+            count = Math.max(count, partitionOf.apply(timedBarrel).count());
+        return count;
+    }
+
+    /**
+     * Groups the live barrels by partition, rotating the replicas of each
+     * partition so that the queries are spread over them.
+     * 
+     * @param partitionOf The term or document partition of a barrel.
+     * @return The replicas of each partition, by partition index, or null if a
+     *         partition has no live barrel.
+     */
+    private synchronized List<List<BarrelTimestamp>> partitionReplicas(
+            Function<BarrelTimestamp, IndexPartition> partitionOf) {
+        int count = partitionCount(partitionOf);
+        List<List<BarrelTimestamp>> replicas = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            replicas.add(new ArrayList<>());
+        long expired = System.currentTimeMillis() - BarrelPinger.PING_INTERVAL * 2L;
+        for (BarrelTimestamp timedBarrel : timedBarrels) {
+            IndexPartition partition = partitionOf.apply(timedBarrel);
+            if (partition.count() == count && timedBarrel.getTimestamp() >= expired)
+                replicas.get(partition.index()).add(timedBarrel);
+        }
+
+        currentReplica++;
+        for (int i = 0; i < count; i++) {
+            if (replicas.get(i).isEmpty()) {
+                LogUtil.logInfo(LogUtil.ANSI_BLUE, RMIGateway.class, "No barrels available for partition " + i);
+                return null;
+            }
+            Collections.rotate(replicas.get(i), currentReplica % replicas.get(i).size());
+        }
+        return replicas;
+    }
+
     /**
      * Retrieves the most searched queries.
      * 
@@ -326,6 +666,40 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
         return results;
     }
 
+    /**
+     * Suggests the completions of a query prefix.
+     * Suggestions are requested on every keystroke, so unlike searches they do
+     * not send the statistics to the web application.
+     * 
+     * @param prefix The prefix typed by the user.
+     * @param limit  The maximum number of suggestions.
+     * @return The suggested terms, empty if no barrel is available.
+     * @throws RemoteException if a remote error occurs.
+     */
+    public List<String> suggest(String prefix, int limit) throws RemoteException {
+        Function<BarrelTimestamp, IndexPartition> partitionOf = partitionCount(
+                BarrelTimestamp::getDocumentPartition) > 1 ? BarrelTimestamp::getDocumentPartition
+                        : BarrelTimestamp::getTermPartition;
+        if (partitionCount(partitionOf) > 1) {
+            // Each partition only knows the terms it indexes
+            List<List<BarrelTimestamp>> replicas = partitionReplicas(partitionOf);
+            List<List<String>> suggestions = replicas == null ? null
+                    : termPartitionSearch.gather(replicas, remoteBarrel -> remoteBarrel.suggest(prefix, limit));
+            return suggestions == null ? Collections.emptyList()
+                    : TermPartitionSearch.interleave(suggestions, limit);
+        }
+
+        int currentBarrel = getAvailableBarrel();
+        if (currentBarrel == -1)
+            return Collections.emptyList();
+
+        long startTime = System.currentTimeMillis();
+        List<String> results = timedBarrels.get(currentBarrel).getRemoteBarrel().suggest(prefix, limit);
+        timedBarrels.get(currentBarrel).setAvgResponseTime(System.currentTimeMillis() - startTime);
+
+        return results;
+    }
+
     /**
      * Checks if a barrel is alive.
      * 
@@ -350,7 +724,34 @@ public class RMIGateway extends UnicastRemoteObject implements RMIGatewayInterfa
     public List<String> barrelsStatus() throws RemoteException {
         List<String> status = new ArrayList<>();
         for (BarrelTimestamp barrel : timedBarrels) {
-            status.add("Barrel %d : %dms".formatted(barrel.getBarrelID(), barrel.getAvgResponseTime()));
+            String barrelStatus = "Barrel %d : %dms".formatted(barrel.getBarrelID(), barrel.getAvgResponseTime());
+            if (barrel.getTermPartition().isPartitioned())
+                barrelStatus += " | partition %d of %d".formatted(barrel.getTermPartition().index() + 1,
+                        barrel.getTermPartition().count());
+            if (barrel.getDocumentPartition().isPartitioned())
+                barrelStatus += " | shard %d of %d".formatted(barrel.getDocumentPartition().index() + 1,
+                        barrel.getDocumentPartition().count());
+            try {
+                CacheStats cacheStats = barrel.getRemoteBarrel().getCacheStats();
+                barrelStatus += " | cache %d hits, %d misses (%.0f%%)".formatted(cacheStats.hits(),
+                        cacheStats.misses(), cacheStats.hitRate() * 100);
+                IngestStats ingestStats = barrel.getRemoteBarrel().getIngestStats();
+                barrelStatus += " | ingest %.1f records/batch, %.1fms/commit".formatted(ingestStats.avgBatchSize(),
+                        ingestStats.avgCommitTime());
+                PageRankStats pageRankStats = barrel.getRemoteBarrel().getPageRankStats();
+                if (pageRankStats.runs() > 0)
+                    barrelStatus += " | pagerank %d iterations in %dms".formatted(pageRankStats.iterations(),
+                            pageRankStats.runTime());
+                DuplicateStats duplicateStats = barrel.getRemoteBarrel().getDuplicateStats();
+                if (duplicateStats.duplicatePages() > 0)
+                    barrelStatus += " | duplicates %d pages, %d postings (%.1f KB) saved".formatted(
+                            duplicateStats.duplicatePages(), duplicateStats.savedPostings(),
+                            duplicateStats.savedBytes() / 1024.0);
+            } catch (RemoteException re) {
+                LogUtil.logInfo(LogUtil.ANSI_RED, RMIGateway.class,
+                        "Failed to get stats of barrel " + barrel.getBarrelID());
+            }
+            status.add(barrelStatus);
         }
         return status;
     }
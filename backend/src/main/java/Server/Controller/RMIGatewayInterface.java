@@ -5,6 +5,9 @@ import java.util.List;
 
 import Server.Controller.Objects.Stats;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
 
 import java.rmi.Remote;
 
@@ -31,6 +34,28 @@ public interface RMIGatewayInterface extends Remote {
      */
     List<SearchData> searchQuery(String query, int pageNumber) throws RemoteException, MalformedURLException;
 
+    /**
+     * Searches for a query and opens a server-side cursor over the ranked
+     * results, so that later pages do not execute the query again.
+     * 
+     * @param query the search query
+     * @return the first page of search results and the cursor token
+     * @throws RemoteException if a remote communication error occurs
+     */
+    SearchPage openSearch(String query) throws RemoteException;
+
+    /**
+     * Retrieves a page of search results from a cursor opened by openSearch.
+     * If the cursor expired, the query is executed again on any available barrel.
+     * 
+     * @param query      the search query
+     * @param cursor     the token of the cursor
+     * @param pageNumber the page number of the search results
+     * @return the requested page of search results
+     * @throws RemoteException if a remote communication error occurs
+     */
+    SearchPage fetchSearchPage(String query, String cursor, int pageNumber) throws RemoteException;
+
     /**
      * Retrieves a list of websites that are linking to the target URL.
      * 
@@ -69,6 +94,16 @@ public interface RMIGatewayInterface extends Remote {
      */
     List<String> mostSearched() throws RemoteException;
 
+    /**
+     * Suggests the completions of a query prefix.
+     * 
+     * @param prefix the prefix typed by the user
+     * @param limit  the maximum number of suggestions
+     * @return a list of suggested terms, empty if no barrel is available
+     * @throws RemoteException if a remote communication error occurs
+     */
+    List<String> suggest(String prefix, int limit) throws RemoteException;
+
     /**
      * Retrieves the status of the barrels.
      * 
@@ -85,6 +120,16 @@ public interface RMIGatewayInterface extends Remote {
      */
     int getActiveBarrels() throws RemoteException;
 
+    /**
+     * Retrieves the number of active barrels of a term and document partition.
+     *
+     * @param partition         the term partition
+     * @param documentPartition the document partition
+     * @return the number of active replicas of the partition
+     * @throws RemoteException if a remote communication error occurs
+     */
+    int getActiveReplicas(TermPartition partition, DocumentPartition documentPartition) throws RemoteException;
+
     /**
      * Enqueues a URL with priority.
      *
@@ -0,0 +1,204 @@
+package Server.Controller;
+
+// Package imports
+import Server.IndexStorageBarrel.IndexStorageBarrelInterface;
+import Server.IndexStorageBarrel.Index.Postings;
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.PostingList;
+import Server.IndexStorageBarrel.Index.QueryExecutor;
+import Server.IndexStorageBarrel.Objects.PartitionPostings;
+import Server.IndexStorageBarrel.Operations.BarrelProcessing;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+// Exception imports
+import java.rmi.RemoteException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The TermPartitionSearch class answers queries over a term partitioned index,
+ * where each barrel only indexes the keywords of its partition and the
+ * barrels of a partition are its replicas.
+ * <p>
+ * A query is sent to one replica of every partition in parallel, falling back
+ * to the next replica of a partition when one fails. Each partition returns
+ * the postings of the query keywords it owns, and the gateway matches the
+ * query over them with the same {@link QueryExecutor} as a barrel, then scores
+ * the matching documents by TF-IDF. The IDF of a keyword uses its document
+ * frequency in the owning partition, which is exact since no other partition
+ * holds it, and the largest document count of the partitions.
+ */
+public class TermPartitionSearch {
+    /**
+     * A remote call made to a barrel.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface RemoteCall<T> {
+        /**
+         * Calls the barrel.
+         *
+         * @param barrel the remote barrel
+         * @return the result of the call
+         * @throws RemoteException if the barrel cannot be reached
+         */
+        T call(IndexStorageBarrelInterface barrel) throws RemoteException;
+    }
+
+    /**
+     * The documents matching a query over every partition.
+     *
+     * @param docIds the sorted IDs of the matching documents
+     * @param scores the TF-IDF score of each document
+     */
+    public record Matches(int[] docIds, float[] scores) {
+    }
+
+    /**
+     * The threads calling the partitions of a query in parallel.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Term Partition Search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Calls one replica of every partition in parallel, trying the replicas of
+     * a partition in order until one answers.
+     *
+     * @param replicas the replicas of each partition, by partition index
+     * @param call     the call made to each partition
+     * @param <T>      the type of the result
+     * @return the result of each partition, by partition index, or null if a
+     *         partition has no replica that answered
+     */
+    public <T> List<T> gather(List<List<BarrelTimestamp>> replicas, RemoteCall<T> call) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (List<BarrelTimestamp> partitionReplicas : replicas)
+            futures.add(executor.submit(() -> callReplicas(partitionReplicas, call)));
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                T result = future.get();
+                if (result == null)
+                    return null;
+                results.add(result);
+            } catch (InterruptedException | ExecutionException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, TermPartitionSearch.class, e);
+                return null;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Calls the replicas of a partition in order until one answers.
+     *
+     * @param replicas the replicas of the partition
+     * @param call     the call made to the partition
+     * @param <T>      the type of the result
+     * @return the result of the first replica that answered, or null if none
+     *         did
+     */
+    static <T> T callReplicas(List<BarrelTimestamp> replicas, RemoteCall<T> call) {
+        for (BarrelTimestamp replica : replicas) {
+            try {
+                long startTime = System.currentTimeMillis();
+                T result = call.call(replica.getRemoteBarrel());
+                replica.setAvgResponseTime(System.currentTimeMillis() - startTime);
+                return result;
+            } catch (RemoteException re) {
+                LogUtil.logInfo(LogUtil.ANSI_RED, TermPartitionSearch.class,
+                        "Barrel " + replica.getBarrelID() + " failed, trying the next replica");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Interleaves the ranked lists of the partitions, taking the first item of
+     * each list, then the second, and so on, without repeating items.
+     *
+     * @param lists the ranked lists of each partition
+     * @param limit the maximum number of items
+     * @param <T>   the type of the items
+     * @return the interleaved items, up to the limit
+     */
+    public static <T> List<T> interleave(List<List<T>> lists, int limit) {
+        LinkedHashSet<T> interleaved = new LinkedHashSet<>();
+        for (int rank = 0; interleaved.size() < limit; rank++) {
+            boolean found = false;
+            for (List<T> list : lists) {
+                if (rank < list.size() && interleaved.size() < limit) {
+                    interleaved.add(list.get(rank));
+                    found = true;
+                }
+            }
+            if (!found)
+                break;
+        }
+        return new ArrayList<>(interleaved);
+    }
+
+    /**
+     * Matches a query over the postings of every partition and scores the
+     * matching documents, as a barrel holding the whole index would.
+     *
+     * @param partitions the postings of each partition for the query
+     * @return the matching documents and their scores
+     */
+    public Matches merge(List<PartitionPostings> partitions) {
+        ParsedQuery query = partitions.get(0).query();
+        Map<String, PostingList> postings = new HashMap<>();
+        BitSet documents = new BitSet();
+        int docCount = 0;
+        for (PartitionPostings partition : partitions) {
+            postings.putAll(partition.postings());
+            docCount = Math.max(docCount, partition.docCount());
+            if (partition.documents() != null)
+                documents.or(partition.documents());
+        }
+        if (query.root() == null)
+            return new Matches(new int[0], new float[0]);
+
+        Postings[] none = new Postings[0];
+        int[] docIds = new QueryExecutor(term -> {
+            PostingList list = postings.get(term);
+            return list == null || list.size() == 0 ? none : new Postings[] { list };
+        }, documents).execute(query.root());
+
+        // Score the matching documents by the keywords outside of negations
+        double[] scores = new double[docIds.length];
+        for (String keyword : query.keywords()) {
+            PostingList list = postings.get(keyword);
+            if (list == null || list.size() == 0)
+                continue;
+            float weight = (float) BarrelProcessing.calcIDF(docCount, list.size());
+            int cursor = 0;
+            for (int i = 0; i < docIds.length; i++) {
+                cursor = list.advance(cursor, docIds[i]);
+                if (cursor < list.size() && list.docId(cursor) == docIds[i])
+                    scores[i] += list.score(cursor) * weight;
+            }
+        }
+        float[] floatScores = new float[docIds.length];
+        for (int i = 0; i < docIds.length; i++)
+            floatScores[i] = (float) scores[i];
+        return new Matches(docIds, floatScores);
+    }
+}
@@ -6,48 +6,9 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.StringTokenizer;
-
-import org.jsoup.nodes.Document;
 
 public class Crawling {
 
-    /**
-     * Extracts all the tokens from the document.
-     *
-     * @param doc the document to extract tokens from
-     * @return a list of tokens extracted from the document
-     */
-    public static List<String> getTokens(Document doc) {
-        // Tokenize the resulting document
-        StringTokenizer tokens = new StringTokenizer(doc.text());
-        List<String> tokenList = new ArrayList<>();
-
-        // Store all tokens in the list
-        while (tokens.hasMoreElements()) {
-            String token = tokens.nextToken().toLowerCase();
-            token = token.trim();
-            token = token.replaceAll("[\\[\\](){}?!,.:]", "");
-
-            // Remove single characters
-            if (token.length() <= 1)
-                continue;
-
-            // If it's a number, it should contain a comma or a dot
-            if (token.matches("\\d+")) {
-                if (token.contains(".") || token.contains(",")) {
-                    tokenList.add(token);
-                }
-            } else {
-                tokenList.add(token);
-            }
-        }
-
-        return tokenList;
-    }
-
     /**
      * Checks if the URL is valid and reachable.
      *
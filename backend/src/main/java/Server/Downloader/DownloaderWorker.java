@@ -1,6 +1,7 @@
 package Server.Downloader;
 
 // Package imports
+import Analysis.Analyzer;
 import Server.URLQueue.URLQueue;
 import Server.URLQueue.URLQueueInterface;
 import ReliableMulticast.ReliableMulticast;
@@ -59,6 +60,11 @@ public class DownloaderWorker implements Runnable {
      * The ReliableMulticast object for sending and receiving data.
      */
     private final ReliableMulticast reliableMulticast;
+    /**
+     * The Analyzer splitting the text of the visited pages into tokens. The
+     * tokens are only tokenized and folded, the barrels apply their own filters.
+     */
+    private final Analyzer analyzer = new Analyzer(false, false);
 
     /**
      * Constructs a DownloaderWorker object with the specified parameters.
@@ -123,7 +129,8 @@ public class DownloaderWorker implements Runnable {
             // Stop the timer and calculate the response time
             long responseTime = System.currentTimeMillis() - startTime;
 
-            List<String> tokenList = Crawling.getTokens(doc);
+            String text = doc.text();
+            List<String> tokenList = analyzer.analyze(text);
 
             // Find every link in the URL and print them
             Elements links = doc.select("a[href]");
@@ -148,7 +155,7 @@ public class DownloaderWorker implements Runnable {
             }
 
             // Create a CrawlData object
-            CrawlData crawlData = new CrawlData(url, doc.title(), doc.text(), tokenList, urlList);
+            CrawlData crawlData = new CrawlData(url, doc.title(), text, tokenList, urlList);
 
             // Send the crawling data via reliable multicast
             LogUtil.logInfo(LogUtil.ANSI_BLUE, DownloaderWorker.class,
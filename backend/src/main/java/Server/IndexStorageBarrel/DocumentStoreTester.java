@@ -0,0 +1,226 @@
+package Server.IndexStorageBarrel;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.StoredDocument;
+import Server.IndexStorageBarrel.Operations.BarrelDatabase;
+
+// General imports
+import java.sql.*;
+import java.util.List;
+import java.util.Random;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.Stream;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The DocumentStoreTester class compares the size and the read latency of the
+ * page texts stored in the websites table, as the barrels did before the
+ * document store, with the block-compressed document store.
+ * <p>
+ * The documents are the text files of a directory, such as /usr/share/doc, or
+ * synthetic pages with a Zipfian distribution of words. Result pages are read
+ * with a skewed popularity, so that the block cache sees the repeated reads of
+ * a real workload.
+ */
+public class DocumentStoreTester {
+    /**
+     * The name of the test database.
+     */
+    private static final String DB_NAME = "documents-tester";
+
+    /**
+     * The main method of the DocumentStoreTester class.
+     *
+     * @param args -dir (directory of text files), -docs (number of synthetic
+     *             documents) and -pages (number of result pages read), all
+     *             optional
+     * @throws SQLException if the test database cannot be written
+     * @throws IOException  if the documents or the stores cannot be read or
+     *                      written
+     */
+    public static void main(String[] args) throws SQLException, IOException {
+        String dir = null;
+        int docCount = 20000;
+        int pages = 5000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-dir" -> dir = args[++i];
+                case "-docs" -> docCount = Integer.parseInt(args[++i]);
+                case "-pages" -> pages = Integer.parseInt(args[++i]);
+                default -> {
+                    System.out.println("-dir <directory of text files> -docs <documents> -pages <result pages>");
+                    System.exit(1);
+                }
+            }
+        }
+        List<StoredDocument> documents = dir != null ? readDocuments(Path.of(dir), docCount)
+                : generateDocuments(docCount);
+        long rawBytes = 0;
+        for (StoredDocument document : documents)
+            rawBytes += document.url().length() + document.title().length()
+                    + document.body().getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("%d documents, %.1f MB of text%n%n", documents.size(), rawBytes / 1e6);
+
+        // The text in the websites table
+        BarrelDatabase database = TesterFixtures.createDatabase(DB_NAME);
+        Connection conn = database.getWriter();
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO websites(id, url, title, description) VALUES(?,?,?,?)")) {
+            for (StoredDocument document : documents) {
+                insert.setInt(1, document.docId());
+                insert.setString(2, document.url());
+                insert.setString(3, document.title());
+                insert.setString(4, document.body());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+        long tableBytes = Files.size(Path.of("data", DB_NAME + ".db"));
+
+        System.out.printf("%-34s %10s %8s%n", "Storage", "MB", "Ratio");
+        System.out.printf("%-34s %10.1f %8.2f%n", "websites table", tableBytes / 1e6, (double) tableBytes / rawBytes);
+        DocumentStore store = null;
+        for (int batch : new int[] { 1, 100 }) {
+            Path directory = Path.of("data", DB_NAME + "-batch" + batch);
+            TesterFixtures.deleteDirectory(directory);
+            if (store != null)
+                store.close();
+            store = new DocumentStore(directory, DocumentStore.DEFAULT_CACHE_BLOCKS);
+            for (int i = 0; i < documents.size(); i += batch)
+                store.append(documents.subList(i, Math.min(documents.size(), i + batch)));
+            System.out.printf("%-34s %10.1f %8.2f%n", "Document store, batches of " + batch,
+                    store.getFileSize() / 1e6, (double) store.getFileSize() / rawBytes);
+        }
+
+        // Read result pages of documents drawn with a Zipfian popularity
+        System.out.printf("%n%-34s %14s %10s%n", "Page of 10 results", "Microseconds", "Hit rate");
+        Random random = new Random(42);
+        int[][] pageIds = new int[pages][10];
+        List<Integer> popularity = new ArrayList<>();
+        for (StoredDocument document : documents)
+            popularity.add(document.docId());
+        Collections.shuffle(popularity, random);
+        for (int[] page : pageIds) {
+            for (int i = 0; i < page.length; i++) {
+                // The documents of a page are distinct
+                int docId;
+                do {
+                    docId = popularity.get((int) (popularity.size() * Math.pow(random.nextDouble(), 3)));
+                } while (contains(page, i, docId));
+                page[i] = docId;
+            }
+        }
+
+        String sql = "SELECT id, url, title, description FROM websites WHERE id IN (?,?,?,?,?,?,?,?,?,?)";
+        long bodyBytes = 0;
+        long startTime = System.nanoTime();
+        try (Connection reader = database.getReader(); PreparedStatement select = reader.prepareStatement(sql)) {
+            for (int[] page : pageIds) {
+                for (int i = 0; i < page.length; i++)
+                    select.setInt(i + 1, page[i]);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next())
+                        bodyBytes += rs.getString("description").length();
+                }
+            }
+        }
+        System.out.printf("%-34s %14.1f %10s%n", "websites table",
+                (System.nanoTime() - startTime) / 1e3 / pages, "-");
+
+        startTime = System.nanoTime();
+        for (int[] page : pageIds)
+            for (int docId : page)
+                bodyBytes -= store.get(docId).body().length();
+        System.out.printf("%-34s %14.1f %9.0f%%%n", "Document store",
+                (System.nanoTime() - startTime) / 1e3 / pages, store.getCacheHitRate() * 100);
+        if (bodyBytes != 0)
+            System.out.println("The stored texts differ from the table");
+
+        store.close();
+        database.close();
+    }
+
+    /**
+     * Checks whether a document is among the first documents of a page.
+     *
+     * @param page  the IDs of the documents of the page
+     * @param count the number of documents already drawn
+     * @param docId the ID of the document
+     * @return true if the document was already drawn
+     */
+    private static boolean contains(int[] page, int count, int docId) {
+        for (int i = 0; i < count; i++)
+            if (page[i] == docId)
+                return true;
+        return false;
+    }
+
+    /**
+     * Reads the text files of a directory as documents.
+     *
+     * @param directory the directory, searched recursively
+     * @param limit     the maximum number of documents
+     * @return the documents, with IDs from 1
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<StoredDocument> readDocuments(Path directory, int limit) throws IOException {
+        List<StoredDocument> documents = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                if (documents.size() == limit)
+                    break;
+                String body;
+                try {
+                    body = Files.readString(file);
+                } catch (IOException e) {
+                    continue; // Binary or compressed files are skipped
+                }
+                if (!body.isBlank())
+                    documents.add(new StoredDocument(documents.size() + 1, "https://" + file,
+                            file.getFileName().toString(), body));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Generates synthetic documents.
+     *
+     * @param count the number of documents
+     * @return the documents, with IDs from 1
+     */
+    private static List<StoredDocument> generateDocuments(int count) {
+        Random random = new Random(42);
+        double[] cumulative = new double[20000];
+        double total = 0;
+        for (int rank = 0; rank < cumulative.length; rank++)
+            cumulative[rank] = total += 1.0 / (rank + 1);
+        List<StoredDocument> documents = new ArrayList<>();
+        for (int docId = 1; docId <= count; docId++) {
+            StringBuilder body = new StringBuilder();
+            int length = 100 + random.nextInt(1500);
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                body.append("word").append(Integer.toString(rank < 0 ? -rank - 1 : rank, 36))
+                        .append(random.nextInt(15) == 0 ? ". " : " ");
+            }
+            documents.add(new StoredDocument(docId, "https://example.com/page/" + docId, "Page " + docId,
+                    body.toString()));
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,244 @@
+package Server.IndexStorageBarrel;
+
+// Package imports
+import Analysis.Analyzer;
+import ReliableMulticast.Objects.CrawlData;
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Index.SqliteIndexStorage;
+import Server.IndexStorageBarrel.Objects.DuplicateStats;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Operations.BarrelPopulate;
+import Server.IndexStorageBarrel.Operations.BarrelDatabase;
+import Server.IndexStorageBarrel.Operations.BarrelDeduplicator;
+
+// General imports
+import java.sql.*;
+import java.net.URI;
+import java.net.URL;
+import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.nio.file.Path;
+import java.nio.file.Files;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The DuplicateTester class measures what collapsing near-duplicate pages
+ * saves on a synthetic crawl shaped like a catalogue site, such as
+ * books.toscrape.com, where the same listing is reachable under several sort
+ * orders and tracking parameters.
+ * <p>
+ * The crawl is ingested twice through BarrelPopulate, with and without the
+ * BarrelDeduplicator, and the postings and the size of both databases are
+ * compared. It also checks that no page was collapsed into a page with other
+ * content, such as another product or another page of a listing.
+ */
+public class DuplicateTester {
+    /**
+     * The name prefix of the test databases.
+     */
+    private static final String DB_NAME = "duplicate-tester";
+    /**
+     * The words of the navigation, header and footer shared by every page.
+     */
+    private static final List<String> BOILERPLATE = List.of("home", "books", "catalogue", "category", "all",
+            "products", "travel", "mystery", "historical", "fiction", "sequential", "art", "classics", "philosophy",
+            "romance", "womens", "fiction", "fiction", "young", "adult", "science", "poetry", "music", "humor",
+            "warning", "this", "is", "a", "demo", "website", "for", "web", "scraping", "purposes", "prices", "and",
+            "ratings", "here", "were", "randomly", "assigned", "and", "have", "no", "real", "meaning", "basket",
+            "view", "login", "register", "copyright");
+
+    /**
+     * The main method of the DuplicateTester class.
+     *
+     * @param args -products (number of products), -perpage (products per listing
+     *             page) and -variants (duplicate URLs per listing page), all
+     *             optional
+     * @throws SQLException if a test database cannot be written
+     * @throws IOException  if a document store cannot be written
+     */
+    public static void main(String[] args) throws SQLException, IOException {
+        int productCount = 2000;
+        int perPage = 20;
+        int variants = 3;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-products" -> productCount = Integer.parseInt(args[++i]);
+                case "-perpage" -> perPage = Integer.parseInt(args[++i]);
+                case "-variants" -> variants = Integer.parseInt(args[++i]);
+                default -> {
+                    System.out.println("-products <products> -perpage <products per page> "
+                            + "-variants <duplicate URLs per listing page>");
+                    System.exit(1);
+                }
+            }
+        }
+        List<CrawlData> crawl = generateCrawl(productCount, perPage, variants);
+        int listingPages = (productCount + perPage - 1) / perPage;
+        System.out.printf("%d pages crawled, %d of them duplicate URLs of a listing page%n%n", crawl.size(),
+                listingPages * variants);
+
+        System.out.printf("%-22s %8s %10s %10s %12s %10s%n", "Ingestion", "Indexed", "Collapsed", "Postings",
+                "Saved (KB)", "DB (MB)");
+        for (boolean deduplicate : new boolean[] { false, true }) {
+            String dbName = DB_NAME + (deduplicate ? "-dedup" : "-plain");
+            TesterFixtures.deleteDirectory(Path.of("data", dbName + "-documents"));
+            BarrelDatabase database = TesterFixtures.createDatabase(dbName);
+            Connection conn = database.getWriter();
+            InvertedIndex index = new InvertedIndex();
+            DocumentStore documentStore = new DocumentStore(Path.of("data", dbName + "-documents"),
+                    DocumentStore.DEFAULT_CACHE_BLOCKS);
+            BarrelDeduplicator deduplicator = deduplicate ? new BarrelDeduplicator(conn) : null;
+            BarrelPopulate populate = new BarrelPopulate(conn, index, new SqliteIndexStorage(index), documentStore,
+                    false, new Analyzer(false, false), deduplicator, TermPartition.WHOLE,
+                    DocumentPartition.WHOLE);
+            for (int i = 0; i < crawl.size(); i += 100)
+                populate.insertCrawlBatch(crawl.subList(i, Math.min(crawl.size(), i + 100)));
+
+            long postings;
+            try (Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM website_keywords")) {
+                    postings = rs.next() ? rs.getLong(1) : 0;
+                }
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            DuplicateStats stats = deduplicator != null ? deduplicator.getStats() : new DuplicateStats(0, 0, 0, 0);
+            System.out.printf("%-22s %8d %10d %10d %12.1f %10.2f%n",
+                    deduplicate ? "Near-duplicates" : "Every page", crawl.size() - stats.duplicatePages(),
+                    stats.duplicatePages(), postings, stats.savedBytes() / 1024.0,
+                    Files.size(Path.of("data", dbName + ".db")) / 1e6);
+            if (deduplicate)
+                checkCanonicalPages(conn);
+
+            documentStore.close();
+            database.close();
+        }
+    }
+
+    /**
+     * Checks that every collapsed page has the same content as its canonical
+     * page, which is the case when both URLs only differ in the query string.
+     *
+     * @param conn the database connection
+     * @throws SQLException if the fingerprints cannot be read
+     */
+    private static void checkCanonicalPages(Connection conn) throws SQLException {
+        String sql = "SELECT w.url, c.url FROM website_fingerprints f JOIN websites w ON w.id = f.website_id "
+                + "JOIN websites c ON c.id = f.canonical_id";
+        int wrong = 0;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next())
+                if (!rs.getString(1).split("\\?")[0].equals(rs.getString(2).split("\\?")[0]))
+                    wrong++;
+        }
+        System.out.println(wrong == 0 ? "\nNo page was collapsed into a page with other content"
+                : "\n" + wrong + " pages were collapsed into a page with other content");
+    }
+
+    /**
+     * Generates the crawl of a catalogue: a page per product and paginated
+     * listings, each listing page also crawled under other sort orders and with
+     * tracking parameters.
+     *
+     * @param productCount the number of products
+     * @param perPage      the number of products per listing page
+     * @param variants     the number of duplicate URLs of each listing page
+     * @return the crawled pages
+     * @throws IOException if a URL is malformed
+     */
+    private static List<CrawlData> generateCrawl(int productCount, int perPage, int variants) throws IOException {
+        Random random = new Random(42);
+        double[] cumulative = new double[20000];
+        double total = 0;
+        for (int rank = 0; rank < cumulative.length; rank++)
+            cumulative[rank] = total += 1.0 / (rank + 1);
+
+        List<List<String>> products = new ArrayList<>();
+        for (int i = 0; i < productCount; i++) {
+            List<String> words = new ArrayList<>();
+            int length = 80 + random.nextInt(200);
+            for (int j = 0; j < length; j++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                words.add("word" + Integer.toString(rank < 0 ? -rank - 1 : rank, 36));
+            }
+            products.add(words);
+        }
+
+        List<CrawlData> crawl = new ArrayList<>();
+        String site = "https://books.example.com/catalogue/";
+        for (int i = 0; i < productCount; i++) {
+            List<String> tokens = new ArrayList<>(BOILERPLATE);
+            tokens.addAll(products.get(i));
+            tokens.addAll(List.of("in", "stock", "price", "£" + (10 + i % 50), "reviews", "0"));
+            crawl.add(page(site + "product_" + i + ".html", tokens));
+        }
+        String[] sortOrders = { "price", "rating", "title", "newest" };
+        for (int first = 0; first < productCount; first += perPage) {
+            int pageNumber = first / perPage + 1;
+            List<Integer> listed = new ArrayList<>();
+            for (int i = first; i < Math.min(productCount, first + perPage); i++)
+                listed.add(i);
+            String url = site + "page-" + pageNumber + ".html";
+            crawl.add(page(url, listing(products, listed, pageNumber)));
+            for (int v = 0; v < variants; v++) {
+                // Another sort order lists the same products, a tracking parameter the same page
+                List<Integer> order = new ArrayList<>(listed);
+                if (v % 2 == 0)
+                    Collections.shuffle(order, random);
+                String query = v % 2 == 0 ? "?sort=" + sortOrders[v / 2 % sortOrders.length]
+                        : "?utm_source=newsletter&utm_campaign=" + v;
+                List<String> tokens = listing(products, order, pageNumber);
+                tokens.add("session" + random.nextInt(1000)); // A token differing between visits
+                crawl.add(page(url + query, tokens));
+            }
+        }
+        Collections.shuffle(crawl, random);
+        return crawl;
+    }
+
+    /**
+     * Builds the tokens of a listing page, with the first words of each product
+     * listed.
+     *
+     * @param products   the words of every product
+     * @param listed     the products listed, in order
+     * @param pageNumber the number of the page
+     * @return the tokens of the page
+     */
+    private static List<String> listing(List<List<String>> products, List<Integer> listed, int pageNumber) {
+        List<String> tokens = new ArrayList<>(BOILERPLATE);
+        tokens.addAll(List.of("page", Integer.toString(pageNumber), "showing", "results"));
+        for (int product : listed) {
+            tokens.addAll(products.get(product).subList(0, 6));
+            tokens.addAll(List.of("£" + (10 + product % 50), "in", "stock", "add", "to", "basket"));
+        }
+        return tokens;
+    }
+
+    /**
+     * Builds a crawled page.
+     *
+     * @param url    the URL of the page
+     * @param tokens the tokens of the page
+     * @return the crawl data of the page
+     * @throws IOException if the URL is malformed
+     */
+    private static CrawlData page(String url, List<String> tokens) throws IOException {
+        List<URL> links = new ArrayList<>();
+        links.add(URI.create("https://books.example.com/index.html").toURL());
+        Map<String, Integer> seen = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (String token : tokens)
+            if (seen.merge(token, 1, Integer::sum) == 1)
+                text.append(token).append(' ');
+        return new CrawlData(URI.create(url).toURL(), "Books to Scrape", text.toString(), tokens, links);
+    }
+}
@@ -0,0 +1,446 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Arrays;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The CompressedPostings class encodes the postings of a term in blocks and
+ * reads them in place from the memory-mapped file of a DiskSegment.
+ * <p>
+ * Postings are grouped in blocks of BLOCK_SIZE. Inside a block, document IDs
+ * are stored as variable-byte deltas from the previous ID, followed by the
+ * normalized frequencies quantized to half-precision floats. In segments
+ * written with positions, the frequencies are followed by the positions of
+ * each posting: their number and their variable-byte deltas, with a count of 0
+ * for documents indexed without positions. Lists with more
+ * than one block start with a skip table holding the last document ID and the
+ * offset of every block, so that advancing to a target binary searches the
+ * skip table and decodes a single block.
+ * <p>
+ * An instance decodes one block at a time into small reusable arrays: a
+ * sequential scan decodes every block once, and frequencies are only decoded
+ * for the blocks where they are read. Positions are only located for the
+ * blocks where they are read, which is the candidate documents of a phrase
+ * query. Since it keeps the decoded block, an
+ * instance must only be used by one query at a time.
+ */
+public class CompressedPostings implements Postings {
+    /**
+     * The number of postings per block.
+     */
+    public static final int BLOCK_SIZE = 128;
+    /**
+     * The mapping of the segment file.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The offset of the skip table, if the list has more than one block.
+     */
+    private final int skipOffset;
+    /**
+     * The offset of the first block.
+     */
+    private final int blocksOffset;
+    /**
+     * The number of postings.
+     */
+    private final int size;
+    /**
+     * The number of blocks.
+     */
+    private final int blockCount;
+    /**
+     * The highest quantized frequency of the list, stored in the dictionary.
+     */
+    private final float maxScore;
+    /**
+     * Whether the blocks hold the positions of the postings.
+     */
+    private final boolean positional;
+    /**
+     * The document IDs of the decoded block.
+     */
+    private final int[] docIds = new int[BLOCK_SIZE];
+    /**
+     * The frequencies of the decoded block, once decoded.
+     */
+    private final float[] scores = new float[BLOCK_SIZE];
+    /**
+     * The index of the decoded block, or -1 if none is decoded.
+     */
+    private int block = -1;
+    /**
+     * The offset of the frequencies of the decoded block.
+     */
+    private int scoresOffset;
+    /**
+     * Whether the frequencies of the decoded block are decoded.
+     */
+    private boolean scoresDecoded;
+    /**
+     * The offset of the positions of each posting of the decoded block, once
+     * located.
+     */
+    private int[] positionOffsets;
+    /**
+     * Whether the positions of the decoded block are located.
+     */
+    private boolean positionsLocated;
+    /**
+     * The offset of the next byte read by readVByte.
+     */
+    private int readOffset;
+
+    /**
+     * Constructs a CompressedPostings over a region of a segment file.
+     *
+     * @param buffer     the mapping of the segment file
+     * @param offset     the offset of the encoded list
+     * @param size       the number of postings
+     * @param maxScore   the highest quantized frequency
+     * @param positional whether the blocks hold the positions of the postings
+     */
+    public CompressedPostings(ByteBuffer buffer, int offset, int size, float maxScore, boolean positional) {
+        this.buffer = buffer;
+        this.size = size;
+        this.maxScore = maxScore;
+        this.positional = positional;
+        this.blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.skipOffset = offset;
+        this.blocksOffset = blockCount > 1 ? offset + 8 * blockCount : offset;
+    }
+
+    /**
+     * Quantizes a normalized frequency to the precision it is stored with.
+     *
+     * @param score the normalized frequency
+     * @return the quantized frequency
+     */
+    public static float quantize(float score) {
+        return Float.float16ToFloat(Float.floatToFloat16(score));
+    }
+
+    /**
+     * Encodes sorted postings.
+     *
+     * @param out       the stream receiving the encoded list
+     * @param docIds    the sorted document IDs
+     * @param scores    the normalized frequencies, parallel to the IDs
+     * @param positions the positions of the term in each document, parallel to
+     *                  the IDs with null for documents indexed without positions,
+     *                  or null to write a list without positions
+     * @param count     the number of postings
+     * @return the number of bytes written
+     * @throws IOException if the stream cannot be written
+     */
+    public static int encode(DataOutputStream out, int[] docIds, float[] scores, int[][] positions, int count)
+            throws IOException {
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long capacity = count * 7L;
+        if (positions != null)
+            for (int i = 0; i < count; i++)
+                capacity += 5 + (positions[i] == null ? 0 : 5L * positions[i].length);
+        byte[] encoded = new byte[(int) Math.min(capacity, Integer.MAX_VALUE - 8)];
+        int[] blockOffsets = new int[blocks];
+        int length = 0;
+        int previous = 0;
+        for (int b = 0; b < blocks; b++) {
+            blockOffsets[b] = length;
+            int end = Math.min(count, (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                length = writeVByte(encoded, length, docIds[i] - previous);
+                previous = docIds[i];
+            }
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                short half = Float.floatToFloat16(scores[i]);
+                encoded[length++] = (byte) (half >> 8);
+                encoded[length++] = (byte) half;
+            }
+            if (positions != null)
+                for (int i = b * BLOCK_SIZE; i < end; i++)
+                    length = writePositions(encoded, length, positions[i]);
+        }
+
+        int written = 0;
+        if (blocks > 1) {
+            for (int b = 0; b < blocks; b++) {
+                out.writeInt(docIds[Math.min(count, (b + 1) * BLOCK_SIZE) - 1]);
+                out.writeInt(blockOffsets[b]);
+            }
+            written = 8 * blocks;
+        }
+        out.write(encoded, 0, length);
+        return written + length;
+    }
+
+    /**
+     * Writes the positions of a posting: their number followed by their
+     * variable-byte deltas.
+     *
+     * @param bytes     the array receiving the bytes
+     * @param position  the position of the first byte
+     * @param positions the sorted positions, or null to write a count of 0
+     * @return the position after the last byte
+     */
+    private static int writePositions(byte[] bytes, int position, int[] positions) {
+        if (positions == null)
+            return writeVByte(bytes, position, 0);
+        position = writeVByte(bytes, position, positions.length);
+        int previous = 0;
+        for (int value : positions) {
+            position = writeVByte(bytes, position, value - previous);
+            previous = value;
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the sorted positions of a term in a document as variable-byte
+     * deltas, the form they are stored with in the database and the logs.
+     *
+     * @param positions the sorted positions
+     * @return the encoded positions
+     */
+    public static byte[] encodePositions(int[] positions) {
+        byte[] bytes = new byte[5 * positions.length];
+        int length = 0;
+        int previous = 0;
+        for (int value : positions) {
+            length = writeVByte(bytes, length, value - previous);
+            previous = value;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Decodes positions encoded by encodePositions.
+     *
+     * @param bytes the encoded positions
+     * @return the sorted positions
+     */
+    public static int[] decodePositions(byte[] bytes) {
+        int[] positions = new int[bytes.length];
+        int count = 0;
+        int value = 0;
+        int delta = 0;
+        int shift = 0;
+        for (byte current : bytes) {
+            delta |= (current & 0x7F) << shift;
+            shift += 7;
+            if (current >= 0) {
+                value += delta;
+                positions[count++] = value;
+                delta = 0;
+                shift = 0;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Writes a non-negative integer in variable-byte form, seven bits per byte
+     * with the high bit set on every byte but the last.
+     *
+     * @param bytes    the array receiving the bytes
+     * @param position the position of the first byte
+     * @param value    the value to write
+     * @return the position after the last byte
+     */
+    private static int writeVByte(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Returns the last document ID of a block, from the skip table.
+     *
+     * @param b the index of the block
+     * @return the last document ID of the block
+     */
+    private int lastDocId(int b) {
+        if (blockCount == 1) {
+            decodeBlock(0);
+            return docIds[size - 1];
+        }
+        return buffer.getInt(skipOffset + 8 * b);
+    }
+
+    /**
+     * Decodes the document IDs of a block, unless it is already decoded.
+     *
+     * @param b the index of the block
+     */
+    private void decodeBlock(int b) {
+        if (b == block)
+            return;
+        int position = blocksOffset + (blockCount > 1 ? buffer.getInt(skipOffset + 8 * b + 4) : 0);
+        int docId = b == 0 ? 0 : buffer.getInt(skipOffset + 8 * (b - 1));
+        int count = Math.min(BLOCK_SIZE, size - b * BLOCK_SIZE);
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = buffer.get(position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            } while (current < 0);
+            docId += value;
+            docIds[i] = docId;
+        }
+        block = b;
+        scoresOffset = position;
+        scoresDecoded = false;
+        positionsLocated = false;
+    }
+
+    /**
+     * Reads a variable-byte integer at the read offset, and moves the offset
+     * past it.
+     *
+     * @return the value read
+     */
+    private int readVByte() {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(readOffset++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    /**
+     * Locates the positions of every posting of the decoded block with a single
+     * pass over them, unless they are already located.
+     */
+    private void locatePositions() {
+        if (positionsLocated)
+            return;
+        if (positionOffsets == null)
+            positionOffsets = new int[BLOCK_SIZE];
+        int count = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+        readOffset = scoresOffset + 2 * count;
+        for (int i = 0; i < count; i++) {
+            positionOffsets[i] = readOffset;
+            // Skip the deltas, whose last byte is the only one without the high bit
+            for (int skipped = 0, deltas = readVByte(); skipped < deltas; readOffset++)
+                if (buffer.get(readOffset) >= 0)
+                    skipped++;
+        }
+        positionsLocated = true;
+    }
+
+    /**
+     * Decodes the frequencies of the decoded block, unless they are already
+     * decoded.
+     */
+    private void decodeScores() {
+        if (scoresDecoded)
+            return;
+        int count = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+        for (int i = 0; i < count; i++)
+            scores[i] = Float.float16ToFloat(buffer.getShort(scoresOffset + 2 * i));
+        scoresDecoded = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int docId(int index) {
+        decodeBlock(index / BLOCK_SIZE);
+        return docIds[index % BLOCK_SIZE];
+    }
+
+    @Override
+    public float score(int index) {
+        decodeBlock(index / BLOCK_SIZE);
+        decodeScores();
+        return scores[index % BLOCK_SIZE];
+    }
+
+    @Override
+    public float maxScore() {
+        return maxScore;
+    }
+
+    @Override
+    public int[] positions(int index) {
+        if (!positional)
+            return null;
+        decodeBlock(index / BLOCK_SIZE);
+        locatePositions();
+        readOffset = positionOffsets[index % BLOCK_SIZE];
+        int count = readVByte();
+        if (count == 0)
+            return null;
+        int[] positions = new int[count];
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value += readVByte();
+            positions[i] = value;
+        }
+        return positions;
+    }
+
+    /**
+     * Finds the first posting at or after the given position whose document ID
+     * is greater than or equal to the target. The skip table locates the block
+     * holding the target, and only that block is decoded.
+     *
+     * @param from   the position to start from
+     * @param target the target document ID
+     * @return the position of the posting, or the size of the list if there is
+     *         none
+     */
+    @Override
+    public int advance(int from, int target) {
+        if (from >= size || docId(from) >= target)
+            return from;
+
+        // Find the first block whose last document ID reaches the target
+        int b = from / BLOCK_SIZE;
+        if (lastDocId(b) < target) {
+            int low = b + 1;
+            int high = blockCount - 1;
+            if (low > high || lastDocId(high) < target)
+                return size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (lastDocId(middle) < target)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            b = low;
+            from = b * BLOCK_SIZE;
+        }
+
+        // Binary search the decoded block
+        decodeBlock(b);
+        int low = from % BLOCK_SIZE;
+        int high = Math.min(BLOCK_SIZE, size - b * BLOCK_SIZE) - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (docIds[middle] < target)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return b * BLOCK_SIZE + low;
+    }
+}
@@ -0,0 +1,451 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.*;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The DiskSegment class is an immutable segment stored in its own file.
+ * Segments are written once, by flushing the memory segment or by merging
+ * smaller segments, and are never modified afterwards.
+ * <p>
+ * The file is memory-mapped and read in place: term lookups binary search the
+ * mapped dictionary and queries decode the mapped postings, so the segment
+ * takes no heap beyond a few objects, opening it costs no deserialization, and
+ * its pages stay in the OS page cache across barrel restarts. The mapping is
+ * released by the garbage collector once the segment is no longer referenced,
+ * which is why a segment file can be deleted while it is still mapped.
+ * <p>
+ * A segment file holds, in order: a header with the magic number, the format
+ * version, the number of documents and whether the postings have positions;
+ * the stored fields, a sorted
+ * (document ID, document length) pair per document; the postings of each term,
+ * block-compressed as described in CompressedPostings; the term
+ * dictionary, a (term, posting count, maximum frequency, postings offset) entry
+ * per term sorted by the UTF-8 bytes of the term; a table with the offset of
+ * every dictionary entry, so that the dictionary can be binary searched; and a
+ * footer with the offset of that table, the number of postings, the number of
+ * terms and the magic number again, so that truncated files are detected.
+ */
+public class DiskSegment implements Segment {
+    /**
+     * The magic number at the start and end of a segment file.
+     */
+    private static final int MAGIC = 0x53454731;
+    /**
+     * The version of the segment file format.
+     */
+    private static final int VERSION = 4;
+    /**
+     * The size of the segment header, in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * The size of the segment footer, in bytes.
+     */
+    private static final int FOOTER_SIZE = 24;
+    /**
+     * The maximum size of a segment file, the largest region a single buffer
+     * can map.
+     */
+    public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    /**
+     * The file of the segment.
+     */
+    private final Path file;
+    /**
+     * The read-only mapping of the file, only read with absolute methods so that
+     * it can be shared by concurrent queries.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The number of documents of the segment.
+     */
+    private final int docCount;
+    /**
+     * The number of terms of the segment.
+     */
+    private final int termCount;
+    /**
+     * The offset of the table of dictionary entry offsets.
+     */
+    private final int termTableOffset;
+    /**
+     * The number of postings of the segment.
+     */
+    private final long postingCount;
+    /**
+     * Whether the postings of the segment hold positions.
+     */
+    private final boolean positional;
+
+    /**
+     * Constructs a DiskSegment over the mapping of its file.
+     *
+     * @param file   the file of the segment
+     * @param buffer the mapping of the file
+     * @throws IOException if the file is not a valid segment
+     */
+    private DiskSegment(Path file, ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE + FOOTER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(buffer.capacity() - 4) != MAGIC)
+            throw new IOException("Invalid segment file " + file);
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported segment version " + buffer.getInt(4) + " in " + file);
+
+        int footer = buffer.capacity() - FOOTER_SIZE;
+        this.file = file;
+        this.buffer = buffer;
+        this.docCount = buffer.getInt(8);
+        this.positional = buffer.getInt(12) != 0;
+        this.termTableOffset = (int) buffer.getLong(footer);
+        this.postingCount = buffer.getLong(footer + 8);
+        this.termCount = buffer.getInt(footer + 16);
+    }
+
+    /**
+     * Opens a segment file by mapping it into memory.
+     *
+     * @param file the file of the segment
+     * @return the opened segment
+     * @throws IOException if the file cannot be mapped or is not a valid segment
+     */
+    public static DiskSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_FILE_SIZE)
+                throw new IOException("Segment file " + file + " is too large to map");
+            return new DiskSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the offset of the dictionary entry of the term at the given rank.
+     *
+     * @param rank the rank of the term in the dictionary
+     * @return the offset of its dictionary entry
+     */
+    private int entryOffset(int rank) {
+        return (int) buffer.getLong(termTableOffset + 8 * rank);
+    }
+
+    /**
+     * Compares the term of a dictionary entry with the given UTF-8 bytes, in
+     * unsigned byte order, without decoding the term.
+     *
+     * @param entry     the offset of the dictionary entry
+     * @param termBytes the UTF-8 bytes of the searched term
+     * @return a negative number, zero or a positive number if the entry term is
+     *         before, equal to or after the searched term
+     */
+    private int compareTerm(int entry, byte[] termBytes) {
+        int length = buffer.getInt(entry);
+        int common = Math.min(length, termBytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = Byte.toUnsignedInt(buffer.get(entry + 4 + i)) - Byte.toUnsignedInt(termBytes[i]);
+            if (difference != 0)
+                return difference;
+        }
+        return length - termBytes.length;
+    }
+
+    /**
+     * Returns the postings of the dictionary entry at the given offset.
+     *
+     * @param entry the offset of the dictionary entry
+     * @return the compressed postings of the term
+     */
+    private Postings postingsAt(int entry) {
+        int data = entry + 4 + buffer.getInt(entry);
+        int count = buffer.getInt(data);
+        float maxScore = buffer.getFloat(data + 4);
+        int offset = (int) buffer.getLong(data + 8);
+        return new CompressedPostings(buffer, offset, count, maxScore, positional);
+    }
+
+    /**
+     * Writes the union of the given segments to a new segment file.
+     * The file is written under a temporary name, synced and then renamed, so
+     * that a crash never leaves a partial segment behind.
+     * If a document appears in several segments, its stored length is taken
+     * from the last one. The postings are written with positions if any input
+     * has them.
+     *
+     * @param file   the file of the new segment
+     * @param inputs the segments to write, from the oldest to the newest
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, List<? extends Segment> inputs) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        // Stored fields of the union of the documents
+        TreeMap<Integer, Integer> docLengths = new TreeMap<>();
+        Set<String> termSet = new HashSet<>();
+        boolean positional = false;
+        for (Segment input : inputs) {
+            positional |= input.hasPositions();
+            for (int docId : input.docIds())
+                docLengths.put(docId, input.docLength(docId));
+            termSet.addAll(input.terms());
+        }
+        // The dictionary is ordered like the binary search compares the mapped terms
+        List<byte[]> allTerms = new ArrayList<>();
+        for (String term : termSet)
+            allTerms.add(term.getBytes(StandardCharsets.UTF_8));
+        allTerms.sort(Arrays::compareUnsigned);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docLengths.size());
+            out.writeInt(positional ? 1 : 0);
+            for (Map.Entry<Integer, Integer> entry : docLengths.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+
+            // Postings of each term, merged across the inputs
+            long position = HEADER_SIZE + 8L * docLengths.size();
+            long postingCount = 0;
+            int[] counts = new int[allTerms.size()];
+            float[] maxScores = new float[allTerms.size()];
+            long[] offsets = new long[allTerms.size()];
+            int termIndex = 0;
+            int[] mergedDocIds = new int[16];
+            float[] mergedScores = new float[16];
+            int[][] mergedPositions = positional ? new int[16][] : null;
+            for (byte[] termBytes : allTerms) {
+                String term = new String(termBytes, StandardCharsets.UTF_8);
+                List<Postings> lists = new ArrayList<>();
+                int total = 0;
+                for (Segment input : inputs) {
+                    Postings list = input.postings(term);
+                    if (list != null && list.size() > 0) {
+                        lists.add(list);
+                        total += list.size();
+                    }
+                }
+                if (total > mergedDocIds.length) {
+                    mergedDocIds = new int[Math.max(total, mergedDocIds.length * 2)];
+                    mergedScores = new float[mergedDocIds.length];
+                    mergedPositions = positional ? new int[mergedDocIds.length][] : null;
+                }
+                int count = mergePostings(lists, mergedDocIds, mergedScores, mergedPositions);
+                float maxScore = 0;
+                for (int i = 0; i < count; i++)
+                    maxScore = Math.max(maxScore, CompressedPostings.quantize(mergedScores[i]));
+
+                maxScores[termIndex] = maxScore;
+                counts[termIndex] = count;
+                offsets[termIndex++] = position;
+                position += CompressedPostings.encode(out, mergedDocIds, mergedScores, mergedPositions, count);
+                postingCount += count;
+            }
+
+            // Term dictionary, table of entry offsets and footer
+            long[] entryOffsets = new long[allTerms.size()];
+            termIndex = 0;
+            for (byte[] termBytes : allTerms) {
+                entryOffsets[termIndex] = position;
+                out.writeInt(termBytes.length);
+                out.write(termBytes);
+                out.writeInt(counts[termIndex]);
+                out.writeFloat(maxScores[termIndex]);
+                out.writeLong(offsets[termIndex++]);
+                position += 4 + termBytes.length + 16;
+            }
+            long termTableOffset = position;
+            for (long entryOffset : entryOffsets)
+                out.writeLong(entryOffset);
+            position += 8L * entryOffsets.length + FOOTER_SIZE;
+            if (position > MAX_FILE_SIZE)
+                throw new IOException("Segment file " + file + " would exceed " + MAX_FILE_SIZE + " bytes");
+            out.writeLong(termTableOffset);
+            out.writeLong(postingCount);
+            out.writeInt(allTerms.size());
+            out.writeInt(MAGIC);
+        }
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Merges posting lists in document ID order. A document present in several
+     * lists keeps the posting of the first one.
+     *
+     * @param lists     the posting lists to merge, from the oldest to the newest
+     * @param docIds    the array receiving the merged document IDs
+     * @param scores    the array receiving the merged normalized frequencies
+     * @param positions the array receiving the merged positions, or null to
+     *                  leave them out
+     * @return the number of merged postings
+     */
+    private static int mergePostings(List<Postings> lists, int[] docIds, float[] scores, int[][] positions) {
+        int count = 0;
+        int[] cursors = new int[lists.size()];
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < lists.size(); i++)
+                if (cursors[i] < lists.get(i).size()
+                        && (next < 0 || lists.get(i).docId(cursors[i]) < lists.get(next).docId(cursors[next])))
+                    next = i;
+            if (next < 0)
+                return count;
+
+            int docId = lists.get(next).docId(cursors[next]);
+            docIds[count] = docId;
+            if (positions != null)
+                positions[count] = lists.get(next).positions(cursors[next]);
+            scores[count++] = lists.get(next).score(cursors[next]);
+            for (int i = 0; i < lists.size(); i++)
+                if (cursors[i] < lists.get(i).size() && lists.get(i).docId(cursors[i]) == docId)
+                    cursors[i]++;
+        }
+    }
+
+    /**
+     * Deletes the file of the segment, once it has been merged into another one.
+     * The mapping stays readable until the segment is garbage collected.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Looks up a term by binary searching the mapped dictionary. Each lookup
+     * returns a new decoder, owned by the calling query.
+     *
+     * @param term the term
+     * @return the compressed postings of the term, or null if the segment does not
+     *         hold it
+     */
+    @Override
+    public Postings postings(String term) {
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = entryOffset(middle);
+            int comparison = compareTerm(entry, termBytes);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return postingsAt(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the terms of the dictionary, for merges and syncs.
+     *
+     * @return the terms, in dictionary order
+     */
+    @Override
+    public List<String> terms() {
+        List<String> terms = new ArrayList<>(termCount);
+        for (int rank = 0; rank < termCount; rank++) {
+            int entry = entryOffset(rank);
+            byte[] termBytes = new byte[buffer.getInt(entry)];
+            buffer.get(entry + 4, termBytes);
+            terms.add(new String(termBytes, StandardCharsets.UTF_8));
+        }
+        return terms;
+    }
+
+    /**
+     * Reads the posting counts of the dictionary, for the term suggestions.
+     *
+     * @return the document frequency of each term
+     */
+    @Override
+    public Map<String, Integer> docFrequencies() {
+        Map<String, Integer> docFrequencies = new HashMap<>(termCount * 2);
+        for (int rank = 0; rank < termCount; rank++) {
+            int entry = entryOffset(rank);
+            int length = buffer.getInt(entry);
+            byte[] termBytes = new byte[length];
+            buffer.get(entry + 4, termBytes);
+            docFrequencies.put(new String(termBytes, StandardCharsets.UTF_8), buffer.getInt(entry + 4 + length));
+        }
+        return docFrequencies;
+    }
+
+    @Override
+    public int[] docIds() {
+        int[] docIds = new int[docCount];
+        for (int i = 0; i < docCount; i++)
+            docIds[i] = buffer.getInt(HEADER_SIZE + 8 * i);
+        return docIds;
+    }
+
+    /**
+     * Binary searches the mapped stored fields for the length of a document.
+     *
+     * @param docId the ID of the document
+     * @return the number of tokens of the document, or 0 if the segment does not
+     *         hold it
+     */
+    @Override
+    public int docLength(int docId) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = buffer.getInt(HEADER_SIZE + 8 * middle);
+            if (middleId < docId)
+                low = middle + 1;
+            else if (middleId > docId)
+                high = middle - 1;
+            else
+                return buffer.getInt(HEADER_SIZE + 8 * middle + 4);
+        }
+        return 0;
+    }
+
+    @Override
+    public long postingCount() {
+        return postingCount;
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positional;
+    }
+
+    /**
+     * Returns the size of the segment file.
+     *
+     * @return the size of the file, in bytes
+     */
+    public long fileSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns the file of the segment.
+     *
+     * @return the file of the segment
+     */
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,716 @@
+package Server.IndexStorageBarrel.Index;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Exception imports
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+/**
+ * The DocumentStore class keeps the URL, the title and the text of the indexed
+ * websites in a block-compressed file, so that the database only holds the
+ * relational data and the text of the pages stays out of its page cache.
+ * <p>
+ * Documents are appended to the data file in blocks of about
+ * {@link #BLOCK_SIZE} bytes, each compressed with Deflate. Small blocks
+ * compress poorly on their own, so once {@link #DICTIONARY_SAMPLE} bytes of
+ * documents are stored, a dictionary of their most frequent words is trained
+ * and every later block is compressed against it. A block starts with a header
+ * holding its compressed and uncompressed lengths, the number of documents, a
+ * CRC32 of the compressed bytes and whether it uses the dictionary, followed by
+ * the IDs of its documents in the clear and the compressed records.
+ * <p>
+ * The offset of the block of every document is kept in memory, rebuilt on open
+ * by reading the block headers only. A document stored again, such as a
+ * re-crawled page, is appended to a new block and the old copy becomes stale;
+ * the file is compacted on open once most of its copies are stale. A block cut
+ * short by a crash is truncated on open, losing the documents of the last
+ * append, whose websites are then described by their stored summary.
+ * <p>
+ * Reads decompress a whole block, and the most recently read blocks are kept
+ * in a small LRU cache, so the results of a page, often stored together, cost
+ * a single decompression.
+ */
+public class DocumentStore implements AutoCloseable {
+    /**
+     * The number of uncompressed bytes after which a block is closed.
+     */
+    public static final int BLOCK_SIZE = 16 * 1024;
+    /**
+     * The default number of decompressed blocks kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_BLOCKS = 256;
+    /**
+     * The maximum size of the dictionary, the window of Deflate.
+     */
+    public static final int DICTIONARY_SIZE = 32 * 1024;
+    /**
+     * The number of uncompressed bytes of documents sampled to train the
+     * dictionary.
+     */
+    public static final int DICTIONARY_SAMPLE = 1024 * 1024;
+    /**
+     * The magic number at the start of the data file.
+     */
+    private static final int MAGIC = 0x444F4331;
+    /**
+     * The version of the data file format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The size of the header of the data file, in bytes.
+     */
+    private static final int FILE_HEADER_SIZE = 8;
+    /**
+     * The size of the header of a block, in bytes.
+     */
+    private static final int BLOCK_HEADER_SIZE = 17;
+    /**
+     * The name of the data file.
+     */
+    private static final String DATA_FILE = "documents.dat";
+    /**
+     * The name of the dictionary file.
+     */
+    private static final String DICTIONARY_FILE = "documents.dict";
+
+    /**
+     * A decompressed block.
+     *
+     * @param docIds the IDs of the documents of the block, in order
+     * @param starts the offset of the record of each document
+     * @param data   the uncompressed records
+     */
+    private record Block(int[] docIds, int[] starts, byte[] data) {
+        /**
+         * Decodes the document with the given ID.
+         *
+         * @param docId the ID of the document
+         * @return the document, or null if it is not in the block
+         */
+        StoredDocument document(int docId) {
+            // The last copy of a document in a block is the current one
+            for (int i = docIds.length - 1; i >= 0; i--) {
+                if (docIds[i] != docId)
+                    continue;
+                ByteBuffer record = ByteBuffer.wrap(data, starts[i], data.length - starts[i]);
+                return new StoredDocument(docId, readString(record), readString(record), readString(record));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The directory holding the data file and the dictionary.
+     */
+    private final Path directory;
+    /**
+     * The decompressed blocks most recently read, by offset, in access order.
+     */
+    private final LinkedHashMap<Long, Block> cache;
+    /**
+     * The compressor of the blocks, only used by appends.
+     */
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    /**
+     * The data file.
+     */
+    private FileChannel channel;
+    /**
+     * The size of the data file, where the next block is written.
+     */
+    private long fileSize;
+    /**
+     * The offset of the block of each document, by ID, or 0 if the document is
+     * not stored.
+     */
+    private long[] offsets = new long[1024];
+    /**
+     * The number of stored documents.
+     */
+    private int documentCount;
+    /**
+     * The number of stale copies of documents in the data file.
+     */
+    private int staleCount;
+    /**
+     * The number of blocks of the data file.
+     */
+    private int blockCount;
+    /**
+     * The trained dictionary, or null before it is trained.
+     */
+    private byte[] dictionary;
+    /**
+     * The documents collected to train the dictionary, or null once it is
+     * trained.
+     */
+    private ByteArrayOutputStream sample;
+    /**
+     * The number of reads served by the cache.
+     */
+    private long cacheHits;
+    /**
+     * The number of reads that decompressed a block.
+     */
+    private long cacheMisses;
+
+    /**
+     * Opens the document store in the given directory, creating it if needed.
+     *
+     * @param directory   the directory of the store
+     * @param cacheBlocks the number of decompressed blocks kept in the cache
+     * @throws IOException if the store cannot be opened
+     */
+    public DocumentStore(Path directory, int cacheBlocks) throws IOException {
+        this.directory = directory;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(DATA_FILE + ".tmp"));
+        Path dictionaryFile = directory.resolve(DICTIONARY_FILE);
+        if (Files.exists(dictionaryFile))
+            dictionary = Files.readAllBytes(dictionaryFile);
+        else
+            sample = new ByteArrayOutputStream();
+        channel = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0)
+            writeFileHeader();
+        scan();
+        if (staleCount > documentCount)
+            compact();
+
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, DocumentStore.class,
+                "Opened document store with " + documentCount + " documents in " + blockCount + " blocks ("
+                        + fileSize / 1024 + " KB) in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Stores documents, replacing the stored copies of the same IDs, and syncs
+     * the data file.
+     *
+     * @param documents the documents
+     * @throws IOException if the documents cannot be written
+     */
+    public synchronized void append(List<StoredDocument> documents) throws IOException {
+        if (documents.isEmpty())
+            return;
+        writeDocuments(documents);
+        channel.force(false);
+    }
+
+    /**
+     * Reads a document.
+     *
+     * @param docId the ID of the document
+     * @return the document, or null if it is not stored
+     * @throws IOException if its block cannot be read
+     */
+    public StoredDocument get(int docId) throws IOException {
+        long offset;
+        FileChannel file;
+        synchronized (this) {
+            offset = docId >= 0 && docId < offsets.length ? offsets[docId] : 0;
+            file = channel;
+        }
+        if (offset == 0)
+            return null;
+
+        Block block;
+        synchronized (cache) {
+            block = cache.get(offset);
+            if (block != null)
+                cacheHits++;
+            else
+                cacheMisses++;
+        }
+        if (block == null) {
+            block = readBlock(file, offset);
+            synchronized (cache) {
+                cache.put(offset, block);
+            }
+        }
+        return block.document(docId);
+    }
+
+    /**
+     * Returns the documents in an ID range, to be sent to another barrel during
+     * a sync. The blocks are read without going through the cache.
+     *
+     * @param startId the ID after which documents are collected
+     * @param endId   the last ID collected
+     * @return the documents, sorted by ID
+     * @throws IOException if a block cannot be read
+     */
+    public List<StoredDocument> export(int startId, int endId) throws IOException {
+        // Only the offsets of the range are copied, since a sync exports the store in many chunks
+        int from = Math.max(0, startId + 1);
+        long[] snapshot;
+        FileChannel file;
+        synchronized (this) {
+            int to = (int) Math.min(offsets.length, (long) endId + 1);
+            snapshot = from < to ? Arrays.copyOfRange(offsets, from, to) : new long[0];
+            file = channel;
+        }
+        List<StoredDocument> documents = new ArrayList<>();
+        Block block = null;
+        long blockOffset = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            int docId = from + i;
+            if (snapshot[i] == 0)
+                continue;
+            if (snapshot[i] != blockOffset) {
+                blockOffset = snapshot[i];
+                block = readBlock(file, blockOffset);
+            }
+            documents.add(block.document(docId));
+        }
+        return documents;
+    }
+
+    /**
+     * Removes every document, keeping the dictionary. Used when the database
+     * is rebuilt and the IDs of the websites start over.
+     *
+     * @throws IOException if the data file cannot be truncated
+     */
+    public synchronized void clear() throws IOException {
+        channel.truncate(FILE_HEADER_SIZE);
+        channel.force(true);
+        fileSize = FILE_HEADER_SIZE;
+        offsets = new long[1024];
+        documentCount = 0;
+        staleCount = 0;
+        blockCount = 0;
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Encodes documents into blocks and appends them to the data file.
+     *
+     * @param documents the documents
+     * @throws IOException if a block cannot be written
+     */
+    private void writeDocuments(List<StoredDocument> documents) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+        List<Integer> docIds = new ArrayList<>();
+        for (StoredDocument document : documents) {
+            writeString(records, document.url());
+            writeString(records, document.title());
+            writeString(records, document.body());
+            docIds.add(document.docId());
+            if (records.size() >= BLOCK_SIZE) {
+                writeBlock(docIds, records.toByteArray());
+                records.reset();
+                docIds.clear();
+            }
+        }
+        if (!docIds.isEmpty())
+            writeBlock(docIds, records.toByteArray());
+    }
+
+    /**
+     * Compresses a block, appends it to the data file and points its documents
+     * at it. The records also feed the dictionary sample until it is trained.
+     *
+     * @param docIds the IDs of the documents of the block, in order
+     * @param data   the uncompressed records
+     * @throws IOException if the block or the dictionary cannot be written
+     */
+    private void writeBlock(List<Integer> docIds, byte[] data) throws IOException {
+        deflater.reset();
+        if (dictionary != null)
+            deflater.setDictionary(dictionary);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 3 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished())
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+
+        CRC32 crc = new CRC32();
+        crc.update(compressed.toByteArray());
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + 4 * docIds.size() + compressed.size());
+        block.putInt(compressed.size()).putInt(data.length).putInt(docIds.size()).putInt((int) crc.getValue())
+                .put((byte) (dictionary != null ? 1 : 0));
+        for (int docId : docIds)
+            block.putInt(docId);
+        block.put(compressed.toByteArray()).flip();
+        long offset = fileSize;
+        while (block.hasRemaining())
+            fileSize += channel.write(block, fileSize);
+        register(docIds.stream().mapToInt(Integer::intValue).toArray(), offset);
+
+        if (sample != null) {
+            sample.write(data, 0, Math.min(data.length, DICTIONARY_SAMPLE - sample.size()));
+            if (sample.size() >= DICTIONARY_SAMPLE)
+                trainDictionary();
+        }
+    }
+
+    /**
+     * Points documents at the block holding their current copy.
+     *
+     * @param docIds the IDs of the documents of the block
+     * @param offset the offset of the block
+     */
+    private void register(int[] docIds, long offset) {
+        for (int docId : docIds) {
+            if (docId >= offsets.length)
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, docId + 1));
+            if (offsets[docId] == 0)
+                documentCount++;
+            else
+                staleCount++;
+            offsets[docId] = offset;
+        }
+        blockCount++;
+    }
+
+    /**
+     * Reads and decompresses a block.
+     *
+     * @param file   the data file
+     * @param offset the offset of the block
+     * @return the decompressed block
+     * @throws IOException if the block is corrupted or cannot be read
+     */
+    private Block readBlock(FileChannel file, long offset) throws IOException {
+        ByteBuffer header = readFully(file, offset, BLOCK_HEADER_SIZE);
+        int compressedLength = header.getInt();
+        int dataLength = header.getInt();
+        int docCount = header.getInt();
+        int checksum = header.getInt();
+        boolean usesDictionary = header.get() != 0;
+        ByteBuffer body = readFully(file, offset + BLOCK_HEADER_SIZE, 4 * docCount + compressedLength);
+        int[] docIds = new int[docCount];
+        for (int i = 0; i < docCount; i++)
+            docIds[i] = body.getInt();
+        byte[] compressed = new byte[compressedLength];
+        body.get(compressed);
+
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Corrupted document block at offset " + offset);
+        if (usesDictionary && dictionary == null)
+            throw new IOException("Missing dictionary of the document block at offset " + offset);
+
+        byte[] data = new byte[dataLength];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            if (usesDictionary)
+                inflater.setDictionary(dictionary);
+            int length = 0;
+            while (length < dataLength) {
+                int read = inflater.inflate(data, length, dataLength - length);
+                if (read == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new IOException("Truncated document block at offset " + offset);
+                length += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted document block at offset " + offset, e);
+        } finally {
+            inflater.end();
+        }
+
+        // Find the start of every record
+        int[] starts = new int[docCount];
+        ByteBuffer records = ByteBuffer.wrap(data);
+        for (int i = 0; i < docCount; i++) {
+            starts[i] = records.position();
+            for (int field = 0; field < 3; field++) {
+                int fieldLength = records.getInt();
+                records.position(records.position() + Math.max(0, fieldLength));
+            }
+        }
+        return new Block(docIds, starts, data);
+    }
+
+    /**
+     * Rebuilds the offsets of the documents from the block headers, truncating
+     * a last block cut short by a crash.
+     *
+     * @throws IOException if the data file cannot be read
+     */
+    private void scan() throws IOException {
+        long size = channel.size();
+        ByteBuffer fileHeader = readFully(channel, 0, FILE_HEADER_SIZE);
+        if (fileHeader.getInt() != MAGIC)
+            throw new IOException("Invalid document store " + directory.resolve(DATA_FILE));
+        if (fileHeader.getInt() != VERSION)
+            throw new IOException("Unsupported document store version in " + directory.resolve(DATA_FILE));
+
+        long position = FILE_HEADER_SIZE;
+        while (position < size) {
+            long end = -1;
+            int[] docIds = null;
+            if (position + BLOCK_HEADER_SIZE <= size) {
+                ByteBuffer header = readFully(channel, position, BLOCK_HEADER_SIZE);
+                int compressedLength = header.getInt();
+                header.getInt();
+                int docCount = header.getInt();
+                end = position + BLOCK_HEADER_SIZE + 4L * docCount + compressedLength;
+                if (compressedLength >= 0 && docCount > 0 && end <= size) {
+                    ByteBuffer ids = readFully(channel, position + BLOCK_HEADER_SIZE, 4 * docCount);
+                    docIds = new int[docCount];
+                    for (int i = 0; i < docCount; i++)
+                        docIds[i] = ids.getInt();
+                }
+            }
+            // Only the last block can be torn, so only its checksum is verified
+            if (docIds != null && end == size) {
+                try {
+                    readBlock(channel, position);
+                } catch (IOException e) {
+                    docIds = null;
+                }
+            }
+            if (docIds == null) {
+                LogUtil.logInfo(LogUtil.ANSI_YELLOW, DocumentStore.class,
+                        "Truncating incomplete document block at offset " + position);
+                channel.truncate(position);
+                break;
+            }
+            register(docIds, position);
+            position = end;
+        }
+        fileSize = position;
+    }
+
+    /**
+     * Rewrites the current copy of every document to a new data file, dropping
+     * the stale copies, and replaces the data file with it.
+     *
+     * @throws IOException if the new data file cannot be written
+     */
+    private void compact() throws IOException {
+        long startTime = System.currentTimeMillis();
+        long oldSize = fileSize;
+        long[] oldOffsets = offsets;
+        FileChannel oldChannel = channel;
+        Path tempFile = directory.resolve(DATA_FILE + ".tmp");
+
+        channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeFileHeader();
+        offsets = new long[oldOffsets.length];
+        documentCount = 0;
+        staleCount = 0;
+        blockCount = 0;
+
+        List<StoredDocument> pending = new ArrayList<>();
+        long pendingSize = 0;
+        Block block = null;
+        long blockOffset = 0;
+        for (int docId = 0; docId < oldOffsets.length; docId++) {
+            if (oldOffsets[docId] == 0)
+                continue;
+            if (oldOffsets[docId] != blockOffset) {
+                blockOffset = oldOffsets[docId];
+                block = readBlock(oldChannel, blockOffset);
+            }
+            StoredDocument document = block.document(docId);
+            pending.add(document);
+            pendingSize += document.body() == null ? 0 : document.body().length();
+            if (pendingSize >= 4L * BLOCK_SIZE) {
+                writeDocuments(pending);
+                pending.clear();
+                pendingSize = 0;
+            }
+        }
+        writeDocuments(pending);
+        channel.force(true);
+        oldChannel.close();
+        Files.move(tempFile, directory.resolve(DATA_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, DocumentStore.class,
+                "Compacted document store from " + oldSize / 1024 + " KB to " + fileSize / 1024 + " KB in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Trains the dictionary on the sampled documents and writes it atomically.
+     * The dictionary holds the words of the sample that save the most bytes, the
+     * most valuable last, as Deflate encodes the nearest matches in fewer bits.
+     *
+     * @throws IOException if the dictionary cannot be written
+     */
+    private void trainDictionary() throws IOException {
+        byte[] data = sample.toByteArray();
+        Map<String, Integer> counts = new HashMap<>();
+        int start = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i < data.length && data[i] != ' ' && data[i] != '\n')
+                continue;
+            // Words are kept with the space before them, as they appear in the text
+            if (i - start >= 4 && i - start <= 64)
+                counts.merge(new String(data, start, i - start, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+            start = i;
+        }
+
+        List<Map.Entry<String, Integer>> words = new ArrayList<>(counts.entrySet());
+        words.removeIf(entry -> entry.getValue() < 2);
+        words.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                (long) a.getValue() * a.getKey().length()));
+        ByteArrayOutputStream trained = new ByteArrayOutputStream(DICTIONARY_SIZE);
+        int size = 0;
+        int selected = 0;
+        while (selected < words.size() && size + words.get(selected).getKey().length() <= DICTIONARY_SIZE)
+            size += words.get(selected++).getKey().length();
+        for (int i = selected - 1; i >= 0; i--)
+            trained.writeBytes(words.get(i).getKey().getBytes(StandardCharsets.ISO_8859_1));
+
+        Path tempFile = directory.resolve(DICTIONARY_FILE + ".tmp");
+        Files.write(tempFile, trained.toByteArray());
+        try (FileChannel file = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        Files.move(tempFile, directory.resolve(DICTIONARY_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        dictionary = trained.toByteArray();
+        sample = null;
+
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, DocumentStore.class,
+                "Trained a document dictionary of " + selected + " words (" + dictionary.length + " bytes)");
+    }
+
+    /**
+     * Writes the header of an empty data file.
+     *
+     * @throws IOException if the header cannot be written
+     */
+    private void writeFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        fileSize = FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Reads a range of a file.
+     *
+     * @param file   the file
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @return a buffer holding the range, positioned at its start
+     * @throws IOException if the range is past the end of the file
+     */
+    private static ByteBuffer readFully(FileChannel file, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, offset + buffer.position());
+            if (read < 0)
+                throw new IOException("Unexpected end of the document store at offset " + offset);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a string as its length and UTF-8 bytes, a length of -1 standing for
+     * null.
+     *
+     * @param out    the stream
+     * @param string the string
+     */
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+        int length = bytes == null ? -1 : bytes.length;
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        if (bytes != null)
+            out.writeBytes(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param record the buffer, positioned at the string
+     * @return the string
+     */
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0)
+            return null;
+        String string = new String(record.array(), record.arrayOffset() + record.position(), length,
+                StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return string;
+    }
+
+    /**
+     * Returns the number of stored documents.
+     *
+     * @return the number of documents
+     */
+    public synchronized int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Returns the size of the data file.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the fraction of reads served by the cache of decompressed blocks.
+     *
+     * @return the hit rate, 0 if nothing was read
+     */
+    public double getCacheHitRate() {
+        synchronized (cache) {
+            long reads = cacheHits + cacheMisses;
+            return reads == 0 ? 0 : (double) cacheHits / reads;
+        }
+    }
+
+    /**
+     * Closes the data file.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LogUtil.logError(LogUtil.ANSI_RED, DocumentStore.class, e);
+        }
+        deflater.end();
+    }
+}
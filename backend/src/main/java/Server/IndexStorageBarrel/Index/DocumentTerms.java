@@ -0,0 +1,28 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Map;
+
+/**
+ * Represents the terms of a document added to the index.
+ *
+ * @param docId           the ID of the document
+ * @param docLength       the number of tokens of the document
+ * @param termFrequencies the normalized frequency of each term in the document
+ * @param termPositions   the sorted token positions of each term in the
+ *                        document, or null if positions are not indexed
+ */
+public record DocumentTerms(int docId, int docLength, Map<String, Float> termFrequencies,
+        Map<String, int[]> termPositions) {
+    /**
+     * Constructs a DocumentTerms object without positions.
+     *
+     * @param docId           the ID of the document
+     * @param docLength       the number of tokens of the document
+     * @param termFrequencies the normalized frequency of each term in the
+     *                        document
+     */
+    public DocumentTerms(int docId, int docLength, Map<String, Float> termFrequencies) {
+        this(docId, docLength, termFrequencies, null);
+    }
+}
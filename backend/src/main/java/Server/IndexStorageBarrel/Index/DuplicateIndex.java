@@ -0,0 +1,165 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Arrays;
+
+/**
+ * The DuplicateIndex class finds, among the fingerprints of the canonical
+ * documents, one within {@link #MAX_DISTANCE} bits of a new fingerprint.
+ * <p>
+ * The 64 bits of a fingerprint are split into {@link #BANDS} bands of 16 bits,
+ * one more than the maximum distance, so that two fingerprints within that
+ * distance are equal in at least one band. Each band is a table of 65536
+ * buckets listing the documents with that value of the band, and a lookup only
+ * compares the fingerprints of the documents sharing one of its four buckets,
+ * instead of every document.
+ */
+public class DuplicateIndex {
+    /**
+     * The maximum number of differing bits between the fingerprints of
+     * near-duplicate documents.
+     */
+    public static final int MAX_DISTANCE = 3;
+    /**
+     * The number of bands of a fingerprint.
+     */
+    public static final int BANDS = MAX_DISTANCE + 1;
+    /**
+     * The number of bits of a band.
+     */
+    private static final int BAND_BITS = 64 / BANDS;
+    /**
+     * The documents of each bucket of each band, or null for an empty bucket.
+     */
+    private final int[][][] buckets = new int[BANDS][1 << BAND_BITS][];
+    /**
+     * The number of documents of each bucket of each band.
+     */
+    private final int[][] bucketSizes = new int[BANDS][1 << BAND_BITS];
+    /**
+     * The fingerprint of each indexed document, by ID.
+     */
+    private long[] fingerprints = new long[1024];
+    /**
+     * Whether each document, by ID, is indexed.
+     */
+    private boolean[] indexed = new boolean[1024];
+    /**
+     * The number of indexed documents.
+     */
+    private int size;
+
+    /**
+     * Finds an indexed document whose fingerprint is within
+     * {@link #MAX_DISTANCE} bits of the given one.
+     *
+     * @param fingerprint the fingerprint
+     * @param excludedId  the ID of a document to leave out, such as the
+     *                    document being checked
+     * @return the ID of the closest document, the lowest ID among equally close
+     *         ones, or -1 if there is none
+     */
+    public synchronized int findNear(long fingerprint, int excludedId) {
+        int nearest = -1;
+        int nearestDistance = MAX_DISTANCE + 1;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(fingerprint, band);
+            int[] bucket = buckets[band][key];
+            for (int i = 0; i < bucketSizes[band][key]; i++) {
+                int docId = bucket[i];
+                int distance = SimHash.distance(fingerprint, fingerprints[docId]);
+                if (docId != excludedId && (distance < nearestDistance
+                        || (distance == nearestDistance && docId < nearest))) {
+                    nearest = docId;
+                    nearestDistance = distance;
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Indexes the fingerprint of a document, replacing its previous one.
+     *
+     * @param docId       the ID of the document
+     * @param fingerprint the fingerprint
+     */
+    public synchronized void add(int docId, long fingerprint) {
+        remove(docId);
+        if (docId >= indexed.length) {
+            int capacity = Math.max(indexed.length * 2, docId + 1);
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            indexed = Arrays.copyOf(indexed, capacity);
+        }
+        fingerprints[docId] = fingerprint;
+        indexed[docId] = true;
+        size++;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(fingerprint, band);
+            int[] bucket = buckets[band][key];
+            int count = bucketSizes[band][key];
+            if (bucket == null)
+                bucket = buckets[band][key] = new int[2];
+            else if (count == bucket.length)
+                bucket = buckets[band][key] = Arrays.copyOf(bucket, count * 2);
+            bucket[count] = docId;
+            bucketSizes[band][key]++;
+        }
+    }
+
+    /**
+     * Removes a document from the index, if it is indexed.
+     *
+     * @param docId the ID of the document
+     */
+    public synchronized void remove(int docId) {
+        if (docId >= indexed.length || !indexed[docId])
+            return;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(fingerprints[docId], band);
+            int[] bucket = buckets[band][key];
+            int count = bucketSizes[band][key];
+            for (int i = 0; i < count; i++) {
+                if (bucket[i] == docId) {
+                    bucket[i] = bucket[count - 1];
+                    bucketSizes[band][key]--;
+                    break;
+                }
+            }
+        }
+        indexed[docId] = false;
+        size--;
+    }
+
+    /**
+     * Removes every document from the index.
+     */
+    public synchronized void clear() {
+        for (int band = 0; band < BANDS; band++) {
+            Arrays.fill(buckets[band], null);
+            Arrays.fill(bucketSizes[band], 0);
+        }
+        Arrays.fill(indexed, false);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return the number of documents
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of a band of a fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     * @param band        the index of the band
+     * @return the bits of the band
+     */
+    private static int bandKey(long fingerprint, int band) {
+        return (int) (fingerprint >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1);
+    }
+}
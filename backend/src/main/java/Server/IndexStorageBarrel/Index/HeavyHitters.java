@@ -0,0 +1,148 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * The HeavyHitters class tracks the most frequent keywords of a stream with the
+ * Space-Saving algorithm, using a fixed number of counters.
+ * <p>
+ * When a keyword without a counter arrives and all counters are taken, the
+ * counter with the lowest count is reassigned to it and keeps its count as the
+ * maximum overestimation. Any keyword whose true count is above the total count
+ * divided by the number of counters is guaranteed to hold a counter.
+ * <p>
+ * The counters are kept ordered by count, so the top N keywords are read in
+ * O(N) and each update costs O(log capacity).
+ */
+public class HeavyHitters {
+    /**
+     * The order of the counters, from the lowest to the highest count, with ties
+     * broken by keyword.
+     */
+    private static final Comparator<Counter> ORDER = Comparator.comparingLong((Counter counter) -> counter.count)
+            .thenComparing(counter -> counter.keyword, Comparator.reverseOrder());
+    /**
+     * The maximum number of counters.
+     */
+    private final int capacity;
+    /**
+     * The counters, by keyword.
+     */
+    private final Map<String, Counter> counters = new HashMap<>();
+    /**
+     * The counters, ordered by count.
+     */
+    private final TreeSet<Counter> ordered = new TreeSet<>(ORDER);
+
+    /**
+     * A counter assigned to a keyword.
+     */
+    private static class Counter {
+        /**
+         * The keyword the counter is assigned to.
+         */
+        private final String keyword;
+        /**
+         * The estimated count of the keyword.
+         */
+        private long count;
+
+        /**
+         * Constructs a Counter for the given keyword.
+         *
+         * @param keyword the keyword the counter is assigned to
+         * @param count   the initial count
+         */
+        private Counter(String keyword, long count) {
+            this.keyword = keyword;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Constructs a HeavyHitters object with the given number of counters.
+     * The number of counters should be well above the number of keywords read,
+     * as it bounds the estimation error.
+     *
+     * @param capacity the maximum number of counters
+     */
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds occurrences of a keyword to the stream.
+     *
+     * @param keyword the keyword
+     * @param count   the number of occurrences
+     */
+    public synchronized void add(String keyword, long count) {
+        Counter counter = counters.get(keyword);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(keyword, 0);
+            } else {
+                // Reassign the lowest counter, keeping its count as the overestimation
+                Counter lowest = ordered.pollFirst();
+                counters.remove(lowest.keyword);
+                counter = new Counter(keyword, lowest.count);
+            }
+            counters.put(keyword, counter);
+        } else {
+            ordered.remove(counter);
+        }
+        counter.count += count;
+        ordered.add(counter);
+    }
+
+    /**
+     * Returns the keywords with the highest estimated counts.
+     *
+     * @param n the maximum number of keywords
+     * @return the keywords, from the highest to the lowest count
+     */
+    public synchronized List<String> top(int n) {
+        List<String> keywords = new ArrayList<>(n);
+        Iterator<Counter> iterator = ordered.descendingIterator();
+        while (keywords.size() < n && iterator.hasNext())
+            keywords.add(iterator.next().keyword);
+        return keywords;
+    }
+
+    /**
+     * Halves every count, so that old searches weigh less than recent ones.
+     * Counters that reach zero are released.
+     */
+    public synchronized void decay() {
+        List<Counter> decayed = new ArrayList<>(ordered);
+        ordered.clear();
+        for (Counter counter : decayed) {
+            counter.count >>= 1;
+            if (counter.count == 0)
+                counters.remove(counter.keyword);
+            else
+                ordered.add(counter);
+        }
+    }
+
+    /**
+     * Replaces the counters with exact counts, such as the ones stored in the
+     * database.
+     *
+     * @param counts the count of each keyword, at most the number of counters are
+     *               kept
+     */
+    public synchronized void reset(Map<String, Long> counts) {
+        counters.clear();
+        ordered.clear();
+        for (Map.Entry<String, Long> entry : counts.entrySet())
+            add(entry.getKey(), entry.getValue());
+    }
+}
@@ -0,0 +1,90 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.List;
+import java.sql.Connection;
+
+// Exception imports
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The IndexStorage interface is the storage engine of the postings of an
+ * InvertedIndex. The relational data of the barrel (websites, links and
+ * statistics) always lives in SQLite; the storage engine decides where the
+ * postings are persisted and how the index is rebuilt from them.
+ */
+public interface IndexStorage extends AutoCloseable {
+    /**
+     * Builds the index from the stored postings and the reference counts of the
+     * websites table. Also called after a sync has merged new rows.
+     *
+     * @param conn the database connection to read from
+     * @throws SQLException if an error occurs while reading the database
+     * @throws IOException  if an error occurs while reading the postings
+     */
+    void load(Connection conn) throws SQLException, IOException;
+
+    /**
+     * Returns whether the postings are stored in the website_keywords table,
+     * written by BarrelPopulate in the same transaction as the websites.
+     *
+     * @return true if the postings are stored in the database
+     */
+    boolean storesPostingsInDatabase();
+
+    /**
+     * Makes the terms of documents durable before the transaction inserting
+     * their websites commits, if they are not stored in the database. The
+     * storage may record in the transaction which of its writes it covers, so
+     * that the writes of a transaction that never committed are discarded when
+     * it is loaded.
+     *
+     * @param conn      the connection of the transaction
+     * @param documents the terms of the documents
+     * @throws SQLException if the writes cannot be recorded in the transaction
+     * @throws IOException  if the terms cannot be persisted
+     */
+    void prepare(Connection conn, List<DocumentTerms> documents) throws SQLException, IOException;
+
+    /**
+     * Adds the terms of the prepared documents to the index, once the
+     * transaction committed.
+     *
+     * @param documents the terms of the documents
+     */
+    void publish(List<DocumentTerms> documents);
+
+    /**
+     * Discards the prepared documents, after the transaction rolled back.
+     *
+     * @throws IOException if the prepared terms cannot be discarded
+     */
+    void abort() throws IOException;
+
+    /**
+     * Makes the terms of already committed documents durable, if they are not
+     * stored in the database, and adds them to the index.
+     *
+     * @param documents the terms of the documents
+     * @throws IOException if the terms cannot be persisted, in which case none of
+     *                     the documents is added to the index
+     */
+    void append(List<DocumentTerms> documents) throws IOException;
+
+    /**
+     * Opens a pass over the terms of the documents after an ID that are not
+     * stored in the database, to be sent to another barrel during a sync.
+     *
+     * @param startId the ID after which documents are collected
+     * @return the export of the documents, or null if the postings are stored
+     *         in the database
+     */
+    InvertedIndex.DocumentExport export(int startId);
+
+    /**
+     * Releases the resources of the storage.
+     */
+    @Override
+    void close();
+}
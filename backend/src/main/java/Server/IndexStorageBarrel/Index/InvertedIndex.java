@@ -0,0 +1,936 @@
+package Server.IndexStorageBarrel.Index;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.sql.*;
+import java.util.Map;
+import java.util.List;
+import java.util.BitSet;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The InvertedIndex class keeps the barrel's term index in the heap so that
+ * queries can be answered without joining the SQLite tables.
+ * It maps every keyword to a PostingList of document (website) IDs and the
+ * normalized frequency of the keyword in each document, and keeps the reference
+ * count of every document in a primitive array indexed by document ID.
+ * <p>
+ * New documents are added to a writable memory segment. An IndexStorage may
+ * freeze it and replace it, together with older segments, by immutable
+ * segments stored on disk; queries search the memory segment and every
+ * segment, whose postings are disjoint.
+ * <p>
+ * The posting list sizes and the number of indexed documents are the live
+ * collection statistics used to compute IDF weights at query time.
+ * <p>
+ * The index is built by its IndexStorage when the barrel starts and is kept up
+ * to date by BarrelPopulate after each committed transaction.
+ */
+public class InvertedIndex {
+    /**
+     * The maximum rank a search collects documents up to, so that the heap of
+     * a search does not grow with the page number requested by the client.
+     */
+    public static final int MAX_DEPTH = 1000;
+    /**
+     * The writable segment receiving the postings of new documents.
+     */
+    private MemorySegment memtable = new MemorySegment();
+    /**
+     * The immutable segments, from the oldest to the newest, replaced as a whole
+     * when segments are flushed or merged.
+     */
+    private List<Segment> segments = List.of();
+    /**
+     * The reference counts of the documents, indexed by document ID.
+     */
+    private int[] refCounts = new int[1024];
+    /**
+     * The IDs of the documents with at least one indexed term.
+     */
+    private BitSet documents = new BitSet();
+    /**
+     * The highest reference count of any document, an upper bound for early
+     * termination. Reference counts only grow between reloads.
+     */
+    private int maxRefCount;
+    /**
+     * The PageRank of the documents, published by a background job and read
+     * without taking the lock, or null to rank links by reference count.
+     */
+    private volatile PageRanks pageRanks;
+    /**
+     * The lock guarding the index against concurrent readers and writers.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * The ingestion epoch, advanced after each committed change so that results
+     * cached at an older epoch are known to be stale.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * Rebuilds the index from the website_keywords and websites tables, holding
+     * every posting in the memory segment.
+     *
+     * @param conn the database connection to read from
+     * @throws SQLException if an error occurs while reading the database
+     */
+    public void load(Connection conn) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        MemorySegment loadedMemtable = new MemorySegment();
+        BitSet loadedDocuments = new BitSet();
+
+        String sql = "SELECT k.keyword, wk.website_id, wk.tf, wk.doc_length, wk.positions " +
+                "FROM website_keywords wk " +
+                "JOIN keywords k ON wk.keyword_id = k.id " +
+                "ORDER BY wk.keyword_id, wk.website_id";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int docId = rs.getInt(2);
+                byte[] positions = rs.getBytes(5);
+                loadedMemtable.add(rs.getString(1), docId, (float) rs.getInt(3) / rs.getInt(4), rs.getInt(4),
+                        positions == null ? null : CompressedPostings.decodePositions(positions));
+                loadedDocuments.set(docId);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            memtable = loadedMemtable;
+            segments = List.of();
+            documents = loadedDocuments;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadRefCounts(conn);
+
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, InvertedIndex.class,
+                "Loaded " + loadedMemtable.termCount() + " terms and " + loadedMemtable.postingCount()
+                        + " postings in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Reloads the reference counts of the documents from the websites table.
+     *
+     * @param conn the database connection to read from
+     * @throws SQLException if an error occurs while reading the database
+     */
+    public void loadRefCounts(Connection conn) throws SQLException {
+        int[] loadedRefCounts = new int[1024];
+        int loadedMaxRefCount = 0;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, ref_count FROM websites")) {
+            while (rs.next()) {
+                int docId = rs.getInt(1);
+                loadedRefCounts = grow(loadedRefCounts, docId);
+                loadedRefCounts[docId] = rs.getInt(2);
+                loadedMaxRefCount = Math.max(loadedMaxRefCount, loadedRefCounts[docId]);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            refCounts = loadedRefCounts;
+            maxRefCount = loadedMaxRefCount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the segments of the index by the ones opened from disk, keeping
+     * the memory segment.
+     *
+     * @param openedSegments the segments, from the oldest to the newest
+     */
+    public void setSegments(List<? extends Segment> openedSegments) {
+        lock.writeLock().lock();
+        try {
+            segments = List.copyOf(openedSegments);
+            for (Segment segment : segments)
+                for (int docId : segment.docIds())
+                    documents.set(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Freezes the memory segment, which stays searchable as the newest segment,
+     * and starts a new one.
+     *
+     * @return the frozen segment, or null if the memory segment was empty
+     */
+    public MemorySegment freezeMemtable() {
+        lock.writeLock().lock();
+        try {
+            if (memtable.isEmpty())
+                return null;
+            MemorySegment frozen = memtable;
+            List<Segment> newSegments = new ArrayList<>(segments);
+            newSegments.add(frozen);
+            segments = List.copyOf(newSegments);
+            memtable = new MemorySegment();
+            return frozen;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces some segments by a segment holding the same postings,
+     * such as the file they were flushed or merged into. Once this returns, no
+     * query is reading the replaced segments.
+     *
+     * @param replaced    the segments to replace
+     * @param replacement the segment replacing them, at the position of the first
+     *                    replaced one
+     */
+    public void replaceSegments(List<? extends Segment> replaced, Segment replacement) {
+        lock.writeLock().lock();
+        try {
+            List<Segment> newSegments = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (!replaced.contains(segment))
+                    newSegments.add(segment);
+                else if (!newSegments.contains(replacement))
+                    newSegments.add(replacement);
+            }
+            segments = List.copyOf(newSegments);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the current segments of the index.
+     *
+     * @return the segments, from the oldest to the newest
+     */
+    public List<Segment> getSegments() {
+        lock.readLock().lock();
+        try {
+            return segments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of postings in the memory segment.
+     *
+     * @return the number of postings not yet frozen
+     */
+    public long getMemtablePostings() {
+        lock.readLock().lock();
+        try {
+            return memtable.postingCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether a keyword is already indexed for a document, in any
+     * segment.
+     *
+     * @param keyword the keyword
+     * @param docId   the ID of the document
+     * @return true if the document has a posting for the keyword
+     */
+    public boolean containsPosting(String keyword, int docId) {
+        lock.readLock().lock();
+        try {
+            Postings list = memtable.postings(keyword);
+            if (list != null && list.contains(docId))
+                return true;
+            for (Segment segment : segments) {
+                list = segment.postings(keyword);
+                if (list != null && list.contains(docId))
+                    return true;
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens a pass over the terms of the documents after an ID, from every
+     * segment, so that they can be sent to another barrel in chunks of
+     * increasing IDs.
+     *
+     * @param startId the ID after which documents are collected
+     * @return the export of the documents
+     */
+    public DocumentExport openExport(int startId) {
+        lock.readLock().lock();
+        try {
+            List<Segment> allSegments = new ArrayList<>(segments);
+            allSegments.add(memtable);
+            return new DocumentExport(allSegments, startId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A single pass over the postings of the documents after an ID, in
+     * document ID order. The term dictionary of each segment is read once when
+     * the export is opened, and the posting lists are kept in a heap ordered by
+     * the document ID at their position, so that each chunk only visits the
+     * postings of its documents. The segments are those of the index when the
+     * export was opened; the replaced ones stay readable while referenced.
+     */
+    public class DocumentExport {
+        /**
+         * The segment of each posting list.
+         */
+        private final List<Segment> listSegments = new ArrayList<>();
+        /**
+         * The term of each posting list.
+         */
+        private final List<String> listTerms = new ArrayList<>();
+        /**
+         * The posting lists holding documents not yet exported.
+         */
+        private final List<Postings> lists = new ArrayList<>();
+        /**
+         * The position of each posting list.
+         */
+        private int[] positions;
+        /**
+         * The document ID at the position of each posting list.
+         */
+        private int[] heads;
+        /**
+         * The posting lists ordered by the document ID at their position.
+         */
+        private final PriorityQueue<Integer> queue;
+
+        /**
+         * Constructs a DocumentExport over the given segments. Called with the
+         * read lock held.
+         *
+         * @param segments the segments of the index, the memory segment last
+         * @param startId  the ID after which documents are collected
+         */
+        private DocumentExport(List<Segment> segments, int startId) {
+            List<Integer> startPositions = new ArrayList<>();
+            for (Segment segment : segments) {
+                for (String term : segment.terms()) {
+                    Postings list = segment.postings(term);
+                    int position = list.advance(0, startId + 1);
+                    if (position < list.size()) {
+                        listSegments.add(segment);
+                        listTerms.add(term);
+                        lists.add(list);
+                        startPositions.add(position);
+                    }
+                }
+            }
+            positions = new int[lists.size()];
+            heads = new int[lists.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = startPositions.get(i);
+                heads[i] = lists.get(i).docId(positions[i]);
+            }
+            queue = new PriorityQueue<>(Math.max(1, positions.length), (a, b) -> Integer.compare(heads[a], heads[b]));
+            for (int i = 0; i < positions.length; i++)
+                queue.add(i);
+        }
+
+        /**
+         * Collects the terms of the next documents, up to an ID.
+         *
+         * @param endId the last ID collected
+         * @return the terms of each document, in document ID order
+         */
+        public List<DocumentTerms> next(int endId) {
+            Map<Integer, DocumentTerms> exported = new TreeMap<>();
+            lock.readLock().lock();
+            try {
+                while (!queue.isEmpty() && heads[queue.peek()] <= endId) {
+                    int l = queue.poll();
+                    Segment segment = listSegments.get(l);
+                    String term = listTerms.get(l);
+                    Postings list = lists.get(l);
+                    // The memory segment may have moved postings right to insert re-crawled documents
+                    int i = list.advance(positions[l], heads[l]);
+                    for (; i < list.size() && list.docId(i) <= endId; i++) {
+                        DocumentTerms document = exported.computeIfAbsent(list.docId(i),
+                                id -> new DocumentTerms(id, segment.docLength(id), new HashMap<>(), new HashMap<>()));
+                        if (document.termFrequencies().putIfAbsent(term, list.score(i)) == null
+                                && list.positions(i) != null)
+                            document.termPositions().put(term, list.positions(i));
+                    }
+                    if (i < list.size()) {
+                        positions[l] = i;
+                        heads[l] = list.docId(i);
+                        queue.add(l);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return new ArrayList<>(exported.values());
+        }
+    }
+
+    /**
+     * Adds the terms of a document to the memory segment.
+     * Terms already indexed for the document in the memory segment keep their
+     * previous frequency.
+     *
+     * @param document the terms of the document
+     */
+    public void addDocument(DocumentTerms document) {
+        lock.writeLock().lock();
+        try {
+            refCounts = grow(refCounts, document.docId());
+            memtable.add(document);
+            if (!document.termFrequencies().isEmpty())
+                documents.set(document.docId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Advances the ingestion epoch. Called once the changes of a committed
+     * transaction are visible in the index.
+     */
+    public void advanceEpoch() {
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * Returns the current ingestion epoch.
+     *
+     * @return the ingestion epoch
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Increments the reference count of a document.
+     *
+     * @param docId the ID of the document
+     */
+    public void incrementRefCount(int docId) {
+        lock.writeLock().lock();
+        try {
+            refCounts = grow(refCounts, docId);
+            refCounts[docId]++;
+            maxRefCount = Math.max(maxRefCount, refCounts[docId]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the reference count of a document, such as a newly crawled document
+     * that was already linked to.
+     *
+     * @param docId    the ID of the document
+     * @param refCount the reference count of the document
+     */
+    public void setRefCount(int docId, int refCount) {
+        lock.writeLock().lock();
+        try {
+            refCounts = grow(refCounts, docId);
+            refCounts[docId] = refCount;
+            maxRefCount = Math.max(maxRefCount, refCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The PageRank of the documents, published as a single immutable snapshot.
+     *
+     * @param scores   the PageRank of each document, indexed by document ID
+     * @param maxScore the highest PageRank of any document, an upper bound for
+     *                 early termination
+     */
+    private record PageRanks(float[] scores, float maxScore) {
+    }
+
+    /**
+     * Publishes the PageRank of the documents, which then replaces the reference
+     * count when ranking by links. Documents crawled after the computation have
+     * no score until the next one.
+     *
+     * @param scores the PageRank of each document, indexed by document ID
+     */
+    public void setPageRanks(float[] scores) {
+        float maxScore = 0;
+        for (float score : scores)
+            maxScore = Math.max(maxScore, score);
+        pageRanks = new PageRanks(scores, maxScore);
+        advanceEpoch();
+    }
+
+    /**
+     * Returns the number of documents with at least one indexed term.
+     *
+     * @return the number of documents
+     */
+    public int getDocCount() {
+        lock.readLock().lock();
+        try {
+            return documents.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of documents containing the given keyword.
+     *
+     * @param keyword the keyword
+     * @return the document frequency of the keyword
+     */
+    public int getDocFrequency(String keyword) {
+        lock.readLock().lock();
+        try {
+            Postings list = memtable.postings(keyword);
+            int docFrequency = list == null ? 0 : list.size();
+            for (Segment segment : segments) {
+                list = segment.postings(keyword);
+                docFrequency += list == null ? 0 : list.size();
+            }
+            return docFrequency;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the document frequency of every term of the index, summed over the
+     * memtable and the segments.
+     *
+     * @return the number of documents holding each term
+     */
+    public Map<String, Integer> getDocFrequencies() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> docFrequencies = memtable.docFrequencies();
+            for (Segment segment : segments)
+                segment.docFrequencies().forEach((term, count) -> docFrequencies.merge(term, count, Integer::sum));
+            return docFrequencies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the postings of a term in every segment into a single list, as
+     * sent to the gateway by a partition of a term partitioned index.
+     * The lists are merged in document ID order, so that every posting is
+     * appended, and a document found in several segments keeps the posting of
+     * the newest one.
+     *
+     * @param term          the term
+     * @param withPositions whether to copy the positions of the term
+     * @return the postings of the term, sorted by document ID
+     */
+    public PostingList exportPostings(String term, boolean withPositions) {
+        PostingList exported = new PostingList();
+        lock.readLock().lock();
+        try {
+            // From the newest to the oldest segment, the memory segment first
+            List<Postings> lists = new ArrayList<>();
+            List<Float> weights = new ArrayList<>();
+            resolve(memtable, term, 0, lists, weights);
+            for (int s = segments.size() - 1; s >= 0; s--)
+                resolve(segments.get(s), term, 0, lists, weights);
+
+            int[] positions = new int[lists.size()];
+            PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, lists.size()), (a, b) -> {
+                int order = Integer.compare(lists.get(a).docId(positions[a]), lists.get(b).docId(positions[b]));
+                return order != 0 ? order : Integer.compare(a, b);
+            });
+            for (int l = 0; l < lists.size(); l++)
+                queue.add(l);
+            int lastId = -1;
+            while (!queue.isEmpty()) {
+                int l = queue.poll();
+                Postings list = lists.get(l);
+                int i = positions[l];
+                // A newer segment already gave the posting of this document
+                if (list.docId(i) != lastId) {
+                    lastId = list.docId(i);
+                    exported.add(lastId, list.score(i), withPositions ? list.positions(i) : null);
+                }
+                if (++positions[l] < list.size())
+                    queue.add(l);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        exported.trimToSize();
+        return exported;
+    }
+
+    /**
+     * Returns a copy of the set of documents with at least one indexed term.
+     *
+     * @return the IDs of the indexed documents
+     */
+    public BitSet getDocuments() {
+        lock.readLock().lock();
+        try {
+            return (BitSet) documents.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the value a document is ranked by when sorting by links: its
+     * PageRank if there is one, and its reference count otherwise.
+     *
+     * @param docId the ID of the document
+     * @return the link-based rank value of the document
+     */
+    public float linkValue(int docId) {
+        PageRanks ranks = pageRanks;
+        lock.readLock().lock();
+        try {
+            int value = linkValueOf(docId, ranks);
+            return ranks == null ? value : Float.intBitsToFloat(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks documents matched and scored outside of the index, such as by the
+     * gateway of a term partitioned index, by score or by links.
+     *
+     * @param docIds    the IDs of the matching documents
+     * @param scores    the TF-IDF score of each document
+     * @param tfIdfSort whether to sort by TF-IDF score or by links
+     * @param depth     the maximum number of ranked documents, at most
+     *                  {@link #MAX_DEPTH}
+     * @return the best ranked documents, up to the depth
+     */
+    public RankedDocs rank(int[] docIds, float[] scores, boolean tfIdfSort, int depth) {
+        depth = Math.min(depth, MAX_DEPTH);
+        PageRanks ranks = pageRanks;
+        TopKCollector collector = new TopKCollector(depth);
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < docIds.length; i++) {
+                int value = tfIdfSort ? Float.floatToIntBits(scores[i]) : linkValueOf(docIds[i], ranks);
+                collector.offer(TopKCollector.key(value, docIds[i]), scores[i]);
+            }
+            return collector.drain(0, depth, refCounts, docIds.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks the documents matching the given query and returns the requested
+     * page.
+     * The score of a document is the sum, over the matching keywords, of the
+     * normalized term frequency multiplied by the weight of the keyword.
+     * <p>
+     * Only the best pageNumber * pageSize documents are kept, in a bounded heap.
+     * With early termination, documents that cannot enter the heap are skipped:
+     * TF-IDF ranking uses MaxScore over the posting list upper bounds, and
+     * link ranking stops once the heap threshold reaches the highest reference
+     * count or PageRank in the index.
+     * <p>
+     * Link ranking uses the published PageRank if there is one, and the
+     * reference count otherwise.
+     * <p>
+     * Queries other than a single word or words joined by OR are first matched
+     * by a {@link QueryExecutor}, and only the matching documents are scored by
+     * their keywords outside of negations.
+     *
+     * @param query            the parsed query
+     * @param weights          the IDF weight of each keyword of the query
+     * @param tfIdfSort        whether to sort by TF-IDF score or by links
+     * @param earlyTermination whether to skip documents that cannot make the page
+     * @param pageNumber       the page number, starting at 1
+     * @param pageSize         the number of documents per page
+     * @return the ranked documents of the requested page, empty if the page
+     *         starts past {@link #MAX_DEPTH}
+     */
+    public RankedDocs search(ParsedQuery query, float[] weights, boolean tfIdfSort, boolean earlyTermination,
+            int pageNumber, int pageSize) {
+        long start = (long) Math.max(0, pageNumber - 1) * pageSize;
+        if (start >= MAX_DEPTH)
+            return new RankedDocs(new int[0], new float[0], new int[0], 0);
+        String[] keywords = query.keywords();
+        lock.readLock().lock();
+        try {
+            // Resolve the posting lists of each keyword in every segment
+            List<Postings> resolvedLists = new ArrayList<>();
+            List<Float> resolvedWeights = new ArrayList<>();
+            for (int i = 0; i < keywords.length; i++) {
+                resolve(memtable, keywords[i], weights[i], resolvedLists, resolvedWeights);
+                for (Segment segment : segments)
+                    resolve(segment, keywords[i], weights[i], resolvedLists, resolvedWeights);
+            }
+            Postings[] lists = resolvedLists.toArray(Postings[]::new);
+            float[] listWeights = new float[lists.length];
+            for (int i = 0; i < lists.length; i++)
+                listWeights[i] = resolvedWeights.get(i);
+
+            TopKCollector collector = new TopKCollector((int) Math.min(start + pageSize, MAX_DEPTH));
+            int hits;
+            if (!query.isDisjunction())
+                hits = collectCandidates(new QueryExecutor(this::postingsOf, documents).execute(query.root()), lists,
+                        listWeights, tfIdfSort, pageRanks, collector);
+            else if (earlyTermination && tfIdfSort)
+                hits = collectMaxScore(lists, listWeights, collector);
+            else
+                hits = collectExhaustive(lists, listWeights, tfIdfSort, earlyTermination, pageRanks, collector);
+
+            return collector.drain((int) start, pageSize, refCounts, hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the postings of a keyword in a segment to the lists of a query. Since
+     * the postings of the segments are disjoint, a keyword found in several
+     * segments contributes one list per segment with the same weight.
+     *
+     * @param segment the segment
+     * @param keyword the keyword
+     * @param weight  the IDF weight of the keyword
+     * @param lists   the posting lists of the query
+     * @param weights the weights of the posting lists
+     */
+    private static void resolve(Segment segment, String keyword, float weight, List<Postings> lists,
+            List<Float> weights) {
+        Postings list = segment.postings(keyword);
+        if (list != null && list.size() > 0) {
+            lists.add(list);
+            weights.add(weight);
+        }
+    }
+
+    /**
+     * Returns the posting lists of a term in every segment.
+     *
+     * @param term the term
+     * @return the non-empty posting lists of the term
+     */
+    private Postings[] postingsOf(String term) {
+        List<Postings> lists = new ArrayList<>();
+        List<Float> weights = new ArrayList<>();
+        resolve(memtable, term, 0, lists, weights);
+        for (Segment segment : segments)
+            resolve(segment, term, 0, lists, weights);
+        return lists.toArray(Postings[]::new);
+    }
+
+    /**
+     * Scores the given candidate documents, skipping ahead in every posting list
+     * with galloping advances.
+     *
+     * @param candidates the sorted IDs of the documents to score
+     * @param lists      the posting lists of the query keywords
+     * @param weights    the IDF weight of each posting list
+     * @param tfIdfSort  whether to sort by TF-IDF score or by links
+     * @param ranks      the PageRank snapshot used instead of the reference
+     *                   count, or null
+     * @param collector  the collector receiving the scored documents
+     * @return the number of documents scored
+     */
+    private int collectCandidates(int[] candidates, Postings[] lists, float[] weights, boolean tfIdfSort,
+            PageRanks ranks, TopKCollector collector) {
+        int[] cursors = new int[lists.length];
+        for (int docId : candidates) {
+            double score = 0;
+            for (int i = 0; i < lists.length; i++) {
+                cursors[i] = lists[i].advance(cursors[i], docId);
+                if (cursors[i] < lists[i].size() && lists[i].docId(cursors[i]) == docId)
+                    score += lists[i].score(cursors[i]) * weights[i];
+            }
+            int value = tfIdfSort ? Float.floatToIntBits((float) score) : linkValueOf(docId, ranks);
+            collector.offer(TopKCollector.key(value, docId), (float) score);
+        }
+        return candidates.length;
+    }
+
+    /**
+     * Merges the posting lists in document ID order, scoring every matching
+     * document.
+     *
+     * @param lists            the posting lists of the query keywords
+     * @param weights          the IDF weight of each posting list
+     * @param tfIdfSort        whether to sort by TF-IDF score or by reference
+     *                         count
+     * @param earlyTermination whether to stop once no document can beat the heap
+     * @param ranks            the PageRank snapshot used instead of the reference
+     *                         count, or null
+     * @param collector        the collector receiving the scored documents
+     * @return the number of documents scored
+     */
+    private int collectExhaustive(Postings[] lists, float[] weights, boolean tfIdfSort,
+            boolean earlyTermination, PageRanks ranks, TopKCollector collector) {
+        int maxLinkValue = ranks == null ? maxRefCount : Float.floatToIntBits(ranks.maxScore());
+        int hits = 0;
+        int[] cursors = new int[lists.length];
+        while (true) {
+            // Later documents only tie the threshold at best, and ties favour lower IDs
+            if (earlyTermination && !tfIdfSort && collector.isFull() && collector.minValue() >= maxLinkValue)
+                break;
+
+            int docId = Integer.MAX_VALUE;
+            for (int i = 0; i < lists.length; i++)
+                if (cursors[i] < lists[i].size())
+                    docId = Math.min(docId, lists[i].docId(cursors[i]));
+            if (docId == Integer.MAX_VALUE)
+                break;
+
+            double score = 0;
+            for (int i = 0; i < lists.length; i++) {
+                if (cursors[i] < lists[i].size() && lists[i].docId(cursors[i]) == docId) {
+                    score += lists[i].score(cursors[i]) * weights[i];
+                    cursors[i]++;
+                }
+            }
+            int value = tfIdfSort ? Float.floatToIntBits((float) score) : linkValueOf(docId, ranks);
+            collector.offer(TopKCollector.key(value, docId), (float) score);
+            hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * Scores the documents with the MaxScore algorithm.
+     * Posting lists are ordered by score upper bound, and the lists whose upper
+     * bounds add up to less than the heap threshold become non-essential: they
+     * no longer produce candidates and are only probed, with galloping advances,
+     * for documents that can still enter the heap.
+     *
+     * @param lists     the posting lists of the query keywords
+     * @param weights   the IDF weight of each posting list
+     * @param collector the collector receiving the scored documents
+     * @return the number of documents fully scored
+     */
+    private int collectMaxScore(Postings[] lists, float[] weights, TopKCollector collector) {
+        int n = lists.length;
+
+        // Order the lists by increasing upper bound
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare((double) lists[a].maxScore() * weights[a],
+                (double) lists[b].maxScore() * weights[b]));
+        Postings[] sortedLists = new Postings[n];
+        float[] sortedWeights = new float[n];
+        double[] cumulativeBounds = new double[n];
+        for (int i = 0; i < n; i++) {
+            sortedLists[i] = lists[order[i]];
+            sortedWeights[i] = weights[order[i]];
+            double bound = (double) sortedLists[i].maxScore() * sortedWeights[i];
+            cumulativeBounds[i] = i == 0 ? bound : cumulativeBounds[i - 1] + bound;
+        }
+
+        int hits = 0;
+        int firstEssential = 0;
+        int[] cursors = new int[n];
+        while (true) {
+            // Lists whose combined bound cannot beat the threshold become non-essential
+            if (collector.isFull()) {
+                double threshold = collector.minScore();
+                while (firstEssential < n && cumulativeBounds[firstEssential] <= threshold)
+                    firstEssential++;
+            }
+            if (firstEssential == n)
+                break;
+
+            // The next candidate is the smallest document ID of the essential lists
+            int docId = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < n; i++)
+                if (cursors[i] < sortedLists[i].size())
+                    docId = Math.min(docId, sortedLists[i].docId(cursors[i]));
+            if (docId == Integer.MAX_VALUE)
+                break;
+
+            double score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                if (cursors[i] < sortedLists[i].size() && sortedLists[i].docId(cursors[i]) == docId) {
+                    score += sortedLists[i].score(cursors[i]) * sortedWeights[i];
+                    cursors[i]++;
+                }
+            }
+
+            // Probe the non-essential lists while the document can still enter the heap
+            boolean pruned = false;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (collector.isFull() && score + cumulativeBounds[i] <= collector.minScore()) {
+                    pruned = true;
+                    break;
+                }
+                cursors[i] = sortedLists[i].advance(cursors[i], docId);
+                if (cursors[i] < sortedLists[i].size() && sortedLists[i].docId(cursors[i]) == docId)
+                    score += sortedLists[i].score(cursors[i]) * sortedWeights[i];
+            }
+            if (pruned)
+                continue;
+
+            collector.offer(TopKCollector.key(Float.floatToIntBits((float) score), docId), (float) score);
+            hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the reference count of a document.
+     *
+     * @param docId the ID of the document
+     * @return the reference count, or 0 if the document is unknown
+     */
+    private int refCountOf(int docId) {
+        return docId < refCounts.length ? refCounts[docId] : 0;
+    }
+
+    /**
+     * Returns the link-based sort value of a document: the bits of its PageRank,
+     * which order like the scores since they are non-negative, or its reference
+     * count if PageRank is not in use.
+     *
+     * @param docId the ID of the document
+     * @param ranks the PageRank snapshot, or null
+     * @return the sort value of the document
+     */
+    private int linkValueOf(int docId, PageRanks ranks) {
+        if (ranks == null)
+            return refCountOf(docId);
+        return docId < ranks.scores().length ? Float.floatToIntBits(ranks.scores()[docId]) : 0;
+    }
+
+    /**
+     * Grows an array indexed by document ID so that it can hold the given ID.
+     *
+     * @param array the array to grow
+     * @param docId the document ID that must fit in the array
+     * @return the original array, or a larger copy of it
+     */
+    private static int[] grow(int[] array, int docId) {
+        if (docId < array.length)
+            return array;
+        return Arrays.copyOf(array, Math.max(docId + 1, array.length * 2));
+    }
+}
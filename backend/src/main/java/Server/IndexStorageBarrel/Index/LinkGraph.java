@@ -0,0 +1,171 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.sql.*;
+import java.util.Arrays;
+
+/**
+ * The LinkGraph class holds the links between crawled websites in compressed
+ * sparse row form, with the incoming links of every website stored contiguously
+ * so that PageRank can pull the scores of the linking websites.
+ * <p>
+ * Websites are numbered densely from 0 as graph nodes, and each node keeps the
+ * document ID of its website.
+ */
+public class LinkGraph {
+    /**
+     * The document ID of each node.
+     */
+    private final int[] docIds;
+    /**
+     * The start of the incoming links of each node in the sources array, with a
+     * final entry holding the number of links.
+     */
+    private final int[] inOffsets;
+    /**
+     * The source node of every incoming link, grouped by target node.
+     */
+    private final int[] sources;
+    /**
+     * The number of outgoing links of each node.
+     */
+    private final int[] outDegrees;
+
+    /**
+     * Constructs a LinkGraph from its compressed sparse row arrays.
+     *
+     * @param docIds     the document ID of each node
+     * @param inOffsets  the start of the incoming links of each node
+     * @param sources    the source node of every incoming link
+     * @param outDegrees the number of outgoing links of each node
+     */
+    private LinkGraph(int[] docIds, int[] inOffsets, int[] sources, int[] outDegrees) {
+        this.docIds = docIds;
+        this.inOffsets = inOffsets;
+        this.sources = sources;
+        this.outDegrees = outDegrees;
+    }
+
+    /**
+     * Loads the links between crawled websites, matching each link to its target
+     * website by URL. Self-links are ignored.
+     *
+     * @param conn the database connection to read from
+     * @return the link graph
+     * @throws SQLException if an error occurs while reading the database
+     */
+    public static LinkGraph load(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Number the websites densely
+            int[] docIds = new int[1024];
+            int nodeCount = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM websites ORDER BY id")) {
+                while (rs.next()) {
+                    if (nodeCount == docIds.length)
+                        docIds = Arrays.copyOf(docIds, nodeCount * 2);
+                    docIds[nodeCount++] = rs.getInt(1);
+                }
+            }
+            docIds = Arrays.copyOf(docIds, nodeCount);
+
+            // Read the links as parallel arrays of source and target nodes
+            String sql = "SELECT wu.website_id, w.id FROM website_urls wu " +
+                    "JOIN urls u ON wu.url_id = u.id " +
+                    "JOIN websites w ON w.url = u.url " +
+                    "WHERE w.id <> wu.website_id";
+            int[] from = new int[1024];
+            int[] to = new int[1024];
+            int linkCount = 0;
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    int source = Arrays.binarySearch(docIds, rs.getInt(1));
+                    int target = Arrays.binarySearch(docIds, rs.getInt(2));
+                    if (source < 0 || target < 0)
+                        continue;
+                    if (linkCount == from.length) {
+                        from = Arrays.copyOf(from, linkCount * 2);
+                        to = Arrays.copyOf(to, linkCount * 2);
+                    }
+                    from[linkCount] = source;
+                    to[linkCount++] = target;
+                }
+            }
+
+            // Group the links by target with a counting sort
+            int[] inOffsets = new int[nodeCount + 1];
+            int[] outDegrees = new int[nodeCount];
+            for (int i = 0; i < linkCount; i++) {
+                inOffsets[to[i] + 1]++;
+                outDegrees[from[i]]++;
+            }
+            for (int node = 0; node < nodeCount; node++)
+                inOffsets[node + 1] += inOffsets[node];
+            int[] sources = new int[linkCount];
+            int[] next = Arrays.copyOf(inOffsets, nodeCount);
+            for (int i = 0; i < linkCount; i++)
+                sources[next[to[i]]++] = from[i];
+
+            return new LinkGraph(docIds, inOffsets, sources, outDegrees);
+        }
+    }
+
+    // Getters
+
+    /**
+     * Returns the number of nodes of the graph.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return docIds.length;
+    }
+
+    /**
+     * Returns the number of links of the graph.
+     *
+     * @return the number of links
+     */
+    public int linkCount() {
+        return sources.length;
+    }
+
+    /**
+     * Returns the document ID of a node.
+     *
+     * @param node the node
+     * @return the document ID of the node
+     */
+    public int docId(int node) {
+        return docIds[node];
+    }
+
+    /**
+     * Returns the start of the incoming links of a node in the sources array.
+     *
+     * @param node the node, or the number of nodes for the end of the last node
+     * @return the offset of the first incoming link of the node
+     */
+    public int inOffset(int node) {
+        return inOffsets[node];
+    }
+
+    /**
+     * Returns the source node of an incoming link.
+     *
+     * @param link the offset of the link in the sources array
+     * @return the source node of the link
+     */
+    public int source(int link) {
+        return sources[link];
+    }
+
+    /**
+     * Returns the number of outgoing links of a node.
+     *
+     * @param node the node
+     * @return the out-degree of the node
+     */
+    public int outDegree(int node) {
+        return outDegrees[node];
+    }
+}
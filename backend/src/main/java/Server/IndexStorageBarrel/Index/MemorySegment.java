@@ -0,0 +1,132 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.BitSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * The MemorySegment class is the writable part of the index, holding the
+ * postings of the recently added documents in the heap.
+ * Once frozen, it is searched like any other segment until it has been written
+ * to disk.
+ * <p>
+ * The segment is not thread-safe, it is guarded by the lock of the
+ * InvertedIndex that owns it.
+ */
+public class MemorySegment implements Segment {
+    /**
+     * The term dictionary, mapping each term to its posting list.
+     */
+    private final Map<String, PostingList> terms = new HashMap<>();
+    /**
+     * The stored lengths of the documents, indexed by document ID.
+     */
+    private int[] docLengths = new int[0];
+    /**
+     * The IDs of the documents of the segment.
+     */
+    private final BitSet documents = new BitSet();
+    /**
+     * The number of postings of the segment.
+     */
+    private long postingCount;
+    /**
+     * Whether any posting of the segment has positions.
+     */
+    private boolean positional;
+
+    /**
+     * Adds the terms of a document to the segment.
+     * Terms already indexed for the document keep their previous frequency.
+     *
+     * @param document the terms of the document
+     */
+    public void add(DocumentTerms document) {
+        for (Map.Entry<String, Float> entry : document.termFrequencies().entrySet())
+            add(entry.getKey(), document.docId(), entry.getValue(), document.docLength(),
+                    document.termPositions() == null ? null : document.termPositions().get(entry.getKey()));
+    }
+
+    /**
+     * Adds a single posting to the segment.
+     * If the term is already indexed for the document, the posting is ignored.
+     *
+     * @param term      the term
+     * @param docId     the ID of the document
+     * @param score     the normalized frequency of the term in the document
+     * @param docLength the number of tokens of the document
+     * @param positions the sorted token positions of the term in the document,
+     *                  or null if they are not indexed
+     */
+    public void add(String term, int docId, float score, int docLength, int[] positions) {
+        if (terms.computeIfAbsent(term, k -> new PostingList()).add(docId, score, positions))
+            postingCount++;
+        positional |= positions != null;
+        if (docId >= docLengths.length)
+            docLengths = Arrays.copyOf(docLengths, Math.max(docId + 1, docLengths.length * 2));
+        docLengths[docId] = docLength;
+        documents.set(docId);
+    }
+
+    /**
+     * Returns whether the segment holds no document.
+     *
+     * @return true if the segment is empty
+     */
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    @Override
+    public Postings postings(String term) {
+        return terms.get(term);
+    }
+
+    @Override
+    public List<String> terms() {
+        List<String> sortedTerms = new ArrayList<>(terms.keySet());
+        Collections.sort(sortedTerms);
+        return sortedTerms;
+    }
+
+    @Override
+    public Map<String, Integer> docFrequencies() {
+        Map<String, Integer> docFrequencies = new HashMap<>(terms.size() * 2);
+        terms.forEach((term, list) -> docFrequencies.put(term, list.size()));
+        return docFrequencies;
+    }
+
+    @Override
+    public int[] docIds() {
+        return documents.stream().toArray();
+    }
+
+    @Override
+    public int docLength(int docId) {
+        return docId < docLengths.length ? docLengths[docId] : 0;
+    }
+
+    @Override
+    public long postingCount() {
+        return postingCount;
+    }
+
+    @Override
+    public boolean hasPositions() {
+        return positional;
+    }
+
+    /**
+     * Returns the number of terms of the segment.
+     *
+     * @return the number of terms
+     */
+    public int termCount() {
+        return terms.size();
+    }
+}
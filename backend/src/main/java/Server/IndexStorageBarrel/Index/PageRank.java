@@ -0,0 +1,156 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The PageRank class computes the PageRank of every website of a LinkGraph by
+ * power iteration.
+ * <p>
+ * Each iteration pulls the scores of the linking websites through the incoming
+ * links of every node, splitting the nodes into ranges that are updated in
+ * parallel on a fork-join pool. The score of websites without outgoing links is
+ * spread evenly over all websites.
+ */
+public class PageRank {
+    /**
+     * The probability of following a link instead of jumping to a random website.
+     */
+    public static final double DAMPING = 0.85;
+    /**
+     * The total change of the scores below which the iteration has converged.
+     */
+    public static final double TOLERANCE = 1e-6;
+    /**
+     * The maximum number of iterations.
+     */
+    public static final int MAX_ITERATIONS = 100;
+    /**
+     * The number of nodes below which a range is updated without splitting it.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+
+    /**
+     * The result of a PageRank computation.
+     *
+     * @param scores     the PageRank of each node, summing to 1
+     * @param iterations the number of iterations run
+     * @param delta      the total change of the scores in the last iteration
+     */
+    public record Result(double[] scores, int iterations, double delta) {
+    }
+
+    /**
+     * Computes the PageRank of every node of the graph.
+     *
+     * @param graph the link graph
+     * @param pool  the fork-join pool running the iterations
+     * @return the scores and the number of iterations run
+     */
+    public static Result compute(LinkGraph graph, ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        if (n == 0)
+            return new Result(new double[0], 0, 0);
+
+        double[] scores = new double[n];
+        double[] next = new double[n];
+        Arrays.fill(scores, 1.0 / n);
+
+        int iterations = 0;
+        double delta = Double.MAX_VALUE;
+        while (iterations < MAX_ITERATIONS && delta > TOLERANCE) {
+            // The score of dangling websites is spread over every website
+            double danglingScore = 0;
+            for (int node = 0; node < n; node++)
+                if (graph.outDegree(node) == 0)
+                    danglingScore += scores[node];
+            double base = (1 - DAMPING) / n + DAMPING * danglingScore / n;
+
+            delta = pool.invoke(new Iteration(graph, scores, next, base, 0, n));
+            double[] swap = scores;
+            scores = next;
+            next = swap;
+            iterations++;
+        }
+        return new Result(scores, iterations, delta);
+    }
+
+    /**
+     * Updates the scores of a range of nodes for one iteration.
+     */
+    private static class Iteration extends RecursiveTask<Double> {
+        /**
+         * The link graph.
+         */
+        private final LinkGraph graph;
+        /**
+         * The scores of the previous iteration.
+         */
+        private final double[] scores;
+        /**
+         * The scores of this iteration.
+         */
+        private final double[] next;
+        /**
+         * The score every node receives regardless of its incoming links.
+         */
+        private final double base;
+        /**
+         * The first node of the range.
+         */
+        private final int from;
+        /**
+         * The end of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs an Iteration over a range of nodes.
+         *
+         * @param graph  the link graph
+         * @param scores the scores of the previous iteration
+         * @param next   the scores of this iteration
+         * @param base   the score every node receives regardless of its links
+         * @param from   the first node of the range
+         * @param to     the end of the range, exclusive
+         */
+        private Iteration(LinkGraph graph, double[] scores, double[] next, double base, int from, int to) {
+            this.graph = graph;
+            this.scores = scores;
+            this.next = next;
+            this.base = base;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Updates the range, splitting it in half while it is large.
+         *
+         * @return the total change of the scores of the range
+         */
+        @Override
+        protected Double compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                Iteration left = new Iteration(graph, scores, next, base, from, middle);
+                left.fork();
+                double right = new Iteration(graph, scores, next, base, middle, to).compute();
+                return right + left.join();
+            }
+
+            double delta = 0;
+            for (int node = from; node < to; node++) {
+                double sum = 0;
+                for (int link = graph.inOffset(node); link < graph.inOffset(node + 1); link++) {
+                    int source = graph.source(link);
+                    sum += scores[source] / graph.outDegree(source);
+                }
+                next[node] = base + DAMPING * sum;
+                delta += Math.abs(next[node] - scores[node]);
+            }
+            return delta;
+        }
+    }
+}
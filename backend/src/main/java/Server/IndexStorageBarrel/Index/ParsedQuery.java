@@ -0,0 +1,402 @@
+package Server.IndexStorageBarrel.Index;
+
+// Package imports
+import Analysis.Analyzer;
+
+// General imports
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.io.Serializable;
+
+/**
+ * Represents a search query parsed into a boolean tree.
+ * <p>
+ * Words separated by spaces must all appear in a matching document, as if
+ * joined by AND. OR matches either side, NOT excludes the documents matching
+ * what follows, and parentheses group clauses, so that
+ * {@code java (rmi OR sockets) NOT applet} is a valid query. Only uppercase
+ * operators are operators; the other words go through the same analyzer as
+ * the indexed text, and a word analyzed into several terms, such as
+ * "client/server", becomes a phrase. AND binds tighter than OR.
+ * <p>
+ * Words between double quotes form a phrase, which a document must contain
+ * with the words in order and next to each other. A phrase followed by ~N is a
+ * proximity constraint, allowing up to N other words inside it, such as
+ * "search engine"~3.
+ * <p>
+ * Malformed queries are repaired rather than rejected: unclosed quotes and
+ * parentheses run to the end of the query, and stray parentheses and dangling
+ * operators are ignored.
+ *
+ * @param root     the root of the boolean tree, or null if the query has no
+ *                 words
+ * @param keywords the distinct words of the query outside of any negation,
+ *                 including the words of the phrases, which score the matching
+ *                 documents
+ */
+public record ParsedQuery(QueryNode root, String[] keywords) implements Serializable {
+    /**
+     * The kind of a token of a query.
+     */
+    private enum Kind {
+        WORD, PHRASE, AND, OR, NOT, OPEN, CLOSE
+    }
+
+    /**
+     * A token of a query.
+     *
+     * @param kind   the kind of the token
+     * @param word   the analyzed word, for a word token
+     * @param phrase the phrase, for a phrase token
+     */
+    private record Token(Kind kind, String word, Phrase phrase) {
+    }
+
+    /**
+     * Parses a search query.
+     *
+     * @param query    the search query
+     * @param analyzer the analyzer of the indexed text
+     * @return the parsed query
+     */
+    public static ParsedQuery parse(String query, Analyzer analyzer) {
+        Parser parser = new Parser(tokenize(query, analyzer));
+        List<QueryNode> parts = new ArrayList<>();
+        while (parser.position < parser.tokens.size()) {
+            // A closing parenthesis without an opening one is skipped
+            if (parser.peek() == Kind.CLOSE)
+                parser.position++;
+            else
+                parts.add(parser.parseOr());
+        }
+        QueryNode root = combine(parts, true);
+
+        LinkedHashSet<String> keywords = new LinkedHashSet<>();
+        if (root != null)
+            collectKeywords(root, keywords);
+        return new ParsedQuery(root, keywords.toArray(String[]::new));
+    }
+
+    /**
+     * Splits a query into tokens.
+     *
+     * @param query    the search query
+     * @param analyzer the analyzer of the indexed text
+     * @return the tokens, in order
+     */
+    private static List<Token> tokenize(String query, Analyzer analyzer) {
+        List<Token> tokens = new ArrayList<>();
+        int position = 0;
+        while (position < query.length()) {
+            char c = query.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? Kind.OPEN : Kind.CLOSE, null, null));
+                position++;
+            } else if (c == '"') {
+                int closing = query.indexOf('"', position + 1);
+                if (closing < 0)
+                    closing = query.length();
+                String[] terms = analyzer.analyze(query.substring(position + 1, closing)).toArray(String[]::new);
+                position = Math.min(query.length(), closing + 1);
+
+                // An optional ~N right after the closing quote sets the slop
+                int slop = 0;
+                if (position < query.length() && query.charAt(position) == '~') {
+                    int end = position + 1;
+                    while (end < query.length() && end - position <= 6 && Character.isDigit(query.charAt(end)))
+                        end++;
+                    if (end > position + 1)
+                        slop = Integer.parseInt(query.substring(position + 1, end));
+                    position = end;
+                }
+                addTerms(tokens, terms, slop);
+            } else {
+                int end = position;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end))
+                        && "()\"".indexOf(query.charAt(end)) < 0)
+                    end++;
+                String word = query.substring(position, end);
+                position = end;
+                switch (word) {
+                    case "AND" -> tokens.add(new Token(Kind.AND, null, null));
+                    case "OR" -> tokens.add(new Token(Kind.OR, null, null));
+                    case "NOT" -> tokens.add(new Token(Kind.NOT, null, null));
+                    default -> addTerms(tokens, analyzer.analyze(word).toArray(String[]::new), 0);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds the token of a sequence of analyzed terms: nothing if there is none,
+     * a word if there is one, and a phrase otherwise.
+     *
+     * @param tokens the tokens of the query
+     * @param terms  the analyzed terms, in order
+     * @param slop   the slop of the phrase
+     */
+    private static void addTerms(List<Token> tokens, String[] terms, int slop) {
+        if (terms.length == 1)
+            tokens.add(new Token(Kind.WORD, terms[0], null));
+        else if (terms.length > 1)
+            tokens.add(new Token(Kind.PHRASE, null, new Phrase(terms, slop)));
+    }
+
+    /**
+     * A recursive descent parser over the tokens of a query, following the
+     * grammar:
+     * <pre>
+     * or      := and ('OR' and)*
+     * and     := unary ('AND'? unary)*
+     * unary   := 'NOT' unary | primary
+     * primary := '(' or ')' | phrase | word
+     * </pre>
+     * A rule that finds no operand returns null, and the null operands are left
+     * out of the enclosing clause.
+     */
+    private static class Parser {
+        /**
+         * The tokens of the query.
+         */
+        private final List<Token> tokens;
+        /**
+         * The index of the next token.
+         */
+        private int position;
+
+        /**
+         * Constructs a Parser over the given tokens.
+         *
+         * @param tokens the tokens of the query
+         */
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Returns the kind of the next token.
+         *
+         * @return the kind of the next token, or null at the end of the query
+         */
+        private Kind peek() {
+            return position < tokens.size() ? tokens.get(position).kind() : null;
+        }
+
+        /**
+         * Parses a disjunction.
+         *
+         * @return the parsed node, or null if it is empty
+         */
+        private QueryNode parseOr() {
+            List<QueryNode> clauses = new ArrayList<>();
+            clauses.add(parseAnd());
+            while (peek() == Kind.OR) {
+                position++;
+                clauses.add(parseAnd());
+            }
+            return combine(clauses, false);
+        }
+
+        /**
+         * Parses a conjunction, whose clauses may be joined by AND or by
+         * nothing.
+         *
+         * @return the parsed node, or null if it is empty
+         */
+        private QueryNode parseAnd() {
+            List<QueryNode> clauses = new ArrayList<>();
+            while (peek() != null && peek() != Kind.OR && peek() != Kind.CLOSE) {
+                if (peek() == Kind.AND)
+                    position++;
+                else
+                    clauses.add(parseUnary());
+            }
+            return combine(clauses, true);
+        }
+
+        /**
+         * Parses a negation or a primary clause.
+         *
+         * @return the parsed node, or null if it is empty
+         */
+        private QueryNode parseUnary() {
+            if (peek() == Kind.NOT) {
+                position++;
+                Kind next = peek();
+                QueryNode clause = next == null || next == Kind.OR || next == Kind.CLOSE ? null : parseUnary();
+                if (clause instanceof QueryNode.Not not)
+                    return not.clause();
+                return clause == null ? null : new QueryNode.Not(clause);
+            }
+            return parsePrimary();
+        }
+
+        /**
+         * Parses a group, a phrase or a word.
+         *
+         * @return the parsed node, or null if it is empty
+         */
+        private QueryNode parsePrimary() {
+            Token token = tokens.get(position++);
+            return switch (token.kind()) {
+                case WORD -> new QueryNode.Term(token.word());
+                case PHRASE -> token.phrase();
+                case OPEN -> {
+                    QueryNode group = parseOr();
+                    if (peek() == Kind.CLOSE)
+                        position++;
+                    yield group;
+                }
+                // Operators without an operand are ignored
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * Combines clauses into a conjunction or a disjunction, flattening the
+     * nested clauses of the same kind and leaving out the empty ones.
+     *
+     * @param clauses     the clauses, some of which may be null
+     * @param conjunction whether to build a conjunction or a disjunction
+     * @return the combined node, the only clause if there is one, or null if
+     *         there is none
+     */
+    private static QueryNode combine(List<QueryNode> clauses, boolean conjunction) {
+        List<QueryNode> flattened = new ArrayList<>();
+        for (QueryNode clause : clauses) {
+            if (clause instanceof QueryNode.And and && conjunction)
+                flattened.addAll(and.clauses());
+            else if (clause instanceof QueryNode.Or or && !conjunction)
+                flattened.addAll(or.clauses());
+            else if (clause != null)
+                flattened.add(clause);
+        }
+        if (flattened.size() <= 1)
+            return flattened.isEmpty() ? null : flattened.get(0);
+        return conjunction ? new QueryNode.And(List.copyOf(flattened)) : new QueryNode.Or(List.copyOf(flattened));
+    }
+
+    /**
+     * Collects the words of a node outside of any negation.
+     *
+     * @param node     the node
+     * @param keywords the collected words
+     */
+    private static void collectKeywords(QueryNode node, LinkedHashSet<String> keywords) {
+        switch (node) {
+            case QueryNode.Term term -> keywords.add(term.term());
+            case Phrase phrase -> keywords.addAll(List.of(phrase.terms()));
+            case QueryNode.And and -> and.clauses().forEach(clause -> collectKeywords(clause, keywords));
+            case QueryNode.Or or -> or.clauses().forEach(clause -> collectKeywords(clause, keywords));
+            case QueryNode.Not not -> {
+            }
+        }
+    }
+
+    /**
+     * Returns every term of the query, including the negated ones.
+     *
+     * @return the distinct terms of the query
+     */
+    public Set<String> terms() {
+        Set<String> terms = new LinkedHashSet<>();
+        if (root != null)
+            collectTerms(root, terms, false);
+        return terms;
+    }
+
+    /**
+     * Returns the terms of the phrases of the query, whose positions are needed
+     * to match it.
+     *
+     * @return the distinct terms of the phrases
+     */
+    public Set<String> phraseTerms() {
+        Set<String> terms = new LinkedHashSet<>();
+        if (root != null)
+            collectTerms(root, terms, true);
+        return terms;
+    }
+
+    /**
+     * Collects the terms of a node.
+     *
+     * @param node        the node
+     * @param terms       the collected terms
+     * @param phrasesOnly whether to only collect the terms of phrases
+     */
+    private static void collectTerms(QueryNode node, Set<String> terms, boolean phrasesOnly) {
+        switch (node) {
+            case QueryNode.Term term -> {
+                if (!phrasesOnly)
+                    terms.add(term.term());
+            }
+            case Phrase phrase -> terms.addAll(List.of(phrase.terms()));
+            case QueryNode.And and -> and.clauses().forEach(clause -> collectTerms(clause, terms, phrasesOnly));
+            case QueryNode.Or or -> or.clauses().forEach(clause -> collectTerms(clause, terms, phrasesOnly));
+            case QueryNode.Not not -> collectTerms(not.clause(), terms, phrasesOnly);
+        }
+    }
+
+    /**
+     * Returns whether a clause of the query matches every indexed document but
+     * the excluded ones, being a negation with no other clause to match, such
+     * as {@code NOT applet}. Such queries need the set of indexed documents.
+     *
+     * @return true if the query matches documents by exclusion
+     */
+    public boolean matchesByExclusion() {
+        return root != null && matchesByExclusion(root);
+    }
+
+    /**
+     * Returns whether a node, or one of its clauses, matches documents by
+     * exclusion.
+     *
+     * @param node the node
+     * @return true if the node matches documents by exclusion
+     */
+    private static boolean matchesByExclusion(QueryNode node) {
+        return switch (node) {
+            case QueryNode.Term term -> false;
+            case Phrase phrase -> false;
+            // The negated clauses of a conjunction only exclude, unless it has no other clause
+            case QueryNode.And and -> and.clauses().stream().allMatch(clause -> clause instanceof QueryNode.Not)
+                    || and.clauses().stream().anyMatch(clause -> matchesByExclusion(
+                            clause instanceof QueryNode.Not not ? not.clause() : clause));
+            case QueryNode.Or or -> or.clauses().stream().anyMatch(ParsedQuery::matchesByExclusion);
+            case QueryNode.Not not -> true;
+        };
+    }
+
+    /**
+     * Returns whether the query matches the documents containing any of its
+     * keywords, being a single word or words joined by OR. Such queries are
+     * ranked straight from the posting lists.
+     *
+     * @return true if the query is a plain disjunction of words
+     */
+    public boolean isDisjunction() {
+        if (root == null || root instanceof QueryNode.Term)
+            return true;
+        return root instanceof QueryNode.Or or
+                && or.clauses().stream().allMatch(clause -> clause instanceof QueryNode.Term);
+    }
+
+    /**
+     * Returns a normalized form of the query, identical for queries with the
+     * same tree up to the order and repetition of the clauses, used as a cache
+     * key.
+     *
+     * @return the normalized tree, or an empty string for an empty query
+     */
+    public String normalized() {
+        return root == null ? "" : root.normalized();
+    }
+}
@@ -0,0 +1,62 @@
+package Server.IndexStorageBarrel.Index;
+
+/**
+ * Represents a phrase or proximity constraint of a query: the terms must
+ * appear in the given order, with at most slop other tokens between the first
+ * and the last one. A slop of 0 is an exact phrase.
+ *
+ * @param terms the terms of the phrase, in order
+ * @param slop  the maximum number of extra tokens spanned by the phrase
+ */
+public record Phrase(String[] terms, int slop) implements QueryNode {
+    /**
+     * Checks whether the positions of the terms of the phrase in a document
+     * satisfy the phrase.
+     * For each occurrence of the first term, the earliest following occurrence
+     * of every next term is chosen, which gives the shortest span starting
+     * there. As the occurrences of the first term advance, so do the chosen
+     * ones, so every position is visited once.
+     * <p>
+     * A document indexed without positions cannot be checked, and matches as
+     * soon as it contains every term.
+     *
+     * @param positions the sorted positions of each term of the phrase in the
+     *                  document, null for the terms indexed without positions
+     * @return true if the document contains the phrase
+     */
+    public boolean matches(int[][] positions) {
+        for (int[] termPositions : positions)
+            if (termPositions == null)
+                return true;
+
+        int maxSpan = positions.length - 1 + slop;
+        int[] cursors = new int[positions.length];
+        for (int start : positions[0]) {
+            int previous = start;
+            boolean within = true;
+            for (int i = 1; i < positions.length && within; i++) {
+                int[] termPositions = positions[i];
+                while (cursors[i] < termPositions.length && termPositions[cursors[i]] <= previous)
+                    cursors[i]++;
+                // Later occurrences of the first term cannot find this term either
+                if (cursors[i] == termPositions.length)
+                    return false;
+                previous = termPositions[cursors[i]];
+                within = previous - start <= maxSpan;
+            }
+            if (within)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the phrase in query syntax.
+     *
+     * @return the quoted terms, followed by the slop if it is not 0
+     */
+    @Override
+    public String normalized() {
+        return "\"" + String.join(" ", terms) + "\"" + (slop == 0 ? "" : "~" + slop);
+    }
+}
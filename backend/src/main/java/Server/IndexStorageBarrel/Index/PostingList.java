@@ -0,0 +1,231 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Arrays;
+import java.io.Serializable;
+
+/**
+ * The PostingList class holds the documents containing a single term.
+ * Document IDs are kept sorted in a primitive int array, with the normalized
+ * frequency of the term in each document stored in a parallel float array.
+ * The positions of the term in each document are kept in a third parallel
+ * array, allocated when the first posting with positions is added.
+ * <p>
+ * A PostingList is serializable, so that a barrel can send the postings of a
+ * term to the gateway.
+ */
+public class PostingList implements Postings, Serializable {
+    /**
+     * The initial capacity of a new posting list.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+    /**
+     * The sorted document IDs of the posting list.
+     */
+    private int[] docIds;
+    /**
+     * The normalized term frequencies, parallel to the document IDs.
+     */
+    private float[] scores;
+    /**
+     * The token positions of the term, parallel to the document IDs, or null if
+     * no posting has positions.
+     */
+    private int[][] positions;
+    /**
+     * The number of postings in the list.
+     */
+    private int size;
+    /**
+     * The highest normalized term frequency in the list, used as a score upper
+     * bound for early termination.
+     */
+    private float maxScore;
+
+    /**
+     * Constructs an empty PostingList.
+     */
+    public PostingList() {
+        this.docIds = new int[INITIAL_CAPACITY];
+        this.scores = new float[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a posting to the list, keeping the document IDs sorted.
+     * If the document is already present, the existing posting is kept.
+     *
+     * @param docId the ID of the document
+     * @param score the normalized frequency of the term in the document
+     * @return true if the posting was added, false if it was already present
+     */
+    public boolean add(int docId, float score) {
+        return add(docId, score, null);
+    }
+
+    /**
+     * Adds a posting with the positions of the term to the list, keeping the
+     * document IDs sorted.
+     * If the document is already present, the existing posting is kept.
+     *
+     * @param docId         the ID of the document
+     * @param score         the normalized frequency of the term in the document
+     * @param termPositions the sorted token positions of the term in the
+     *                      document, or null if they are not indexed
+     * @return true if the posting was added, false if it was already present
+     */
+    public boolean add(int docId, float score, int[] termPositions) {
+        if (termPositions != null && positions == null)
+            positions = new int[docIds.length][];
+        maxScore = Math.max(maxScore, score);
+        // Crawled documents usually arrive in increasing ID order
+        if (size == 0 || docIds[size - 1] < docId) {
+            ensureCapacity(size + 1);
+            docIds[size] = docId;
+            scores[size] = score;
+            if (positions != null)
+                positions[size] = termPositions;
+            size++;
+            return true;
+        }
+
+        int position = Arrays.binarySearch(docIds, 0, size, docId);
+        if (position >= 0)
+            return false;
+
+        position = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(docIds, position, docIds, position + 1, size - position);
+        System.arraycopy(scores, position, scores, position + 1, size - position);
+        docIds[position] = docId;
+        scores[position] = score;
+        if (positions != null) {
+            System.arraycopy(positions, position, positions, position + 1, size - position);
+            positions[position] = termPositions;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Shrinks the backing arrays to the number of postings, before the list is
+     * serialized.
+     */
+    public void trimToSize() {
+        docIds = Arrays.copyOf(docIds, size);
+        scores = Arrays.copyOf(scores, size);
+        if (positions != null)
+            positions = Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * Grows the backing arrays to hold at least the given number of postings.
+     *
+     * @param capacity the minimum capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= docIds.length)
+            return;
+        int newCapacity = Math.max(capacity, docIds.length + (docIds.length >> 1));
+        docIds = Arrays.copyOf(docIds, newCapacity);
+        scores = Arrays.copyOf(scores, newCapacity);
+        if (positions != null)
+            positions = Arrays.copyOf(positions, newCapacity);
+    }
+
+    /**
+     * Finds the first posting at or after the given position whose document ID
+     * is greater than or equal to the target, galloping ahead before a binary
+     * search so that short skips stay cheap.
+     *
+     * @param from   the position to start from
+     * @param target the target document ID
+     * @return the position of the posting, or the size of the list if there is
+     *         none
+     */
+    @Override
+    public int advance(int from, int target) {
+        if (from >= size || docIds[from] >= target)
+            return from;
+
+        // Gallop until the target is bracketed
+        int low = from;
+        int step = 1;
+        int high = from + step;
+        while (high < size && docIds[high] < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size - 1);
+        if (docIds[high] < target)
+            return size;
+
+        int position = Arrays.binarySearch(docIds, low + 1, high + 1, target);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    // Getters
+
+    /**
+     * Returns the number of postings in the list.
+     *
+     * @return the number of postings
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the document ID at the given position.
+     *
+     * @param index the position in the list
+     * @return the document ID
+     */
+    @Override
+    public int docId(int index) {
+        return docIds[index];
+    }
+
+    /**
+     * Returns the normalized term frequency at the given position.
+     *
+     * @param index the position in the list
+     * @return the normalized frequency of the term in the document
+     */
+    @Override
+    public float score(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Returns the highest normalized term frequency in the list.
+     *
+     * @return the highest normalized term frequency
+     */
+    @Override
+    public float maxScore() {
+        return maxScore;
+    }
+
+    /**
+     * Returns the positions of the term in the document at the given position.
+     *
+     * @param index the position in the list
+     * @return the sorted token positions, or null if the document was indexed
+     *         without positions
+     */
+    @Override
+    public int[] positions(int index) {
+        return positions == null ? null : positions[index];
+    }
+
+    /**
+     * Returns whether any posting of the list has positions.
+     *
+     * @return true if positions are stored
+     */
+    public boolean hasPositions() {
+        return positions != null;
+    }
+}
@@ -0,0 +1,74 @@
+package Server.IndexStorageBarrel.Index;
+
+/**
+ * The Postings interface is a read-only view of the documents containing a
+ * single term in one part of the index, sorted by document ID.
+ * Postings are addressed by position, so that queries can keep one cursor per
+ * list and skip ahead with galloping advances.
+ * <p>
+ * Postings decoded from a segment file keep decoding state, so a list obtained
+ * from a segment lookup must only be used by the query that looked it up.
+ */
+public interface Postings {
+    /**
+     * Returns the number of postings in the list.
+     *
+     * @return the number of postings
+     */
+    int size();
+
+    /**
+     * Returns the document ID at the given position.
+     *
+     * @param index the position in the list
+     * @return the document ID
+     */
+    int docId(int index);
+
+    /**
+     * Returns the normalized term frequency at the given position.
+     *
+     * @param index the position in the list
+     * @return the normalized frequency of the term in the document
+     */
+    float score(int index);
+
+    /**
+     * Returns the highest normalized term frequency in the list, used as a score
+     * upper bound for early termination.
+     *
+     * @return the highest normalized term frequency
+     */
+    float maxScore();
+
+    /**
+     * Returns the positions of the term in the document at the given position.
+     *
+     * @param index the position in the list
+     * @return the sorted token positions of the term in the document, or null if
+     *         the document was indexed without positions
+     */
+    int[] positions(int index);
+
+    /**
+     * Finds the first posting at or after the given position whose document ID
+     * is greater than or equal to the target.
+     *
+     * @param from   the position to start from
+     * @param target the target document ID
+     * @return the position of the posting, or the size of the list if there is
+     *         none
+     */
+    int advance(int from, int target);
+
+    /**
+     * Returns whether the list holds a posting for the given document.
+     *
+     * @param docId the ID of the document
+     * @return true if the document contains the term
+     */
+    default boolean contains(int docId) {
+        int position = advance(0, docId);
+        return position < size() && docId(position) == docId;
+    }
+}
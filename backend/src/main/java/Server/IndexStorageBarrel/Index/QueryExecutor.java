@@ -0,0 +1,382 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.List;
+import java.util.BitSet;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * The QueryExecutor class finds the documents matching the boolean tree of a
+ * query, by turning each node into an iterator over the sorted IDs of its
+ * matching documents.
+ * <p>
+ * A conjunction orders its clauses by document frequency and is led by the
+ * rarest one: each document of the leader is probed in the other clauses with
+ * a galloping advance, and whenever a probe lands past it, the leader jumps
+ * ahead to that document. A query of several words thus reads the postings of
+ * its rarest word and a logarithmic number of postings of the others per
+ * probe. Negated clauses are only probed, and phrases are checked on the
+ * positions of the documents of their conjunction.
+ */
+public class QueryExecutor {
+    /**
+     * The document ID returned once an iterator is exhausted.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * An iterator over the sorted IDs of the documents matching a node.
+     */
+    private abstract static class DocIterator {
+        /**
+         * The current document ID, -1 before the first call to advance.
+         */
+        protected int docId = -1;
+
+        /**
+         * Moves to the first matching document whose ID is not less than the
+         * target, which must be greater than the current document ID.
+         *
+         * @param target the target document ID
+         * @return the new current document ID, or {@link #NO_MORE_DOCS}
+         */
+        abstract int advance(int target);
+
+        /**
+         * Returns an estimate of the number of matching documents, used to order
+         * the clauses of a conjunction.
+         *
+         * @return the estimated number of documents
+         */
+        abstract long cost();
+
+        /**
+         * Moves to the first matching document not before the target, staying
+         * on the current document if it qualifies.
+         *
+         * @param target the target document ID
+         * @return the new current document ID, or {@link #NO_MORE_DOCS}
+         */
+        int seek(int target) {
+            return docId >= target ? docId : advance(target);
+        }
+    }
+
+    /**
+     * Iterates over the documents containing a term, merging its posting lists
+     * from every segment.
+     */
+    private static class TermIterator extends DocIterator {
+        /**
+         * The posting lists of the term, one per segment.
+         */
+        private final Postings[] lists;
+        /**
+         * The current position in each posting list.
+         */
+        private final int[] cursors;
+        /**
+         * The index of the posting list holding the current document.
+         */
+        private int current;
+
+        /**
+         * Constructs a TermIterator over the given posting lists.
+         *
+         * @param lists the posting lists of the term, with disjoint documents
+         */
+        TermIterator(Postings[] lists) {
+            this.lists = lists;
+            this.cursors = new int[lists.length];
+        }
+
+        @Override
+        int advance(int target) {
+            docId = NO_MORE_DOCS;
+            for (int i = 0; i < lists.length; i++) {
+                cursors[i] = lists[i].advance(cursors[i], target);
+                if (cursors[i] < lists[i].size() && lists[i].docId(cursors[i]) < docId) {
+                    docId = lists[i].docId(cursors[i]);
+                    current = i;
+                }
+            }
+            return docId;
+        }
+
+        @Override
+        long cost() {
+            long cost = 0;
+            for (Postings list : lists)
+                cost += list.size();
+            return cost;
+        }
+
+        /**
+         * Returns the positions of the term in the current document.
+         *
+         * @return the sorted positions, or null if the document was indexed
+         *         without positions
+         */
+        int[] positions() {
+            return lists[current].positions(cursors[current]);
+        }
+    }
+
+    /**
+     * Iterates over the documents matched by every required clause and by no
+     * excluded clause.
+     */
+    private static class ConjunctionIterator extends DocIterator {
+        /**
+         * The required clauses, from the rarest to the most frequent.
+         */
+        private final DocIterator[] required;
+        /**
+         * The excluded clauses.
+         */
+        private final DocIterator[] excluded;
+
+        /**
+         * Constructs a ConjunctionIterator.
+         *
+         * @param required the required clauses, at least one
+         * @param excluded the excluded clauses
+         */
+        ConjunctionIterator(List<DocIterator> required, List<DocIterator> excluded) {
+            this.required = required.toArray(DocIterator[]::new);
+            Arrays.sort(this.required, Comparator.comparingLong(DocIterator::cost));
+            this.excluded = excluded.toArray(DocIterator[]::new);
+        }
+
+        @Override
+        int advance(int target) {
+            int candidate = required[0].advance(target);
+            while (candidate != NO_MORE_DOCS) {
+                int next = candidate;
+                for (int i = 1; i < required.length && next == candidate; i++)
+                    next = required[i].seek(candidate);
+                if (next == candidate && isExcluded(candidate))
+                    next = candidate + 1;
+                if (next == candidate && accept())
+                    break;
+                candidate = required[0].advance(next == candidate ? candidate + 1 : next);
+            }
+            return docId = candidate;
+        }
+
+        /**
+         * Checks whether a document matched by the required clauses is matched
+         * by an excluded clause.
+         *
+         * @param candidate the document ID
+         * @return true if the document is excluded
+         */
+        private boolean isExcluded(int candidate) {
+            for (DocIterator clause : excluded)
+                if (clause.seek(candidate) == candidate)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Checks a document matched by every required clause and by no excluded
+         * one against any further constraint.
+         *
+         * @return true if the current candidate matches
+         */
+        boolean accept() {
+            return true;
+        }
+
+        @Override
+        long cost() {
+            return required[0].cost();
+        }
+    }
+
+    /**
+     * Iterates over the documents containing a phrase: the documents holding
+     * every term of the phrase whose positions satisfy it.
+     */
+    private static class PhraseIterator extends ConjunctionIterator {
+        /**
+         * The phrase.
+         */
+        private final Phrase phrase;
+        /**
+         * The iterators of the terms of the phrase, in phrase order.
+         */
+        private final TermIterator[] terms;
+        /**
+         * The positions of each term in the current candidate.
+         */
+        private final int[][] positions;
+
+        /**
+         * Constructs a PhraseIterator.
+         *
+         * @param phrase the phrase
+         * @param terms  the iterators of the terms of the phrase, in phrase order
+         */
+        PhraseIterator(Phrase phrase, TermIterator[] terms) {
+            super(List.of(terms), List.of());
+            this.phrase = phrase;
+            this.terms = terms;
+            this.positions = new int[terms.length][];
+        }
+
+        @Override
+        boolean accept() {
+            for (int i = 0; i < terms.length; i++)
+                positions[i] = terms[i].positions();
+            return phrase.matches(positions);
+        }
+    }
+
+    /**
+     * Iterates over the documents matched by any clause.
+     */
+    private static class DisjunctionIterator extends DocIterator {
+        /**
+         * The clauses.
+         */
+        private final DocIterator[] clauses;
+
+        /**
+         * Constructs a DisjunctionIterator.
+         *
+         * @param clauses the clauses
+         */
+        DisjunctionIterator(List<DocIterator> clauses) {
+            this.clauses = clauses.toArray(DocIterator[]::new);
+        }
+
+        @Override
+        int advance(int target) {
+            docId = NO_MORE_DOCS;
+            for (DocIterator clause : clauses)
+                docId = Math.min(docId, clause.seek(target));
+            return docId;
+        }
+
+        @Override
+        long cost() {
+            long cost = 0;
+            for (DocIterator clause : clauses)
+                cost += clause.cost();
+            return cost;
+        }
+    }
+
+    /**
+     * Iterates over every indexed document, the base of a negation that is not
+     * part of a conjunction.
+     */
+    private static class AllDocsIterator extends DocIterator {
+        /**
+         * The indexed documents.
+         */
+        private final BitSet documents;
+
+        /**
+         * Constructs an AllDocsIterator.
+         *
+         * @param documents the indexed documents
+         */
+        AllDocsIterator(BitSet documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        int advance(int target) {
+            int next = documents.nextSetBit(target);
+            return docId = next < 0 ? NO_MORE_DOCS : next;
+        }
+
+        @Override
+        long cost() {
+            return documents.cardinality();
+        }
+    }
+
+    /**
+     * The posting lists of a term in every segment.
+     */
+    private final Function<String, Postings[]> lookup;
+    /**
+     * The indexed documents.
+     */
+    private final BitSet documents;
+
+    /**
+     * Constructs a QueryExecutor over a snapshot of the index, which must not
+     * change while it is used.
+     *
+     * @param lookup    the non-empty posting lists of a term in every segment
+     * @param documents the indexed documents
+     */
+    public QueryExecutor(Function<String, Postings[]> lookup, BitSet documents) {
+        this.lookup = lookup;
+        this.documents = documents;
+    }
+
+    /**
+     * Finds the documents matching a query tree.
+     *
+     * @param root the root of the query tree
+     * @return the sorted IDs of the matching documents
+     */
+    public int[] execute(QueryNode root) {
+        DocIterator iterator = iterator(root);
+        int[] matches = new int[16];
+        int count = 0;
+        for (int docId = iterator.advance(0); docId != NO_MORE_DOCS; docId = iterator.advance(docId + 1)) {
+            if (count == matches.length)
+                matches = Arrays.copyOf(matches, count * 2);
+            matches[count++] = docId;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Builds the iterator of a node.
+     *
+     * @param node the node
+     * @return the iterator over the documents matching the node
+     */
+    private DocIterator iterator(QueryNode node) {
+        return switch (node) {
+            case QueryNode.Term term -> new TermIterator(lookup.apply(term.term()));
+            case Phrase phrase -> {
+                TermIterator[] terms = new TermIterator[phrase.terms().length];
+                for (int i = 0; i < terms.length; i++)
+                    terms[i] = new TermIterator(lookup.apply(phrase.terms()[i]));
+                yield new PhraseIterator(phrase, terms);
+            }
+            case QueryNode.And and -> {
+                List<DocIterator> required = new ArrayList<>();
+                List<DocIterator> excluded = new ArrayList<>();
+                for (QueryNode clause : and.clauses()) {
+                    if (clause instanceof QueryNode.Not not)
+                        excluded.add(iterator(not.clause()));
+                    else
+                        required.add(iterator(clause));
+                }
+                if (required.isEmpty())
+                    required.add(new AllDocsIterator(documents));
+                yield new ConjunctionIterator(required, excluded);
+            }
+            case QueryNode.Or or -> {
+                List<DocIterator> clauses = new ArrayList<>();
+                for (QueryNode clause : or.clauses())
+                    clauses.add(iterator(clause));
+                yield new DisjunctionIterator(clauses);
+            }
+            case QueryNode.Not not -> new ConjunctionIterator(List.of(new AllDocsIterator(documents)),
+                    List.of(iterator(not.clause())));
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.List;
+import java.util.TreeSet;
+import java.io.Serializable;
+
+/**
+ * The QueryNode interface is a node of the boolean tree of a parsed query.
+ * Terms and phrases are the leaves, combined by conjunctions, disjunctions and
+ * negations. Nodes are serializable, so that a gateway can evaluate a query
+ * over the postings of several barrels.
+ */
+public sealed interface QueryNode extends Serializable
+        permits QueryNode.Term, Phrase, QueryNode.And, QueryNode.Or, QueryNode.Not {
+    /**
+     * Returns a normalized form of the node, identical for nodes matching the
+     * same documents up to the order and repetition of their clauses.
+     *
+     * @return the normalized form
+     */
+    String normalized();
+
+    /**
+     * A single term, matching the documents containing it.
+     *
+     * @param term the term
+     */
+    record Term(String term) implements QueryNode {
+        @Override
+        public String normalized() {
+            return term;
+        }
+    }
+
+    /**
+     * A conjunction, matching the documents matched by every clause.
+     *
+     * @param clauses the clauses, at least two
+     */
+    record And(List<QueryNode> clauses) implements QueryNode {
+        @Override
+        public String normalized() {
+            return "(" + String.join(" AND ", normalizedClauses(clauses)) + ")";
+        }
+    }
+
+    /**
+     * A disjunction, matching the documents matched by any clause.
+     *
+     * @param clauses the clauses, at least two
+     */
+    record Or(List<QueryNode> clauses) implements QueryNode {
+        @Override
+        public String normalized() {
+            return "(" + String.join(" OR ", normalizedClauses(clauses)) + ")";
+        }
+    }
+
+    /**
+     * A negation, matching the documents not matched by its clause.
+     *
+     * @param clause the negated clause
+     */
+    record Not(QueryNode clause) implements QueryNode {
+        @Override
+        public String normalized() {
+            return "NOT " + clause.normalized();
+        }
+    }
+
+    /**
+     * Normalizes the clauses of a conjunction or a disjunction, whose order and
+     * repetition do not matter.
+     *
+     * @param clauses the clauses
+     * @return the distinct normalized clauses, sorted
+     */
+    private static TreeSet<String> normalizedClauses(List<QueryNode> clauses) {
+        TreeSet<String> normalized = new TreeSet<>();
+        for (QueryNode clause : clauses)
+            normalized.add(clause.normalized());
+        return normalized;
+    }
+}
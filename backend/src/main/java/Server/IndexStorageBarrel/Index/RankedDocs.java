@@ -0,0 +1,38 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Arrays;
+
+/**
+ * Represents a ranked slice of the documents matching a query.
+ *
+ * @param docIds    the IDs of the documents, in rank order
+ * @param scores    the TF-IDF scores of the documents, parallel to the IDs
+ * @param refCounts the reference counts of the documents, parallel to the IDs
+ * @param totalHits the number of matching documents that were scored, which
+ *                  is a lower bound when early termination skipped documents
+ */
+public record RankedDocs(int[] docIds, float[] scores, int[] refCounts, int totalHits) {
+    /**
+     * Returns the number of documents in the slice.
+     *
+     * @return the number of documents
+     */
+    public int size() {
+        return docIds.length;
+    }
+
+    /**
+     * Returns a slice of the ranked documents.
+     *
+     * @param start  the rank of the first document of the slice
+     * @param length the maximum number of documents in the slice
+     * @return the ranked documents of the slice
+     */
+    public RankedDocs slice(int start, int length) {
+        int from = Math.min(start, docIds.length);
+        int to = Math.min(docIds.length, from + length);
+        return new RankedDocs(Arrays.copyOfRange(docIds, from, to), Arrays.copyOfRange(scores, from, to),
+                Arrays.copyOfRange(refCounts, from, to), totalHits);
+    }
+}
@@ -0,0 +1,69 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Segment interface is an immutable part of the index: a term dictionary,
+ * the postings of each term and the stored fields of each document.
+ * <p>
+ * A document may appear in several segments, for instance when a re-crawl adds
+ * new terms to it, but each term of a document is indexed in one segment only,
+ * so the postings of a term are the disjoint union of its postings in every
+ * segment.
+ */
+public interface Segment {
+    /**
+     * Returns the postings of a term in the segment.
+     *
+     * @param term the term
+     * @return the postings of the term, or null if the segment does not hold it
+     */
+    Postings postings(String term);
+
+    /**
+     * Returns the terms of the segment, in sorted order.
+     *
+     * @return the sorted terms
+     */
+    List<String> terms();
+
+    /**
+     * Returns the document frequency of every term of the segment, without
+     * decoding its postings.
+     *
+     * @return the number of documents of the segment holding each term
+     */
+    Map<String, Integer> docFrequencies();
+
+    /**
+     * Returns the IDs of the documents of the segment, in sorted order.
+     *
+     * @return the sorted document IDs
+     */
+    int[] docIds();
+
+    /**
+     * Returns the stored length of a document of the segment.
+     *
+     * @param docId the ID of the document
+     * @return the number of tokens of the document, or 0 if the segment does not
+     *         hold it
+     */
+    int docLength(int docId);
+
+    /**
+     * Returns the total number of postings of the segment.
+     *
+     * @return the number of postings
+     */
+    long postingCount();
+
+    /**
+     * Returns whether the postings of the segment may have positions.
+     *
+     * @return true if positions were indexed for some documents of the segment
+     */
+    boolean hasPositions();
+}
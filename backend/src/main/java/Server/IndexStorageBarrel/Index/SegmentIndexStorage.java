@@ -0,0 +1,628 @@
+package Server.IndexStorageBarrel.Index;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.io.*;
+import java.util.Map;
+import java.util.List;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.Connection;
+
+// Exception imports
+import java.sql.SQLException;
+
+/**
+ * The SegmentIndexStorage class stores the postings in a log-structured set of
+ * segment files instead of the website_keywords table.
+ * <p>
+ * Documents are appended to a write-ahead log before the transaction inserting
+ * their websites commits, and added to the memory segment of the index once it
+ * has. Each batch of the log starts with a batch number, which the transaction
+ * records as the user_version of the database, so that a batch whose
+ * transaction never committed is recognized and discarded on replay. A background thread flushes the memory segment
+ * to a new segment file once it holds enough postings, and merges the smallest
+ * segment files when there are too many of them. Flushes and merges write new
+ * files outside the index lock and then swap them into the index atomically,
+ * so queries are never blocked by the disk.
+ * <p>
+ * The live segments and the last log covered by them are recorded in a
+ * manifest, replaced atomically after each flush or merge. On startup the
+ * segments of the manifest are opened, files left behind by an interrupted
+ * flush or merge are deleted, and the logs not yet flushed are replayed.
+ */
+public class SegmentIndexStorage implements IndexStorage, Runnable {
+    /**
+     * The default number of postings in the memory segment that triggers a
+     * flush.
+     */
+    public static final long DEFAULT_FLUSH_POSTINGS = 1_000_000;
+    /**
+     * The number of segment files above which the smallest ones are merged.
+     */
+    public static final int MAX_SEGMENTS = 8;
+    /**
+     * The number of segment files merged together.
+     */
+    public static final int MERGE_FACTOR = 4;
+    /**
+     * The interval at which the memory segment and the segment files are
+     * checked, in milliseconds.
+     */
+    public static final long CHECK_INTERVAL = 1000;
+    /**
+     * The name of the manifest file.
+     */
+    private static final String MANIFEST = "segments";
+    /**
+     * The value written in place of a document ID at the start of a batch of
+     * the log, followed by the batch number.
+     */
+    private static final int BATCH_MARKER = -1;
+    /**
+     * The index whose postings are stored.
+     */
+    private final InvertedIndex index;
+    /**
+     * The directory holding the segment files, the logs and the manifest.
+     */
+    private final Path directory;
+    /**
+     * The number of postings in the memory segment that triggers a flush.
+     */
+    private final long flushPostings;
+    /**
+     * The live segment files, from the oldest to the newest. Only modified by the
+     * background thread once loaded.
+     */
+    private final List<DiskSegment> diskSegments = new ArrayList<>();
+    /**
+     * The next generation number, shared by the segment files and the logs.
+     */
+    private long generation = 1;
+    /**
+     * The generation of the last log whose documents are in the segment files.
+     */
+    private long flushedLog = 0;
+    /**
+     * The generation of the current log.
+     */
+    private long logGeneration;
+    /**
+     * The stream appending to the current log, or null before loading.
+     */
+    private DataOutputStream log;
+    /**
+     * The file output stream of the current log, used to sync it.
+     */
+    private FileOutputStream logFile;
+    /**
+     * The number of the last batch committed with the database.
+     */
+    private int committedBatch;
+    /**
+     * The size of the current log before the prepared batch, or -1 if no batch
+     * is prepared.
+     */
+    private long preparedPosition = -1;
+    /**
+     * A boolean value indicating whether the background thread is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a SegmentIndexStorage in the given directory and starts its
+     * flush and merge thread.
+     *
+     * @param index         the index whose postings are stored
+     * @param directory     the directory of the segment files
+     * @param flushPostings the number of postings in the memory segment that
+     *                      triggers a flush
+     */
+    public SegmentIndexStorage(InvertedIndex index, Path directory, long flushPostings) {
+        this.index = index;
+        this.directory = directory;
+        this.flushPostings = flushPostings;
+        new Thread(this, "Segment Storage").start();
+    }
+
+    /**
+     * Opens the segment files and replays the unflushed logs on the first call,
+     * and only reloads the reference counts afterwards.
+     *
+     * @param conn the database connection to read from
+     * @throws SQLException if an error occurs while reading the database
+     * @throws IOException  if an error occurs while reading the segment files
+     */
+    @Override
+    public synchronized void load(Connection conn) throws SQLException, IOException {
+        index.loadRefCounts(conn);
+        if (log != null)
+            return;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            committedBatch = rs.next() ? rs.getInt(1) : 0;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        List<String> segmentNames = readManifest();
+        for (String name : segmentNames)
+            diskSegments.add(DiskSegment.open(directory.resolve(name)));
+        index.setSegments(diskSegments);
+
+        // Delete leftovers and replay the logs not covered by the segment files
+        int replayed = 0;
+        List<Path> logs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".log") && generationOf(name) > flushedLog)
+                    logs.add(file);
+                else if (!name.equals(MANIFEST) && !segmentNames.contains(name))
+                    Files.delete(file);
+            }
+        }
+        logs.sort(Comparator.comparingLong(file -> generationOf(file.getFileName().toString())));
+        replayed += replayLogs(logs);
+        for (Path file : logs)
+            generation = Math.max(generation, generationOf(file.getFileName().toString()) + 1);
+        openLog();
+
+        long postings = diskSegments.stream().mapToLong(DiskSegment::postingCount).sum();
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, SegmentIndexStorage.class,
+                "Opened " + diskSegments.size() + " segments with " + postings + " postings and replayed "
+                        + replayed + " logged documents in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    @Override
+    public boolean storesPostingsInDatabase() {
+        return false;
+    }
+
+    /**
+     * Appends the documents to the log as a new batch and syncs it, then records
+     * the batch number in the transaction.
+     *
+     * @param conn      the connection of the transaction
+     * @param documents the terms of the documents
+     * @throws SQLException if the batch number cannot be recorded
+     * @throws IOException  if the log cannot be written
+     */
+    @Override
+    public synchronized void prepare(Connection conn, List<DocumentTerms> documents)
+            throws SQLException, IOException {
+        if (log == null)
+            throw new IOException("Segment storage is not loaded");
+        if (documents.isEmpty())
+            return;
+        int batch = committedBatch + 1;
+        preparedPosition = logFile.getChannel().position();
+        writeLog(batch, documents);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA user_version = " + batch);
+        }
+    }
+
+    /**
+     * Adds the documents of the prepared batch to the memory segment.
+     *
+     * @param documents the terms of the documents
+     */
+    @Override
+    public synchronized void publish(List<DocumentTerms> documents) {
+        if (preparedPosition >= 0) {
+            committedBatch++;
+            preparedPosition = -1;
+        }
+        for (DocumentTerms document : documents)
+            index.addDocument(document);
+    }
+
+    /**
+     * Truncates the prepared batch from the log.
+     *
+     * @throws IOException if the log cannot be truncated
+     */
+    @Override
+    public synchronized void abort() throws IOException {
+        if (preparedPosition < 0 || log == null)
+            return;
+        // Drop the bytes of a batch that failed half-written along with the buffer
+        log = new DataOutputStream(new BufferedOutputStream(logFile, 1 << 16));
+        logFile.getChannel().truncate(preparedPosition);
+        logFile.getChannel().force(false);
+        preparedPosition = -1;
+    }
+
+    /**
+     * Appends the documents of committed websites to the log, as part of the last
+     * committed batch, and adds them to the memory segment.
+     *
+     * @param documents the terms of the documents
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public synchronized void append(List<DocumentTerms> documents) throws IOException {
+        if (log == null)
+            throw new IOException("Segment storage is not loaded");
+        writeLog(committedBatch, documents);
+        for (DocumentTerms document : documents)
+            index.addDocument(document);
+    }
+
+    /**
+     * Appends a batch of documents to the log and syncs it once for the whole
+     * batch.
+     * Frequencies are quantized like in the segment files, so that a document
+     * ranks the same before and after its memory segment is flushed.
+     *
+     * @param batch     the number of the batch
+     * @param documents the terms of the documents
+     * @throws IOException if the log cannot be written
+     */
+    private void writeLog(int batch, List<DocumentTerms> documents) throws IOException {
+        for (DocumentTerms document : documents)
+            document.termFrequencies().replaceAll((term, score) -> CompressedPostings.quantize(score));
+        log.writeInt(BATCH_MARKER);
+        log.writeInt(batch);
+        for (DocumentTerms document : documents) {
+            log.writeInt(document.docId());
+            log.writeInt(document.docLength());
+            log.writeInt(document.termFrequencies().size());
+            for (Map.Entry<String, Float> entry : document.termFrequencies().entrySet()) {
+                log.writeUTF(entry.getKey());
+                log.writeFloat(entry.getValue());
+                // The positions are logged encoded, with an empty array when they are not indexed
+                int[] positions = document.termPositions() == null ? null
+                        : document.termPositions().get(entry.getKey());
+                byte[] encoded = positions == null ? new byte[0] : CompressedPostings.encodePositions(positions);
+                log.writeInt(encoded.length);
+                log.write(encoded);
+            }
+        }
+        log.flush();
+        logFile.getChannel().force(false);
+    }
+
+    @Override
+    public InvertedIndex.DocumentExport export(int startId) {
+        return index.openExport(startId);
+    }
+
+    /**
+     * Periodically flushes the memory segment and merges the segment files.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, SegmentIndexStorage.class, e);
+                running = false;
+            }
+            try {
+                if (index.getMemtablePostings() >= flushPostings)
+                    flush();
+                if (diskSegments.size() > MAX_SEGMENTS)
+                    merge();
+            } catch (IOException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, SegmentIndexStorage.class, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the memory segment to a new segment file. The log is rotated when
+     * the memory segment is frozen, so that the documents appended meanwhile go
+     * to the next memory segment and the next log.
+     *
+     * @throws IOException if the segment file or the manifest cannot be written
+     */
+    public void flush() throws IOException {
+        long startTime = System.currentTimeMillis();
+        MemorySegment frozen;
+        long rotatedLog;
+        Path file;
+        synchronized (this) {
+            // A prepared batch is published to the memory segment of its own log
+            if (log == null || preparedPosition >= 0 || (frozen = index.freezeMemtable()) == null)
+                return;
+            rotatedLog = logGeneration;
+            log.close();
+            openLog();
+            file = directory.resolve("seg-" + generation++ + ".idx");
+        }
+
+        DiskSegment.write(file, List.of(frozen));
+        DiskSegment segment = DiskSegment.open(file);
+        diskSegments.add(segment);
+        synchronized (this) {
+            flushedLog = rotatedLog;
+            writeManifest();
+        }
+        index.replaceSegments(List.of(frozen), segment);
+        deleteFlushedLogs();
+
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, SegmentIndexStorage.class,
+                "Flushed " + segment.postingCount() + " postings to " + file.getFileName() + " in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Merges the smallest segment files into a new one, unless the merged file
+     * would be too large to be mapped.
+     *
+     * @throws IOException if the segment file or the manifest cannot be written
+     */
+    private void merge() throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<DiskSegment> smallest = new ArrayList<>(diskSegments);
+        smallest.sort(Comparator.comparingLong(DiskSegment::fileSize));
+        HashSet<DiskSegment> selected = new HashSet<>(smallest.subList(0, MERGE_FACTOR));
+        // Segments too large to be mapped once merged are left as they are
+        if (selected.stream().mapToLong(DiskSegment::fileSize).sum() > DiskSegment.MAX_FILE_SIZE)
+            return;
+        // Keep the inputs in age order, so that the newest stored fields win
+        List<DiskSegment> inputs = diskSegments.stream().filter(selected::contains).toList();
+
+        Path file;
+        synchronized (this) {
+            file = directory.resolve("seg-" + generation++ + ".idx");
+        }
+        DiskSegment.write(file, inputs);
+        DiskSegment merged = DiskSegment.open(file);
+
+        diskSegments.add(diskSegments.indexOf(inputs.get(0)), merged);
+        diskSegments.removeAll(inputs);
+        synchronized (this) {
+            writeManifest();
+        }
+        index.replaceSegments(inputs, merged);
+        for (DiskSegment input : inputs)
+            input.delete();
+
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, SegmentIndexStorage.class,
+                "Merged " + inputs.size() + " segments into " + file.getFileName() + " with "
+                        + merged.postingCount() + " postings in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Reads the manifest, restoring the generation counters.
+     *
+     * @return the names of the live segment files, from the oldest to the newest
+     * @throws IOException if the manifest cannot be read
+     */
+    private List<String> readManifest() throws IOException {
+        List<String> segmentNames = new ArrayList<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest))
+            return segmentNames;
+
+        for (String line : Files.readAllLines(manifest)) {
+            String[] parts = line.split(" ", 2);
+            switch (parts[0]) {
+                case "generation" -> generation = Long.parseLong(parts[1]);
+                case "flushed" -> flushedLog = Long.parseLong(parts[1]);
+                case "segment" -> segmentNames.add(parts[1]);
+                default -> throw new IOException("Invalid manifest line: " + line);
+            }
+        }
+        return segmentNames;
+    }
+
+    /**
+     * Atomically replaces the manifest with the current live segment files.
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    private void writeManifest() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("generation " + generation);
+        lines.add("flushed " + flushedLog);
+        for (DiskSegment segment : diskSegments)
+            lines.add("segment " + segment.getFile().getFileName());
+
+        Path tempFile = directory.resolve(MANIFEST + ".tmp");
+        Files.write(tempFile, lines);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Opens a new log with the next generation number.
+     *
+     * @throws IOException if the log cannot be created
+     */
+    private void openLog() throws IOException {
+        logGeneration = generation++;
+        logFile = new FileOutputStream(directory.resolve("wal-" + logGeneration + ".log").toFile());
+        log = new DataOutputStream(new BufferedOutputStream(logFile, 1 << 16));
+    }
+
+    /**
+     * Adds the documents of the logs to the memory segment, a batch once the next
+     * one starts. A batch is only written once the previous one committed, so
+     * only the last batch may belong to a transaction that never committed: it
+     * is then truncated from its log instead. A record cut short by a crash ends
+     * the replay of its log, since it was never acknowledged.
+     *
+     * @param logs the logs to replay, from the oldest to the newest
+     * @return the number of documents replayed
+     * @throws IOException if a log cannot be read or truncated
+     */
+    private int replayLogs(List<Path> logs) throws IOException {
+        int replayed = 0;
+        // The last batch read, held back until it is known to be committed
+        List<DocumentTerms> batch = new ArrayList<>();
+        int batchNumber = committedBatch;
+        Path batchFile = null;
+        long batchPosition = 0;
+        for (Path file : logs) {
+            try (CountingInputStream counter = new CountingInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)));
+                    DataInputStream in = new DataInputStream(counter)) {
+                while (true) {
+                    long position = counter.getCount();
+                    int docId = in.readInt();
+                    if (docId == BATCH_MARKER) {
+                        int number = in.readInt();
+                        replayed += addDocuments(batch);
+                        batchNumber = number;
+                        batchFile = file;
+                        batchPosition = position;
+                        continue;
+                    }
+                    int docLength = in.readInt();
+                    int termCount = in.readInt();
+                    Map<String, Float> termFrequencies = new HashMap<>();
+                    Map<String, int[]> termPositions = new HashMap<>();
+                    for (int i = 0; i < termCount; i++) {
+                        String term = in.readUTF();
+                        termFrequencies.put(term, in.readFloat());
+                        byte[] encoded = new byte[in.readInt()];
+                        in.readFully(encoded);
+                        if (encoded.length > 0)
+                            termPositions.put(term, CompressedPostings.decodePositions(encoded));
+                    }
+                    batch.add(new DocumentTerms(docId, docLength, termFrequencies,
+                            termPositions.isEmpty() ? null : termPositions));
+                }
+            } catch (EOFException e) {
+                // End of the log
+            }
+        }
+
+        if (batchNumber == committedBatch)
+            return replayed + addDocuments(batch);
+        try (FileChannel channel = FileChannel.open(batchFile, StandardOpenOption.WRITE)) {
+            channel.truncate(batchPosition);
+            channel.force(false);
+        }
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, SegmentIndexStorage.class,
+                "Discarded " + batch.size() + " logged documents of an uncommitted batch");
+        return replayed;
+    }
+
+    /**
+     * Adds documents read from a log to the memory segment and clears them.
+     *
+     * @param documents the documents
+     * @return the number of documents added
+     */
+    private int addDocuments(List<DocumentTerms> documents) {
+        int added = documents.size();
+        for (DocumentTerms document : documents)
+            index.addDocument(document);
+        documents.clear();
+        return added;
+    }
+
+    /**
+     * Deletes the logs whose documents are all in the segment files.
+     *
+     * @throws IOException if the directory cannot be listed
+     */
+    private void deleteFlushedLogs() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".log") && generationOf(name) <= flushedLog)
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the generation number in the name of a segment file or log.
+     *
+     * @param name the file name, such as seg-12.idx or wal-13.log
+     * @return the generation number
+     */
+    private static long generationOf(String name) {
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    /**
+     * Stops the background thread and closes the log. The memory segment is
+     * recovered from the log on the next start.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            if (log != null)
+                log.close();
+            log = null;
+        } catch (IOException e) {
+            LogUtil.logError(LogUtil.ANSI_RED, SegmentIndexStorage.class, e);
+        }
+    }
+
+    /**
+     * An input stream counting the bytes read through it, to find the position
+     * of a batch in a log.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        /**
+         * The number of bytes read.
+         */
+        private long count;
+
+        /**
+         * Constructs a CountingInputStream over the given stream.
+         *
+         * @param in the stream to read from
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * Returns the number of bytes read.
+         *
+         * @return the number of bytes read
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Map;
+
+/**
+ * The SimHash class computes the 64-bit SimHash fingerprint of a document, as
+ * described by Charikar: every term votes on each bit of the fingerprint with
+ * the bits of its hash, weighted by its frequency, so that documents sharing
+ * most of their terms get fingerprints differing in few bits.
+ * <p>
+ * The weight of a term grows with the logarithm of its frequency, so that the
+ * most common words of a language, shared by unrelated pages, do not decide
+ * the fingerprint on their own. The order of the terms is ignored, which makes
+ * the same listing sorted in another order a duplicate of the original.
+ */
+public class SimHash {
+    /**
+     * The number of terms below which a document is too short for its
+     * fingerprint to be reliable.
+     */
+    public static final int MIN_TOKENS = 30;
+
+    /**
+     * Computes the fingerprint of a document.
+     *
+     * @param termCounts the number of occurrences of each term of the document
+     * @return the fingerprint
+     */
+    public static long fingerprint(Map<String, Integer> termCounts) {
+        double[] votes = new double[64];
+        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+            long hash = hash(entry.getKey());
+            double weight = 1 + Math.log(entry.getValue());
+            for (int bit = 0; bit < 64; bit++)
+                votes[bit] += ((hash >>> bit) & 1) != 0 ? weight : -weight;
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++)
+            if (votes[bit] > 0)
+                fingerprint |= 1L << bit;
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of bits in which two fingerprints differ.
+     *
+     * @param a the first fingerprint
+     * @param b the second fingerprint
+     * @return the Hamming distance between the fingerprints
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Hashes a term into 64 well-mixed bits, with FNV-1a followed by the
+     * finalizer of MurmurHash3.
+     *
+     * @param term the term
+     * @return the hash of the term
+     */
+    private static long hash(String term) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < term.length(); i++) {
+            hash ^= term.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
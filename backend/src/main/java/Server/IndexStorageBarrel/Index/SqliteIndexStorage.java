@@ -0,0 +1,70 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.List;
+import java.sql.Connection;
+
+// Exception imports
+import java.sql.SQLException;
+
+/**
+ * The SqliteIndexStorage class stores the postings in the website_keywords
+ * table, next to the relational data, and rebuilds the whole index from it in
+ * the heap.
+ */
+public class SqliteIndexStorage implements IndexStorage {
+    /**
+     * The index built from the database.
+     */
+    private final InvertedIndex index;
+
+    /**
+     * Constructs a SqliteIndexStorage for the given index.
+     *
+     * @param index the index built from the database
+     */
+    public SqliteIndexStorage(InvertedIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void load(Connection conn) throws SQLException {
+        index.load(conn);
+    }
+
+    @Override
+    public boolean storesPostingsInDatabase() {
+        return true;
+    }
+
+    @Override
+    public void prepare(Connection conn, List<DocumentTerms> documents) {
+        // The postings are inserted in the same transaction as the websites
+    }
+
+    @Override
+    public void publish(List<DocumentTerms> documents) {
+        append(documents);
+    }
+
+    @Override
+    public void abort() {
+        // The postings are rolled back with the database
+    }
+
+    @Override
+    public void append(List<DocumentTerms> documents) {
+        for (DocumentTerms document : documents)
+            index.addDocument(document);
+    }
+
+    @Override
+    public InvertedIndex.DocumentExport export(int startId) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // The postings are committed with the database
+    }
+}
@@ -0,0 +1,12 @@
+package Server.IndexStorageBarrel.Index;
+
+/**
+ * Represents a document kept in the DocumentStore.
+ *
+ * @param docId the ID of the website
+ * @param url   the URL of the website
+ * @param title the title of the website
+ * @param body  the text of the website
+ */
+public record StoredDocument(int docId, String url, String title, String body) {
+}
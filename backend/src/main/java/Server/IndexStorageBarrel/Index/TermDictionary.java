@@ -0,0 +1,266 @@
+package Server.IndexStorageBarrel.Index;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+
+/**
+ * The TermDictionary class is an immutable, compact sorted dictionary of the
+ * index terms, used to suggest the completions of a prefix.
+ * <p>
+ * The terms are front coded in blocks: each term is stored as the length of
+ * the prefix it shares with the previous term, followed by the rest of its
+ * characters, and the first term of each block is kept whole so that the
+ * dictionary can be binary searched. The completions of a prefix form a range
+ * of ordinals, which is found by decoding at most two blocks.
+ * <p>
+ * Each term has a weight, and the completions are returned from the heaviest
+ * to the lightest. Ranges of up to {@link #SCAN_LIMIT} terms are scanned, and
+ * the top completions of every larger range are precomputed, so a suggestion
+ * never looks at more than a few hundred weights.
+ */
+public class TermDictionary {
+    /**
+     * The number of terms of a front coded block.
+     */
+    public static final int BLOCK_SIZE = 16;
+    /**
+     * The maximum number of completions returned for a prefix.
+     */
+    public static final int MAX_SUGGESTIONS = 10;
+    /**
+     * The largest range of completions that is scanned instead of precomputed.
+     */
+    public static final int SCAN_LIMIT = 256;
+    /**
+     * The number of terms of the dictionary.
+     */
+    private final int size;
+    /**
+     * The first term of each block.
+     */
+    private final String[] blockHeads;
+    /**
+     * The offset of each block in the front coded data.
+     */
+    private final int[] blockOffsets;
+    /**
+     * The front coded terms: for each term, the shared prefix length, the
+     * suffix length and the suffix characters.
+     */
+    private final char[] data;
+    /**
+     * The weight of each term, by ordinal.
+     */
+    private final long[] weights;
+    /**
+     * The ordinals of the top completions of every prefix whose range is larger
+     * than the scan limit, from the heaviest to the lightest.
+     */
+    private final Map<String, int[]> topTerms = new HashMap<>();
+
+    /**
+     * Constructs a TermDictionary holding the given terms.
+     * Empty terms and terms too long to be front coded are left out.
+     *
+     * @param termWeights the weight of each term
+     */
+    public TermDictionary(Map<String, Long> termWeights) {
+        String[] terms = termWeights.keySet().stream()
+                .filter(term -> !term.isEmpty() && term.length() <= Character.MAX_VALUE)
+                .sorted()
+                .toArray(String[]::new);
+        size = terms.length;
+        weights = new long[size];
+        blockHeads = new String[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        blockOffsets = new int[blockHeads.length];
+
+        StringBuilder encoded = new StringBuilder();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            String term = terms[ordinal];
+            weights[ordinal] = termWeights.get(term);
+            int shared = 0;
+            if (ordinal % BLOCK_SIZE == 0) {
+                blockHeads[ordinal / BLOCK_SIZE] = term;
+                blockOffsets[ordinal / BLOCK_SIZE] = encoded.length();
+            } else {
+                String previous = terms[ordinal - 1];
+                int common = Math.min(previous.length(), term.length());
+                while (shared < common && previous.charAt(shared) == term.charAt(shared))
+                    shared++;
+            }
+            encoded.append((char) shared).append((char) (term.length() - shared)).append(term, shared, term.length());
+        }
+        data = new char[encoded.length()];
+        encoded.getChars(0, encoded.length(), data, 0);
+
+        precompute(terms, 0, size, 0);
+    }
+
+    /**
+     * Precomputes the top completions of the prefixes, one character longer
+     * than the given depth, whose range is larger than the scan limit.
+     * All the terms of the given range share their first depth characters.
+     *
+     * @param terms the sorted terms
+     * @param from  the first ordinal of the range
+     * @param to    the ordinal after the last one of the range
+     * @param depth the length of the shared prefix
+     */
+    private void precompute(String[] terms, int from, int to, int depth) {
+        int start = from;
+        // Only the first term of the range can be the shared prefix itself
+        if (start < to && terms[start].length() == depth)
+            start++;
+        while (start < to) {
+            char next = terms[start].charAt(depth);
+            int end = start + 1;
+            while (end < to && terms[end].charAt(depth) == next)
+                end++;
+            if (end - start > SCAN_LIMIT) {
+                topTerms.put(terms[start].substring(0, depth + 1), top(start, end, MAX_SUGGESTIONS));
+                precompute(terms, start, end, depth + 1);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Selects the heaviest terms of a range of ordinals, breaking ties by
+     * ordinal.
+     *
+     * @param from  the first ordinal of the range
+     * @param to    the ordinal after the last one of the range
+     * @param limit the maximum number of terms
+     * @return the selected ordinals, from the heaviest to the lightest
+     */
+    private int[] top(int from, int to, int limit) {
+        int[] best = new int[Math.max(0, Math.min(limit, to - from))];
+        if (best.length == 0)
+            return best;
+        int count = 0;
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            if (count == best.length && weights[ordinal] <= weights[best[count - 1]])
+                continue;
+            int position = count < best.length ? count++ : count - 1;
+            while (position > 0 && weights[best[position - 1]] < weights[ordinal]) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = ordinal;
+        }
+        return best;
+    }
+
+    /**
+     * Decodes the next term of a block into the given builder.
+     *
+     * @param term     the builder holding the previous term of the block
+     * @param position the offset of the term in the front coded data
+     * @return the offset of the following term
+     */
+    private int decode(StringBuilder term, int position) {
+        int shared = data[position];
+        int length = data[position + 1];
+        term.setLength(shared);
+        term.append(data, position + 2, length);
+        return position + 2 + length;
+    }
+
+    /**
+     * Returns the term at the given ordinal.
+     *
+     * @param ordinal the ordinal of the term
+     * @return the term
+     */
+    private String term(int ordinal) {
+        StringBuilder term = new StringBuilder();
+        int position = blockOffsets[ordinal / BLOCK_SIZE];
+        for (int i = ordinal - ordinal % BLOCK_SIZE; i <= ordinal; i++)
+            position = decode(term, position);
+        return term.toString();
+    }
+
+    /**
+     * Finds the first term that is not before the given key.
+     *
+     * @param key the key
+     * @return the ordinal of the first term greater than or equal to the key, or
+     *         the size of the dictionary if there is none
+     */
+    private int lowerBound(String key) {
+        // Find the last block whose first term is not after the key
+        int low = 0;
+        int high = blockHeads.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blockHeads[middle].compareTo(key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else
+                high = middle - 1;
+        }
+        if (block < 0)
+            return 0;
+
+        StringBuilder term = new StringBuilder();
+        int position = blockOffsets[block];
+        int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+        for (int ordinal = block * BLOCK_SIZE; ordinal < end; ordinal++) {
+            position = decode(term, position);
+            if (CharSequence.compare(term, key) >= 0)
+                return ordinal;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the heaviest terms starting with the given prefix.
+     *
+     * @param prefix the prefix
+     * @param limit  the maximum number of terms, capped at
+     *               {@link #MAX_SUGGESTIONS}
+     * @return the completions of the prefix, from the heaviest to the lightest
+     */
+    public List<String> suggest(String prefix, int limit) {
+        List<String> suggestions = new ArrayList<>();
+        limit = Math.min(limit, MAX_SUGGESTIONS);
+        if (prefix.isEmpty() || limit <= 0)
+            return suggestions;
+
+        int from = lowerBound(prefix);
+        char last = prefix.charAt(prefix.length() - 1);
+        int to = last == Character.MAX_VALUE ? size
+                : lowerBound(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+        if (from >= to)
+            return suggestions;
+
+        int[] ordinals = to - from > SCAN_LIMIT ? topTerms.get(prefix) : null;
+        if (ordinals == null)
+            ordinals = top(from, to, limit);
+        for (int i = 0; i < ordinals.length && i < limit; i++)
+            suggestions.add(term(ordinals[i]));
+        return suggestions;
+    }
+
+    /**
+     * Returns the number of terms of the dictionary.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of precomputed prefixes.
+     *
+     * @return the number of prefixes whose completions are precomputed
+     */
+    public int precomputedCount() {
+        return topTerms.size();
+    }
+}
@@ -0,0 +1,179 @@
+package Server.IndexStorageBarrel.Index;
+
+/**
+ * The TopKCollector class keeps the k best documents seen while evaluating a
+ * query, in a bounded min-heap over primitive arrays.
+ * <p>
+ * Each document is ranked by a packed key holding the sort value (the TF-IDF
+ * score or the reference count) in the high bits and the inverted document ID
+ * in the low bits, so that ties are broken in favour of the lowest document ID.
+ */
+public class TopKCollector {
+    /**
+     * The maximum number of documents kept.
+     */
+    private final int capacity;
+    /**
+     * The heap of packed ranking keys, with the worst document at the root.
+     */
+    private final long[] keys;
+    /**
+     * The TF-IDF scores of the documents, parallel to the keys.
+     */
+    private final float[] scores;
+    /**
+     * The number of documents in the heap.
+     */
+    private int size;
+
+    /**
+     * Constructs a TopKCollector keeping at most the given number of documents.
+     *
+     * @param capacity the maximum number of documents kept
+     */
+    public TopKCollector(int capacity) {
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.scores = new float[capacity];
+    }
+
+    /**
+     * Packs a sort value and a document ID into a ranking key.
+     *
+     * @param value the non-negative sort value
+     * @param docId the ID of the document
+     * @return the ranking key, larger keys rank first
+     */
+    public static long key(int value, int docId) {
+        return ((long) value << 32) | (Integer.MAX_VALUE - docId);
+    }
+
+    /**
+     * Offers a document to the collector.
+     *
+     * @param key   the ranking key of the document
+     * @param score the TF-IDF score of the document
+     */
+    public void offer(long key, float score) {
+        if (size < capacity) {
+            keys[size] = key;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (capacity > 0 && key > keys[0]) {
+            keys[0] = key;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns whether the collector already holds k documents.
+     *
+     * @return true if the collector is full, false otherwise
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Returns the sort value of the worst document kept, which a new document
+     * must beat to enter a full collector.
+     *
+     * @return the sort value at the root of the heap
+     */
+    public int minValue() {
+        return (int) (keys[0] >>> 32);
+    }
+
+    /**
+     * Returns the TF-IDF score of the worst document kept.
+     *
+     * @return the score at the root of the heap
+     */
+    public float minScore() {
+        return scores[0];
+    }
+
+    /**
+     * Empties the heap into rank order and returns the requested slice.
+     *
+     * @param start     the rank of the first document of the slice
+     * @param length    the maximum number of documents in the slice
+     * @param refCounts the reference counts of all documents, indexed by ID
+     * @param totalHits the number of matching documents that were scored
+     * @return the ranked documents of the slice
+     */
+    public RankedDocs drain(int start, int length, int[] refCounts, int totalHits) {
+        // Pop the worst document into the back of the arrays until the heap is empty
+        int count = size;
+        while (size > 1) {
+            swap(0, --size);
+            siftDown(0);
+        }
+        size = 0;
+
+        int end = Math.min(count, start + length);
+        int sliceLength = Math.max(0, end - start);
+        int[] docIds = new int[sliceLength];
+        float[] sliceScores = new float[sliceLength];
+        int[] sliceRefCounts = new int[sliceLength];
+        for (int i = 0; i < sliceLength; i++) {
+            int docId = Integer.MAX_VALUE - (int) keys[start + i];
+            docIds[i] = docId;
+            sliceScores[i] = scores[start + i];
+            sliceRefCounts[i] = docId < refCounts.length ? refCounts[docId] : 0;
+        }
+        return new RankedDocs(docIds, sliceScores, sliceRefCounts, totalHits);
+    }
+
+    /**
+     * Moves the entry at the given position up until the heap property holds.
+     *
+     * @param position the position of the entry
+     */
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (keys[parent] <= keys[position])
+                return;
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    /**
+     * Moves the entry at the given position down until the heap property holds.
+     *
+     * @param position the position of the entry
+     */
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && keys[left] < keys[smallest])
+                smallest = left;
+            if (right < size && keys[right] < keys[smallest])
+                smallest = right;
+            if (smallest == position)
+                return;
+            swap(smallest, position);
+            position = smallest;
+        }
+    }
+
+    /**
+     * Swaps two entries of the heap.
+     *
+     * @param i the position of the first entry
+     * @param j the position of the second entry
+     */
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -1,25 +1,45 @@
 package Server.IndexStorageBarrel;
 
 // Package imports
+import Analysis.Analyzer;
 import ReliableMulticast.ReliableMulticast;
 import Server.Downloader.DownloaderWorker;
 import Server.IndexStorageBarrel.Operations.*;
+import Server.IndexStorageBarrel.Index.RankedDocs;
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.IndexStorage;
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Index.SqliteIndexStorage;
+import Server.IndexStorageBarrel.Index.SegmentIndexStorage;
 import Server.Controller.RMIGateway;
+import Server.IndexStorageBarrel.Objects.CacheStats;
+import Server.IndexStorageBarrel.Objects.DuplicateStats;
+import Server.IndexStorageBarrel.Objects.IngestStats;
+import Server.IndexStorageBarrel.Objects.PageRankStats;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.PartitionPostings;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Objects.CollectionStats;
+import Server.IndexStorageBarrel.Objects.PartitionHits;
 
 // Logging imports
 import Logger.LogUtil;
 
 // General imports
 import java.util.List;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.nio.file.Path;
 import java.rmi.registry.Registry;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.concurrent.CountDownLatch;
 
+import org.springframework.web.util.HtmlUtils;
+
 // Exception imports
+import java.io.IOException;
 import java.sql.SQLException;
 import java.rmi.RemoteException;
 
@@ -41,9 +61,21 @@ import java.rmi.RemoteException;
 public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStorageBarrelInterface {
 
     /**
-     * The connection to the SQLite database.
+     * The SQLite database, with a writer connection and a pool of readers.
+     */
+    private BarrelDatabase database;
+    /**
+     * The in-memory index used to answer search queries.
+     */
+    private final InvertedIndex index = new InvertedIndex();
+    /**
+     * The storage engine of the postings of the index.
+     */
+    private IndexStorage indexStorage;
+    /**
+     * The store of the URL, title and text of the websites.
      */
-    private Connection conn;
+    private DocumentStore documentStore;
     /**
      * The BarrelPinger object associated with this IndexStorageBarrel.
      */
@@ -64,6 +96,41 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * The BarrelSync object associated with this IndexStorageBarrel.
      */
     private BarrelSync barrelSync;
+    /**
+     * The BarrelStateTransfer object streaming the state of this barrel to its
+     * joining replicas.
+     */
+    private BarrelStateTransfer barrelStateTransfer;
+    /**
+     * The BarrelCursors object holding the open result cursors.
+     */
+    private BarrelCursors barrelCursors;
+    /**
+     * The BarrelSearchCounter object counting the searches of each keyword.
+     */
+    private BarrelSearchCounter barrelSearchCounter;
+    /**
+     * The BarrelPageRank object ranking the websites by links, or null if
+     * PageRank is disabled.
+     */
+    private BarrelPageRank barrelPageRank;
+    /**
+     * The BarrelDeduplicator collapsing near-duplicate pages, or null if
+     * near-duplicate detection is disabled.
+     */
+    private BarrelDeduplicator barrelDeduplicator;
+    /**
+     * The BarrelSuggester object suggesting the completions of query prefixes.
+     */
+    private BarrelSuggester barrelSuggester;
+    /**
+     * The QueryCache object holding the result pages of recent queries.
+     */
+    private QueryCache queryCache;
+    /**
+     * The maximum number of result pages kept by the query cache.
+     */
+    private int cacheCapacity = QueryCache.DEFAULT_CAPACITY;
     /**
      * The path to the SQLite database.
      */
@@ -104,6 +171,87 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * Whether to sort the search results by TF-IDF score.
      */
     private boolean tfIdfSort = false;
+    /**
+     * Whether to skip documents that cannot make the requested page.
+     */
+    private boolean earlyTermination = false;
+    /**
+     * The interval at which the counts of the most searched keywords are halved,
+     * in milliseconds, or 0 to never decay them.
+     */
+    private long decayInterval = 0;
+    /**
+     * The number of read-only database connections used by queries.
+     */
+    private int readerCount = BarrelDatabase.DEFAULT_READERS;
+    /**
+     * The maximum number of crawl records committed in a single transaction.
+     */
+    private int batchSize = 1;
+    /**
+     * The maximum time a crawl record waits for its batch to fill, in
+     * milliseconds.
+     */
+    private long batchLatency = 0;
+    /**
+     * The number of new pages after which the PageRank is recomputed, or 0 to
+     * rank by reference count instead.
+     */
+    private int pageRankPages = 0;
+    /**
+     * Whether to store the postings in segment files instead of the database.
+     */
+    private boolean segmentStorage = false;
+    /**
+     * The number of decompressed blocks of the document store kept in memory.
+     */
+    private int documentCacheBlocks = DocumentStore.DEFAULT_CACHE_BLOCKS;
+    /**
+     * Whether to index the positions of the terms, so that phrase queries are
+     * matched exactly.
+     */
+    private boolean indexPositions = false;
+    /**
+     * Whether the analyzer drops the stopwords.
+     */
+    private boolean removeStopwords = false;
+    /**
+     * Whether the analyzer reduces plurals to their singular.
+     */
+    private boolean stem = false;
+    /**
+     * Whether near-duplicate pages are collapsed into their canonical page.
+     */
+    private boolean deduplicate = false;
+    /**
+     * The index of the term partition of the barrel.
+     */
+    private int partitionIndex = 0;
+    /**
+     * The number of term partitions of the index, 1 if it is not partitioned.
+     */
+    private int partitionCount = 1;
+    /**
+     * The keywords whose postings are indexed by the barrel.
+     */
+    private TermPartition termPartition = TermPartition.WHOLE;
+    /**
+     * The index of the document partition of the barrel.
+     */
+    private int shardIndex = 0;
+    /**
+     * The number of document partitions of the index, 1 if it is not
+     * partitioned.
+     */
+    private int shardCount = 1;
+    /**
+     * The websites whose keywords and text are indexed by the barrel.
+     */
+    private DocumentPartition documentPartition = DocumentPartition.WHOLE;
+    /**
+     * The Analyzer applied to the crawled tokens and to the queries.
+     */
+    private Analyzer analyzer;
     /**
      * The latch associated with this IndexStorageBarrel.
      */
@@ -149,25 +297,49 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
 
         startRMI();
         try {
-            this.conn = DriverManager.getConnection("jdbc:sqlite:data/" + dbPath + ".db");
-            BarrelSetup.databaseIntegrity(conn, dbPath); // Check database integrity
-            this.barrelPopulate = new BarrelPopulate(conn);
-            this.barrelRetriever = new BarrelRetriever(conn);
+            this.database = new BarrelDatabase(dbPath, readerCount);
+            // Check database integrity
+            boolean rebuilt = BarrelSetup.databaseIntegrity(database.getWriter(), dbPath);
+            this.documentStore = new DocumentStore(Path.of("data", dbPath + "-documents"), documentCacheBlocks);
+            if (rebuilt)
+                documentStore.clear(); // The IDs of the websites start over
+            this.indexStorage = segmentStorage
+                    ? new SegmentIndexStorage(index, Path.of("data", dbPath + "-segments"),
+                            SegmentIndexStorage.DEFAULT_FLUSH_POSTINGS)
+                    : new SqliteIndexStorage(index);
+            indexStorage.load(database.getWriter()); // Build the in-memory index from the stored postings
+            this.analyzer = new Analyzer(removeStopwords, stem);
+            if (deduplicate)
+                this.barrelDeduplicator = new BarrelDeduplicator(database.getWriter());
+            this.barrelPopulate = new BarrelPopulate(database.getWriter(), index, indexStorage, documentStore,
+                    indexPositions, analyzer, barrelDeduplicator, termPartition, documentPartition);
+            this.barrelRetriever = new BarrelRetriever(database, index, documentStore, analyzer);
+            this.barrelCursors = new BarrelCursors();
+            this.queryCache = new QueryCache(index, cacheCapacity);
+            if (pageRankPages > 0)
+                this.barrelPageRank = new BarrelPageRank(database, index, pageRankPages);
+            this.barrelSearchCounter = new BarrelSearchCounter(barrelPopulate,
+                    barrelRetriever.getSearchCounts(BarrelSearchCounter.TOP_COUNTERS), decayInterval);
+            this.barrelSuggester = new BarrelSuggester(index, barrelRetriever);
             this.barrelPinger = new BarrelPinger(this);
 
             // Barrel receiver
             Class<?>[] receiverIgnoredClasses = { BarrelSync.class };
             this.barrelReceiver = new BarrelReceiver(this,
                     new ReliableMulticast(mcastAddress, downloaderMcastGroupAddress,
-                            downloaderMcastPort, BarrelReceiver.class, receiverIgnoredClasses));
+                            downloaderMcastPort, BarrelReceiver.class, receiverIgnoredClasses),
+                    batchSize, batchLatency);
             // Barrel sync
+            this.barrelStateTransfer = new BarrelStateTransfer(database, barrelRetriever, barrelPopulate,
+                    indexStorage, documentStore, termPartition, documentPartition, indexPositions,
+                    STARTING_PORT + BarrelStateTransfer.PORT_OFFSET + barrelID);
             Class<?>[] syncIgnoredClasses = { DownloaderWorker.class };
             this.barrelSync = new BarrelSync(this,
                     new ReliableMulticast(mcastAddress, syncMcastGroupAddress, syncMcastPort,
                             BarrelSync.class, syncIgnoredClasses));
 
             LogUtil.logInfo(LogUtil.ANSI_GREEN, IndexStorageBarrel.class, "Index Storage Barrel ready.");
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             LogUtil.logError(LogUtil.ANSI_RED, IndexStorageBarrel.class, e);
             stop();
         }
@@ -188,7 +360,24 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                             + "-smcast <sync multicast group address> -sport <sync port number> "
                             + "-mcastadd <multicast interface address> -badd <barrel interface address> "
                             + "-gadd <gateway interface address> "
-                            + "-s <optional for TF-IDF sort>");
+                            + "-s <optional for TF-IDF sort> "
+                            + "-et <optional for early termination> "
+                            + "-cache <optional query cache size, 0 to disable> "
+                            + "-decay <optional top searches half-life in minutes> "
+                            + "-readers <optional number of database readers> "
+                            + "-batch <optional group commit size> "
+                            + "-batchms <optional group commit latency in milliseconds> "
+                            + "-pr <optional PageRank recompute after n new pages> "
+                            + "-storage <optional postings storage: sqlite or segment> "
+                            + "-doccache <optional number of cached document blocks> "
+                            + "-positions <optional for positional postings> "
+                            + "-stopwords <optional to drop stopwords> "
+                            + "-stem <optional to stem plurals> "
+                            + "-dedup <optional to collapse near-duplicate pages> "
+                            + "-partition <optional term partition of the barrel, from 0> "
+                            + "-partitions <optional number of term partitions> "
+                            + "-shard <optional document partition of the barrel, from 0> "
+                            + "-shards <optional number of document partitions>");
             stop();
             return false;
         }
@@ -206,6 +395,31 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                     case "-badd" -> barrelAddress = args[++i];
                     case "-gadd" -> gatewayAddress = args[++i];
                     case "-s" -> tfIdfSort = true;
+                    case "-et" -> earlyTermination = true;
+                    case "-cache" -> cacheCapacity = Integer.parseInt(args[++i]);
+                    case "-decay" -> decayInterval = Long.parseLong(args[++i]) * 60 * 1000;
+                    case "-readers" -> readerCount = Integer.parseInt(args[++i]);
+                    case "-batch" -> batchSize = Integer.parseInt(args[++i]);
+                    case "-batchms" -> batchLatency = Long.parseLong(args[++i]);
+                    case "-pr" -> pageRankPages = Integer.parseInt(args[++i]);
+                    case "-positions" -> indexPositions = true;
+                    case "-stopwords" -> removeStopwords = true;
+                    case "-stem" -> stem = true;
+                    case "-dedup" -> deduplicate = true;
+                    case "-partition" -> partitionIndex = Integer.parseInt(args[++i]);
+                    case "-partitions" -> partitionCount = Integer.parseInt(args[++i]);
+                    case "-shard" -> shardIndex = Integer.parseInt(args[++i]);
+                    case "-shards" -> shardCount = Integer.parseInt(args[++i]);
+                    case "-doccache" -> documentCacheBlocks = Integer.parseInt(args[++i]);
+                    case "-storage" -> {
+                        String storage = args[++i];
+                        if (!storage.equals("sqlite") && !storage.equals("segment")) {
+                            LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
+                                    "Unexpected storage: " + storage);
+                            return false;
+                        }
+                        segmentStorage = storage.equals("segment");
+                    }
                     default -> {
                         LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
                                 "Unexpected argument: " + args[i]);
@@ -215,9 +429,26 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
             }
         } catch (NumberFormatException e) {
             LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
-                    "Wrong type of argument: expected int for barrel id and port number");
+                    "Wrong type of argument: expected int for barrel id, port number and optional sizes");
+            return false;
+        }
+        if (partitionCount < 1 || partitionIndex < 0 || partitionIndex >= partitionCount) {
+            LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
+                    "Unexpected term partition: " + partitionIndex + " of " + partitionCount);
+            return false;
+        }
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
+                    "Unexpected document partition: " + shardIndex + " of " + shardCount);
+            return false;
+        }
+        if (partitionCount > 1 && shardCount > 1) {
+            LogUtil.logInfo(LogUtil.ANSI_RED, IndexStorageBarrel.class,
+                    "The index is partitioned either by term or by document, not both");
             return false;
         }
+        termPartition = new TermPartition(partitionIndex, partitionCount);
+        documentPartition = new DocumentPartition(shardIndex, shardCount);
         return true;
     }
 
@@ -240,14 +471,14 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
     /**
      * Retrieves and ranks search data based on the given query and page number.
      *
-     * @param query      the search query
+     * @param query      the parsed search query
      * @param pageNumber the page number of the search results
      * @param tfIdfSort  whether to sort the search results by TF-IDF score
      * @return a list of SearchData objects representing the ranked search results
      */
-    private List<SearchData> retrieveAndRankData(String query, int pageNumber, boolean tfIdfSort) {
-        return tfIdfSort ? barrelRetriever.retrieveAndRankData(query, pageNumber, true)
-                : barrelRetriever.retrieveAndRankData(query, pageNumber, false);
+    private List<SearchData> retrieveAndRankData(ParsedQuery query, int pageNumber, boolean tfIdfSort) {
+        return queryCache.get(query, tfIdfSort, pageNumber,
+                () -> barrelRetriever.retrieveAndRankData(query, pageNumber, tfIdfSort, earlyTermination));
     }
 
     /**
@@ -260,19 +491,205 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      */
     public List<SearchData> searchQuery(String query, int pageNumber) throws RemoteException {
         LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Received query:" + query);
-        List<SearchData> searchData = retrieveAndRankData(query, pageNumber, tfIdfSort);
-
-        // Tokenize query and send each keyword to increment searches
-        String[] keywords = query.split(" ");
-        for (String keyword : keywords) {
-            LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class,
-                    "Incrementing searches for keyword:" + keyword);
-            barrelPopulate.incrementSearches(keyword);
-        }
-
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, analyzer);
+        List<SearchData> searchData = retrieveAndRankData(parsedQuery, pageNumber, tfIdfSort);
+        barrelSearchCounter.record(parsedQuery);
         return searchData;
     }
 
+    /**
+     * Ranks the documents matching the given query and opens a cursor over them.
+     *
+     * @param query       the search query
+     * @param countSearch whether the search is counted, false when a cursor
+     *                    that expired is opened again
+     * @return the first page of search results and the cursor token
+     * @throws RemoteException if a remote exception occurs
+     */
+    public SearchPage openCursor(String query, boolean countSearch) throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Opening cursor for query:" + query);
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, analyzer);
+        RankedDocs rankedDocs = barrelRetriever.rankData(parsedQuery, tfIdfSort, earlyTermination,
+                BarrelCursors.CURSOR_DEPTH);
+        String cursor = barrelCursors.open(parsedQuery, rankedDocs);
+        if (countSearch)
+            barrelSearchCounter.record(parsedQuery);
+        List<SearchData> firstPage = queryCache.get(parsedQuery, tfIdfSort, 1,
+                () -> barrelRetriever.retrievePage(rankedDocs, parsedQuery, 1));
+        return new SearchPage(cursor, 1, firstPage, rankedDocs.size() > BarrelRetriever.PAGE_SIZE);
+    }
+
+    /**
+     * Retrieves a page of search results from an open cursor.
+     *
+     * @param cursor     the token of the cursor
+     * @param pageNumber the page number of the search results
+     * @return the requested page, or null if the cursor expired
+     * @throws RemoteException if a remote exception occurs
+     */
+    public SearchPage fetchCursorPage(String cursor, int pageNumber) throws RemoteException {
+        BarrelCursors.Cursor openCursor = barrelCursors.get(cursor);
+        if (openCursor == null)
+            return null;
+        RankedDocs rankedDocs = openCursor.getRankedDocs();
+        return new SearchPage(cursor, pageNumber,
+                barrelRetriever.retrievePage(rankedDocs, openCursor.getQuery(), pageNumber),
+                rankedDocs.size() > pageNumber * BarrelRetriever.PAGE_SIZE);
+    }
+
+    /**
+     * Returns the postings of the query keywords owned by the partition of the
+     * barrel, for the gateway to merge with the other partitions.
+     *
+     * @param query the search query
+     * @return the postings of the owned keywords
+     * @throws RemoteException if a remote exception occurs
+     */
+    public PartitionPostings fetchPartitionPostings(String query) throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Fetching postings for query:" + query);
+        return barrelRetriever.fetchPartitionPostings(ParsedQuery.parse(query, analyzer), termPartition);
+    }
+
+    /**
+     * Ranks the documents matched and scored by the gateway over every term
+     * partition and opens a cursor over them. The page is not cached, since the
+     * barrel's own index only holds part of the query.
+     *
+     * @param query       the search query
+     * @param docIds      the IDs of the matching documents
+     * @param scores      the TF-IDF score of each document
+     * @param countSearch whether the search is counted, false when a cursor
+     *                    that expired is opened again
+     * @return the first page of search results and the cursor token
+     * @throws RemoteException if a remote exception occurs
+     */
+    public SearchPage openMergedCursor(String query, int[] docIds, float[] scores, boolean countSearch)
+            throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Opening merged cursor for query:" + query);
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, analyzer);
+        RankedDocs rankedDocs = barrelRetriever.rankMerged(docIds, scores, tfIdfSort, BarrelCursors.CURSOR_DEPTH);
+        String cursor = barrelCursors.open(parsedQuery, rankedDocs);
+        if (countSearch)
+            barrelSearchCounter.record(parsedQuery);
+        return new SearchPage(cursor, 1, barrelRetriever.retrievePage(rankedDocs, parsedQuery, 1),
+                rankedDocs.size() > BarrelRetriever.PAGE_SIZE);
+    }
+
+    /**
+     * Ranks the documents matched and scored by the gateway over every term
+     * partition down to the requested page and returns it, without keeping a
+     * cursor, for the gateway calls that do not page through the results.
+     *
+     * @param query      the search query
+     * @param docIds     the IDs of the matching documents
+     * @param scores     the TF-IDF score of each document
+     * @param pageNumber the page number of the search results
+     * @return the requested page of search results
+     * @throws RemoteException if a remote exception occurs
+     */
+    public List<SearchData> searchMerged(String query, int[] docIds, float[] scores, int pageNumber)
+            throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Ranking merged matches for query:" + query);
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, analyzer);
+        long depth = (long) Math.max(1, pageNumber) * BarrelRetriever.PAGE_SIZE;
+        RankedDocs rankedDocs = barrelRetriever.rankMerged(docIds, scores, tfIdfSort,
+                (int) Math.min(depth, BarrelCursors.CURSOR_DEPTH));
+        barrelSearchCounter.record(parsedQuery);
+        return barrelRetriever.retrievePage(rankedDocs, parsedQuery, pageNumber);
+    }
+
+    /**
+     * Returns the collection statistics of the query keywords in the barrel, for
+     * the gateway to sum over every document partition.
+     *
+     * @param query the search query
+     * @return the document count and the document frequency of each keyword
+     * @throws RemoteException if a remote exception occurs
+     */
+    public CollectionStats getCollectionStats(String query) throws RemoteException {
+        return barrelRetriever.getCollectionStats(ParsedQuery.parse(query, analyzer));
+    }
+
+    /**
+     * Searches the document partition of the barrel with the IDF weights of the
+     * whole index, returning its best results for the gateway to merge with the
+     * other partitions.
+     *
+     * @param query       the search query
+     * @param globalStats the collection statistics summed over every partition
+     * @param depth       the maximum number of results
+     * @return the best results of the partition and their rank values
+     * @throws RemoteException if a remote exception occurs
+     */
+    public PartitionHits searchPartition(String query, CollectionStats globalStats, int depth)
+            throws RemoteException {
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, IndexStorageBarrel.class, "Searching partition for query:" + query);
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, analyzer);
+        PartitionHits partitionHits = barrelRetriever.retrievePartitionHits(parsedQuery, globalStats, tfIdfSort,
+                earlyTermination, depth);
+        barrelSearchCounter.record(parsedQuery);
+        return partitionHits;
+    }
+
+    /**
+     * Get the term partition of the barrel
+     * 
+     * @return the keywords whose postings the barrel indexes
+     */
+    public TermPartition getTermPartition() {
+        return termPartition;
+    }
+
+    /**
+     * Get the document partition of the barrel
+     * 
+     * @return the websites whose keywords and text the barrel indexes
+     */
+    public DocumentPartition getDocumentPartition() {
+        return documentPartition;
+    }
+
+    /**
+     * Get the hit and miss counters of the query cache
+     * 
+     * @return the query cache statistics
+     * @throws RemoteException if a remote exception occurs
+     */
+    public CacheStats getCacheStats() throws RemoteException {
+        return queryCache.getStats();
+    }
+
+    /**
+     * Get the group-commit metrics of the ingestion
+     * 
+     * @return the ingestion statistics
+     * @throws RemoteException if a remote exception occurs
+     */
+    public IngestStats getIngestStats() throws RemoteException {
+        return barrelReceiver.getIngestStats();
+    }
+
+    /**
+     * Get the metrics of the background PageRank job
+     * 
+     * @return the PageRank statistics, with no runs if PageRank is disabled
+     * @throws RemoteException if a remote exception occurs
+     */
+    public PageRankStats getPageRankStats() throws RemoteException {
+        return barrelPageRank == null ? new PageRankStats(0, 0, 0, 0, 0) : barrelPageRank.getStats();
+    }
+
+    /**
+     * Get the metrics of the near-duplicate detection
+     * 
+     * @return the duplicate statistics, with no pages if the detection is
+     *         disabled
+     * @throws RemoteException if a remote exception occurs
+     */
+    public DuplicateStats getDuplicateStats() throws RemoteException {
+        return barrelDeduplicator == null ? new DuplicateStats(0, 0, 0, 0) : barrelDeduplicator.getStats();
+    }
+
     /**
      * Get the top searches
      * 
@@ -280,7 +697,19 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * @throws RemoteException if a remote exception occurs
      */
     public List<String> getTopSearches() throws RemoteException {
-        return barrelRetriever.getTopSearches();
+        return barrelSearchCounter.getTopSearches().stream().map(HtmlUtils::htmlEscape).toList();
+    }
+
+    /**
+     * Suggest the completions of a query prefix
+     * 
+     * @param prefix the prefix typed by the user
+     * @param limit  the maximum number of suggestions
+     * @return the suggested terms
+     * @throws RemoteException if a remote exception occurs
+     */
+    public List<String> suggest(String prefix, int limit) throws RemoteException {
+        return barrelSuggester.suggest(prefix, limit);
     }
 
     /**
@@ -308,25 +737,41 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * Stop the barrel
      */
     public void stop() {
-        if (conn != null)
-            try {
-                conn.close();
-            } catch (SQLException e) {
-                LogUtil.logError(LogUtil.ANSI_RED, IndexStorageBarrel.class, e);
-            }
-
-        if (barrelPinger != null)
-            barrelPinger.setRunning(false);
+        // Stop the producers first, so that nothing is written to closed storage
         if (barrelReceiver != null) {
             barrelReceiver.setRunning(false);
             barrelReceiver.getMulticast().stopReceiving();
             barrelReceiver.getMulticast().stopSending();
         }
+        if (barrelStateTransfer != null)
+            barrelStateTransfer.stop();
         if (barrelSync != null) {
             barrelSync.setRunning(false);
             barrelSync.getMulticast().stopReceiving();
             barrelSync.getMulticast().stopSending();
         }
+        if (barrelSearchCounter != null) {
+            barrelSearchCounter.setRunning(false);
+            barrelSearchCounter.flush(); // Keep the searches counted since the last flush
+        }
+        if (barrelPinger != null)
+            barrelPinger.setRunning(false);
+        if (barrelCursors != null)
+            barrelCursors.setRunning(false);
+        if (barrelPageRank != null)
+            barrelPageRank.setRunning(false);
+        if (barrelSuggester != null)
+            barrelSuggester.setRunning(false);
+
+        // Wait for the batch being applied before closing the storage
+        if (barrelPopulate != null)
+            barrelPopulate.halt();
+        if (database != null)
+            database.close();
+        if (indexStorage != null)
+            indexStorage.close();
+        if (documentStore != null)
+            documentStore.close();
     }
 
     // Getters and Setters
@@ -358,6 +803,34 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         return barrelPopulate;
     }
 
+    /**
+     * Returns the BarrelSearchCounter object associated with this
+     * IndexStorageBarrel.
+     *
+     * @return the BarrelSearchCounter object
+     */
+    public BarrelSearchCounter getBarrelSearchCounter() {
+        return barrelSearchCounter;
+    }
+
+    /**
+     * Returns the storage engine of the postings of the index.
+     *
+     * @return the IndexStorage object
+     */
+    public IndexStorage getIndexStorage() {
+        return indexStorage;
+    }
+
+    /**
+     * Returns the store of the URL, title and text of the websites.
+     *
+     * @return the DocumentStore object
+     */
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
     /**
      * Returns the BarrelRetriever object associated with this IndexStorageBarrel.
      *
@@ -367,6 +840,24 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         return barrelRetriever;
     }
 
+    /**
+     * Returns whether the barrel indexes the token positions of the postings.
+     *
+     * @return true if token positions are indexed
+     */
+    public boolean isIndexPositions() {
+        return indexPositions;
+    }
+
+    /**
+     * Returns the BarrelStateTransfer object streaming the state of this barrel.
+     *
+     * @return the BarrelStateTransfer object
+     */
+    public BarrelStateTransfer getBarrelStateTransfer() {
+        return barrelStateTransfer;
+    }
+
     /**
      * Returns the address of the barrel.
      *
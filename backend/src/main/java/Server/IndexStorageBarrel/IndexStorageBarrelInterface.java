@@ -3,7 +3,17 @@ package Server.IndexStorageBarrel;
 // General imports
 import java.util.List;
 
+import Server.IndexStorageBarrel.Objects.CacheStats;
+import Server.IndexStorageBarrel.Objects.DuplicateStats;
+import Server.IndexStorageBarrel.Objects.IngestStats;
+import Server.IndexStorageBarrel.Objects.PageRankStats;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.PartitionPostings;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Objects.CollectionStats;
+import Server.IndexStorageBarrel.Objects.PartitionHits;
 
 import java.rmi.Remote;
 
@@ -27,6 +37,105 @@ public interface IndexStorageBarrelInterface extends Remote {
      */
     List<SearchData> searchQuery(String query, int pageNumber) throws RemoteException;
 
+    /**
+     * Ranks the documents matching the given query and opens a cursor over them.
+     * Later pages are served from the cursor without executing the query again.
+     * 
+     * @param query       the search query
+     * @param countSearch whether the search is counted in the statistics of the
+     *                    barrel
+     * @return the first page of search results and the cursor token
+     * @throws RemoteException if a remote communication error occurs
+     */
+    SearchPage openCursor(String query, boolean countSearch) throws RemoteException;
+
+    /**
+     * Retrieves a page of search results from an open cursor.
+     * 
+     * @param cursor     the token of the cursor
+     * @param pageNumber the page number of the search results
+     * @return the requested page, or null if the cursor expired
+     * @throws RemoteException if a remote communication error occurs
+     */
+    SearchPage fetchCursorPage(String cursor, int pageNumber) throws RemoteException;
+
+    /**
+     * Retrieves the postings of the query keywords owned by the barrel's term
+     * partition.
+     * 
+     * @param query the search query
+     * @return the postings of the owned keywords and the parsed query
+     * @throws RemoteException if a remote communication error occurs
+     */
+    PartitionPostings fetchPartitionPostings(String query) throws RemoteException;
+
+    /**
+     * Ranks documents matched and scored over every term partition and opens a
+     * cursor over them.
+     * 
+     * @param query       the search query
+     * @param docIds      the IDs of the matching documents
+     * @param scores      the TF-IDF score of each document
+     * @param countSearch whether the search is counted in the statistics of the
+     *                    barrel
+     * @return the first page of search results and the cursor token
+     * @throws RemoteException if a remote communication error occurs
+     */
+    SearchPage openMergedCursor(String query, int[] docIds, float[] scores, boolean countSearch)
+            throws RemoteException;
+
+    /**
+     * Ranks documents matched and scored over every term partition and returns
+     * the requested page, without opening a cursor.
+     * 
+     * @param query      the search query
+     * @param docIds     the IDs of the matching documents
+     * @param scores     the TF-IDF score of each document
+     * @param pageNumber the page number of the search results
+     * @return the requested page of search results
+     * @throws RemoteException if a remote communication error occurs
+     */
+    List<SearchData> searchMerged(String query, int[] docIds, float[] scores, int pageNumber)
+            throws RemoteException;
+
+    /**
+     * Retrieves the term partition of the barrel.
+     * 
+     * @return the keywords whose postings the barrel indexes
+     * @throws RemoteException if a remote communication error occurs
+     */
+    TermPartition getTermPartition() throws RemoteException;
+
+    /**
+     * Retrieves the collection statistics of the query keywords in the barrel's
+     * document partition.
+     * 
+     * @param query the search query
+     * @return the document count and the document frequency of each keyword
+     * @throws RemoteException if a remote communication error occurs
+     */
+    CollectionStats getCollectionStats(String query) throws RemoteException;
+
+    /**
+     * Searches the barrel's document partition with the IDF weights of the
+     * whole index.
+     * 
+     * @param query       the search query
+     * @param globalStats the collection statistics summed over every partition
+     * @param depth       the maximum number of results
+     * @return the best results of the partition and their rank values
+     * @throws RemoteException if a remote communication error occurs
+     */
+    PartitionHits searchPartition(String query, CollectionStats globalStats, int depth) throws RemoteException;
+
+    /**
+     * Retrieves the document partition of the barrel.
+     * 
+     * @return the websites whose keywords and text the barrel indexes
+     * @throws RemoteException if a remote communication error occurs
+     */
+    DocumentPartition getDocumentPartition() throws RemoteException;
+
     /**
      * Retrieves a list of websites that link to the specified target URL.
      * 
@@ -45,6 +154,49 @@ public interface IndexStorageBarrelInterface extends Remote {
      */
     List<String> getTopSearches() throws RemoteException;
 
+    /**
+     * Suggests the indexed terms starting with the given prefix, the most
+     * frequent and most searched first.
+     * 
+     * @param prefix the prefix typed by the user
+     * @param limit  the maximum number of suggestions
+     * @return a list of suggested terms
+     * @throws RemoteException if a remote communication error occurs
+     */
+    List<String> suggest(String prefix, int limit) throws RemoteException;
+
+    /**
+     * Retrieves the hit and miss counters of the barrel's query result cache.
+     * 
+     * @return the query cache statistics
+     * @throws RemoteException if a remote communication error occurs
+     */
+    CacheStats getCacheStats() throws RemoteException;
+
+    /**
+     * Retrieves the group-commit metrics of the barrel's ingestion.
+     * 
+     * @return the ingestion statistics
+     * @throws RemoteException if a remote communication error occurs
+     */
+    IngestStats getIngestStats() throws RemoteException;
+
+    /**
+     * Retrieves the metrics of the barrel's background PageRank job.
+     * 
+     * @return the PageRank statistics
+     * @throws RemoteException if a remote communication error occurs
+     */
+    PageRankStats getPageRankStats() throws RemoteException;
+
+    /**
+     * Retrieves the metrics of the barrel's near-duplicate detection.
+     * 
+     * @return the duplicate statistics
+     * @throws RemoteException if a remote communication error occurs
+     */
+    DuplicateStats getDuplicateStats() throws RemoteException;
+
     /**
      * Receives a ping from the client to check if the server is still responsive.
      * 
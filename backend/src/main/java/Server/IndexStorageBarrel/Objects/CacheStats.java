@@ -0,0 +1,23 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.io.Serializable;
+
+/**
+ * Represents the hit and miss counters of a barrel's query result cache.
+ * 
+ * @param hits     the number of lookups answered from the cache
+ * @param misses   the number of lookups that had to execute the query
+ * @param size     the number of cached result pages
+ * @param capacity the maximum number of cached result pages
+ */
+public record CacheStats(long hits, long misses, int size, int capacity) implements Serializable {
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     * 
+     * @return the hit rate, or 0 if there were no lookups
+     */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
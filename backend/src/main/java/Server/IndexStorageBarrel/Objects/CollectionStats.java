@@ -0,0 +1,27 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.util.HashMap;
+import java.io.Serializable;
+
+/**
+ * Represents the collection statistics of the keywords of a query, from which
+ * their IDF weights are computed. The gateway of a document partitioned index
+ * sums the statistics of every partition, so that all partitions score the
+ * query with the same weights.
+ * 
+ * @param docCount       the number of indexed documents
+ * @param docFrequencies the number of documents holding each keyword
+ */
+public record CollectionStats(int docCount, HashMap<String, Integer> docFrequencies) implements Serializable {
+    /**
+     * Adds up the statistics of two partitions, which index disjoint documents.
+     * 
+     * @param other the statistics of the other partition
+     * @return the statistics of both partitions
+     */
+    public CollectionStats plus(CollectionStats other) {
+        HashMap<String, Integer> sum = new HashMap<>(docFrequencies);
+        other.docFrequencies().forEach((keyword, count) -> sum.merge(keyword, count, Integer::sum));
+        return new CollectionStats(docCount + other.docCount(), sum);
+    }
+}
@@ -0,0 +1,18 @@
+package Server.IndexStorageBarrel.Objects;
+
+/**
+ * Represents the range of websites indexed by a barrel when the index is
+ * partitioned by document. Every URL belongs to exactly one of the
+ * partitions, chosen by its hash, whose barrels index its keywords and store
+ * its text. The websites and links are still known to every partition, so that
+ * the reference counts and PageRank stay global.
+ * 
+ * @param index the index of the partition, from 0
+ * @param count the number of partitions, 1 if the index is not partitioned
+ */
+public record DocumentPartition(int index, int count) implements IndexPartition {
+    /**
+     * The partition of a barrel indexing every website.
+     */
+    public static final DocumentPartition WHOLE = new DocumentPartition(0, 1);
+}
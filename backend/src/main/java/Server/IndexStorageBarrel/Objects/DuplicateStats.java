@@ -0,0 +1,17 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.io.Serializable;
+
+/**
+ * Represents the metrics of a barrel's near-duplicate detection.
+ * 
+ * @param canonicalPages the number of indexed pages with a fingerprint
+ * @param duplicatePages the number of pages collapsed into a canonical page
+ *                       instead of being indexed
+ * @param savedPostings  the number of postings the collapsed pages would have
+ *                       added
+ * @param savedBytes     the estimated size of those postings, in bytes
+ */
+public record DuplicateStats(int canonicalPages, int duplicatePages, long savedPostings, long savedBytes)
+        implements Serializable {
+}
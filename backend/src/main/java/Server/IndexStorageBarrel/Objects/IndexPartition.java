@@ -0,0 +1,57 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.io.Serializable;
+
+/**
+ * Represents the share of the index held by a barrel when the index is split
+ * into partitions. Every key, a keyword or a URL depending on how the index is
+ * partitioned, belongs to exactly one of the partitions, chosen by its hash,
+ * and the barrels of a partition are its replicas.
+ */
+public interface IndexPartition extends Serializable {
+    /**
+     * Returns the partition owning a key.
+     * 
+     * @param key   the keyword or URL
+     * @param count the number of partitions
+     * @return the index of the partition
+     */
+    static int of(String key, int count) {
+        // Spread the hash of the string, whose low bits are poorly mixed
+        int hash = key.hashCode() * 0x9e3779b9;
+        return Math.floorMod(hash ^ (hash >>> 16), count);
+    }
+
+    /**
+     * Returns the index of the partition.
+     * 
+     * @return the index of the partition, from 0
+     */
+    int index();
+
+    /**
+     * Returns the number of partitions.
+     * 
+     * @return the number of partitions, 1 if the index is not partitioned
+     */
+    int count();
+
+    /**
+     * Returns whether the barrel of this partition holds a key.
+     * 
+     * @param key the keyword or URL
+     * @return true if the key belongs to this partition
+     */
+    default boolean owns(String key) {
+        return count() == 1 || of(key, count()) == index();
+    }
+
+    /**
+     * Returns whether the index is split into several partitions.
+     * 
+     * @return true if there is more than one partition
+     */
+    default boolean isPartitioned() {
+        return count() > 1;
+    }
+}
@@ -0,0 +1,36 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.io.Serializable;
+
+/**
+ * Represents the group-commit metrics of a barrel's ingestion.
+ * 
+ * @param batches         the number of committed batches
+ * @param records         the number of crawl records received
+ * @param maxBatchSize    the largest number of records in a batch
+ * @param totalCommitTime the total time spent applying and committing batches,
+ *                        in milliseconds
+ * @param maxCommitTime   the longest time spent applying and committing a
+ *                        batch, in milliseconds
+ */
+public record IngestStats(long batches, long records, int maxBatchSize, long totalCommitTime, long maxCommitTime)
+        implements Serializable {
+    /**
+     * Returns the average number of records per batch.
+     * 
+     * @return the average batch size, or 0 if no batch was committed
+     */
+    public double avgBatchSize() {
+        return batches == 0 ? 0 : (double) records / batches;
+    }
+
+    /**
+     * Returns the average time spent applying and committing a batch.
+     * 
+     * @return the average commit time in milliseconds, or 0 if no batch was
+     *         committed
+     */
+    public double avgCommitTime() {
+        return batches == 0 ? 0 : (double) totalCommitTime / batches;
+    }
+}
@@ -0,0 +1,17 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.io.Serializable;
+
+/**
+ * Represents the metrics of a barrel's background PageRank job.
+ * 
+ * @param runs       the number of completed computations
+ * @param websites   the number of websites in the last link graph
+ * @param links      the number of links in the last link graph
+ * @param iterations the number of power iterations of the last computation
+ * @param runTime    the duration of the last computation, including loading
+ *                   the link graph, in milliseconds
+ */
+public record PageRankStats(long runs, int websites, int links, int iterations, long runTime)
+        implements Serializable {
+}
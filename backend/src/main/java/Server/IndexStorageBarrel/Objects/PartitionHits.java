@@ -0,0 +1,16 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.util.List;
+import java.io.Serializable;
+
+/**
+ * Represents the best results of a query in one partition of a document
+ * partitioned index, merged by the gateway with the other partitions.
+ * 
+ * @param hits       the websites of the best documents, in rank order
+ * @param rankValues the value each document is ranked by, its TF-IDF score or
+ *                   its PageRank or reference count, parallel to the hits
+ * @param totalHits  the number of matching documents in the partition
+ */
+public record PartitionHits(List<SearchData> hits, float[] rankValues, int totalHits) implements Serializable {
+}
@@ -0,0 +1,24 @@
+package Server.IndexStorageBarrel.Objects;
+
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.PostingList;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.io.Serializable;
+
+/**
+ * Represents the part of a query answered by one partition of a term
+ * partitioned index: the postings of the query keywords it owns.
+ * 
+ * @param query     the query, parsed by the barrel's analyzer
+ * @param docCount  the number of documents indexed by the barrel
+ * @param postings  the postings of each query keyword owned by the partition,
+ *                  with positions for the keywords of phrases
+ * @param documents the documents indexed by the barrel, only sent when a
+ *                  negation of the query matches every other document, or
+ *                  null
+ */
+public record PartitionPostings(ParsedQuery query, int docCount, HashMap<String, PostingList> postings,
+        BitSet documents) implements Serializable {
+}
@@ -0,0 +1,16 @@
+package Server.IndexStorageBarrel.Objects;
+
+import java.util.List;
+import java.io.Serializable;
+
+/**
+ * Represents a page of search results served from a server-side cursor.
+ * 
+ * @param cursor      the token of the cursor holding the ranked results
+ * @param pageNumber  the number of the page
+ * @param results     the search results of the page
+ * @param hasNextPage whether the cursor holds results after this page
+ */
+public record SearchPage(String cursor, int pageNumber, List<SearchData> results, boolean hasNextPage)
+        implements Serializable {
+}
@@ -0,0 +1,16 @@
+package Server.IndexStorageBarrel.Objects;
+
+/**
+ * Represents the range of keywords indexed by a barrel when the index is
+ * partitioned by term. Every keyword belongs to exactly one of the partitions,
+ * chosen by its hash, and the barrels of a partition are its replicas.
+ * 
+ * @param index the index of the partition, from 0
+ * @param count the number of partitions, 1 if the index is not partitioned
+ */
+public record TermPartition(int index, int count) implements IndexPartition {
+    /**
+     * The partition of a barrel holding every keyword.
+     */
+    public static final TermPartition WHOLE = new TermPartition(0, 1);
+}
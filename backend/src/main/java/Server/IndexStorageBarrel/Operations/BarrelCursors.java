@@ -0,0 +1,175 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.RankedDocs;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Map;
+import java.util.UUID;
+import java.util.LinkedHashMap;
+
+/**
+ * The BarrelCursors class keeps the ranked results of recent queries so that
+ * later pages can be served without executing the query again.
+ * Cursors that are not accessed for longer than the idle timeout are evicted by
+ * a background thread, and the least recently used cursor is evicted when
+ * {@link #MAX_CURSORS} are open, so that memory does not grow with the query
+ * rate.
+ */
+public class BarrelCursors implements Runnable {
+    /**
+     * The maximum number of ranked documents kept by a cursor.
+     */
+    public static final int CURSOR_DEPTH = InvertedIndex.MAX_DEPTH;
+    /**
+     * The time after which an idle cursor is evicted, in milliseconds.
+     */
+    public static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+    /**
+     * The interval at which idle cursors are evicted, in milliseconds.
+     */
+    public static final long EVICTION_INTERVAL = 30 * 1000;
+    /**
+     * The maximum number of open cursors.
+     */
+    public static final int MAX_CURSORS = 1000;
+    /**
+     * The open cursors, by token, from the least to the most recently accessed.
+     */
+    private final Map<String, Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cursor> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+    /**
+     * A boolean value indicating whether the eviction thread is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * A cursor holding the ranked documents of a query.
+     */
+    public static class Cursor {
+        /**
+         * The parsed query, whose keywords are highlighted in the snippets.
+         */
+        private final ParsedQuery query;
+        /**
+         * The ranked documents of the query.
+         */
+        private final RankedDocs rankedDocs;
+        /**
+         * The last time the cursor was accessed, in milliseconds.
+         */
+        private volatile long lastAccess;
+
+        /**
+         * Constructs a Cursor holding the given ranked documents.
+         *
+         * @param query      the parsed query
+         * @param rankedDocs the ranked documents of the query
+         */
+        private Cursor(ParsedQuery query, RankedDocs rankedDocs) {
+            this.query = query;
+            this.rankedDocs = rankedDocs;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the parsed query of the cursor.
+         *
+         * @return the parsed query
+         */
+        public ParsedQuery getQuery() {
+            return query;
+        }
+
+        /**
+         * Returns the ranked documents of the cursor.
+         *
+         * @return the ranked documents of the query
+         */
+        public RankedDocs getRankedDocs() {
+            return rankedDocs;
+        }
+    }
+
+    /**
+     * Constructs a BarrelCursors object and starts its eviction thread.
+     */
+    public BarrelCursors() {
+        new Thread(this, "Barrel Cursors").start();
+    }
+
+    /**
+     * Periodically evicts the cursors that have been idle for too long.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(EVICTION_INTERVAL);
+            } catch (InterruptedException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelCursors.class, e);
+                running = false;
+            }
+            long deadline = System.currentTimeMillis() - IDLE_TIMEOUT;
+            int evicted;
+            synchronized (cursors) {
+                int before = cursors.size();
+                cursors.values().removeIf(cursor -> cursor.lastAccess < deadline);
+                evicted = before - cursors.size();
+            }
+            if (evicted > 0)
+                LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelCursors.class, "Evicted " + evicted + " idle cursors.");
+        }
+    }
+
+    /**
+     * Opens a cursor over the given ranked documents, evicting the least
+     * recently used cursor if too many are open.
+     *
+     * @param query      the parsed query
+     * @param rankedDocs the ranked documents of the query
+     * @return the token of the new cursor
+     */
+    public String open(ParsedQuery query, RankedDocs rankedDocs) {
+        String token = UUID.randomUUID().toString();
+        synchronized (cursors) {
+            cursors.put(token, new Cursor(query, rankedDocs));
+        }
+        return token;
+    }
+
+    /**
+     * Returns a cursor and refreshes its idle timer.
+     *
+     * @param token the token of the cursor
+     * @return the cursor, or null if it does not exist or was evicted
+     */
+    public Cursor get(String token) {
+        Cursor cursor;
+        synchronized (cursors) {
+            cursor = cursors.get(token);
+        }
+        if (cursor == null)
+            return null;
+        cursor.lastAccess = System.currentTimeMillis();
+        return cursor;
+    }
+
+    /**
+     * Sets the running state of the eviction thread.
+     * 
+     * @param running the running state to set
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+}
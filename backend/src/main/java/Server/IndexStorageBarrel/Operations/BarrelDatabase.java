@@ -0,0 +1,173 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.sql.Connection;
+import java.lang.reflect.Proxy;
+import org.sqlite.SQLiteConfig;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.lang.reflect.InvocationTargetException;
+
+// Exception imports
+import java.sql.SQLException;
+
+/**
+ * The BarrelDatabase class manages the connections to the barrel's SQLite
+ * database.
+ * <p>
+ * The database is opened in WAL mode, with a single writer connection used by
+ * ingestion and sync, and a pool of read-only connections used by queries.
+ * Readers only see committed transactions and are never blocked by the
+ * writer, so queries scale across cores while ingestion is running.
+ */
+public class BarrelDatabase {
+    /**
+     * The size of the memory map of each connection, in bytes.
+     */
+    public static final long MMAP_SIZE = 256L * 1024 * 1024;
+    /**
+     * The size of the page cache of each connection, in KiB.
+     */
+    public static final int CACHE_SIZE = 16 * 1024;
+    /**
+     * The time a connection waits for a lock before failing, in milliseconds.
+     */
+    public static final int BUSY_TIMEOUT = 5000;
+    /**
+     * The default number of read-only connections.
+     */
+    public static final int DEFAULT_READERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * The writer connection.
+     */
+    private final Connection writer;
+    /**
+     * The idle read-only connections.
+     */
+    private final BlockingQueue<Connection> readers;
+    /**
+     * All read-only connections, idle or borrowed.
+     */
+    private final Connection[] allReaders;
+
+    /**
+     * Opens the writer connection and the pool of read-only connections.
+     *
+     * @param dbPath      the name of the database in the data directory
+     * @param readerCount the number of read-only connections
+     * @throws SQLException if a connection cannot be opened
+     */
+    public BarrelDatabase(String dbPath, int readerCount) throws SQLException {
+        String url = "jdbc:sqlite:data/" + dbPath + ".db";
+
+        SQLiteConfig writerConfig = config();
+        writerConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // A WAL commit is durable across application crashes without an fsync
+        writerConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        this.writer = writerConfig.createConnection(url);
+
+        SQLiteConfig readerConfig = config();
+        readerConfig.setReadOnly(true);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        this.allReaders = new Connection[readerCount];
+        for (int i = 0; i < readerCount; i++) {
+            allReaders[i] = readerConfig.createConnection(url);
+            readers.add(allReaders[i]);
+        }
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelDatabase.class,
+                "Opened database " + dbPath + " with 1 writer and " + readerCount + " readers.");
+    }
+
+    /**
+     * Creates the configuration shared by the writer and the readers.
+     *
+     * @return the connection configuration
+     */
+    private static SQLiteConfig config() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_SIZE));
+        config.setCacheSize(-CACHE_SIZE); // Negative sizes are in KiB rather than pages
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        config.setBusyTimeout(BUSY_TIMEOUT);
+        return config;
+    }
+
+    /**
+     * Returns the writer connection. Only the ingestion and sync threads write,
+     * and BarrelPopulate serializes their transactions.
+     *
+     * @return the writer connection
+     */
+    public Connection getWriter() {
+        return writer;
+    }
+
+    /**
+     * Borrows a read-only connection from the pool, waiting for one to be
+     * returned if all are in use.
+     * The returned connection must be closed to give it back to the pool, so it
+     * is meant to be used in a try-with-resources statement.
+     *
+     * @return a read-only connection
+     * @throws SQLException if the thread is interrupted while waiting
+     */
+    public Connection getReader() throws SQLException {
+        Connection reader;
+        try {
+            reader = readers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database reader", e);
+        }
+        return borrowed(reader);
+    }
+
+    /**
+     * Wraps a pooled connection so that closing it returns it to the pool
+     * instead of closing it.
+     *
+     * @param reader the pooled connection
+     * @return the wrapped connection
+     */
+    private Connection borrowed(Connection reader) {
+        boolean[] returned = { false };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        if (!returned[0]) {
+                            returned[0] = true;
+                            readers.add(reader);
+                        }
+                        return null;
+                    }
+                    if (method.getName().equals("isClosed") && returned[0])
+                        return true;
+                    try {
+                        return method.invoke(reader, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Closes the writer and all read-only connections.
+     */
+    public void close() {
+        try {
+            writer.close();
+        } catch (SQLException e) {
+            LogUtil.logError(LogUtil.ANSI_RED, BarrelDatabase.class, e);
+        }
+        for (Connection reader : allReaders) {
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelDatabase.class, e);
+            }
+        }
+    }
+}
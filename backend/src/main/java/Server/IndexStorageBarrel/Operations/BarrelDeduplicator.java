@@ -0,0 +1,200 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.SimHash;
+import Server.IndexStorageBarrel.Index.DuplicateIndex;
+import Server.IndexStorageBarrel.Objects.DuplicateStats;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.sql.*;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * The BarrelDeduplicator class collapses near-duplicate pages, such as the
+ * same listing under another sort order or with tracking parameters, into the
+ * canonical page indexed first, so that they do not add postings again.
+ * <p>
+ * The SimHash fingerprint of every crawled page long enough to be reliable is
+ * compared with the fingerprints of the canonical pages through a
+ * DuplicateIndex. A new page within {@link DuplicateIndex#MAX_DISTANCE} bits of
+ * a canonical page is a duplicate: its website, links and fingerprint are
+ * stored, but not its postings nor its text. A page already indexed keeps its
+ * postings when re-crawled, and a collapsed page is indexed once a re-crawl
+ * finds it no longer near any canonical page.
+ * <p>
+ * The fingerprints are kept in the website_fingerprints table, written in the
+ * transaction of the pages, and the in-memory state is rebuilt from it.
+ */
+public class BarrelDeduplicator {
+    /**
+     * The number of bytes of a posting without positions, its document ID and
+     * frequency, used to estimate the size of the postings saved.
+     */
+    public static final int POSTING_BYTES = 8;
+    /**
+     * The database connection the fingerprints are read from.
+     */
+    private final Connection conn;
+    /**
+     * The fingerprints of the canonical pages.
+     */
+    private final DuplicateIndex duplicateIndex = new DuplicateIndex();
+    /**
+     * The collapsed pages, by website ID.
+     */
+    private final Map<Integer, Duplicate> duplicates = new HashMap<>();
+    /**
+     * The number of postings saved by the collapsed pages.
+     */
+    private long savedPostings;
+    /**
+     * The estimated size of the postings saved by the collapsed pages, in bytes.
+     */
+    private long savedBytes;
+
+    /**
+     * The result of checking a page against the canonical pages.
+     *
+     * @param fingerprint the fingerprint of the page
+     * @param canonicalId the ID of the canonical page it duplicates, or -1 if it
+     *                    is to be indexed
+     */
+    public record Check(long fingerprint, int canonicalId) {
+        /**
+         * Returns whether the page is collapsed into a canonical page.
+         *
+         * @return true if the page is a near-duplicate
+         */
+        public boolean isDuplicate() {
+            return canonicalId >= 0;
+        }
+    }
+
+    /**
+     * A collapsed page.
+     *
+     * @param canonicalId   the ID of its canonical page
+     * @param savedPostings the number of postings it would have added
+     * @param savedBytes    the estimated size of those postings, in bytes
+     */
+    private record Duplicate(int canonicalId, long savedPostings, long savedBytes) {
+    }
+
+    /**
+     * Constructs a BarrelDeduplicator and loads the stored fingerprints.
+     *
+     * @param conn the database connection the fingerprints are read from
+     * @throws SQLException if the fingerprints cannot be read
+     */
+    public BarrelDeduplicator(Connection conn) throws SQLException {
+        this.conn = conn;
+        load();
+    }
+
+    /**
+     * Rebuilds the fingerprints of the canonical pages and the collapsed pages
+     * from the database. Also called after a sync, or after a batch was rolled
+     * back.
+     *
+     * @throws SQLException if the fingerprints cannot be read
+     */
+    public synchronized void load() throws SQLException {
+        long startTime = System.currentTimeMillis();
+        duplicateIndex.clear();
+        duplicates.clear();
+        savedPostings = 0;
+        savedBytes = 0;
+        String sql = "SELECT website_id, fingerprint, canonical_id, saved_postings, saved_bytes "
+                + "FROM website_fingerprints";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int canonicalId = rs.getInt("canonical_id");
+                if (rs.wasNull())
+                    duplicateIndex.add(rs.getInt("website_id"), rs.getLong("fingerprint"));
+                else
+                    addDuplicate(rs.getInt("website_id"),
+                            new Duplicate(canonicalId, rs.getLong("saved_postings"), rs.getLong("saved_bytes")));
+            }
+        }
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelDeduplicator.class,
+                "Loaded " + duplicateIndex.size() + " fingerprints and " + duplicates.size()
+                        + " near-duplicates in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Checks a crawled page against the canonical pages.
+     *
+     * @param websiteId  the ID of the website of the page
+     * @param newUrl     whether the website was just inserted
+     * @param termCounts the number of occurrences of each term of the page
+     * @param tokenCount the number of terms of the page
+     * @return the fingerprint of the page and its canonical page, or null if the
+     *         page is too short to be checked
+     */
+    public synchronized Check check(int websiteId, boolean newUrl, Map<String, Integer> termCounts,
+            int tokenCount) {
+        if (tokenCount < SimHash.MIN_TOKENS)
+            return null;
+        long fingerprint = SimHash.fingerprint(termCounts);
+        int canonicalId = duplicateIndex.findNear(fingerprint, websiteId);
+        // A page already indexed keeps its postings, unless it was collapsed before
+        if (canonicalId >= 0 && !newUrl && !duplicates.containsKey(websiteId))
+            canonicalId = -1;
+        return new Check(fingerprint, canonicalId);
+    }
+
+    /**
+     * Publishes the outcome of a check whose page was written to the database.
+     *
+     * @param websiteId     the ID of the website of the page
+     * @param check         the outcome of the check
+     * @param savedPostings the number of postings not added, for a duplicate
+     * @param savedBytes    the estimated size of those postings, in bytes
+     */
+    public synchronized void publish(int websiteId, Check check, long savedPostings, long savedBytes) {
+        removeDuplicate(websiteId);
+        if (check.isDuplicate()) {
+            duplicateIndex.remove(websiteId);
+            addDuplicate(websiteId, new Duplicate(check.canonicalId(), savedPostings, savedBytes));
+        } else
+            duplicateIndex.add(websiteId, check.fingerprint());
+    }
+
+    /**
+     * Records a collapsed page.
+     *
+     * @param websiteId the ID of the website of the page
+     * @param duplicate the collapsed page
+     */
+    private void addDuplicate(int websiteId, Duplicate duplicate) {
+        duplicates.put(websiteId, duplicate);
+        savedPostings += duplicate.savedPostings();
+        savedBytes += duplicate.savedBytes();
+    }
+
+    /**
+     * Forgets a collapsed page, if the page was collapsed.
+     *
+     * @param websiteId the ID of the website of the page
+     */
+    private void removeDuplicate(int websiteId) {
+        Duplicate duplicate = duplicates.remove(websiteId);
+        if (duplicate != null) {
+            savedPostings -= duplicate.savedPostings();
+            savedBytes -= duplicate.savedBytes();
+        }
+    }
+
+    /**
+     * Returns the metrics of the near-duplicate detection.
+     *
+     * @return the duplicate statistics
+     */
+    public synchronized DuplicateStats getStats() {
+        return new DuplicateStats(duplicateIndex.size(), duplicates.size(), savedPostings, savedBytes);
+    }
+}
@@ -0,0 +1,151 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.PageRank;
+import Server.IndexStorageBarrel.Index.LinkGraph;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Objects.PageRankStats;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.sql.Connection;
+import java.util.concurrent.ForkJoinPool;
+
+// Exception imports
+import java.sql.SQLException;
+
+/**
+ * The BarrelPageRank class periodically computes the PageRank of the crawled
+ * websites from the link graph and publishes it to the index, where it replaces
+ * the reference count when ranking by links.
+ * <p>
+ * The PageRank is recomputed once enough new pages have been indexed, or when
+ * the recompute interval expires with new pages pending. The link graph is read
+ * through a read-only connection, so ingestion is never blocked.
+ */
+public class BarrelPageRank implements Runnable {
+    /**
+     * The interval at which the number of new pages is checked, in milliseconds.
+     */
+    public static final long CHECK_INTERVAL = 5 * 1000;
+    /**
+     * The maximum time new pages wait for a recomputation, in milliseconds.
+     */
+    public static final long RECOMPUTE_INTERVAL = 10 * 60 * 1000;
+    /**
+     * The database whose link graph is ranked.
+     */
+    private final BarrelDatabase database;
+    /**
+     * The index the scores are published to.
+     */
+    private final InvertedIndex index;
+    /**
+     * The number of new pages after which the PageRank is recomputed.
+     */
+    private final int recomputePages;
+    /**
+     * The fork-join pool running the power iterations.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool();
+    /**
+     * The metrics of the last computation.
+     */
+    private volatile PageRankStats stats = new PageRankStats(0, 0, 0, 0, 0);
+    /**
+     * A boolean value indicating whether the BarrelPageRank is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a BarrelPageRank object and starts its thread.
+     *
+     * @param database       the database whose link graph is ranked
+     * @param index          the index the scores are published to
+     * @param recomputePages the number of new pages after which the PageRank is
+     *                       recomputed
+     */
+    public BarrelPageRank(BarrelDatabase database, InvertedIndex index, int recomputePages) {
+        this.database = database;
+        this.index = index;
+        this.recomputePages = recomputePages;
+        new Thread(this, "Barrel PageRank").start();
+    }
+
+    /**
+     * Computes the PageRank on start, and again whenever enough new pages have
+     * been indexed or the recompute interval expires.
+     */
+    @Override
+    public void run() {
+        int lastDocCount = -1;
+        long lastRun = 0;
+        while (running) {
+            int docCount = index.getDocCount();
+            long elapsed = System.currentTimeMillis() - lastRun;
+            if (lastDocCount < 0 || docCount - lastDocCount >= recomputePages
+                    || (docCount != lastDocCount && elapsed >= RECOMPUTE_INTERVAL)) {
+                lastDocCount = docCount;
+                lastRun = System.currentTimeMillis();
+                compute();
+            }
+
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelPageRank.class, e);
+                running = false;
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Loads the link graph, computes its PageRank and publishes the scores to
+     * the index as a float array indexed by document ID.
+     */
+    private void compute() {
+        long startTime = System.currentTimeMillis();
+        LinkGraph graph;
+        try (Connection conn = database.getReader()) {
+            graph = LinkGraph.load(conn);
+        } catch (SQLException e) {
+            LogUtil.logError(LogUtil.ANSI_RED, BarrelPageRank.class, e);
+            return;
+        }
+
+        PageRank.Result result = PageRank.compute(graph, pool);
+        int maxDocId = graph.nodeCount() == 0 ? -1 : graph.docId(graph.nodeCount() - 1);
+        float[] scores = new float[maxDocId + 1];
+        for (int node = 0; node < graph.nodeCount(); node++)
+            scores[graph.docId(node)] = (float) result.scores()[node];
+        index.setPageRanks(scores);
+
+        long runTime = System.currentTimeMillis() - startTime;
+        stats = new PageRankStats(stats.runs() + 1, graph.nodeCount(), graph.linkCount(), result.iterations(),
+                runTime);
+        LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelPageRank.class,
+                "Ranked " + graph.nodeCount() + " websites and " + graph.linkCount() + " links in "
+                        + result.iterations() + " iterations and " + runTime + "ms");
+    }
+
+    /**
+     * Returns the metrics of the last computation.
+     *
+     * @return the PageRank statistics
+     */
+    public PageRankStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Sets the running state of the BarrelPageRank.
+     * 
+     * @param running the running state to set
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+}
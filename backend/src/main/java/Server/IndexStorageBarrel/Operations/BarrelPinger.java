@@ -4,6 +4,8 @@ package Server.IndexStorageBarrel.Operations;
 import Server.IndexStorageBarrel.IndexStorageBarrel;
 import Server.Controller.RMIGateway;
 import Server.Controller.RMIGatewayInterface;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
 
 // Logging imports
 import Logger.LogUtil;
@@ -105,6 +107,19 @@ public class BarrelPinger implements Runnable {
         return rmiGateway.getActiveBarrels();
     }
 
+    /**
+     * Returns the number of active barrels of a term and document partition.
+     *
+     * @param partition         the term partition
+     * @param documentPartition the document partition
+     * @return the number of active replicas of the partition
+     * @throws RemoteException if the gateway cannot be reached
+     */
+    public int getActiveReplicas(TermPartition partition, DocumentPartition documentPartition)
+            throws RemoteException {
+        return rmiGateway.getActiveReplicas(partition, documentPartition);
+    }
+
     public RMIGatewayInterface getRMIGateway() {
         return rmiGateway;
     }
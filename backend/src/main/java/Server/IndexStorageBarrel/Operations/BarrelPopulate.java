@@ -1,8 +1,17 @@
 package Server.IndexStorageBarrel.Operations;
 
 // Package imports
+import Analysis.Analyzer;
 import ReliableMulticast.Objects.CrawlData;
-import Server.IndexStorageBarrel.Tools.SyncData;
+import Server.IndexStorageBarrel.Index.IndexStorage;
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.StoredDocument;
+import Server.IndexStorageBarrel.Index.DocumentTerms;
+import Server.IndexStorageBarrel.Index.CompressedPostings;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Tools.SyncTable;
 import Server.IndexStorageBarrel.Tools.QueryResult;
 
 // Logging imports
@@ -14,18 +23,29 @@ import java.net.URL;
 import java.util.Map;
 import java.util.List;
 import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.Collections;
+import java.io.DataInputStream;
+
+// Exception imports
+import java.io.IOException;
 
 /**
  * This class represents the BarrelPopulate class, which is responsible for
- * populating the database with data from SyncData and CrawlData objects.
- * It provides methods to insert sync data into the database and handle the
- * insertion of crawl data.
+ * populating the database with data from state transfers and CrawlData objects.
+ * It provides methods to insert the tables streamed by another barrel and handle
+ * the insertion of crawl data.
  * The class uses a connection to the database and an instance of
  * BarrelProcessing for processing the data.
  */
 
 public class BarrelPopulate {
+    /**
+     * The maximum number of values looked up by a single query, below the
+     * SQLite limit on the number of bound parameters.
+     */
+    private static final int LOOKUP_CHUNK_SIZE = 500;
     /**
      * The database connection.
      */
@@ -33,77 +53,217 @@ public class BarrelPopulate {
     /**
      * The BarrelProcessing object used for processing the data.
      */
-    private BarrelProcessing barrelProcessing;
+    private final BarrelProcessing barrelProcessing;
+    /**
+     * The last website ID held before the current state transfer.
+     */
+    private int syncStartId;
+    /**
+     * Whether ingestion is halted, after the postings or the texts could not be
+     * persisted or when the barrel stops.
+     */
+    private boolean halted = false;
+    /**
+     * The in-memory index kept up to date with the committed data.
+     */
+    private final InvertedIndex index;
+    /**
+     * The storage engine of the postings of the index.
+     */
+    private final IndexStorage indexStorage;
+    /**
+     * The store of the URL, title and text of the websites.
+     */
+    private final DocumentStore documentStore;
+    /**
+     * Whether the positions of the terms are indexed, for phrase queries.
+     */
+    private final boolean indexPositions;
+    /**
+     * The Analyzer whose filters are applied to the tokens of the crawled pages.
+     */
+    private final Analyzer analyzer;
+    /**
+     * The BarrelDeduplicator collapsing near-duplicate pages, or null if
+     * near-duplicates are indexed as any other page.
+     */
+    private final BarrelDeduplicator barrelDeduplicator;
+    /**
+     * The keywords whose postings are indexed by the barrel, every keyword
+     * unless the index is partitioned by term.
+     */
+    private final TermPartition termPartition;
+    /**
+     * The websites whose keywords and text are indexed by the barrel, every
+     * website unless the index is partitioned by document.
+     */
+    private final DocumentPartition documentPartition;
 
     /**
      * Constructs a new BarrelPopulate object with the specified database
      * connection.
      *
-     * @param conn the database connection to be used by the BarrelPopulate object
+     * @param conn         the database connection to be used by the BarrelPopulate
+     *                     object
+     * @param index        the in-memory index to keep up to date
+     * @param indexStorage   the storage engine of the postings of the index
+     * @param documentStore  the store of the URL, title and text of the websites
+     * @param indexPositions whether the positions of the terms are indexed
+     * @param analyzer       the analyzer whose filters are applied to the tokens
+     *                       of the crawled pages, the same one as for queries
+     * @param barrelDeduplicator the deduplicator collapsing near-duplicate pages,
+     *                           or null to index every page
+     * @param termPartition      the keywords whose postings are indexed
+     * @param documentPartition  the websites whose keywords and text are indexed
      */
-    public BarrelPopulate(Connection conn) {
+    public BarrelPopulate(Connection conn, InvertedIndex index, IndexStorage indexStorage,
+            DocumentStore documentStore, boolean indexPositions, Analyzer analyzer,
+            BarrelDeduplicator barrelDeduplicator, TermPartition termPartition,
+            DocumentPartition documentPartition) {
         this.conn = conn;
+        this.index = index;
+        this.indexStorage = indexStorage;
+        this.documentStore = documentStore;
+        this.indexPositions = indexPositions;
+        this.analyzer = analyzer;
+        this.barrelDeduplicator = barrelDeduplicator;
+        this.termPartition = termPartition;
+        this.documentPartition = documentPartition;
         this.barrelProcessing = new BarrelProcessing(conn);
     }
 
     /**
-     * Inserts the sync data into the database.
+     * Starts the transaction of a state transfer, in which the rows of every
+     * table received are inserted. The caller holds the lock of this object for
+     * the whole transfer, so that no crawl batch is interleaved.
      *
-     * @param syncData The sync data to be inserted.
+     * @throws SQLException if the transaction cannot be started
      */
-    public void insertSyncData(SyncData syncData) {
+    public synchronized void beginSync() throws SQLException {
         LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelPopulate.class, "Inserting sync data into database...");
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM websites")) {
+            syncStartId = rs.next() ? rs.getInt(1) : 0;
+        }
+    }
 
-        // Start a transaction
+    /**
+     * Inserts a chunk of rows of a table received during a state transfer, as
+     * they are read from the stream.
+     *
+     * @param table the table of the rows
+     * @param in    the stream holding the rows
+     * @param rows  the number of rows of the chunk
+     * @throws SQLException if the rows cannot be inserted
+     * @throws IOException  if the rows cannot be read
+     */
+    public synchronized void insertSyncRows(SyncTable table, DataInputStream in, int rows)
+            throws SQLException, IOException {
+        try (PreparedStatement pstmt = conn.prepareStatement(table.insertSql())) {
+            for (int i = 0; i < rows; i++) {
+                table.bindRow(in, pstmt);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Commits the tables received during a state transfer and rebuilds the index
+     * from the merged tables. The postings and texts not stored in the database
+     * are appended afterwards, as they arrive.
+     *
+     * @throws SQLException if the transaction cannot be committed
+     * @throws IOException  if the index cannot be rebuilt
+     */
+    public synchronized void commitSync() throws SQLException, IOException {
+        barrelProcessing.refreshRefCounts(syncStartId);
+        conn.commit();
+        conn.setAutoCommit(true);
+        indexStorage.load(conn);
+    }
+
+    /**
+     * Appends a chunk of postings and texts received during a state transfer,
+     * once the tables are committed.
+     *
+     * @param documents the terms of the documents, empty if the postings are
+     *                  stored in the database
+     * @param bodies    the URL, title and text of the websites
+     * @throws IOException if the postings or the texts cannot be persisted
+     */
+    public synchronized void appendSyncDocuments(List<DocumentTerms> documents, List<StoredDocument> bodies)
+            throws IOException {
+        appendDocuments(documents, bodies);
+    }
+
+    /**
+     * Appends the postings and texts of committed documents, halting ingestion if
+     * either cannot be persisted.
+     *
+     * @param documents the terms of the documents
+     * @param bodies    the URL, title and text of the websites
+     * @throws IOException if the postings or the texts cannot be persisted
+     */
+    private void appendDocuments(List<DocumentTerms> documents, List<StoredDocument> bodies) throws IOException {
         try {
-            conn.setAutoCommit(false);
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return;
+            indexStorage.append(documents);
+            documentStore.append(bodies);
+        } catch (IOException e) {
+            halted = true;
+            LogUtil.logInfo(LogUtil.ANSI_RED, BarrelPopulate.class,
+                    "Halting ingestion: committed documents are missing their postings or text");
+            throw e;
         }
+    }
 
-        for (String table : syncData.tableResults().keySet()) {
-            List<Map<String, Object>> rows = syncData.tableResults().get(table);
-            switch (table) {
-                case "websites" -> {
-                    if (!insertWebsites(rows)) {
-                        stopTransaction();
-                        return;
-                    }
-                }
-                case "keywords" -> {
-                    if (!insertKeywords(rows)) {
-                        stopTransaction();
-                        return;
-                    }
-                }
-                case "urls" -> {
-                    if (!insertUrls(rows)) {
-                        stopTransaction();
-                        return;
-                    }
-                }
-                case "website_keywords" -> {
-                    if (!insertWebsiteKeywords(rows)) {
-                        stopTransaction();
-                        return;
-                    }
-                }
-                case "website_urls" -> {
-                    if (!insertWebsiteUrl(rows)) {
-                        stopTransaction();
-                        return;
-                    }
-                }
-            }
+    /**
+     * Discards the postings prepared for a transaction that rolled back, halting
+     * ingestion if they cannot be discarded. The texts already appended are left
+     * in the store: the IDs of the rolled back websites are reused by the next
+     * ones inserted, whose texts replace them, and the text of a website that is
+     * not indexed is never read.
+     */
+    private void abortDocuments() {
+        try {
+            indexStorage.abort();
+        } catch (IOException e) {
+            halted = true;
+            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
         }
-        // Commit the transaction
+    }
+
+    /**
+     * Halts ingestion, waiting for the batch being applied to complete, so that
+     * the storage can be closed.
+     */
+    public synchronized void halt() {
+        halted = true;
+    }
+
+    /**
+     * Returns whether ingestion is halted.
+     *
+     * @return true if no further change is applied
+     */
+    public synchronized boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * Publishes the end of a state transfer, whether it completed or not.
+     */
+    public synchronized void finishSync() {
         try {
-            conn.commit();
-            conn.setAutoCommit(true);
+            if (!conn.getAutoCommit())
+                stopTransaction();
+            if (barrelDeduplicator != null)
+                barrelDeduplicator.load();
         } catch (SQLException e) {
             LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
         }
+        index.advanceEpoch();
     }
 
     /**
@@ -121,158 +281,339 @@ public class BarrelPopulate {
     }
 
     /**
-     * Inserts a list of websites into the database.
+     * Inserts crawl data into the database in its own transaction.
      *
-     * @param rows the list of websites to insert
-     * @return true if the websites were successfully inserted, false otherwise
-     */
-    private boolean insertWebsites(List<Map<String, Object>> rows) {
-        String sql = "INSERT INTO websites(url, title, description, ref_count) VALUES(?,?,?,?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (Map<String, Object> row : rows) {
-                pstmt.setString(1, (String) row.get("url"));
-                pstmt.setString(2, (String) row.get("title"));
-                pstmt.setString(3, (String) row.get("description"));
-                pstmt.setInt(4, (int) row.get("ref_count"));
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return false;
-        }
-        return true;
+     * @param crawlData The crawl data to be inserted.
+     * @throws SQLException If an error occurs while inserting the crawl data.
+     * @throws IOException  If ingestion is halted or the postings or the text
+     *                      cannot be persisted.
+     */
+    public synchronized void insertCrawlData(CrawlData crawlData) throws SQLException, IOException {
+        insertCrawlBatch(List.of(crawlData));
     }
 
     /**
-     * Inserts a list of keywords into the "keywords" table in the database.
-     * 
-     * @param rows a list of maps containing the keyword, id, and searches values to
-     *             be inserted
-     * @return true if the keywords were successfully inserted, false otherwise
-     */
-    private boolean insertKeywords(List<Map<String, Object>> rows) {
-        String sql = "INSERT INTO keywords(keyword, id, searches) VALUES(?,?,?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (Map<String, Object> row : rows) {
-                pstmt.setString(1, (String) row.get("keyword"));
-                pstmt.setInt(2, (int) row.get("id"));
-                pstmt.setInt(3, (int) row.get("searches"));
-                pstmt.addBatch();
+     * Inserts a batch of crawl data into the database in a single transaction,
+     * reusing the same prepared statements for every document and committing
+     * once.
+     * Each document is applied under its own savepoint, so a document that fails
+     * is rolled back and skipped without losing the rest of the batch.
+     * The postings and texts are persisted before the commit, and published to
+     * the index after it.
+     *
+     * @param batch the crawl data to be inserted
+     * @return the number of documents inserted
+     * @throws SQLException If an error occurs while starting or committing the
+     *                      transaction, in which case the whole batch is rolled
+     *                      back.
+     * @throws IOException  If ingestion is halted, or if the postings or the texts
+     *                      cannot be persisted, in which case the whole batch is
+     *                      rolled back and ingestion is halted.
+     */
+    public synchronized int insertCrawlBatch(List<CrawlData> batch) throws SQLException, IOException {
+        if (halted)
+            throw new IOException("Ingestion is halted");
+        List<IndexedDocument> documents = new ArrayList<>();
+
+        // Start a transaction
+        List<DocumentTerms> documentTerms = new ArrayList<>();
+        List<StoredDocument> storedDocuments = new ArrayList<>();
+        conn.setAutoCommit(false);
+        try (CrawlStatements statements = new CrawlStatements(conn)) {
+            for (CrawlData crawlData : batch) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    IndexedDocument document = insertDocument(statements, crawlData);
+                    conn.releaseSavepoint(savepoint);
+
+                    documents.add(document);
+                } catch (SQLException e) {
+                    LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
+                    conn.rollback(savepoint);
+                    statements.clearBatches();
+                }
             }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return false;
-        }
-        return true;
-    }
 
-    /**
-     * Inserts a list of URLs into the database.
-     *
-     * @param rows the list of rows containing the URLs and their corresponding IDs
-     * @return true if the URLs were successfully inserted, false otherwise
-     */
-    private boolean insertUrls(List<Map<String, Object>> rows) {
-        String sql = "INSERT INTO urls(url, id) VALUES(?,?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (Map<String, Object> row : rows) {
-                pstmt.setString(1, (String) row.get("url"));
-                pstmt.setInt(2, (int) row.get("id"));
-                pstmt.addBatch();
+            // Persist the postings and texts before the commit, so that a crash cannot lose them
+            for (IndexedDocument document : documents) {
+                // A collapsed near-duplicate or another partition's website adds neither postings nor text
+                if (document.terms() != null) {
+                    documentTerms.add(document.terms());
+                    storedDocuments.add(document.stored());
+                }
             }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return false;
+            indexStorage.prepare(conn, documentTerms);
+            documentStore.append(storedDocuments);
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            stopTransaction();
+            abortDocuments();
+            // The fingerprints of the rolled back pages were already published
+            if (barrelDeduplicator != null)
+                barrelDeduplicator.load();
+            if (e instanceof IOException) {
+                halted = true;
+                LogUtil.logInfo(LogUtil.ANSI_RED, BarrelPopulate.class,
+                        "Halting ingestion: the postings or texts cannot be persisted");
+            }
+            throw e;
         }
-        return true;
+        conn.setAutoCommit(true);
+
+        // Publish the committed changes to the index
+        for (IndexedDocument document : documents) {
+            if (document.website().newUrl())
+                index.setRefCount(document.website().websiteId(), document.website().refCount());
+            for (int referencedId : document.referencedIds())
+                index.incrementRefCount(referencedId);
+        }
+        indexStorage.publish(documentTerms);
+        index.advanceEpoch();
+        return documents.size();
     }
 
     /**
-     * Inserts website keywords into the database.
-     *
-     * @param rows a list of maps containing the website ID, keyword ID, and TF-IDF
-     *             values
-     * @return true if the insertion is successful, false otherwise
-     */
-    private boolean insertWebsiteKeywords(List<Map<String, Object>> rows) {
-        String sql = "INSERT INTO website_keywords(website_id, keyword_id, tf_idf) VALUES(?,?,?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (Map<String, Object> row : rows) {
-                pstmt.setInt(1, (int) row.get("website_id"));
-                pstmt.setInt(2, (int) row.get("keyword_id"));
-                pstmt.setDouble(3, (double) row.get("tf_idf"));
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return false;
+     * The prepared statements shared by every document of a crawl batch.
+     */
+    private static class CrawlStatements implements AutoCloseable {
+        /**
+         * Selects the ID of a website by URL.
+         */
+        private final PreparedStatement selectWebsite;
+        /**
+         * Updates the title and description of a website.
+         */
+        private final PreparedStatement updateWebsite;
+        /**
+         * Counts the websites linking to a URL.
+         */
+        private final PreparedStatement countInlinks;
+        /**
+         * Inserts a new website.
+         */
+        private final PreparedStatement insertWebsite;
+        /**
+         * Inserts a keyword if it does not exist.
+         */
+        private final PreparedStatement insertKeyword;
+        /**
+         * Inserts the frequency and positions of a keyword in a website.
+         */
+        private final PreparedStatement insertWebsiteKeyword;
+        /**
+         * Inserts a URL if it does not exist.
+         */
+        private final PreparedStatement insertUrl;
+        /**
+         * Inserts a link from a website to a URL.
+         */
+        private final PreparedStatement insertWebsiteUrl;
+        /**
+         * Increments the reference count of a website.
+         */
+        private final PreparedStatement incrementRefCount;
+        /**
+         * Inserts or replaces the fingerprint of a website.
+         */
+        private final PreparedStatement upsertFingerprint;
+
+        /**
+         * Prepares the statements on the given connection.
+         *
+         * @param conn the database connection
+         * @throws SQLException if a statement cannot be prepared
+         */
+        private CrawlStatements(Connection conn) throws SQLException {
+            selectWebsite = conn.prepareStatement("SELECT id FROM websites WHERE url = ?");
+            updateWebsite = conn.prepareStatement("UPDATE websites SET title = ?, description = ? WHERE id = ?");
+            countInlinks = conn.prepareStatement("SELECT COUNT(*) FROM website_urls wu "
+                    + "JOIN urls u ON wu.url_id = u.id WHERE u.url = ?");
+            insertWebsite = conn.prepareStatement(
+                    "INSERT INTO websites(url, title, description, ref_count) VALUES(?,?,?,?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            insertKeyword = conn.prepareStatement("INSERT OR IGNORE INTO keywords (keyword) VALUES (?)");
+            insertWebsiteKeyword = conn.prepareStatement(
+                    "INSERT OR IGNORE INTO website_keywords (website_id, keyword_id, tf, doc_length, positions) "
+                            + "VALUES (?, ?, ?, ?, ?)");
+            insertUrl = conn.prepareStatement("INSERT OR IGNORE INTO urls(url) VALUES(?)");
+            insertWebsiteUrl = conn.prepareStatement(
+                    "INSERT OR IGNORE INTO website_urls(website_id, url_id) VALUES(?, ?)");
+            incrementRefCount = conn.prepareStatement("UPDATE websites SET ref_count = ref_count + 1 WHERE id = ?");
+            upsertFingerprint = conn.prepareStatement("INSERT OR REPLACE INTO website_fingerprints"
+                    + "(website_id, fingerprint, canonical_id, saved_postings, saved_bytes) VALUES(?,?,?,?,?)");
+        }
+
+        /**
+         * Discards the rows left in the batches of a failed document.
+         *
+         * @throws SQLException if a batch cannot be cleared
+         */
+        private void clearBatches() throws SQLException {
+            for (PreparedStatement pstmt : new PreparedStatement[] { insertKeyword, insertWebsiteKeyword,
+                    insertUrl, insertWebsiteUrl, incrementRefCount })
+                pstmt.clearBatch();
+        }
+
+        /**
+         * Closes every prepared statement.
+         *
+         * @throws SQLException if a statement cannot be closed
+         */
+        @Override
+        public void close() throws SQLException {
+            for (PreparedStatement pstmt : new PreparedStatement[] { selectWebsite, updateWebsite, countInlinks,
+                    insertWebsite, insertKeyword, insertWebsiteKeyword, insertUrl, insertWebsiteUrl,
+                    incrementRefCount, upsertFingerprint })
+                pstmt.close();
         }
-        return true;
     }
 
     /**
-     * Inserts website URLs into the database.
-     * 
-     * @param rows a list of maps containing website_id and url_id values
-     * @return true if the insertion is successful, false otherwise
-     */
-    private boolean insertWebsiteUrl(List<Map<String, Object>> rows) {
-        String sql = "INSERT INTO website_urls(website_id, url_id) VALUES(?,?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (Map<String, Object> row : rows) {
-                pstmt.setInt(1, (int) row.get("website_id"));
-                pstmt.setInt(2, (int) row.get("url_id"));
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return false;
-        }
-        return true;
+     * The changes of a document inserted in the current transaction, published to
+     * the index once the transaction commits.
+     *
+     * @param website       ID and new URL flag for the website
+     * @param terms         the normalized frequency of each inserted keyword, or
+     *                      null for a collapsed near-duplicate or a website of
+     *                      another document partition
+     * @param stored        the URL, title and text of the website, or null when
+     *                      the terms are null
+     * @param referencedIds the IDs whose reference count was incremented
+     */
+    private record IndexedDocument(QueryResult website, DocumentTerms terms, StoredDocument stored,
+            List<Integer> referencedIds) {
     }
 
     /**
-     * Inserts crawl data into the database.
+     * Inserts the website, keywords and links of a crawled document.
      *
-     * @param crawlData The crawl data to be inserted.
-     * @throws SQLException If an error occurs while inserting the crawl data.
+     * @param statements the prepared statements of the batch
+     * @param crawlData  the crawl data to be inserted
+     * @return the changes to publish to the index
+     * @throws SQLException if an error occurs while inserting the document
      */
-    public void insertCrawlData(CrawlData crawlData) throws SQLException {
+    private IndexedDocument insertDocument(CrawlStatements statements, CrawlData crawlData) throws SQLException {
         // Extract data from CrawlData object
         String url = crawlData.getUrl().toString();
         String title = crawlData.getTitle();
-        String description = crawlData.getDescription();
-        List<String> tokens = crawlData.getTokens();
+        String body = crawlData.getDescription();
+        List<String> tokens = analyzer.filter(crawlData.getTokens());
         List<URL> urls = crawlData.getUrlStrings();
 
-        barrelProcessing = new BarrelProcessing(conn);
+        // The body goes to the document store, the website only holds its summary
+        QueryResult website = handleWebsiteInsertOrUpdate(statements, url, title, BarrelSnippets.summary(body));
+        // The website and its links are known to every document partition, for the link ranking
+        if (!documentPartition.owns(url))
+            return new IndexedDocument(website, null, null, handleUrlBatchInsertion(statements, website, urls));
+        BarrelDeduplicator.Check check = barrelDeduplicator == null ? null
+                : barrelDeduplicator.check(website.websiteId(), website.newUrl(),
+                        barrelProcessing.countTerms(tokens), tokens.size());
+        if (check != null && check.isDuplicate())
+            return insertDuplicate(statements, website, tokens, urls, check);
+
+        Map<String, Float> termFrequencies = new HashMap<>();
+        Map<String, int[]> termPositions = indexPositions ? barrelProcessing.termPositions(tokens) : null;
+        if (indexStorage.storesPostingsInDatabase()) {
+            // Only the owned keywords get an ID, and so a row in website_keywords
+            Map<String, Integer> keywordIdMap = handleKeywordBatchInsertion(statements, ownedTokens(tokens));
+            handleWebsiteKeywordBatchInsertion(statements, website, keywordIdMap, tokens, termPositions,
+                    termFrequencies);
+        } else
+            collectNewTerms(website, tokens, termFrequencies);
+        List<Integer> referencedIds = handleUrlBatchInsertion(statements, website, urls);
+        if (check != null)
+            publishFingerprint(statements, website, check, 0, 0);
+        return new IndexedDocument(website,
+                new DocumentTerms(website.websiteId(), tokens.size(), termFrequencies, termPositions),
+                new StoredDocument(website.websiteId(), url, title, body), referencedIds);
+    }
 
-        // Start a transaction
-        try {
-            conn.setAutoCommit(false);
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            return;
-        }
+    /**
+     * Inserts the links and the fingerprint of a near-duplicate page collapsed
+     * into its canonical page, whose postings and text are not stored.
+     *
+     * @param statements the prepared statements of the batch
+     * @param website    ID and new URL flag for the website
+     * @param tokens     the tokens of the page
+     * @param urls       the URLs the page links to
+     * @param check      the outcome of the duplicate check
+     * @return the changes to publish to the index
+     * @throws SQLException if an error occurs while inserting the page
+     */
+    private IndexedDocument insertDuplicate(CrawlStatements statements, QueryResult website, List<String> tokens,
+            List<URL> urls, BarrelDeduplicator.Check check) throws SQLException {
+        List<Integer> referencedIds = handleUrlBatchInsertion(statements, website, urls);
+        Map<String, Integer> termCounts = barrelProcessing.countTerms(ownedTokens(tokens));
+        long savedBytes = (long) termCounts.size() * BarrelDeduplicator.POSTING_BYTES;
+        if (indexPositions)
+            for (Map.Entry<String, int[]> entry : barrelProcessing.termPositions(tokens).entrySet())
+                if (termCounts.containsKey(entry.getKey()))
+                    savedBytes += CompressedPostings.encodePositions(entry.getValue()).length;
+        publishFingerprint(statements, website, check, termCounts.size(), savedBytes);
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelPopulate.class, "Collapsed website " + website.websiteId()
+                + " into near-duplicate " + check.canonicalId() + ", " + termCounts.size() + " postings saved");
+        return new IndexedDocument(website, null, null, referencedIds);
+    }
 
-        // Assuming barrelProcessing is properly initialized
-        QueryResult websiteId = handleWebsiteInsertOrUpdate(url, title, description);
-        Map<String, Integer> keywordIdMap = handleKeywordBatchInsertion(tokens);
-        handleWebsiteKeywordBatchInsertion(websiteId, keywordIdMap, tokens);
-        handleUrlBatchInsertion(websiteId, urls);
+    /**
+     * Stores the fingerprint of a page and publishes it to the deduplicator. As
+     * the last step of a document, a rolled back document is never published.
+     *
+     * @param statements    the prepared statements of the batch
+     * @param website       ID and new URL flag for the website
+     * @param check         the outcome of the duplicate check
+     * @param savedPostings the number of postings not added, for a duplicate
+     * @param savedBytes    the estimated size of those postings, in bytes
+     * @throws SQLException if the fingerprint cannot be stored
+     */
+    private void publishFingerprint(CrawlStatements statements, QueryResult website,
+            BarrelDeduplicator.Check check, long savedPostings, long savedBytes) throws SQLException {
+        PreparedStatement pstmt = statements.upsertFingerprint;
+        pstmt.setInt(1, website.websiteId());
+        pstmt.setLong(2, check.fingerprint());
+        if (check.isDuplicate())
+            pstmt.setInt(3, check.canonicalId());
+        else
+            pstmt.setNull(3, Types.INTEGER);
+        pstmt.setLong(4, savedPostings);
+        pstmt.setLong(5, savedBytes);
+        pstmt.executeUpdate();
+        barrelDeduplicator.publish(website.websiteId(), check, savedPostings, savedBytes);
+    }
 
-        // Commit the transaction
-        try {
-            conn.commit();
-            conn.setAutoCommit(true);
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-        }
+    /**
+     * Computes the normalized frequency of the terms of a document whose postings
+     * are not stored in the database. As with the website_keywords table, the
+     * terms already indexed for a re-crawled website keep their frequency.
+     *
+     * @param website         ID and new URL flag for the website
+     * @param tokens          the tokens of the document
+     * @param termFrequencies the map receiving the normalized frequency of each
+     *                        new term
+     */
+    private void collectNewTerms(QueryResult website, List<String> tokens, Map<String, Float> termFrequencies) {
+        for (Map.Entry<String, Integer> entry : barrelProcessing.countTerms(ownedTokens(tokens)).entrySet())
+            if (website.newUrl() || !index.containsPosting(entry.getKey(), website.websiteId()))
+                termFrequencies.put(entry.getKey(),
+                        (float) barrelProcessing.calcTF(entry.getValue(), tokens.size()));
+    }
+
+    /**
+     * Returns the tokens of the keywords owned by the partition of the barrel.
+     * The length of a document still counts every token, so that the term
+     * frequencies are the same in every partition.
+     *
+     * @param tokens the tokens of a document
+     * @return the owned tokens, in order
+     */
+    private List<String> ownedTokens(List<String> tokens) {
+        if (!termPartition.isPartitioned())
+            return tokens;
+        List<String> owned = new ArrayList<>();
+        for (String token : tokens)
+            if (termPartition.owns(token))
+                owned.add(token);
+        return owned;
     }
 
     /**
@@ -280,211 +621,240 @@ public class BarrelPopulate {
      * If the URL already exists in the database, the existing record is updated
      * with the provided title and description.
      * If the URL does not exist, a new record is inserted with the provided URL,
-     * title, and description.
+     * title, and description, and a reference count of the websites already
+     * linking to it.
      *
+     * @param statements  the prepared statements of the batch
      * @param url         the URL of the website
      * @param title       the title of the website
      * @param description the description of the website
      * @return the ID of the inserted or updated website record
+     * @throws SQLException if an error occurs while accessing the database
      */
-    private QueryResult handleWebsiteInsertOrUpdate(String url, String title, String description) {
-        String sql = "SELECT id FROM websites WHERE url = ?";
-        int websiteId = 0;
-        boolean newUrl = false;
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, url);
-            ResultSet rs1 = pstmt.executeQuery();
+    private QueryResult handleWebsiteInsertOrUpdate(CrawlStatements statements, String url, String title,
+            String description) throws SQLException {
+        statements.selectWebsite.setString(1, url);
+        try (ResultSet rs1 = statements.selectWebsite.executeQuery()) {
             if (rs1.next()) {
-                websiteId = rs1.getInt("id");
+                int websiteId = rs1.getInt("id");
                 // URL exists, update the existing record
-                sql = "UPDATE websites SET title = ?, description = ? WHERE id = ?";
-                try (PreparedStatement pstmt2 = conn.prepareStatement(sql)) {
-                    pstmt2.setString(1, title);
-                    pstmt2.setString(2, description);
-                    pstmt2.setInt(3, websiteId);
-                    pstmt2.executeUpdate();
-                }
-            } else {
-                // URL does not exist, insert a new record
-                sql = "INSERT INTO websites(url, title, description) VALUES(?,?,?)";
-                try (PreparedStatement pstmt2 = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                    pstmt2.setString(1, url);
-                    pstmt2.setString(2, title);
-                    pstmt2.setString(3, description);
-                    pstmt2.executeUpdate();
-                    ResultSet rs2 = pstmt2.getGeneratedKeys();
-                    if (rs2.next()) {
-                        websiteId = rs2.getInt(1);
-                    }
-                }
-                newUrl = true;
+                statements.updateWebsite.setString(1, title);
+                statements.updateWebsite.setString(2, description);
+                statements.updateWebsite.setInt(3, websiteId);
+                statements.updateWebsite.executeUpdate();
+                return new QueryResult(websiteId, false, 0);
             }
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            stopTransaction();
         }
-        return new QueryResult(websiteId, newUrl);
+
+        // URL does not exist, insert a new record counting the links crawled before it
+        statements.countInlinks.setString(1, url);
+        int refCount;
+        try (ResultSet rs = statements.countInlinks.executeQuery()) {
+            refCount = rs.next() ? rs.getInt(1) : 0;
+        }
+        statements.insertWebsite.setString(1, url);
+        statements.insertWebsite.setString(2, title);
+        statements.insertWebsite.setString(3, description);
+        statements.insertWebsite.setInt(4, refCount);
+        statements.insertWebsite.executeUpdate();
+        try (ResultSet rs2 = statements.insertWebsite.getGeneratedKeys()) {
+            if (!rs2.next())
+                throw new SQLException("No ID generated for website " + url);
+            return new QueryResult(rs2.getInt(1), true, refCount);
+        }
     }
 
     /**
      * Inserts a batch of keywords into the database and retrieves their
      * corresponding IDs.
      * 
-     * @param tokens the list of keywords to be inserted
+     * @param statements the prepared statements of the batch
+     * @param tokenList  the list of keywords to be inserted
      * @return a map containing the keywords as keys and their corresponding IDs as
      *         values
+     * @throws SQLException if an error occurs while accessing the database
      */
-    private Map<String, Integer> handleKeywordBatchInsertion(List<String> tokens) {
-        Map<String, Integer> keywordIdMap = new HashMap<>();
-        String insertSql = "INSERT OR IGNORE INTO keywords (keyword) VALUES (?)";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-            for (String token : tokens) {
-                pstmt.setString(1, token);
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            stopTransaction();
+    private Map<String, Integer> handleKeywordBatchInsertion(CrawlStatements statements, List<String> tokenList)
+            throws SQLException {
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(tokenList));
+        if (tokens.isEmpty())
+            return new HashMap<>();
+
+        for (String token : tokens) {
+            statements.insertKeyword.setString(1, token);
+            statements.insertKeyword.addBatch();
         }
-        // Create a placeholder for each item in the tokens list
-        String placeholders = String.join(",", Collections.nCopies(tokens.size(), "?"));
+        statements.insertKeyword.executeBatch();
 
         // Select every inserted keyword from the database
-        String selectSql = "SELECT id, keyword FROM keywords WHERE keyword IN (" + placeholders + ")";
+        return selectIds("keywords", "keyword", tokens);
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
-            for (int i = 0; i < tokens.size(); i++) {
-                pstmt.setString(i + 1, tokens.get(i));
-            }
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    int id = rs.getInt("id");
-                    String keyword = rs.getString("keyword");
-                    keywordIdMap.put(keyword, id);
+    /**
+     * Looks up the IDs of many rows by value, with one query per chunk of values
+     * instead of one per value.
+     *
+     * @param table  the table to look up
+     * @param column the unique column holding the values
+     * @param values the distinct values to look up
+     * @return a map from each value found to the ID of its row
+     * @throws SQLException if an error occurs while accessing the database
+     */
+    private Map<String, Integer> selectIds(String table, String column, List<String> values) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int from = 0; from < values.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = values.subList(from, Math.min(values.size(), from + LOOKUP_CHUNK_SIZE));
+            // Create a placeholder for each item in the chunk
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN (" + placeholders
+                    + ")";
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++)
+                    pstmt.setString(i + 1, chunk.get(i));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next())
+                        ids.put(rs.getString(2), rs.getInt(1));
                 }
             }
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            stopTransaction();
         }
-
-        return keywordIdMap;
+        return ids;
     }
 
     /**
      * Inserts a batch of website keywords into the database.
+     * Only the raw frequency of each keyword and the length of the document are
+     * stored, the TF-IDF score is calculated at query time. The term frequencies
+     * are counted in a single pass over the tokens, so the cost of a document is
+     * proportional to its number of distinct terms.
      *
-     * @param website      ID and new URL flag for the website.
-     * @param keywordIdMap a map containing the keyword IDs
-     * @param tokens       a list of tokens to be inserted
-     */
-    private void handleWebsiteKeywordBatchInsertion(QueryResult website, Map<String, Integer> keywordIdMap,
-            List<String> tokens) {
-        // Prepare SQL for batch insert
-        String sql = "INSERT OR IGNORE INTO website_keywords (website_id, keyword_id, tf_idf) VALUES (?, ?, ?)";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (String token : tokens) {
-                Integer keywordId = keywordIdMap.get(token);
-                if (keywordId == null) {
-                    continue;
-                }
-                double tfIdf = barrelProcessing.calcTFIDF(token, tokens, website.newUrl());
-                pstmt.setInt(1, website.websiteId());
-                pstmt.setInt(2, keywordId);
-                pstmt.setDouble(3, tfIdf);
-                pstmt.addBatch();
+     * @param statements      the prepared statements of the batch
+     * @param website         ID and new URL flag for the website.
+     * @param keywordIdMap    a map containing the keyword IDs
+     * @param tokens          a list of tokens to be inserted
+     * @param termPositions   the positions of each token, or null if positions
+     *                        are not indexed
+     * @param termFrequencies the map receiving the normalized frequency of each
+     *                        inserted keyword
+     * @throws SQLException if an error occurs while accessing the database
+     */
+    private void handleWebsiteKeywordBatchInsertion(CrawlStatements statements, QueryResult website,
+            Map<String, Integer> keywordIdMap, List<String> tokens, Map<String, int[]> termPositions,
+            Map<String, Float> termFrequencies) throws SQLException {
+        PreparedStatement pstmt = statements.insertWebsiteKeyword;
+        Map<String, Integer> termCounts = barrelProcessing.countTerms(tokens);
+
+        List<String> batchTerms = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+            Integer keywordId = keywordIdMap.get(entry.getKey());
+            if (keywordId == null) {
+                continue;
             }
+            pstmt.setInt(1, website.websiteId());
+            pstmt.setInt(2, keywordId);
+            pstmt.setInt(3, entry.getValue());
+            pstmt.setInt(4, tokens.size());
+            pstmt.setBytes(5, termPositions == null ? null
+                    : CompressedPostings.encodePositions(termPositions.get(entry.getKey())));
+            pstmt.addBatch();
+            batchTerms.add(entry.getKey());
+        }
 
-            pstmt.executeBatch();
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            stopTransaction();
+        // Only the rows actually inserted are added to the index
+        int[] updateCounts = pstmt.executeBatch();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] > 0) {
+                String term = batchTerms.get(i);
+                termFrequencies.put(term, (float) barrelProcessing.calcTF(termCounts.get(term), tokens.size()));
+            }
         }
     }
 
     /**
-     * Handles the batch insertion of URLs for a given website.
+     * Handles the batch insertion of the links of a given website as a set-based
+     * stage: the URLs are inserted and resolved in bulk, the links are inserted
+     * in a single batch, and only the links that did not exist before increment
+     * the reference count of the website they point to. A link is matched to its
+     * target website by URL, since URL IDs and website IDs are unrelated.
      *
-     * @param website ID and new URL flag for the website.
-     * @param urls    The list of URLs to be inserted.
-     */
-    private void handleUrlBatchInsertion(QueryResult website, List<URL> urls) {
-        String insertUrlSql = "INSERT OR IGNORE INTO urls(url) VALUES(?)";
-        String selectUrlIdSql = "SELECT id FROM urls WHERE url = ?";
-        String insertWebsiteUrlSql = "INSERT OR IGNORE INTO website_urls(website_id, url_id) VALUES(?, ?)";
-
-        try (PreparedStatement insertUrlPstmt = conn.prepareStatement(insertUrlSql);
-                PreparedStatement selectUrlIdPstmt = conn.prepareStatement(selectUrlIdSql);
-                PreparedStatement insertWebsiteUrlPstmt = conn.prepareStatement(insertWebsiteUrlSql)) {
-
-            // Batch insert URLs
-            for (URL url : urls) {
-                insertUrlPstmt.setString(1, url.toString());
-                insertUrlPstmt.addBatch();
-            }
-            insertUrlPstmt.executeBatch();
-
-            // For each URL, get its ID and batch insert the website-url relationship
-            for (URL url : urls) {
-                selectUrlIdPstmt.setString(1, url.toString());
-                try (ResultSet rs = selectUrlIdPstmt.executeQuery()) {
-                    if (rs.next()) {
-                        int urlId = rs.getInt(1);
-                        insertWebsiteUrlPstmt.setInt(1, website.websiteId());
-                        insertWebsiteUrlPstmt.setInt(2, urlId);
-                        insertWebsiteUrlPstmt.addBatch();
-
-                        // Update references count for the referenced website
-                        String updateSql = "UPDATE websites SET ref_count = ref_count + 1 WHERE id = ?";
-                        try (PreparedStatement updatePstmt = conn.prepareStatement(updateSql)) {
-                            updatePstmt.setInt(1, urlId);
-                            updatePstmt.executeUpdate();
-                        }
-                    }
-                }
-            }
-            insertWebsiteUrlPstmt.executeBatch();
-
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
-            stopTransaction();
+     * @param statements the prepared statements of the batch
+     * @param website    ID and new URL flag for the website.
+     * @param urls       The list of URLs to be inserted.
+     * @return the IDs of the websites whose reference count was incremented
+     * @throws SQLException if an error occurs while accessing the database
+     */
+    private List<Integer> handleUrlBatchInsertion(CrawlStatements statements, QueryResult website, List<URL> urls)
+            throws SQLException {
+        List<Integer> referencedIds = new ArrayList<>();
+        List<String> links = new ArrayList<>(new LinkedHashSet<>(urls.stream().map(URL::toString).toList()));
+        if (links.isEmpty())
+            return referencedIds;
+
+        // Batch insert URLs and resolve their IDs
+        for (String link : links) {
+            statements.insertUrl.setString(1, link);
+            statements.insertUrl.addBatch();
+        }
+        statements.insertUrl.executeBatch();
+        Map<String, Integer> urlIds = selectIds("urls", "url", links);
+
+        // Batch insert the website-url relationships, keeping the ones that are new
+        List<String> batchLinks = new ArrayList<>();
+        for (String link : links) {
+            Integer urlId = urlIds.get(link);
+            if (urlId == null)
+                continue;
+            statements.insertWebsiteUrl.setInt(1, website.websiteId());
+            statements.insertWebsiteUrl.setInt(2, urlId);
+            statements.insertWebsiteUrl.addBatch();
+            batchLinks.add(link);
         }
+        int[] updateCounts = statements.insertWebsiteUrl.executeBatch();
+        List<String> newLinks = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++)
+            if (updateCounts[i] > 0)
+                newLinks.add(batchLinks.get(i));
+
+        // Increment the reference count of the already crawled targets of the new links
+        for (int targetId : selectIds("websites", "url", newLinks).values()) {
+            if (targetId == website.websiteId())
+                continue;
+            statements.incrementRefCount.setInt(1, targetId);
+            statements.incrementRefCount.addBatch();
+            referencedIds.add(targetId);
+        }
+        statements.incrementRefCount.executeBatch();
+        return referencedIds;
     }
 
     /**
-     * Increments the search count for a given keyword in the database.
-     * If the keyword already exists, the search count is incremented by 1.
-     * If the keyword does not exist, it is added to the database with a search
-     * count of 1.
+     * Adds the given search counts to the search_stats table in a single
+     * transaction, inserting the keywords that were never searched before.
+     * Search-only keywords are kept out of the keywords dictionary.
      *
-     * @param keyword the keyword to increment the search count for
-     */
-    public void incrementSearches(String keyword) {
-        String selectSql = "SELECT * FROM keywords WHERE keyword = ?";
-        try (PreparedStatement selectPstmt = conn.prepareStatement(selectSql)) {
-            selectPstmt.setString(1, keyword);
-            ResultSet rs = selectPstmt.executeQuery();
-            if (rs.next()) {
-                // The keyword exists, increment the searches count
-                String updateSql = "UPDATE keywords SET searches = searches + 1 WHERE keyword = ?";
-                try (PreparedStatement updatePstmt = conn.prepareStatement(updateSql)) {
-                    updatePstmt.setString(1, keyword);
-                    updatePstmt.executeUpdate();
-                }
-            } else {
-                // Add the keyword to the database with search count 1
-                String insertSql = "INSERT INTO keywords(keyword, searches) VALUES(?, 1)";
-                try (PreparedStatement insertPstmt = conn.prepareStatement(insertSql)) {
-                    insertPstmt.setString(1, keyword);
-                    insertPstmt.executeUpdate();
+     * @param searches the number of new searches of each keyword
+     * @return true if the counts were written, false otherwise
+     */
+    public synchronized boolean insertSearches(Map<String, Long> searches) {
+        String sql = "INSERT INTO search_stats(keyword, searches) VALUES(?, ?) " +
+                "ON CONFLICT(keyword) DO UPDATE SET searches = searches + excluded.searches";
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (Map.Entry<String, Long> entry : searches.entrySet()) {
+                    pstmt.setString(1, entry.getKey());
+                    pstmt.setLong(2, entry.getValue());
+                    pstmt.addBatch();
                 }
+                pstmt.executeBatch();
             }
+            conn.commit();
+            conn.setAutoCommit(true);
         } catch (SQLException e) {
             LogUtil.logError(LogUtil.ANSI_RED, BarrelPopulate.class, e);
             stopTransaction();
+            return false;
         }
+        return true;
     }
-}
\ No newline at end of file
+}
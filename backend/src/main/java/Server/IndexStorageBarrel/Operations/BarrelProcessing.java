@@ -2,12 +2,16 @@ package Server.IndexStorageBarrel.Operations;
 
 // General imports
 import java.sql.*;
+import java.util.Map;
 import java.util.List;
-import java.util.Collections;
+import java.util.HashMap;
 
 /**
  * The BarrelProcessing class provides methods for calculating TF, IDF, and
  * TF-IDF values of terms in documents.
+ * Only raw term frequencies are stored when a document is indexed, the IDF is
+ * calculated at query time from the live collection statistics of the
+ * in-memory index.
  */
 public class BarrelProcessing {
     /**
@@ -25,148 +29,75 @@ public class BarrelProcessing {
     }
 
     /**
-     * Calculates the Term Frequency (TF) value of a term in a document.
-     *
-     * @param term        the term to calculate the TF value for
-     * @param subsetTerms the list of terms in the document
-     * @return the TF value of the term
-     */
-    public double calcTF(String term, List<String> subsetTerms) {
-        int termCount = Collections.frequency(subsetTerms, term);
-        int totalSubsetTerms = subsetTerms.size();
-
-        /* Print TF values
-         * System.err.println("term: " + term);
-         * System.err.println("subsetTerms: " + subsetTerms);
-         * System.err.println("TF - termCount/totalSubsetTerms: "
-         * + (double) Collections.frequency(subsetTerms, term) / subsetTerms.size());
-         */
-
-        return (double) termCount / totalSubsetTerms;
-    }
-
-    /**
-     * Calculates the Inverse Document Frequency (IDF) value of a term.
+     * Counts the occurrences of every term in a document with a single pass over
+     * its tokens.
      *
-     * @param term        the term to calculate the IDF value for
-     * @param subsetTerms the list of terms in the document
-     * @param docNr       the total number of documents
-     * @return the IDF value of the term
-     * @throws SQLException if an error occurs while accessing the database
+     * @param tokens the list of terms in the document
+     * @return a map containing each distinct term and its number of occurrences
      */
-    public double calcIDF(String term, List<String> subsetTerms, int docNr) throws SQLException {
-        int tokenDocnr = getTokenDocnr(term, subsetTerms);
-
-        /* Print IDF values
-         * System.err.println("docNr: " + docNr);
-         * System.err.println("tokenDocnr: " + tokenDocnr);
-         * System.err.println("IDF - log(1 + docNr/tokenDocnr): " + Math.log(1 + (double) (docNr / tokenDocnr)));
-         */
-
-        return Math.log(1 + (double) (docNr / tokenDocnr));
+    public Map<String, Integer> countTerms(List<String> tokens) {
+        Map<String, Integer> termCounts = new HashMap<>();
+        for (String token : tokens)
+            termCounts.merge(token, 1, Integer::sum);
+        return termCounts;
     }
 
     /**
-     * Calculates the TF-IDF value of a term in a document.
+     * Collects the token positions of every term in a document.
      *
-     * @param term        the term to calculate the TF-IDF value for
-     * @param subsetTerms the list of terms in the document
-     * @param newUrl      whether the document is a new URL
-     * @return the TF-IDF value of the term
-     * @throws SQLException if an error occurs while accessing the database
+     * @param tokens the list of terms in the document, in order
+     * @return a map containing each distinct term and its sorted positions
      */
-    public double calcTFIDF(String term, List<String> subsetTerms, boolean newUrl) throws SQLException {
-        double tf = calcTF(term, subsetTerms);
-        double idf = 0;
-
-        int docNr = newUrl ? getDocnr() + 1 : getDocnr();
-
-        try {
-            idf = calcIDF(term, subsetTerms, docNr);
-        } catch (SQLException e) {
-            System.err.println("Error calculating IDF: " + e.getMessage());
+    public Map<String, int[]> termPositions(List<String> tokens) {
+        Map<String, int[]> termPositions = new HashMap<>();
+        countTerms(tokens).forEach((term, count) -> termPositions.put(term, new int[count]));
+        Map<String, Integer> filled = new HashMap<>();
+        for (int position = 0; position < tokens.size(); position++) {
+            String token = tokens.get(position);
+            termPositions.get(token)[filled.merge(token, 1, Integer::sum) - 1] = position;
         }
-
-        /* Print TF-IDF value
-         * System.err.println("tf * idf: " + tf * idf);
-         * System.err.println();
-         */
-
-        return tf * idf;
+        return termPositions;
     }
 
     /**
-     * Gets the total number of documents.
+     * Calculates the Term Frequency (TF) value of a term in a document.
      *
-     * @return the total number of documents
-     * @throws SQLException if an error occurs while accessing the database
+     * @param termCount  the number of occurrences of the term in the document
+     * @param totalTerms the total number of terms in the document
+     * @return the TF value of the term
      */
-    int getDocnr() throws SQLException {
-        String sql = "SELECT COUNT(DISTINCT website_id) FROM website_keywords";
-        int totalDocs = 0;
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                totalDocs = rs.getInt(1);
-            }
-        }
-        return totalDocs;
+    public double calcTF(int termCount, int totalTerms) {
+        return (double) termCount / totalTerms;
     }
 
     /**
-     * Gets the number of documents containing a specific term.
+     * Calculates the Inverse Document Frequency (IDF) value of a term.
      *
-     * @param term        the term to count documents for
-     * @param subsetTerms the list of terms in the document
-     * @return the number of documents containing the term
-     * @throws SQLException if an error occurs while accessing the database
+     * @param docNr      the total number of documents
+     * @param tokenDocnr the number of documents containing the term
+     * @return the IDF value of the term
      */
-    private int getTokenDocnr(String term, List<String> subsetTerms) throws SQLException {
-        String sql = "SELECT COUNT(DISTINCT website_id) FROM website_keywords WHERE keyword_id = ?";
-        int docsWithTerm = 0;
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, getTokenId(term));
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                docsWithTerm = rs.getInt(1);
-            }
-        }
-
-        if (subsetTerms.contains(term))
-            docsWithTerm++;
-
-        return docsWithTerm;
+    public static double calcIDF(int docNr, int tokenDocnr) {
+        return Math.log(1 + (double) docNr / tokenDocnr);
     }
 
     /**
-     * Gets the ID of a token (term) from the database.
-     * If the token is not found, it is inserted into the database.
+     * Recomputes the reference count of the websites linked to by the websites
+     * after the given ID, from the links pointing to their URL. Used after
+     * merging sync data, whose links bypass the incremental counts; the
+     * websites received carry the counts of the barrel that sent them.
      *
-     * @param term the term to get the ID for
-     * @return the ID of the token
+     * @param startId the ID after which websites were received
      * @throws SQLException if an error occurs while accessing the database
      */
-    public int getTokenId(String term) throws SQLException {
-        String sql = "SELECT id FROM keywords WHERE keyword = ?";
+    public void refreshRefCounts(int startId) throws SQLException {
+        String sql = "UPDATE websites SET ref_count = (SELECT COUNT(*) FROM website_urls wu " +
+                "JOIN urls u ON wu.url_id = u.id WHERE u.url = websites.url AND wu.website_id <> websites.id) " +
+                "WHERE url IN (SELECT u.url FROM website_urls wu JOIN urls u ON wu.url_id = u.id " +
+                "WHERE wu.website_id > ?)";
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, term);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
-            } else {
-                // Insert the keyword into the database if it's not found
-                sql = "INSERT INTO keywords(keyword) VALUES(?)";
-                try (PreparedStatement insertStmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                    insertStmt.setString(1, term);
-                    insertStmt.executeUpdate();
-                    ResultSet generatedKeys = insertStmt.getGeneratedKeys();
-                    if (generatedKeys.next()) {
-                        return generatedKeys.getInt(1);
-                    } else {
-                        throw new SQLException("Creating keyword failed, no ID obtained.");
-                    }
-                }
-            }
+            pstmt.setInt(1, startId);
+            pstmt.executeUpdate();
         }
     }
-}
\ No newline at end of file
+}
@@ -5,14 +5,28 @@ import ReliableMulticast.Objects.CrawlData;
 import ReliableMulticast.ReliableMulticast;
 import Server.IndexStorageBarrel.IndexStorageBarrel;
 
+import Server.IndexStorageBarrel.Objects.IngestStats;
+
 // Logging imports
 import Logger.LogUtil;
+
+// General imports
+import java.util.List;
+import java.util.ArrayList;
+
+// Exception imports
+import java.io.IOException;
 import java.sql.SQLException;
 
 /**
  * The BarrelReceiver class is responsible for receiving data from a
  * ReliableMulticast object
  * and inserting it into an IndexStorageBarrel object.
+ * <p>
+ * Records are ingested with group commit: after the first record of a batch
+ * arrives, the receiver keeps draining the multicast queue until the batch is
+ * full or the latency bound expires, and then applies the whole batch in a
+ * single transaction. A batch size of 1 commits every record on its own.
  */
 public class BarrelReceiver implements Runnable {
     /**
@@ -24,6 +38,35 @@ public class BarrelReceiver implements Runnable {
      */
     private final ReliableMulticast reliableMulticast;
 
+    /**
+     * The maximum number of records committed in a single transaction.
+     */
+    private final int batchSize;
+    /**
+     * The maximum time a record waits for its batch to fill, in milliseconds.
+     */
+    private final long batchLatency;
+    /**
+     * The number of committed batches.
+     */
+    private long batches = 0;
+    /**
+     * The number of records received.
+     */
+    private long records = 0;
+    /**
+     * The largest number of records in a batch.
+     */
+    private int maxBatchSize = 0;
+    /**
+     * The total time spent applying and committing batches, in milliseconds.
+     */
+    private long totalCommitTime = 0;
+    /**
+     * The longest time spent applying and committing a batch, in milliseconds.
+     */
+    private long maxCommitTime = 0;
+
     /**
      * A boolean value indicating whether the BarrelReceiver is running.
      */
@@ -34,10 +77,17 @@ public class BarrelReceiver implements Runnable {
      * 
      * @param barrel            the IndexStorageBarrel object to insert data into
      * @param reliableMulticast the ReliableMulticast object to receive data
+     * @param batchSize         the maximum number of records committed in a
+     *                          single transaction
+     * @param batchLatency      the maximum time a record waits for its batch to
+     *                          fill, in milliseconds
      */
-    public BarrelReceiver(IndexStorageBarrel barrel, ReliableMulticast reliableMulticast) {
+    public BarrelReceiver(IndexStorageBarrel barrel, ReliableMulticast reliableMulticast, int batchSize,
+            long batchLatency) {
         this.barrel = barrel;
         this.reliableMulticast = reliableMulticast;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchLatency = batchLatency;
         // add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
         new Thread(this, "Barrel Receiver").start();
@@ -58,23 +108,81 @@ public class BarrelReceiver implements Runnable {
         }
         LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelReceiver.class, "Starting to receive data...");
         while (running) {
-            try {
-                CrawlData crawlData = (CrawlData) reliableMulticast.getData();
-                if (crawlData == null) {
-                    running = false;
-                    continue;
-                }
-
-                LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelReceiver.class, "Received data: " + crawlData.getUrl());
-                barrel.getBarrelPopulate().insertCrawlData(crawlData);
+            List<CrawlData> batch = receiveBatch();
+            if (batch.isEmpty()) {
+                running = false;
+                continue;
+            }
 
+            try {
+                long startTime = System.currentTimeMillis();
+                barrel.getBarrelPopulate().insertCrawlBatch(batch);
+                recordBatch(batch.size(), System.currentTimeMillis() - startTime);
             } catch (SQLException e) {
                 LogUtil.logError(LogUtil.ANSI_RED, BarrelReceiver.class, e);
+            } catch (IOException e) {
+                // The committed batch has no postings, or ingestion is halted
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelReceiver.class, e);
+                running = false;
             }
         }
         stop();
     }
 
+    /**
+     * Waits for the next record and drains the records that follow it, until the
+     * batch is full or the latency bound expires.
+     *
+     * @return the records of the batch, empty if the protocol is shutting down
+     */
+    private List<CrawlData> receiveBatch() {
+        List<CrawlData> batch = new ArrayList<>();
+        CrawlData crawlData = (CrawlData) reliableMulticast.getData();
+        if (crawlData == null)
+            return batch;
+        batch.add(crawlData);
+
+        long deadline = System.currentTimeMillis() + batchLatency;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            crawlData = (CrawlData) reliableMulticast.pollData(Math.max(0, remaining));
+            if (crawlData == null)
+                break;
+            batch.add(crawlData);
+        }
+
+        for (CrawlData received : batch)
+            LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelReceiver.class, "Received data: " + received.getUrl());
+        return batch;
+    }
+
+    /**
+     * Records the size and commit time of a committed batch.
+     *
+     * @param size       the number of records in the batch
+     * @param commitTime the time spent applying and committing the batch, in
+     *                   milliseconds
+     */
+    private synchronized void recordBatch(int size, long commitTime) {
+        batches++;
+        records += size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        totalCommitTime += commitTime;
+        maxCommitTime = Math.max(maxCommitTime, commitTime);
+        if (size > 1)
+            LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelReceiver.class,
+                    "Committed batch of " + size + " records in " + commitTime + "ms");
+    }
+
+    /**
+     * Returns the group-commit metrics of the receiver.
+     *
+     * @return the ingestion statistics
+     */
+    public synchronized IngestStats getIngestStats() {
+        return new IngestStats(batches, records, maxBatchSize, totalCommitTime, maxCommitTime);
+    }
+
     /**
      * Stops the receiving and sending processes of the ReliableMulticast object.
      */
@@ -1,7 +1,18 @@
 package Server.IndexStorageBarrel.Operations;
 
 // Package imports
+import Analysis.Analyzer;
+import Server.IndexStorageBarrel.Index.RankedDocs;
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.StoredDocument;
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.PostingList;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.PartitionHits;
+import Server.IndexStorageBarrel.Objects.CollectionStats;
+import Server.IndexStorageBarrel.Objects.PartitionPostings;
 
 // Logging imports
 import Logger.LogUtil;
@@ -9,7 +20,9 @@ import Logger.LogUtil;
 // General imports
 import java.sql.*;
 import java.util.*;
-import java.util.stream.Collectors;
+
+// Exception imports
+import java.io.IOException;
 
 import org.springframework.web.util.HtmlUtils;
 
@@ -19,17 +32,41 @@ import org.springframework.web.util.HtmlUtils;
  */
 public class BarrelRetriever {
     /**
-     * The database connection used to retrieve data.
+     * The number of search results per page.
+     */
+    public static final int PAGE_SIZE = 10;
+    /**
+     * The database whose read-only connections are used to retrieve data.
+     */
+    private final BarrelDatabase database;
+    /**
+     * The in-memory index used to rank the search results.
+     */
+    private final InvertedIndex index;
+    /**
+     * The store of the URL, title and text of the websites.
+     */
+    private final DocumentStore documentStore;
+    /**
+     * The BarrelSnippets object building the snippets of the search results.
      */
-    private final Connection conn;
+    private final BarrelSnippets barrelSnippets;
 
     /**
-     * Constructs a BarrelRetriever object with the given database connection.
+     * Constructs a BarrelRetriever object with the given database.
      *
-     * @param conn the database connection
+     * @param database      the database to retrieve data from
+     * @param index         the in-memory index used to rank the search results
+     * @param documentStore the store of the URL, title and text of the websites
+     * @param analyzer      the analyzer of the indexed text, used to find the
+     *                      query keywords in the snippets
      */
-    public BarrelRetriever(Connection conn) {
-        this.conn = conn;
+    public BarrelRetriever(BarrelDatabase database, InvertedIndex index, DocumentStore documentStore,
+            Analyzer analyzer) {
+        this.database = database;
+        this.index = index;
+        this.documentStore = documentStore;
+        this.barrelSnippets = new BarrelSnippets(analyzer);
     }
 
     /**
@@ -49,7 +86,8 @@ public class BarrelRetriever {
                 "WHERE u.url = ?" +
                 "LIMIT 10 OFFSET ?";
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = database.getReader();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, targetUrl);
             pstmt.setInt(2, pageNumber);
             ResultSet rs = pstmt.executeQuery();
@@ -58,7 +96,7 @@ public class BarrelRetriever {
                 LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelRetriever.class, "Found website linking to target url");
                 String url = rs.getString("url");
                 String title = rs.getString("title");
-                String description = rs.getString("description");
+                String description = HtmlUtils.htmlEscape(BarrelSnippets.summary(rs.getString("description")));
 
                 websites.add(new SearchData(url, title, description, 0, 0));
             }
@@ -70,198 +108,292 @@ public class BarrelRetriever {
     }
 
     /**
-     * Retrieves a list of top searches from the database.
+     * Retrieves the stored search counts of the most searched keywords.
      *
-     * @return a list of top searches
+     * @param limit the maximum number of keywords
+     * @return the search count of each keyword, from the most to the least
+     *         searched
      */
-    public List<String> getTopSearches() {
-        List<String> topSearches = new ArrayList<>();
-        String sql = "SELECT keyword " +
-                "FROM keywords " +
+    public Map<String, Long> getSearchCounts(int limit) {
+        Map<String, Long> searchCounts = new LinkedHashMap<>();
+        String sql = "SELECT keyword, searches " +
+                "FROM search_stats " +
                 "ORDER BY searches DESC " +
-                "LIMIT 10";
-
-        try (Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                topSearches.add(HtmlUtils.htmlEscape(rs.getString("keyword")));
+                "LIMIT ?";
+
+        try (Connection conn = database.getReader();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next())
+                    searchCounts.put(rs.getString("keyword"), rs.getLong("searches"));
             }
         } catch (SQLException e) {
             LogUtil.logError(LogUtil.ANSI_RED, BarrelRetriever.class, e);
         }
-        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelRetriever.class, "top searches: " + topSearches);
-        return topSearches;
+        return searchCounts;
     }
 
     /**
-     * Retrieves a list of search data objects from the database based on the given
-     * query and page number.
+     * Retrieves a list of search data objects based on the given query and page
+     * number.
+     * The documents are ranked by the in-memory index, and only the websites of
+     * the requested page are read from the database. The words of the query are
+     * all required unless joined by OR, and may be negated with NOT, grouped by
+     * parentheses or quoted as phrases.
      *
-     * @param query      the search query
-     * @param pageNumber the page number
-     * @param tfIdfSort  whether to sort by tf-idf or ref count
+     * @param query            the parsed search query
+     * @param pageNumber       the page number
+     * @param tfIdfSort        whether to sort by tf-idf or ref count
+     * @param earlyTermination whether to skip documents that cannot make the page
      * @return a list of search data objects
      */
-    public List<SearchData> retrieveAndRankData(String query, int pageNumber, boolean tfIdfSort) {
-        Map<String, SearchData> searchDataMap = new HashMap<>();
-        String[] keywords = query.split("\\s+");
-
-        List<String> keywordList = Arrays.asList(keywords);
-        String sql = "SELECT w.url, w.title, w.description, wk.tf_idf, w.ref_count " +
-                "FROM websites w " +
-                "JOIN website_keywords wk ON w.id = wk.website_id " +
-                "JOIN keywords k ON wk.keyword_id = k.id " +
-                "WHERE k.keyword IN (" + keywordList.stream().map(token -> "?").collect(Collectors.joining(",")) + ")";
+    public List<SearchData> retrieveAndRankData(ParsedQuery query, int pageNumber, boolean tfIdfSort,
+            boolean earlyTermination) {
+        RankedDocs rankedDocs = index.search(query, calcWeights(query.keywords()), tfIdfSort,
+                earlyTermination, pageNumber, PAGE_SIZE);
+        return fetchSearchData(rankedDocs, query.keywords());
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            for (int i = 0; i < keywordList.size(); i++) {
-                pstmt.setString(i + 1, keywordList.get(i));
-            }
-            ResultSet rs = pstmt.executeQuery();
+    /**
+     * Ranks the documents matching the given query, keeping the best ones up to
+     * the given depth.
+     *
+     * @param query            the parsed search query
+     * @param tfIdfSort        whether to sort by tf-idf or ref count
+     * @param earlyTermination whether to skip documents that cannot make the depth
+     * @param depth            the maximum number of ranked documents
+     * @return the ranked documents
+     */
+    public RankedDocs rankData(ParsedQuery query, boolean tfIdfSort, boolean earlyTermination, int depth) {
+        return index.search(query, calcWeights(query.keywords()), tfIdfSort, earlyTermination, 1, depth);
+    }
 
-            while (rs.next()) {
-                String url = rs.getString("url");
-                String title = rs.getString("title");
-                String description = rs.getString("description");
-                double tfIdf = rs.getDouble("tf_idf");
-                int refCount = rs.getInt("ref_count");
-
-                if (searchDataMap.containsKey(url)) {
-                    SearchData existingData = searchDataMap.get(url);
-                    double newTfIdf = existingData.tfIdf() + tfIdf;
-                    SearchData newData = new SearchData(url, title, description, newTfIdf, refCount);
-                    searchDataMap.put(url, newData);
-                } else {
-                    SearchData searchData = new SearchData(url, title, description, tfIdf, refCount);
-                    searchDataMap.put(url, searchData);
-                }
-            }
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelRetriever.class, e);
-        }
+    /**
+     * Collects the postings of the query keywords owned by the partition of a
+     * term partitioned index, for the gateway to match and score the query
+     * over every partition.
+     *
+     * @param query     the parsed search query
+     * @param partition the partition of the barrel
+     * @return the postings of the owned keywords
+     */
+    public PartitionPostings fetchPartitionPostings(ParsedQuery query, TermPartition partition) {
+        Set<String> phraseTerms = query.phraseTerms();
+        HashMap<String, PostingList> postings = new HashMap<>();
+        for (String term : query.terms())
+            if (partition.owns(term))
+                postings.put(term, index.exportPostings(term, phraseTerms.contains(term)));
+        return new PartitionPostings(query, index.getDocCount(), postings,
+                query.matchesByExclusion() ? index.getDocuments() : null);
+    }
 
-        List<SearchData> searchDataList = new ArrayList<>(searchDataMap.values());
+    /**
+     * Returns the collection statistics of the query keywords in the index, for
+     * the gateway of a document partitioned index to sum over every partition.
+     *
+     * @param query the parsed search query
+     * @return the document count and the document frequency of each keyword
+     */
+    public CollectionStats getCollectionStats(ParsedQuery query) {
+        HashMap<String, Integer> docFrequencies = new HashMap<>();
+        for (String keyword : query.keywords())
+            docFrequencies.put(keyword, index.getDocFrequency(keyword));
+        return new CollectionStats(index.getDocCount(), docFrequencies);
+    }
 
-        if (tfIdfSort) {
-            // sort search data by tf_idf
-            searchDataList.sort((data1, data2) -> Double.compare(data2.tfIdf(), data1.tfIdf()));
-        } else {
-            // sort search data by ref_count
-            searchDataList.sort((data1, data2) -> Integer.compare(data2.refCount(), data1.refCount()));
+    /**
+     * Ranks the documents of the partition matching the given query, weighting
+     * the keywords with the statistics of the whole index so that the scores of
+     * every partition are comparable, and reads the websites of the best ones.
+     *
+     * @param query            the parsed search query
+     * @param globalStats      the collection statistics summed over every
+     *                         partition
+     * @param tfIdfSort        whether to sort by tf-idf or by links
+     * @param earlyTermination whether to skip documents that cannot make the depth
+     * @param depth            the maximum number of ranked documents
+     * @return the best documents of the partition and their rank values
+     */
+    public PartitionHits retrievePartitionHits(ParsedQuery query, CollectionStats globalStats, boolean tfIdfSort,
+            boolean earlyTermination, int depth) {
+        String[] keywords = query.keywords();
+        float[] weights = new float[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            int tokenDocnr = globalStats.docFrequencies().getOrDefault(keywords[i], 0);
+            weights[i] = tokenDocnr == 0 ? 0 : (float) BarrelProcessing.calcIDF(globalStats.docCount(), tokenDocnr);
         }
-
-        // Calculate the start and end indices of the page
-        int start = (pageNumber - 1) * 10;
-        int end = Math.min(start + 10, searchDataList.size());
-
-        // If start exceed list, return empty list
-        if (start >= searchDataList.size())
-            return new ArrayList<>();
-
-        // Return the page of search results
-        return new ArrayList<>(searchDataList.subList(start, end));
+        RankedDocs rankedDocs = index.search(query, weights, tfIdfSort, earlyTermination, 1, depth);
+        Map<Integer, SearchData> websites = fetchWebsites(rankedDocs, keywords);
+
+        List<SearchData> hits = new ArrayList<>();
+        float[] rankValues = new float[rankedDocs.size()];
+        for (int i = 0; i < rankedDocs.size(); i++) {
+            int docId = rankedDocs.docIds()[i];
+            SearchData website = websites.get(docId);
+            if (website == null)
+                continue;
+            rankValues[hits.size()] = tfIdfSort ? rankedDocs.scores()[i] : index.linkValue(docId);
+            hits.add(new SearchData(website.url(), website.title(), website.description(),
+                    rankedDocs.scores()[i], rankedDocs.refCounts()[i]));
+        }
+        return new PartitionHits(hits, Arrays.copyOf(rankValues, hits.size()), rankedDocs.totalHits());
     }
 
     /**
-     * Retrieves the last IDs of the tables in the database.
+     * Ranks documents matched and scored by the gateway of a term partitioned
+     * index, keeping the best ones up to the given depth.
      *
-     * @return a HashMap containing the last IDs of the tables
+     * @param docIds    the IDs of the matching documents
+     * @param scores    the TF-IDF score of each document
+     * @param tfIdfSort whether to sort by tf-idf or ref count
+     * @param depth     the maximum number of ranked documents
+     * @return the ranked documents
      */
-    public HashMap<String, Integer> getLastIDs() {
-        HashMap<String, Integer> lastIDs = new HashMap<>();
-        String[] tables = { "websites", "keywords", "urls" };
+    public RankedDocs rankMerged(int[] docIds, float[] scores, boolean tfIdfSort, int depth) {
+        return index.rank(docIds, scores, tfIdfSort, depth);
+    }
 
-        for (String table : tables) {
-            String sql = "SELECT MAX(id) FROM " + table;
+    /**
+     * Retrieves a page of previously ranked documents.
+     *
+     * @param rankedDocs the ranked documents
+     * @param query      the parsed query the documents were ranked for
+     * @param pageNumber the page number
+     * @return a list of search data objects
+     */
+    public List<SearchData> retrievePage(RankedDocs rankedDocs, ParsedQuery query, int pageNumber) {
+        long start = (long) Math.max(0, pageNumber - 1) * PAGE_SIZE;
+        return fetchSearchData(rankedDocs.slice((int) Math.min(start, rankedDocs.size()), PAGE_SIZE),
+                query.keywords());
+    }
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next())
-                    lastIDs.put(table, rs.getInt(1));
-            } catch (SQLException e) {
-                LogUtil.logInfo(LogUtil.ANSI_RED, BarrelRetriever.class, "Database connection is closed.");
-            }
+    /**
+     * Calculates the IDF weight of each keyword from the live collection
+     * statistics of the index, so scores stay correct as the corpus grows.
+     *
+     * @param keywords the distinct keywords of the query
+     * @return the IDF weight of each keyword
+     */
+    private float[] calcWeights(String[] keywords) {
+        int docNr = index.getDocCount();
+        float[] weights = new float[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            int tokenDocnr = index.getDocFrequency(keywords[i]);
+            weights[i] = tokenDocnr == 0 ? 0 : (float) BarrelProcessing.calcIDF(docNr, tokenDocnr);
         }
-
-        return lastIDs;
+        return weights;
     }
 
     /**
-     * Retrieves the rows from the weak table with a start ID greater than the
-     * specified value.
+     * Reads the websites of the ranked documents, in rank order, with their index
+     * scores.
      *
-     * @param weakTable the weak table name
-     * @param startID   the start ID
-     * @return a list of rows from the weak table
+     * @param rankedDocs the ranked documents
+     * @param keywords   the keywords of the query
+     * @return a list of search data objects, in rank order
      */
-    public List<Map<String, Object>> getWeakTableWithStartID(String weakTable, int startID) {
-        String sql = "SELECT * FROM " + weakTable +
-                " WHERE website_id > ?";
-        return getMaps(startID, sql);
+    private List<SearchData> fetchSearchData(RankedDocs rankedDocs, String[] keywords) {
+        List<SearchData> searchDataList = new ArrayList<>();
+        Map<Integer, SearchData> websites = fetchWebsites(rankedDocs, keywords);
+
+        // Keep the rank order and attach the index scores
+        for (int i = 0; i < rankedDocs.size(); i++) {
+            SearchData website = websites.get(rankedDocs.docIds()[i]);
+            if (website != null)
+                searchDataList.add(new SearchData(website.url(), website.title(), website.description(),
+                        rankedDocs.scores()[i], rankedDocs.refCounts()[i]));
+        }
+        return searchDataList;
     }
 
     /**
-     * Retrieves the rows from the specified table with a start ID greater than the
-     * specified value.
+     * Reads the websites of the ranked documents from the document store,
+     * described by a snippet of their body around the query keywords. Only the
+     * documents of the requested page are read, and their bodies never leave the
+     * barrel. Websites missing from the store, such as those whose last append
+     * was lost in a crash, are read from the database and described by their
+     * stored summary.
      *
-     * @param table   the table name
-     * @param startID the start ID
-     * @return a list of rows from the table
+     * @param rankedDocs the ranked documents
+     * @param keywords   the keywords of the query
+     * @return the search data of each website found, by ID, without scores
      */
-    public List<Map<String, Object>> getTableWithStartID(String table, int startID) {
-        String sql = "SELECT * FROM " + table +
-                " WHERE id > ?";
-        return getMaps(startID, sql);
+    private Map<Integer, SearchData> fetchWebsites(RankedDocs rankedDocs, String[] keywords) {
+        Map<Integer, SearchData> websites = new HashMap<>();
+        if (rankedDocs.size() == 0)
+            return websites;
+
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < rankedDocs.size(); i++) {
+            int docId = rankedDocs.docIds()[i];
+            StoredDocument document = null;
+            try {
+                document = documentStore.get(docId);
+            } catch (IOException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelRetriever.class, e);
+            }
+            if (document == null)
+                missing.add(docId);
+            else
+                websites.put(docId, new SearchData(document.url(), document.title(),
+                        barrelSnippets.snippet(document.body(), keywords), 0, 0));
+        }
+        if (!missing.isEmpty())
+            websites.putAll(fetchSummaries(missing));
+        return websites;
     }
 
     /**
-     * Retrieves the rows from the strong table with a start ID greater than the
-     * specified value.
+     * Reads websites from the database, described by their stored summary.
      *
-     * @param startID the start ID
-     * @param sql     the SQL query
-     * @return a list of rows from the strong table
+     * @param docIds the IDs of the websites
+     * @return the search data of each website found, by ID
      */
-    private List<Map<String, Object>> getMaps(int startID, String sql) {
-        List<Map<String, Object>> rows = null;
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, startID);
-            ResultSet rs = pstmt.executeQuery();
-            rows = resultSetToRowList(rs);
-            rs.close();
+    private Map<Integer, SearchData> fetchSummaries(List<Integer> docIds) {
+        String sql = "SELECT id, url, title, description FROM websites WHERE id IN (" +
+                String.join(",", Collections.nCopies(docIds.size(), "?")) + ")";
+        Map<Integer, SearchData> websites = new HashMap<>();
+
+        try (Connection conn = database.getReader();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < docIds.size(); i++)
+                pstmt.setInt(i + 1, docIds.get(i));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next())
+                    websites.put(rs.getInt("id"), new SearchData(rs.getString("url"), rs.getString("title"),
+                            HtmlUtils.htmlEscape(BarrelSnippets.summary(rs.getString("description"))), 0, 0));
+            }
         } catch (SQLException e) {
             LogUtil.logError(LogUtil.ANSI_RED, BarrelRetriever.class, e);
         }
-        return rows;
+        return websites;
     }
 
     /**
-     * Converts the ResultSet to a list of rows.
+     * Retrieves the last IDs of the tables in the database.
      *
-     * @param rs the ResultSet
-     * @return a list of rows
+     * @return a HashMap containing the last IDs of the tables
      */
-    private List<Map<String, Object>> resultSetToRowList(ResultSet rs) {
-        // Create a list to hold the rows
-        List<Map<String, Object>> rows = new ArrayList<>();
+    public HashMap<String, Integer> getLastIDs() {
+        HashMap<String, Integer> lastIDs = new HashMap<>();
+        String[] tables = { "websites", "keywords", "urls", "search_stats" };
 
-        try {
-            // Get the ResultSetMetaData. This will be used to get column names
-            ResultSetMetaData rsmd = rs.getMetaData();
+        for (String table : tables) {
+            String sql = "SELECT MAX(id) FROM " + table;
 
-            while (rs.next()) {
-                // Create a map to hold the row data
-                Map<String, Object> row = new HashMap<>();
-                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                    row.put(rsmd.getColumnName(i), rs.getObject(i));
-                }
-                rows.add(row);
+            try (Connection conn = database.getReader();
+                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next())
+                    lastIDs.put(table, rs.getInt(1));
+            } catch (SQLException e) {
+                LogUtil.logInfo(LogUtil.ANSI_RED, BarrelRetriever.class, "Database connection is closed.");
             }
-        } catch (SQLException e) {
-            LogUtil.logError(LogUtil.ANSI_RED, BarrelSync.class, e);
         }
-        return rows;
+
+        return lastIDs;
     }
 
 }
\ No newline at end of file
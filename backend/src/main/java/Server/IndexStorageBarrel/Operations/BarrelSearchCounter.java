@@ -0,0 +1,176 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.HeavyHitters;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BarrelSearchCounter class counts the searches of each keyword in memory
+ * and periodically flushes the counts into the search_stats table, so that
+ * queries never wait on a database write.
+ * <p>
+ * Each keyword has its own LongAdder, incremented and dropped when idle inside
+ * atomic map operations, so that no search is lost to a concurrent flush.
+ * <p>
+ * The flushed counts also feed a HeavyHitters structure, so the most searched
+ * keywords are read from memory instead of sorting the search_stats table.
+ */
+public class BarrelSearchCounter implements Runnable {
+    /**
+     * The interval at which the counts are flushed, in milliseconds.
+     */
+    public static final long FLUSH_INTERVAL = 5 * 1000;
+    /**
+     * The number of counters used to track the most searched keywords.
+     */
+    public static final int TOP_COUNTERS = 1000;
+    /**
+     * The number of most searched keywords reported.
+     */
+    public static final int TOP_SEARCHES = 10;
+    /**
+     * The searches of each keyword since the last flush.
+     */
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    /**
+     * The BarrelPopulate object used to write the counts.
+     */
+    private final BarrelPopulate barrelPopulate;
+    /**
+     * The most searched keywords, fed with the flushed counts.
+     */
+    private final HeavyHitters topSearches = new HeavyHitters(TOP_COUNTERS);
+    /**
+     * The interval at which the counts of the most searched keywords are halved,
+     * in milliseconds, or 0 to never decay them.
+     */
+    private final long decayInterval;
+    /**
+     * A boolean value indicating whether the flusher thread is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a BarrelSearchCounter object and starts its flusher thread.
+     *
+     * @param barrelPopulate the BarrelPopulate object used to write the counts
+     * @param searchCounts   the stored search counts of the most searched
+     *                       keywords
+     * @param decayInterval  the interval at which the counts of the most searched
+     *                       keywords are halved, in milliseconds, or 0 to never
+     *                       decay them
+     */
+    public BarrelSearchCounter(BarrelPopulate barrelPopulate, Map<String, Long> searchCounts, long decayInterval) {
+        this.barrelPopulate = barrelPopulate;
+        this.decayInterval = decayInterval;
+        topSearches.reset(searchCounts);
+        new Thread(this, "Barrel Search Counter").start();
+    }
+
+    /**
+     * Periodically flushes the counts into the database.
+     */
+    @Override
+    public void run() {
+        long lastDecay = System.currentTimeMillis();
+        while (running) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL);
+            } catch (InterruptedException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelSearchCounter.class, e);
+                running = false;
+            }
+            flush();
+
+            if (decayInterval > 0 && System.currentTimeMillis() - lastDecay >= decayInterval) {
+                topSearches.decay();
+                lastDecay = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Counts a search for each keyword of the query.
+     *
+     * @param query the parsed search query
+     */
+    public void record(ParsedQuery query) {
+        for (String keyword : query.keywords()) {
+            // Increment inside the map operation, so that flush cannot drop the adder in between
+            counters.compute(keyword, (k, adder) -> {
+                if (adder == null)
+                    adder = new LongAdder();
+                adder.increment();
+                return adder;
+            });
+        }
+    }
+
+    /**
+     * Writes the counts accumulated since the last flush into the database in a
+     * single transaction.
+     * Keywords that were not searched since the last flush are dropped from the
+     * map, so it only holds the recently searched keywords. The check and the
+     * removal are atomic with the increments, so a search counted in the
+     * meantime keeps its adder.
+     */
+    public void flush() {
+        Map<String, Long> searches = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            long count = entry.getValue().sumThenReset();
+            if (count > 0)
+                searches.put(entry.getKey(), count);
+            else
+                counters.computeIfPresent(entry.getKey(), (keyword, adder) -> adder.sum() == 0 ? null : adder);
+        }
+        if (searches.isEmpty())
+            return;
+
+        if (!barrelPopulate.insertSearches(searches)) {
+            // Keep the counts for the next flush
+            searches.forEach((keyword, count) -> counters.computeIfAbsent(keyword, k -> new LongAdder()).add(count));
+            return;
+        }
+        searches.forEach(topSearches::add);
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelSearchCounter.class,
+                "Flushed searches of " + searches.size() + " keywords.");
+    }
+
+    /**
+     * Returns the most searched keywords, as of the last flush.
+     *
+     * @return the most searched keywords, from the most to the least searched
+     */
+    public List<String> getTopSearches() {
+        return topSearches.top(TOP_SEARCHES);
+    }
+
+    /**
+     * Replaces the counts of the most searched keywords with the stored ones,
+     * after the search_stats table was merged with another barrel's.
+     *
+     * @param searchCounts the stored search counts of the most searched keywords
+     */
+    public void reload(Map<String, Long> searchCounts) {
+        topSearches.reset(searchCounts);
+    }
+
+    /**
+     * Sets the running state of the flusher thread.
+     * 
+     * @param running the running state to set
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+}
@@ -15,24 +15,52 @@ import java.util.*;
  * methods for creating the necessary tables in the database.
  */
 public class BarrelSetup {
+    /**
+     * The expected tables of the database and their columns.
+     */
+    private static final Map<String, List<String>> EXPECTED_COLUMNS = new LinkedHashMap<>();
+    /**
+     * The tables of older versions that are no longer used, dropped without
+     * rebuilding the database.
+     */
+    private static final List<String> OBSOLETE_TABLES = List.of("keyword_stats", "collection_stats");
+
+    static {
+        EXPECTED_COLUMNS.put("websites", List.of("id", "url", "title", "description", "ref_count"));
+        EXPECTED_COLUMNS.put("keywords", List.of("id", "keyword"));
+        EXPECTED_COLUMNS.put("urls", List.of("id", "url"));
+        EXPECTED_COLUMNS.put("website_keywords", List.of("website_id", "keyword_id", "tf", "doc_length",
+                "positions"));
+        EXPECTED_COLUMNS.put("website_urls", List.of("website_id", "url_id"));
+        EXPECTED_COLUMNS.put("website_fingerprints", List.of("website_id", "fingerprint", "canonical_id",
+                "saved_postings", "saved_bytes"));
+        EXPECTED_COLUMNS.put("search_stats", List.of("id", "keyword", "searches"));
+    }
 
     /**
      * Checks the integrity of the database by comparing the existing tables with
      * the expected tables.
-     * If the number of tables is inconsistent or certain table names are not
-     * present, the method drops
+     * If the number of tables is inconsistent, certain table names are not
+     * present or their columns differ, the method drops
      * the existing tables and sets up the database again.
      *
      * @param conn   the database connection
      * @param dbPath the path to the database
+     * @return true if the tables were dropped and set up again, so that the data
+     *         kept outside the database must be discarded too
      */
-    public static void databaseIntegrity(Connection conn, String dbPath) {
+    public static boolean databaseIntegrity(Connection conn, String dbPath) {
+        boolean rebuilt = false;
         try {
             // Define the expected table names and the expected number of tables
-            List<String> expectedTableNames = Arrays.asList("websites", "keywords", "urls", "website_keywords",
-                    "website_urls");
+            List<String> expectedTableNames = new ArrayList<>(EXPECTED_COLUMNS.keySet());
             int expectedTableCount = expectedTableNames.size();
 
+            try (Statement stmt = conn.createStatement()) {
+                for (String tableName : OBSOLETE_TABLES)
+                    stmt.execute("DROP TABLE IF EXISTS " + tableName);
+            }
+
             // Retrieve all table names
             DatabaseMetaData dbm = conn.getMetaData();
             ResultSet tables = dbm.getTables(null, null, "%", new String[] { "TABLE" });
@@ -44,7 +72,8 @@ public class BarrelSetup {
 
             // Check if the number of tables is inconsistent or if certain table names are
             // not present
-            if (tableNames.size() != expectedTableCount || !new HashSet<>(tableNames).containsAll(expectedTableNames)) {
+            if (tableNames.size() != expectedTableCount || !new HashSet<>(tableNames).containsAll(expectedTableNames)
+                    || !columnsMatch(conn)) {
                 // Print the inconsistency message
                 LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSetup.class,
                         "Inconsistent tables found in database. Dropping " + tableNames.size() + " tables...");
@@ -64,10 +93,50 @@ public class BarrelSetup {
                 // Set up the database again
                 LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSetup.class, "Setting up database...");
                 setupDatabase(dbPath);
+                rebuilt = true;
             }
+            createIndexes(conn);
         } catch (SQLException e) {
             LogUtil.logError(LogUtil.ANSI_RED, BarrelSetup.class, e);
         }
+        return rebuilt;
+    }
+
+    /**
+     * Checks if the columns of every expected table match the current schema, so
+     * that databases created by older versions of the barrel are rebuilt.
+     *
+     * @param conn the database connection
+     * @return true if every table has the expected columns, false otherwise
+     * @throws SQLException if an error occurs while reading the schema
+     */
+    private static boolean columnsMatch(Connection conn) throws SQLException {
+        DatabaseMetaData dbm = conn.getMetaData();
+        for (Map.Entry<String, List<String>> table : EXPECTED_COLUMNS.entrySet()) {
+            Set<String> columnNames = new HashSet<>();
+            try (ResultSet columns = dbm.getColumns(null, null, table.getKey(), "%")) {
+                while (columns.next())
+                    columnNames.add(columns.getString("COLUMN_NAME"));
+            }
+            if (!columnNames.equals(new HashSet<>(table.getValue())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the secondary indexes used to resolve links, if they are missing.
+     * Websites are looked up by URL, and the inlinks of a website are found by
+     * joining its URL to the links in website_urls.
+     *
+     * @param conn the database connection
+     * @throws SQLException if an error occurs while creating the indexes
+     */
+    private static void createIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS websites_url ON websites(url)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS website_urls_url_id ON website_urls(url_id)");
+        }
     }
 
     /**
@@ -94,8 +163,7 @@ public class BarrelSetup {
             String keywords = """
                     CREATE TABLE IF NOT EXISTS keywords (
                         id INTEGER PRIMARY KEY,
-                        keyword TEXT UNIQUE,
-                        searches INTEGER DEFAULT 0
+                        keyword TEXT UNIQUE
                     );
                     """;
 
@@ -112,7 +180,9 @@ public class BarrelSetup {
                     CREATE TABLE IF NOT EXISTS website_keywords (
                         website_id INTEGER,
                         keyword_id INTEGER,
-                        tf_idf REAL,
+                        tf INTEGER,
+                        doc_length INTEGER,
+                        positions BLOB,
                         PRIMARY KEY(website_id, keyword_id),
                         FOREIGN KEY(website_id) REFERENCES websites(id),
                         FOREIGN KEY(keyword_id) REFERENCES keywords(id)
@@ -130,6 +200,27 @@ public class BarrelSetup {
                     );
                     """;
 
+            // SQL statement for creating website_fingerprints table
+            String website_fingerprints = """
+                    CREATE TABLE IF NOT EXISTS website_fingerprints (
+                        website_id INTEGER PRIMARY KEY,
+                        fingerprint INTEGER,
+                        canonical_id INTEGER,
+                        saved_postings INTEGER DEFAULT 0,
+                        saved_bytes INTEGER DEFAULT 0,
+                        FOREIGN KEY(website_id) REFERENCES websites(id)
+                    );
+                    """;
+
+            // SQL statement for creating search_stats table
+            String search_stats = """
+                    CREATE TABLE IF NOT EXISTS search_stats (
+                        id INTEGER PRIMARY KEY,
+                        keyword TEXT UNIQUE,
+                        searches INTEGER DEFAULT 0
+                    );
+                    """;
+
             // Execute SQL statements to create tables
             try (Statement stmt = conn.createStatement()) {
                 stmt.execute(websites);
@@ -137,6 +228,8 @@ public class BarrelSetup {
                 stmt.execute(urls);
                 stmt.execute(website_keywords);
                 stmt.execute(website_urls);
+                stmt.execute(website_fingerprints);
+                stmt.execute(search_stats);
             }
 
             LogUtil.logInfo(LogUtil.ANSI_GREEN, BarrelSetup.class, "Tables created successfully");
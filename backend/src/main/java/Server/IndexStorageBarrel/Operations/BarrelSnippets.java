@@ -0,0 +1,237 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Analysis.Analyzer;
+
+// General imports
+import java.util.Map;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.nio.CharBuffer;
+
+import org.springframework.web.util.HtmlUtils;
+
+/**
+ * The BarrelSnippets class builds the short text shown under each search
+ * result, instead of shipping the whole body of the page.
+ * <p>
+ * The body is analyzed like the indexed text, so every token is matched
+ * against the query keywords as the index would, and the offsets of the
+ * matching tokens are kept. A window of at most {@link #WINDOW_TOKENS} tokens
+ * slides over the matches, and the one covering the most distinct keywords,
+ * then the most matches, is chosen. The snippet is the text around that window,
+ * cut at word boundaries, HTML-escaped, with the matching tokens in bold.
+ * <p>
+ * Pages without a match are described by the summary stored with the website,
+ * which is the beginning of their body.
+ */
+public class BarrelSnippets {
+    /**
+     * The target length of a snippet, in characters.
+     */
+    public static final int SNIPPET_LENGTH = 240;
+    /**
+     * The maximum length of the stored summary of a page, in characters.
+     */
+    public static final int SUMMARY_LENGTH = 240;
+    /**
+     * The maximum number of tokens spanned by the matches of a snippet.
+     */
+    public static final int WINDOW_TOKENS = 24;
+    /**
+     * The number of characters of a body searched for matches, so that a huge
+     * page costs no more than a large one.
+     */
+    public static final int MAX_SCANNED_CHARS = 200_000;
+    /**
+     * The Analyzer of the indexed text.
+     */
+    private final Analyzer analyzer;
+
+    /**
+     * Constructs a BarrelSnippets object.
+     *
+     * @param analyzer the analyzer of the indexed text
+     */
+    public BarrelSnippets(Analyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * The tokens of a body matching a keyword of the query.
+     */
+    private static class Matches {
+        /**
+         * The token index of each match.
+         */
+        private int[] tokens = new int[16];
+        /**
+         * The index of the keyword of each match.
+         */
+        private int[] keywords = new int[16];
+        /**
+         * The start offset of each match in the body.
+         */
+        private int[] starts = new int[16];
+        /**
+         * The end offset of each match in the body.
+         */
+        private int[] ends = new int[16];
+        /**
+         * The number of matches.
+         */
+        private int count;
+        /**
+         * The number of tokens seen so far.
+         */
+        private int tokenCount;
+
+        /**
+         * Adds a match.
+         *
+         * @param keyword the index of the matched keyword
+         * @param start   the start offset of the token
+         * @param end     the end offset of the token
+         */
+        private void add(int keyword, int start, int end) {
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+                keywords = Arrays.copyOf(keywords, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            tokens[count] = tokenCount;
+            keywords[count] = keyword;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+    }
+
+    /**
+     * Builds the snippet of a page for the given keywords.
+     *
+     * @param body     the text of the page
+     * @param keywords the keywords of the query, analyzed like the indexed text
+     * @return the HTML-escaped snippet with the matches in bold, or the escaped
+     *         summary of the body if no keyword matches
+     */
+    public String snippet(String body, String[] keywords) {
+        if (body == null || body.isEmpty())
+            return "";
+        Map<String, Integer> keywordIndexes = new HashMap<>();
+        for (String keyword : keywords)
+            keywordIndexes.putIfAbsent(keyword, keywordIndexes.size());
+
+        Matches matches = new Matches();
+        if (!keywordIndexes.isEmpty())
+            analyzer.analyze(CharBuffer.wrap(body, 0, Math.min(body.length(), MAX_SCANNED_CHARS)),
+                    (term, start, end) -> {
+                        Integer keyword = keywordIndexes.get(term);
+                        if (keyword != null)
+                            matches.add(keyword, start, end);
+                        matches.tokenCount++;
+                    });
+        if (matches.count == 0)
+            return HtmlUtils.htmlEscape(summary(body));
+
+        // Slide a window over the matches, keeping the one with the most distinct
+        // keywords, then the most matches
+        int[] counts = new int[keywordIndexes.size()];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestLast = 0;
+        long bestScore = -1;
+        int first = 0;
+        for (int last = 0; last < matches.count; last++) {
+            if (counts[matches.keywords[last]]++ == 0)
+                distinct++;
+            while (matches.tokens[last] - matches.tokens[first] >= WINDOW_TOKENS)
+                if (--counts[matches.keywords[first++]] == 0)
+                    distinct--;
+            long score = (long) distinct * Integer.MAX_VALUE + (last - first + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
+
+        // Center the text of the window in the snippet, at word boundaries
+        int windowStart = matches.starts[bestFirst];
+        int windowEnd = Math.min(matches.ends[bestLast], windowStart + SNIPPET_LENGTH);
+        int padding = Math.max(0, (SNIPPET_LENGTH - (windowEnd - windowStart)) / 2);
+        int from = wordStart(body, Math.max(0, windowStart - padding), windowStart);
+        int to = wordEnd(body, Math.min(body.length(), windowEnd + padding + Math.max(0, padding - windowStart)),
+                windowEnd);
+
+        StringBuilder snippet = new StringBuilder();
+        if (from > 0)
+            snippet.append("... ");
+        int position = from;
+        for (int i = 0; i < matches.count; i++) {
+            if (matches.starts[i] < position || matches.ends[i] > to)
+                continue;
+            snippet.append(HtmlUtils.htmlEscape(body.substring(position, matches.starts[i])))
+                    .append("<b>").append(HtmlUtils.htmlEscape(body.substring(matches.starts[i], matches.ends[i])))
+                    .append("</b>");
+            position = matches.ends[i];
+        }
+        snippet.append(HtmlUtils.htmlEscape(body.substring(position, to)));
+        if (to < body.length())
+            snippet.append(" ...");
+        return snippet.toString();
+    }
+
+    /**
+     * Returns the summary of a page stored with its website: the beginning of
+     * its body, cut at a word boundary.
+     *
+     * @param body the text of the page
+     * @return the summary, at most {@link #SUMMARY_LENGTH} characters plus an
+     *         ellipsis
+     */
+    public static String summary(String body) {
+        if (body == null)
+            return "";
+        if (body.length() <= SUMMARY_LENGTH)
+            return body;
+        return body.substring(0, wordEnd(body, SUMMARY_LENGTH, 0)) + " ...";
+    }
+
+    /**
+     * Moves a start offset forward to the start of a word, unless this passes
+     * the given limit.
+     *
+     * @param text   the text
+     * @param offset the start offset
+     * @param limit  the offset the start may not pass
+     * @return the adjusted start offset
+     */
+    private static int wordStart(String text, int offset, int limit) {
+        if (offset == 0 || Character.isWhitespace(text.charAt(offset - 1)))
+            return offset;
+        int space = offset;
+        while (space < limit && !Character.isWhitespace(text.charAt(space)))
+            space++;
+        return space < limit ? space + 1 : offset;
+    }
+
+    /**
+     * Moves an end offset back to the end of a word, unless this passes the
+     * given limit.
+     *
+     * @param text   the text
+     * @param offset the end offset
+     * @param limit  the offset the end may not pass
+     * @return the adjusted end offset
+     */
+    private static int wordEnd(String text, int offset, int limit) {
+        if (offset == text.length() || Character.isWhitespace(text.charAt(offset)))
+            return offset;
+        int space = offset;
+        while (space > limit && !Character.isWhitespace(text.charAt(space - 1)))
+            space--;
+        return space > limit ? space - 1 : offset;
+    }
+}
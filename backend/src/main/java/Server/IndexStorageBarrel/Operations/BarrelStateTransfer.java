@@ -0,0 +1,576 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.IndexStorage;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Index.DocumentStore;
+import Server.IndexStorageBarrel.Index.DocumentTerms;
+import Server.IndexStorageBarrel.Index.StoredDocument;
+import Server.IndexStorageBarrel.Index.CompressedPostings;
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+import Server.IndexStorageBarrel.Tools.SyncTable;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.net.Socket;
+import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.sql.ResultSet;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+
+// Exception imports
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The BarrelStateTransfer class streams the state of a barrel to a replica
+ * joining its partition, point to point over TCP, instead of multicasting the
+ * whole delta of every table to every barrel.
+ * <p>
+ * Every barrel runs a donor server. The joining barrel connects to the donor
+ * that answered its SyncRequest and sends the last IDs it holds. The donor
+ * reads every table in a single read transaction, so that the tables are a
+ * consistent snapshot, and writes their rows in a typed binary stream of
+ * chunks of at most {@link #CHUNK_ROWS} rows, followed by the postings and
+ * texts kept outside of the database in chunks of {@link #CHUNK_IDS} website
+ * IDs. Neither side holds more than a few chunks: the receiver applies each
+ * chunk as it arrives and acknowledges it, and the donor waits for an
+ * acknowledgement whenever {@link #WINDOW} chunks are unacknowledged.
+ * <p>
+ * The tables are inserted in one transaction, committed at the end of the
+ * tables, so that a broken transfer leaves the database as it was. The
+ * postings and texts are appended afterwards, as they arrive.
+ */
+public class BarrelStateTransfer implements Runnable {
+    /**
+     * The offset added to the RMI port of a barrel for its donor server.
+     */
+    public static final int PORT_OFFSET = 1000;
+    /**
+     * The version of the stream format, checked by the donor.
+     */
+    private static final int PROTOCOL_VERSION = 2;
+    /**
+     * The maximum number of rows of a chunk.
+     */
+    private static final int CHUNK_ROWS = 2000;
+    /**
+     * The number of website IDs whose postings and texts make a chunk.
+     */
+    private static final int CHUNK_IDS = 500;
+    /**
+     * The maximum number of chunks sent and not yet acknowledged.
+     */
+    private static final int WINDOW = 4;
+    /**
+     * The time to wait for the donor to accept the connection, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 5000;
+    /**
+     * The time to wait for the next bytes of the stream, in milliseconds.
+     */
+    private static final int READ_TIMEOUT = 60000;
+    /**
+     * The section of the stream holding the postings not stored in the
+     * database. The sections of the tables are their ordinals.
+     */
+    private static final int POSTINGS_SECTION = 100;
+    /**
+     * The section of the stream holding the texts of the document store.
+     */
+    private static final int DOCUMENTS_SECTION = 101;
+    /**
+     * The end of the stream.
+     */
+    private static final int END_OF_STREAM = 127;
+    /**
+     * The tables whose last ID the receiver sends, in stream order.
+     */
+    private static final String[] ID_TABLES = { "websites", "keywords", "urls", "search_stats" };
+
+    /**
+     * The database whose read-only connections the donor reads from.
+     */
+    private final BarrelDatabase database;
+    /**
+     * The BarrelRetriever giving the last IDs the receiver holds.
+     */
+    private final BarrelRetriever barrelRetriever;
+    /**
+     * The BarrelPopulate applying the received chunks.
+     */
+    private final BarrelPopulate barrelPopulate;
+    /**
+     * The storage engine of the postings, exported when not in the database.
+     */
+    private final IndexStorage indexStorage;
+    /**
+     * The store of the texts of the websites.
+     */
+    private final DocumentStore documentStore;
+    /**
+     * The term partition of the barrel, which a receiver must share.
+     */
+    private final TermPartition termPartition;
+    /**
+     * The document partition of the barrel, which a receiver must share.
+     */
+    private final DocumentPartition documentPartition;
+    /**
+     * Whether the barrel indexes the token positions of the postings, which a
+     * receiver must share.
+     */
+    private final boolean indexPositions;
+    /**
+     * The socket of the donor server.
+     */
+    private final ServerSocket serverSocket;
+    /**
+     * A boolean value indicating whether the donor server is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a BarrelStateTransfer and starts its donor server.
+     *
+     * @param database          the database the donor reads from
+     * @param barrelRetriever   the retriever giving the last IDs held
+     * @param barrelPopulate    the populate applying the received chunks
+     * @param indexStorage      the storage engine of the postings
+     * @param documentStore     the store of the texts of the websites
+     * @param termPartition     the term partition of the barrel
+     * @param documentPartition the document partition of the barrel
+     * @param indexPositions    whether the barrel indexes token positions
+     * @param port              the port of the donor server
+     * @throws IOException if the donor server cannot listen on the port
+     */
+    public BarrelStateTransfer(BarrelDatabase database, BarrelRetriever barrelRetriever,
+            BarrelPopulate barrelPopulate, IndexStorage indexStorage, DocumentStore documentStore,
+            TermPartition termPartition, DocumentPartition documentPartition, boolean indexPositions, int port)
+            throws IOException {
+        this.database = database;
+        this.barrelRetriever = barrelRetriever;
+        this.barrelPopulate = barrelPopulate;
+        this.indexStorage = indexStorage;
+        this.documentStore = documentStore;
+        this.termPartition = termPartition;
+        this.documentPartition = documentPartition;
+        this.indexPositions = indexPositions;
+        this.serverSocket = new ServerSocket(port);
+        new Thread(this, "Barrel State Transfer").start();
+    }
+
+    /**
+     * Serves the state transfers, one at a time.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT);
+                donate(socket);
+            } catch (IOException | SQLException e) {
+                if (running)
+                    LogUtil.logError(LogUtil.ANSI_RED, BarrelStateTransfer.class, e);
+            }
+        }
+    }
+
+    /**
+     * Streams the state of the barrel to a receiver.
+     *
+     * @param socket the connection of the receiver
+     * @throws IOException  if the stream is broken
+     * @throws SQLException if a table cannot be read
+     */
+    private void donate(Socket socket) throws IOException, SQLException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        // The replicas of another partition hold other keywords or websites
+        boolean accepted = in.readInt() == PROTOCOL_VERSION
+                & termPartition.equals(new TermPartition(in.readInt(), in.readInt()))
+                & documentPartition.equals(new DocumentPartition(in.readInt(), in.readInt()))
+                & matchesStorage(in.readBoolean(), in.readBoolean());
+        Map<String, Integer> lastIDs = new HashMap<>();
+        for (String table : ID_TABLES)
+            lastIDs.put(table, in.readInt());
+        out.writeBoolean(accepted);
+        out.flush();
+        if (!accepted)
+            return;
+
+        long startTime = System.currentTimeMillis();
+        ChunkWriter writer = new ChunkWriter(in, out);
+        try (Connection conn = database.getReader()) {
+            // A single read transaction keeps every table at the same snapshot
+            conn.setAutoCommit(false);
+            try {
+                int lastWebsiteID = 0;
+                InvertedIndex.DocumentExport export;
+                // No batch commits between the snapshot and the export, so the postings of
+                // every website of the snapshot are in the index
+                synchronized (barrelPopulate) {
+                    try (PreparedStatement pstmt = conn.prepareStatement("SELECT MAX(id) FROM websites");
+                            ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next())
+                            lastWebsiteID = rs.getInt(1);
+                    }
+                    export = indexStorage.export(lastIDs.get("websites"));
+                }
+                for (SyncTable table : SyncTable.values())
+                    writeTable(conn, table, lastIDs.get(table.idTable()), writer);
+                writeDocuments(export, lastIDs.get("websites"), lastWebsiteID, writer);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+        writer.finish();
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelStateTransfer.class,
+                "Sent " + writer.rows + " rows in " + writer.chunks + " chunks (" + writer.bytes / 1024
+                        + " KB) in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Streams the rows of a table after the last ID the receiver holds.
+     *
+     * @param conn   the read-only connection
+     * @param table  the table
+     * @param lastID the last ID the receiver holds
+     * @param writer the writer of the chunks
+     * @throws SQLException if the table cannot be read
+     * @throws IOException  if the stream is broken
+     */
+    private void writeTable(Connection conn, SyncTable table, int lastID, ChunkWriter writer)
+            throws SQLException, IOException {
+        writer.startSection(table.ordinal());
+        try (PreparedStatement pstmt = conn.prepareStatement(table.selectSql())) {
+            pstmt.setInt(1, lastID);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    table.writeRow(rs, writer.chunk);
+                    writer.rowWritten(CHUNK_ROWS);
+                }
+            }
+        }
+        writer.endSection();
+    }
+
+    /**
+     * Streams the postings not stored in the database and the texts of the
+     * websites after the last ID the receiver holds, up to the last website of
+     * the snapshot.
+     *
+     * @param export        the export of the postings, or null if they are
+     *                      stored in the database
+     * @param lastID        the last website ID the receiver holds
+     * @param lastWebsiteID the last website ID of the snapshot
+     * @param writer        the writer of the chunks
+     * @throws IOException if the stream is broken or the texts cannot be read
+     */
+    private void writeDocuments(InvertedIndex.DocumentExport export, int lastID, int lastWebsiteID,
+            ChunkWriter writer) throws IOException {
+        writer.startSection(POSTINGS_SECTION);
+        for (int startID = lastID; export != null && startID < lastWebsiteID; startID += CHUNK_IDS) {
+            for (DocumentTerms document : export.next(Math.min(lastWebsiteID, startID + CHUNK_IDS))) {
+                DataOutputStream chunk = writer.chunk;
+                chunk.writeInt(document.docId());
+                chunk.writeInt(document.docLength());
+                chunk.writeInt(document.termFrequencies().size());
+                for (Map.Entry<String, Float> entry : document.termFrequencies().entrySet()) {
+                    SyncTable.writeText(chunk, entry.getKey());
+                    chunk.writeFloat(entry.getValue());
+                    int[] positions = document.termPositions() == null ? null
+                            : document.termPositions().get(entry.getKey());
+                    SyncTable.writeBlob(chunk, positions == null ? null : CompressedPostings.encodePositions(positions));
+                }
+                writer.rowWritten(Integer.MAX_VALUE);
+            }
+            writer.flushChunk();
+        }
+        writer.endSection();
+
+        writer.startSection(DOCUMENTS_SECTION);
+        for (int startID = lastID; startID < lastWebsiteID; startID += CHUNK_IDS) {
+            for (StoredDocument document : documentStore.export(startID, Math.min(lastWebsiteID, startID + CHUNK_IDS))) {
+                DataOutputStream chunk = writer.chunk;
+                chunk.writeInt(document.docId());
+                SyncTable.writeText(chunk, document.url());
+                SyncTable.writeText(chunk, document.title());
+                SyncTable.writeText(chunk, document.body());
+                writer.rowWritten(Integer.MAX_VALUE);
+            }
+            writer.flushChunk();
+        }
+        writer.endSection();
+    }
+
+    /**
+     * Receives the state of the barrel from a donor, applying the chunks as
+     * they arrive.
+     *
+     * @param host the address of the donor
+     * @param port the port of its donor server
+     * @return true if the whole state was received
+     */
+    public boolean receive(String host, int port) {
+        long startTime = System.currentTimeMillis();
+        HashMap<String, Integer> lastIDs = barrelRetriever.getLastIDs();
+        boolean committed = false;
+        // No crawl batch is interleaved with the transfer
+        synchronized (barrelPopulate) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                socket.setSoTimeout(READ_TIMEOUT);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(PROTOCOL_VERSION);
+                out.writeInt(termPartition.index());
+                out.writeInt(termPartition.count());
+                out.writeInt(documentPartition.index());
+                out.writeInt(documentPartition.count());
+                out.writeBoolean(indexStorage.storesPostingsInDatabase());
+                out.writeBoolean(indexPositions);
+                for (String table : ID_TABLES)
+                    out.writeInt(lastIDs.getOrDefault(table, 0));
+                out.flush();
+                if (!in.readBoolean()) {
+                    LogUtil.logInfo(LogUtil.ANSI_RED, BarrelStateTransfer.class,
+                            "State transfer refused by " + host + ":" + port);
+                    return false;
+                }
+
+                barrelPopulate.beginSync();
+                long rows = 0;
+                for (int section = in.readByte(); section != END_OF_STREAM; section = in.readByte()) {
+                    if (section == POSTINGS_SECTION && !committed) {
+                        barrelPopulate.commitSync();
+                        committed = true;
+                    }
+                    for (int count = in.readInt(); count > 0; count = in.readInt()) {
+                        readChunk(section, in, count);
+                        rows += count;
+                        out.writeByte(1); // Acknowledge the chunk
+                        out.flush();
+                    }
+                }
+                LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelStateTransfer.class, "Received " + rows + " rows in "
+                        + (System.currentTimeMillis() - startTime) + "ms from " + host + ":" + port);
+                return true;
+            } catch (IOException | SQLException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelStateTransfer.class, e);
+                if (committed)
+                    LogUtil.logInfo(LogUtil.ANSI_RED, BarrelStateTransfer.class,
+                            "State transfer broken after the tables were committed");
+                return false;
+            } finally {
+                barrelPopulate.finishSync();
+            }
+        }
+    }
+
+    /**
+     * Reads a chunk of a section and applies it.
+     *
+     * @param section the section of the chunk
+     * @param in      the stream holding the chunk
+     * @param count   the number of rows of the chunk
+     * @throws IOException  if the chunk cannot be read or appended
+     * @throws SQLException if the rows cannot be inserted
+     */
+    private void readChunk(int section, DataInputStream in, int count) throws IOException, SQLException {
+        if (section == POSTINGS_SECTION) {
+            List<DocumentTerms> documents = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                DocumentTerms document = new DocumentTerms(in.readInt(), in.readInt(), new HashMap<>(),
+                        new HashMap<>());
+                for (int terms = in.readInt(); terms > 0; terms--) {
+                    String keyword = SyncTable.readText(in);
+                    document.termFrequencies().put(keyword, in.readFloat());
+                    byte[] positions = SyncTable.readBlob(in);
+                    if (positions != null)
+                        document.termPositions().put(keyword, CompressedPostings.decodePositions(positions));
+                }
+                documents.add(document);
+            }
+            barrelPopulate.appendSyncDocuments(documents, List.of());
+        } else if (section == DOCUMENTS_SECTION) {
+            List<StoredDocument> bodies = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+                bodies.add(new StoredDocument(in.readInt(), SyncTable.readText(in), SyncTable.readText(in),
+                        SyncTable.readText(in)));
+            barrelPopulate.appendSyncDocuments(List.of(), bodies);
+        } else
+            barrelPopulate.insertSyncRows(SyncTable.values()[section], in, count);
+    }
+
+    /**
+     * Stops the donor server.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LogUtil.logError(LogUtil.ANSI_RED, BarrelStateTransfer.class, e);
+        }
+    }
+
+    /**
+     * Returns whether a barrel stores its postings like this one, so that the
+     * postings it sends are persisted by the receiver. A barrel keeping its
+     * postings in segment files would not index the rows of the
+     * website_keywords table, and a barrel keeping them in the database would
+     * only hold the postings streamed from segment files in memory.
+     *
+     * @param postingsInDatabase whether the barrel stores its postings in the
+     *                           database
+     * @param positions          whether the barrel indexes token positions
+     * @return true if both barrels store their postings the same way
+     */
+    public boolean matchesStorage(boolean postingsInDatabase, boolean positions) {
+        return postingsInDatabase == indexStorage.storesPostingsInDatabase() && positions == indexPositions;
+    }
+
+    /**
+     * Returns the port of the donor server.
+     *
+     * @return the port of the donor server
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Writes the sections of a state transfer in chunks, waiting for the
+     * acknowledgements of the receiver so that at most {@link #WINDOW} chunks
+     * are in flight.
+     */
+    private static class ChunkWriter {
+        /**
+         * The stream of the acknowledgements.
+         */
+        private final DataInputStream acks;
+        /**
+         * The stream to the receiver.
+         */
+        private final DataOutputStream out;
+        /**
+         * The buffer of the chunk being written.
+         */
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        /**
+         * The stream writing the rows of the chunk to the buffer.
+         */
+        private final DataOutputStream chunk = new DataOutputStream(buffer);
+        /**
+         * The number of rows of the chunk being written.
+         */
+        private int chunkRows;
+        /**
+         * The number of chunks sent and not yet acknowledged.
+         */
+        private int unacknowledged;
+        /**
+         * The number of rows sent.
+         */
+        private long rows;
+        /**
+         * The number of chunks sent.
+         */
+        private long chunks;
+        /**
+         * The number of bytes sent.
+         */
+        private long bytes;
+
+        /**
+         * Constructs a ChunkWriter.
+         *
+         * @param acks the stream of the acknowledgements
+         * @param out  the stream to the receiver
+         */
+        private ChunkWriter(DataInputStream acks, DataOutputStream out) {
+            this.acks = acks;
+            this.out = out;
+        }
+
+        /**
+         * Starts a section.
+         *
+         * @param section the section
+         * @throws IOException if the stream is broken
+         */
+        private void startSection(int section) throws IOException {
+            out.writeByte(section);
+        }
+
+        /**
+         * Counts a row written to the chunk, sending the chunk once full.
+         *
+         * @param maxRows the maximum number of rows of a chunk
+         * @throws IOException if the stream is broken
+         */
+        private void rowWritten(int maxRows) throws IOException {
+            chunkRows++;
+            if (chunkRows >= maxRows)
+                flushChunk();
+        }
+
+        /**
+         * Sends the chunk being written, if it has rows, then waits for
+         * acknowledgements until the window has room.
+         *
+         * @throws IOException if the stream is broken
+         */
+        private void flushChunk() throws IOException {
+            if (chunkRows == 0)
+                return;
+            out.writeInt(chunkRows);
+            buffer.writeTo(out);
+            out.flush();
+            rows += chunkRows;
+            bytes += buffer.size() + Integer.BYTES;
+            chunks++;
+            chunkRows = 0;
+            buffer.reset();
+            for (unacknowledged++; unacknowledged >= WINDOW; unacknowledged--)
+                acks.readByte();
+        }
+
+        /**
+         * Sends the last chunk of a section and ends it.
+         *
+         * @throws IOException if the stream is broken
+         */
+        private void endSection() throws IOException {
+            flushChunk();
+            out.writeInt(0);
+        }
+
+        /**
+         * Ends the stream and waits for the last acknowledgements.
+         *
+         * @throws IOException if the stream is broken
+         */
+        private void finish() throws IOException {
+            out.writeByte(END_OF_STREAM);
+            out.flush();
+            for (; unacknowledged > 0; unacknowledged--)
+                acks.readByte();
+        }
+    }
+}
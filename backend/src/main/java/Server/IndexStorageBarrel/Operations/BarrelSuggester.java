@@ -0,0 +1,120 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Analysis.Analyzer;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Index.TermDictionary;
+
+// Logging imports
+import Logger.LogUtil;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+
+/**
+ * The BarrelSuggester class suggests the completions of a query prefix from a
+ * term dictionary of the index.
+ * <p>
+ * Each term is weighted by its document frequency plus its stored search
+ * count, so popular searches come first among terms of similar frequency. The
+ * dictionary is immutable and is rebuilt by a background thread when the index
+ * changes, then swapped in, so suggestions never wait for ingestion.
+ */
+public class BarrelSuggester implements Runnable {
+    /**
+     * The interval at which the index is checked for changes, in milliseconds.
+     */
+    public static final long REBUILD_INTERVAL = 15 * 1000;
+    /**
+     * The index whose terms are suggested.
+     */
+    private final InvertedIndex index;
+    /**
+     * The BarrelRetriever used to read the search counts.
+     */
+    private final BarrelRetriever barrelRetriever;
+    /**
+     * The current term dictionary.
+     */
+    private volatile TermDictionary dictionary = new TermDictionary(Map.of());
+    /**
+     * The index epoch the current dictionary was built at.
+     */
+    private long builtEpoch = -1;
+    /**
+     * A boolean value indicating whether the BarrelSuggester is running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a BarrelSuggester object and starts its thread.
+     *
+     * @param index           the index whose terms are suggested
+     * @param barrelRetriever the BarrelRetriever used to read the search counts
+     */
+    public BarrelSuggester(InvertedIndex index, BarrelRetriever barrelRetriever) {
+        this.index = index;
+        this.barrelRetriever = barrelRetriever;
+        new Thread(this, "Barrel Suggester").start();
+    }
+
+    /**
+     * Builds the dictionary on start, and rebuilds it whenever the index epoch
+     * has advanced.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            if (index.getEpoch() != builtEpoch)
+                rebuild();
+
+            try {
+                Thread.sleep(REBUILD_INTERVAL);
+            } catch (InterruptedException e) {
+                LogUtil.logError(LogUtil.ANSI_RED, BarrelSuggester.class, e);
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Builds a new dictionary from the document frequencies of the index and the
+     * search counts of the most searched keywords, and swaps it in.
+     */
+    private void rebuild() {
+        long startTime = System.currentTimeMillis();
+        builtEpoch = index.getEpoch();
+        Map<String, Long> weights = new HashMap<>();
+        index.getDocFrequencies().forEach((term, docFrequency) -> weights.put(term, (long) docFrequency));
+        barrelRetriever.getSearchCounts(BarrelSearchCounter.TOP_COUNTERS)
+                .forEach((keyword, searches) -> weights.computeIfPresent(keyword, (term, weight) -> weight + searches));
+
+        dictionary = new TermDictionary(weights);
+        LogUtil.logInfo(LogUtil.ANSI_WHITE, BarrelSuggester.class,
+                "Built suggestion dictionary of " + dictionary.size() + " terms and "
+                        + dictionary.precomputedCount() + " precomputed prefixes in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Suggests the completions of a prefix.
+     *
+     * @param prefix the prefix, folded like the indexed terms
+     * @param limit  the maximum number of completions
+     * @return the completions, from the most to the least relevant
+     */
+    public List<String> suggest(String prefix, int limit) {
+        return dictionary.suggest(Analyzer.fold(prefix.trim()), limit);
+    }
+
+    /**
+     * Sets the running state of the BarrelSuggester.
+     *
+     * @param running the running state to set
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+}
@@ -2,15 +2,12 @@ package Server.IndexStorageBarrel.Operations;
 
 // Package imports
 import ReliableMulticast.ReliableMulticast;
-import Server.IndexStorageBarrel.Tools.SyncData;
+import Server.IndexStorageBarrel.Tools.SyncOffer;
 import Server.IndexStorageBarrel.Tools.SyncRequest;
 import Server.IndexStorageBarrel.IndexStorageBarrel;
 
 // Logger imports
 import Logger.LogUtil;
-import java.util.Map;
-import java.util.List;
-import java.util.HashMap;
 
 // Exception imports
 import java.rmi.RemoteException;
@@ -19,6 +16,11 @@ import java.rmi.RemoteException;
  * The BarrelSync class implements the Runnable interface and is responsible for
  * synchronizing data between IndexStorageBarrel and ReliableMulticast.
  * It starts a new thread to perform the synchronization process.
+ * <p>
+ * Only the handshake goes over multicast: a joining barrel sends a
+ * SyncRequest, the synchronized replicas of its partitions answer with a
+ * SyncOffer, and the joining barrel streams the state of the first one that
+ * offered through the BarrelStateTransfer.
  */
 public class BarrelSync implements Runnable {
     /**
@@ -53,9 +55,11 @@ public class BarrelSync implements Runnable {
     public void run() {
         reliableMulticast.startReceiving();
         try {
-            // The nr of active barrels will be zero since this one wont have pinged the
+            // The nr of active replicas will be zero since this one wont have pinged the
             // gateway yet
-            if (barrel.getBarrelPinger().getRMIGateway() != null && barrel.getBarrelPinger().getActiveBarrels() == 0)
+            if (barrel.getBarrelPinger().getRMIGateway() != null
+                    && barrel.getBarrelPinger().getActiveReplicas(barrel.getTermPartition(),
+                            barrel.getDocumentPartition()) == 0)
                 barrel.getLatch().countDown();
             else
                 reliableMulticast.send(getSyncRequest());
@@ -68,52 +72,62 @@ public class BarrelSync implements Runnable {
             if (data == null)
                 running = false;
             else if (data.getClass() == SyncRequest.class)
-                reliableMulticast.send(getSyncData((SyncRequest) data));
-            else {
-                LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Received Sync data...");
-                barrel.getBarrelPopulate().insertSyncData((SyncData) data);
-                LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Finished synchronization");
-                barrel.getLatch().countDown();
-            }
+                offerSync((SyncRequest) data);
+            else if (data.getClass() == SyncOffer.class)
+                acceptSync((SyncOffer) data);
         }
     }
 
     /**
-     * Get the SyncRequest object with the last IDs
-     * 
-     * @return SyncRequest object with the last IDs
+     * Offers to stream the state of this barrel to a barrel joining its
+     * partitions, once this barrel is itself synchronized
+     *
+     * @param syncRequest the SyncRequest of the joining barrel
      */
-    private SyncRequest getSyncRequest() {
-        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Sending Sync request...");
-        return new SyncRequest(barrel.getBarrelRetriever().getLastIDs());
+    private void offerSync(SyncRequest syncRequest) {
+        // The keywords and postings of another partition or storage are not ours to send
+        if (syncRequest.barrelID() == barrel.getBarrelID() || barrel.getLatch().getCount() > 0
+                || !syncRequest.partition().equals(barrel.getTermPartition())
+                || !syncRequest.documentPartition().equals(barrel.getDocumentPartition())
+                || !barrel.getBarrelStateTransfer().matchesStorage(syncRequest.postingsInDatabase(),
+                        syncRequest.indexPositions()))
+            return;
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class,
+                "Offering Sync data to barrel " + syncRequest.barrelID() + "...");
+        reliableMulticast.send(new SyncOffer(syncRequest.barrelID(), barrel.getBarrelID(),
+                barrel.getBarrelAddress(), barrel.getBarrelStateTransfer().getPort()));
     }
 
     /**
-     * Get the data to be synchronized
-     * 
-     * @param syncRequest SyncRequest object with the last IDs
-     * @return SyncData object with the data to be synchronized
+     * Streams the state offered by a replica, if this barrel is still waiting
+     * for it, asking for another offer if the transfer fails
+     *
+     * @param syncOffer the SyncOffer of the replica
      */
-    private SyncData getSyncData(SyncRequest syncRequest) {
-        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Sending Sync data...");
-        List<Map<String, Object>> rows;
-        SyncData syncData = new SyncData(new HashMap<>());
-        for (String table : syncRequest.lastIDs().keySet()) {
-            int lastID = syncRequest.lastIDs().get(table);
-            rows = barrel.getBarrelRetriever().getTableWithStartID(table, lastID);
-
-            syncData.tableResults().put(table, rows);
+    private void acceptSync(SyncOffer syncOffer) {
+        if (syncOffer.requesterID() != barrel.getBarrelID() || barrel.getLatch().getCount() == 0)
+            return;
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class,
+                "Receiving Sync data from barrel " + syncOffer.donorID() + "...");
+        if (!barrel.getBarrelStateTransfer().receive(syncOffer.host(), syncOffer.port())) {
+            reliableMulticast.send(getSyncRequest());
+            return;
         }
+        barrel.getBarrelSearchCounter().reload(
+                barrel.getBarrelRetriever().getSearchCounts(BarrelSearchCounter.TOP_COUNTERS));
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Finished synchronization");
+        barrel.getLatch().countDown();
+    }
 
-        rows = barrel.getBarrelRetriever().getWeakTableWithStartID("website_urls",
-                syncRequest.lastIDs().get("websites"));
-        syncData.tableResults().put("website_urls", rows);
-
-        rows = barrel.getBarrelRetriever().getWeakTableWithStartID("website_keywords",
-                syncRequest.lastIDs().get("websites"));
-        syncData.tableResults().put("website_keywords", rows);
-
-        return syncData;
+    /**
+     * Get the SyncRequest object of this barrel and its partitions
+     * 
+     * @return SyncRequest object of this barrel
+     */
+    private SyncRequest getSyncRequest() {
+        LogUtil.logInfo(LogUtil.ANSI_YELLOW, BarrelSync.class, "Sending Sync request...");
+        return new SyncRequest(barrel.getBarrelID(), barrel.getTermPartition(), barrel.getDocumentPartition(),
+                barrel.getIndexStorage().storesPostingsInDatabase(), barrel.isIndexPositions());
     }
 
     /**
@@ -0,0 +1,143 @@
+package Server.IndexStorageBarrel.Operations;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.ParsedQuery;
+import Server.IndexStorageBarrel.Index.InvertedIndex;
+import Server.IndexStorageBarrel.Objects.CacheStats;
+import Server.IndexStorageBarrel.Objects.SearchData;
+
+// General imports
+import java.util.Map;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The QueryCache class keeps the result pages of recent queries in a
+ * size-bounded LRU map, so that repeated queries are answered without ranking
+ * them again or reading the websites from the database.
+ * <p>
+ * Every entry is tagged with the index epoch it was computed at. BarrelPopulate
+ * advances the epoch after each committed transaction, which turns every older
+ * entry stale without having to walk the cache.
+ */
+public class QueryCache {
+    /**
+     * The default maximum number of cached result pages.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * The index whose epoch validates the cached entries.
+     */
+    private final InvertedIndex index;
+    /**
+     * The maximum number of cached result pages.
+     */
+    private final int capacity;
+    /**
+     * The cached result pages, in access order.
+     */
+    private final Map<String, Entry> entries;
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * The number of lookups that had to execute the query.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A cached result page and the index epoch it was computed at.
+     *
+     * @param epoch   the index epoch of the results
+     * @param results the search results of the page
+     */
+    private record Entry(long epoch, List<SearchData> results) {
+    }
+
+    /**
+     * Constructs a QueryCache over the given index.
+     *
+     * @param index    the index whose epoch validates the cached entries
+     * @param capacity the maximum number of cached result pages, 0 disables the
+     *                 cache
+     */
+    public QueryCache(InvertedIndex index, int capacity) {
+        this.index = index;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > QueryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached result page, computing and caching it if it is missing or
+     * was computed at an older epoch.
+     * The page is computed outside the cache lock, so concurrent misses on the
+     * same key may compute it more than once.
+     *
+     * @param query      the parsed search query
+     * @param tfIdfSort  whether the results are sorted by tf-idf or ref count
+     * @param pageNumber the page number
+     * @param loader     the function computing the page on a miss
+     * @return the search results of the page
+     */
+    public List<SearchData> get(ParsedQuery query, boolean tfIdfSort, int pageNumber,
+            Supplier<List<SearchData>> loader) {
+        if (capacity <= 0) {
+            misses.increment();
+            return loader.get();
+        }
+
+        String key = key(query, tfIdfSort, pageNumber);
+        // Read the epoch first, so results computed during a commit are never
+        // tagged with the epoch that follows it
+        long epoch = index.getEpoch();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.epoch() == epoch) {
+                hits.increment();
+                return entry.results();
+            }
+        }
+
+        misses.increment();
+        List<SearchData> results = List.copyOf(loader.get());
+        synchronized (entries) {
+            entries.put(key, new Entry(epoch, results));
+        }
+        return results;
+    }
+
+    /**
+     * Builds the cache key of a result page.
+     * The query is normalized to its tree with the clauses in sorted order,
+     * since the ranking does not depend on their order or repetition.
+     *
+     * @param query      the parsed search query
+     * @param tfIdfSort  whether the results are sorted by tf-idf or ref count
+     * @param pageNumber the page number
+     * @return the cache key
+     */
+    private static String key(ParsedQuery query, boolean tfIdfSort, int pageNumber) {
+        return (tfIdfSort ? "tfidf" : "refs") + ":" + pageNumber + ":" + query.normalized();
+    }
+
+    /**
+     * Returns the hit and miss counters of the cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), size, capacity);
+    }
+}
@@ -0,0 +1,233 @@
+package Server.IndexStorageBarrel;
+
+// Package imports
+import Server.IndexStorageBarrel.Index.Postings;
+import Server.IndexStorageBarrel.Index.DiskSegment;
+import Server.IndexStorageBarrel.Index.PostingList;
+import Server.IndexStorageBarrel.Index.MemorySegment;
+import Server.IndexStorageBarrel.Operations.BarrelDatabase;
+
+// General imports
+import java.sql.*;
+import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Files;
+
+// Exception imports
+import java.io.IOException;
+
+/**
+ * The PostingsTester class compares the size and the decoding speed of the
+ * postings stored in the website_keywords table with the compressed postings of
+ * a segment file, on a synthetic corpus with a Zipfian term distribution.
+ * <p>
+ * Each representation is timed on a scan of every list and on intersections
+ * of a frequent term with a random one, which skip through the longer list
+ * with advance.
+ */
+public class PostingsTester {
+    /**
+     * The name of the test database.
+     */
+    private static final String DB_NAME = "postings-tester";
+    /**
+     * The number of term pairs intersected by the advance benchmark.
+     */
+    private static final int INTERSECTIONS = 2000;
+
+    /**
+     * The main method of the PostingsTester class.
+     *
+     * @param args -docs (number of documents), -length (tokens per document) and
+     *             -vocab (number of distinct terms), all optional
+     * @throws SQLException if the test database cannot be written
+     * @throws IOException  if the segment file cannot be written
+     */
+    public static void main(String[] args) throws SQLException, IOException {
+        int docCount = 20000;
+        int docLength = 200;
+        int vocabulary = 50000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-docs" -> docCount = Integer.parseInt(args[++i]);
+                case "-length" -> docLength = Integer.parseInt(args[++i]);
+                case "-vocab" -> vocabulary = Integer.parseInt(args[++i]);
+                default -> {
+                    System.out.println("-docs <documents> -length <tokens per document> -vocab <distinct terms>");
+                    System.exit(1);
+                }
+            }
+        }
+
+        // Generate the corpus, with term ranks drawn from a Zipf distribution
+        System.out.println("Generating " + docCount + " documents of " + docLength + " tokens...");
+        double[] cumulative = new double[vocabulary];
+        double total = 0;
+        for (int rank = 0; rank < vocabulary; rank++)
+            cumulative[rank] = total += 1.0 / (rank + 1);
+        Random random = new Random(42);
+        MemorySegment memtable = new MemorySegment();
+        Map<String, PostingList> heapLists = new HashMap<>();
+        BarrelDatabase database = TesterFixtures.createDatabase(DB_NAME);
+        Connection conn = database.getWriter();
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement insertKeyword = conn.prepareStatement("INSERT INTO keywords(id, keyword) VALUES(?,?)");
+                PreparedStatement insertPosting = conn.prepareStatement(
+                        "INSERT INTO website_keywords(website_id, keyword_id, tf, doc_length) VALUES(?,?,?,?)")) {
+            for (int rank = 0; rank < vocabulary; rank++) {
+                insertKeyword.setInt(1, rank + 1);
+                insertKeyword.setString(2, "term" + rank);
+                insertKeyword.addBatch();
+            }
+            insertKeyword.executeBatch();
+
+            for (int docId = 1; docId <= docCount; docId++) {
+                Map<Integer, Integer> counts = new HashMap<>();
+                for (int i = 0; i < docLength; i++) {
+                    int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                    counts.merge(rank < 0 ? -rank - 1 : rank, 1, Integer::sum);
+                }
+                for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                    String term = "term" + entry.getKey();
+                    float score = (float) entry.getValue() / docLength;
+                    memtable.add(term, docId, score, docLength, null);
+                    heapLists.computeIfAbsent(term, k -> new PostingList()).add(docId, score);
+                    insertPosting.setInt(1, docId);
+                    insertPosting.setInt(2, entry.getKey() + 1);
+                    insertPosting.setInt(3, entry.getValue());
+                    insertPosting.setInt(4, docLength);
+                    insertPosting.addBatch();
+                }
+                if (docId % 1000 == 0)
+                    insertPosting.executeBatch();
+            }
+            insertPosting.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+
+        // Size of the postings
+        long postingCount = memtable.postingCount();
+        long tableBytes;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            try (ResultSet rs = stmt.executeQuery("SELECT SUM(pgsize) FROM dbstat "
+                    + "WHERE name IN (SELECT name FROM sqlite_schema WHERE tbl_name = 'website_keywords')")) {
+                tableBytes = rs.next() ? rs.getLong(1) : 0;
+            } catch (SQLException e) {
+                // Not every SQLite build has the dbstat table
+                tableBytes = 0;
+            }
+        }
+        Path segmentFile = Path.of("data", DB_NAME + ".idx");
+        DiskSegment.write(segmentFile, List.of(memtable));
+        long segmentBytes = Files.size(segmentFile);
+        DiskSegment segment = DiskSegment.open(segmentFile);
+
+        System.out.printf("%n%d postings over %d terms%n", postingCount, heapLists.size());
+        System.out.printf("%-28s %14s %16s%n", "Representation", "Bytes", "Bytes per posting");
+        if (tableBytes > 0)
+            System.out.printf("%-28s %14d %16.2f%n", "website_keywords table", tableBytes,
+                    (double) tableBytes / postingCount);
+        System.out.printf("%-28s %14d %16.2f%n", "Heap int[] + float[]", 8 * postingCount, 8.0);
+        System.out.printf("%-28s %14d %16.2f%n", "Compressed segment file", segmentBytes,
+                (double) segmentBytes / postingCount);
+
+        // Sequential decoding speed
+        List<String> terms = segment.terms();
+        System.out.printf("%n%-28s %14s %16s%n", "Sequential scan", "Time (ms)", "Mpostings/s");
+        long startTime = System.nanoTime();
+        long checksum = 0;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(
+                "SELECT keyword_id, website_id, tf, doc_length FROM website_keywords "
+                        + "ORDER BY keyword_id, website_id")) {
+            while (rs.next())
+                checksum += rs.getInt(2) + (long) (1000 * (float) rs.getInt(3) / rs.getInt(4));
+        }
+        printRate("website_keywords table", startTime, postingCount);
+        for (int round = 0; round < 2; round++) {
+            startTime = System.nanoTime();
+            for (String term : terms)
+                checksum += scan(heapLists.get(term));
+            printRate("Heap int[] + float[]", startTime, postingCount);
+            startTime = System.nanoTime();
+            for (String term : terms)
+                checksum += scan(segment.postings(term));
+            printRate("Compressed segment file", startTime, postingCount);
+        }
+
+        // Intersection speed, which exercises advance on the longer list
+        System.out.printf("%n%-28s %14s %16s%n", "Intersect " + INTERSECTIONS + " term pairs", "Time (ms)", "");
+        int[][] pairs = new int[INTERSECTIONS][2];
+        for (int[] pair : pairs) {
+            pair[0] = random.nextInt(Math.min(100, terms.size()));
+            pair[1] = random.nextInt(terms.size());
+        }
+        for (int round = 0; round < 2; round++) {
+            startTime = System.nanoTime();
+            for (int[] pair : pairs)
+                checksum += intersect(heapLists.get(terms.get(pair[1])), heapLists.get(terms.get(pair[0])));
+            printRate("Heap int[] + float[]", startTime, 0);
+            startTime = System.nanoTime();
+            for (int[] pair : pairs)
+                checksum += intersect(segment.postings(terms.get(pair[1])), segment.postings(terms.get(pair[0])));
+            printRate("Compressed segment file", startTime, 0);
+        }
+        System.out.println("\nChecksum " + checksum);
+        database.close();
+    }
+
+    /**
+     * Reads every posting of a list in order.
+     *
+     * @param list the posting list
+     * @return a checksum of the postings, so that the scan is not optimized away
+     */
+    private static long scan(Postings list) {
+        long checksum = 0;
+        for (int i = 0; i < list.size(); i++)
+            checksum += list.docId(i) + (long) (1000 * list.score(i));
+        return checksum;
+    }
+
+    /**
+     * Intersects two posting lists, advancing the longer one to each document of
+     * the shorter one.
+     *
+     * @param shorter the shorter posting list
+     * @param longer  the longer posting list
+     * @return the number of common documents
+     */
+    private static int intersect(Postings shorter, Postings longer) {
+        if (shorter.size() > longer.size())
+            return intersect(longer, shorter);
+        int matches = 0;
+        int position = 0;
+        for (int i = 0; i < shorter.size() && position < longer.size(); i++) {
+            position = longer.advance(position, shorter.docId(i));
+            if (position < longer.size() && longer.docId(position) == shorter.docId(i))
+                matches++;
+        }
+        return matches;
+    }
+
+    /**
+     * Prints the time elapsed since the start of a benchmark and its throughput.
+     *
+     * @param name      the name of the representation
+     * @param startTime the start time, in nanoseconds
+     * @param postings  the number of postings read, or 0 to omit the throughput
+     */
+    private static void printRate(String name, long startTime, long postings) {
+        double millis = (System.nanoTime() - startTime) / 1e6;
+        if (postings > 0)
+            System.out.printf("%-28s %14.1f %16.1f%n", name, millis, postings / millis / 1000);
+        else
+            System.out.printf("%-28s %14.1f%n", name, millis);
+    }
+}
@@ -0,0 +1,61 @@
+package Server.IndexStorageBarrel;
+
+// Package imports
+import Server.IndexStorageBarrel.Operations.BarrelSetup;
+import Server.IndexStorageBarrel.Operations.BarrelDatabase;
+
+// General imports
+import java.util.Collections;
+import java.util.stream.Stream;
+import java.nio.file.Path;
+import java.nio.file.Files;
+
+// Exception imports
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The TesterFixtures class holds the setup shared by the storage testers, which
+ * write their scratch files to the data directory and start from scratch on
+ * every run.
+ */
+final class TesterFixtures {
+    /**
+     * Prevents instantiation.
+     */
+    private TesterFixtures() {
+    }
+
+    /**
+     * Creates an empty database with the tables of a barrel, deleting the one
+     * left by a previous run.
+     *
+     * @param dbName the name of the database in the data directory
+     * @return the opened database
+     * @throws SQLException if the database cannot be opened
+     * @throws IOException  if the previous database cannot be deleted
+     */
+    static BarrelDatabase createDatabase(String dbName) throws SQLException, IOException {
+        Files.createDirectories(Path.of("data"));
+        for (String suffix : new String[] { ".db", ".db-wal", ".db-shm" })
+            Files.deleteIfExists(Path.of("data", dbName + suffix));
+        BarrelDatabase database = new BarrelDatabase(dbName, 1);
+        BarrelSetup.databaseIntegrity(database.getWriter(), dbName);
+        return database;
+    }
+
+    /**
+     * Deletes a directory and its files, if it exists.
+     *
+     * @param directory the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory))
+            return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Collections.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+}
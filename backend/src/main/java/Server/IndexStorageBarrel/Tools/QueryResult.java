@@ -4,6 +4,7 @@ package Server.IndexStorageBarrel.Tools;
  * Represents the result of a query.
  * @param websiteId The ID of the website.
  * @param newUrl Whether the URL is new.
+ * @param refCount The number of websites already linking to a new URL.
  */
-public record QueryResult(int websiteId, boolean newUrl) {
+public record QueryResult(int websiteId, boolean newUrl, int refCount) {
 }
\ No newline at end of file
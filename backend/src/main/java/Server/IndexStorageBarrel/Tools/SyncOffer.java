@@ -0,0 +1,15 @@
+package Server.IndexStorageBarrel.Tools;
+
+// General imports
+import java.io.Serializable;
+
+/**
+ * The SyncOffer class represents the answer of a replica to a SyncRequest,
+ * offering to stream its state to the requesting barrel over TCP.
+ * @param requesterID the ID of the barrel that requested the sync
+ * @param donorID     the ID of the offering barrel
+ * @param host        the address the offering barrel listens on
+ * @param port        the port of its state transfer server
+ */
+public record SyncOffer(int requesterID, int donorID, String host, int port) implements Serializable {
+}
@@ -1,12 +1,25 @@
 package Server.IndexStorageBarrel.Tools;
 
+// Package imports
+import Server.IndexStorageBarrel.Objects.TermPartition;
+import Server.IndexStorageBarrel.Objects.DocumentPartition;
+
 // General imports
-import java.util.HashMap;
 import java.io.Serializable;
 
 /**
  * The SyncRequest class represents a request to synchronize data between
- * @param lastIDs the last IDs of the data to synchronize
+ * @param barrelID           the ID of the requesting barrel
+ * @param partition          the term partition of the requesting barrel, only
+ *                           answered by its replicas
+ * @param documentPartition  the document partition of the requesting barrel,
+ *                           only answered by its replicas
+ * @param postingsInDatabase whether the requesting barrel stores its postings
+ *                           in the database, only answered by barrels storing
+ *                           them the same way
+ * @param indexPositions     whether the requesting barrel indexes token
+ *                           positions, only answered by barrels that do too
  */
-public record SyncRequest(HashMap<String, Integer> lastIDs) implements Serializable {
+public record SyncRequest(int barrelID, TermPartition partition, DocumentPartition documentPartition,
+        boolean postingsInDatabase, boolean indexPositions) implements Serializable {
 }
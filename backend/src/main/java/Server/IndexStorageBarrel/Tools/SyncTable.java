@@ -0,0 +1,257 @@
+package Server.IndexStorageBarrel.Tools;
+
+// General imports
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Exception imports
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * The SyncTable enum lists the database tables sent during a state transfer,
+ * with the typed columns of their rows. A row is copied from the donor's
+ * result set straight into the binary stream, and bound from the stream
+ * straight into the receiver's insert statement, without building an object
+ * per row.
+ */
+public enum SyncTable {
+    /**
+     * The crawled and linked websites.
+     */
+    WEBSITES("websites", "id", "websites", new String[] { "id", "url", "title", "description", "ref_count" },
+            new Column[] { Column.INT, Column.TEXT, Column.TEXT, Column.TEXT, Column.INT }, "INSERT"),
+    /**
+     * The keywords whose postings are stored in the database.
+     */
+    KEYWORDS("keywords", "id", "keywords", new String[] { "id", "keyword" },
+            new Column[] { Column.INT, Column.TEXT }, "INSERT"),
+    /**
+     * The URLs linked to by the websites.
+     */
+    URLS("urls", "id", "urls", new String[] { "id", "url" }, new Column[] { Column.INT, Column.TEXT }, "INSERT"),
+    /**
+     * The search counts of the keywords.
+     */
+    SEARCH_STATS("search_stats", "id", "search_stats", new String[] { "id", "keyword", "searches" },
+            new Column[] { Column.INT, Column.TEXT, Column.LONG }, "INSERT OR IGNORE"),
+    /**
+     * The links from the websites to the URLs.
+     */
+    WEBSITE_URLS("website_urls", "website_id", "websites", new String[] { "website_id", "url_id" },
+            new Column[] { Column.INT, Column.INT }, "INSERT"),
+    /**
+     * The postings stored in the database.
+     */
+    WEBSITE_KEYWORDS("website_keywords", "website_id", "websites",
+            new String[] { "website_id", "keyword_id", "tf", "doc_length", "positions" },
+            new Column[] { Column.INT, Column.INT, Column.INT, Column.INT, Column.BLOB }, "INSERT"),
+    /**
+     * The SimHash fingerprints of the websites.
+     */
+    WEBSITE_FINGERPRINTS("website_fingerprints", "website_id", "websites",
+            new String[] { "website_id", "fingerprint", "canonical_id", "saved_postings", "saved_bytes" },
+            new Column[] { Column.INT, Column.LONG, Column.NULLABLE_INT, Column.LONG, Column.LONG },
+            "INSERT OR REPLACE");
+
+    /**
+     * The type of a column, which decides its binary encoding.
+     */
+    public enum Column {
+        /**
+         * A 32-bit integer.
+         */
+        INT,
+        /**
+         * A 32-bit integer that may be null, preceded by a presence flag.
+         */
+        NULLABLE_INT,
+        /**
+         * A 64-bit integer.
+         */
+        LONG,
+        /**
+         * A string that may be null, as its UTF-8 length and bytes.
+         */
+        TEXT,
+        /**
+         * A byte array that may be null, as its length and bytes.
+         */
+        BLOB
+    }
+
+    /**
+     * The name of the table.
+     */
+    private final String table;
+    /**
+     * The column compared with the last ID the receiver holds.
+     */
+    private final String idColumn;
+    /**
+     * The table whose last ID the receiver holds, the table itself or the
+     * websites for the tables keyed by website.
+     */
+    private final String idTable;
+    /**
+     * The names of the columns, in stream order.
+     */
+    private final String[] columnNames;
+    /**
+     * The types of the columns, in stream order.
+     */
+    private final Column[] columns;
+    /**
+     * The insert verb, with its conflict clause.
+     */
+    private final String insertVerb;
+
+    /**
+     * Constructs a SyncTable.
+     *
+     * @param table       the name of the table
+     * @param idColumn    the column compared with the last ID the receiver holds
+     * @param idTable     the table whose last ID the receiver holds
+     * @param columnNames the names of the columns
+     * @param columns     the types of the columns
+     * @param insertVerb  the insert verb, with its conflict clause
+     */
+    SyncTable(String table, String idColumn, String idTable, String[] columnNames, Column[] columns,
+            String insertVerb) {
+        this.table = table;
+        this.idColumn = idColumn;
+        this.idTable = idTable;
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.insertVerb = insertVerb;
+    }
+
+    /**
+     * Returns the table whose last ID the receiver holds.
+     *
+     * @return the name of the table
+     */
+    public String idTable() {
+        return idTable;
+    }
+
+    /**
+     * Returns the query selecting the rows after the last ID the receiver
+     * holds, whose only parameter is that ID.
+     *
+     * @return the select statement
+     */
+    public String selectSql() {
+        return "SELECT " + String.join(", ", columnNames) + " FROM " + table + " WHERE " + idColumn + " > ?";
+    }
+
+    /**
+     * Returns the statement inserting a row, with one parameter per column.
+     *
+     * @return the insert statement
+     */
+    public String insertSql() {
+        return insertVerb + " INTO " + table + "(" + String.join(", ", columnNames) + ") VALUES("
+                + "?,".repeat(columns.length - 1) + "?)";
+    }
+
+    /**
+     * Writes the current row of a result set of {@link #selectSql()}.
+     *
+     * @param rs  the result set, positioned on a row
+     * @param out the stream to write to
+     * @throws SQLException if a column cannot be read
+     * @throws IOException  if the row cannot be written
+     */
+    public void writeRow(ResultSet rs, DataOutputStream out) throws SQLException, IOException {
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case INT -> out.writeInt(rs.getInt(i + 1));
+                case NULLABLE_INT -> {
+                    int value = rs.getInt(i + 1);
+                    out.writeBoolean(!rs.wasNull());
+                    if (!rs.wasNull())
+                        out.writeInt(value);
+                }
+                case LONG -> out.writeLong(rs.getLong(i + 1));
+                case TEXT -> writeText(out, rs.getString(i + 1));
+                case BLOB -> writeBlob(out, rs.getBytes(i + 1));
+            }
+        }
+    }
+
+    /**
+     * Reads a row and binds it to a statement of {@link #insertSql()}.
+     *
+     * @param in    the stream to read from
+     * @param pstmt the insert statement
+     * @throws IOException  if the row cannot be read
+     * @throws SQLException if a column cannot be bound
+     */
+    public void bindRow(DataInputStream in, PreparedStatement pstmt) throws IOException, SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case INT -> pstmt.setInt(i + 1, in.readInt());
+                case NULLABLE_INT -> pstmt.setObject(i + 1, in.readBoolean() ? in.readInt() : null);
+                case LONG -> pstmt.setLong(i + 1, in.readLong());
+                case TEXT -> pstmt.setString(i + 1, readText(in));
+                case BLOB -> pstmt.setBytes(i + 1, readBlob(in));
+            }
+        }
+    }
+
+    /**
+     * Writes a string that may be null, of any length.
+     *
+     * @param out   the stream to write to
+     * @param value the string, or null
+     * @throws IOException if the string cannot be written
+     */
+    public static void writeText(DataOutputStream out, String value) throws IOException {
+        writeBlob(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a string written by {@link #writeText}.
+     *
+     * @param in the stream to read from
+     * @return the string, or null
+     * @throws IOException if the string cannot be read
+     */
+    public static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = readBlob(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a byte array that may be null.
+     *
+     * @param out   the stream to write to
+     * @param value the bytes, or null
+     * @throws IOException if the bytes cannot be written
+     */
+    public static void writeBlob(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null)
+            out.write(value);
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBlob}.
+     *
+     * @param in the stream to read from
+     * @return the bytes, or null
+     * @throws IOException if the bytes cannot be read
+     */
+    public static byte[] readBlob(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import Server.Controller.RMIGateway;
 import Server.Controller.RMIGatewayInterface;
 import Server.IndexStorageBarrel.Objects.SearchData;
+import Server.IndexStorageBarrel.Objects.SearchPage;
 import Springboot.Application;
 import Springboot.hackernews.HackerNews;
 import Springboot.openai.Perplexity;
@@ -32,6 +33,7 @@ public class ResultsController {
      *
      * @param query      the search query
      * @param page       the page number for pagination
+     * @param cursor     the server-side cursor of the search, if already opened
      * @param urlsLinked a boolean indicating whether URLs are linked
      * @param model      the Spring MVC model
      * @return the view name for the results page
@@ -39,6 +41,7 @@ public class ResultsController {
     @GetMapping("/results")
     public String results(@RequestParam(name = "query", required = true) String query,
             @RequestParam(name = "page", required = false, defaultValue = "1") int page,
+            @RequestParam(name = "cursor", required = false) String cursor,
             @RequestParam(name = "urlsLinked", required = false, defaultValue = "false") boolean urlsLinked,
             Model model) {
         try {
@@ -47,12 +50,20 @@ public class ResultsController {
                             + RMIGateway.REMOTE_REFERENCE_NAME);
 
             List<SearchData> searchResults;
+            boolean hasNextPage;
             if (!urlsLinked) {
-                searchResults = rmiGateway.searchQuery(query, page);
+                // Later pages are served from the cursor opened by the first one
+                SearchPage searchPage = cursor == null || cursor.isEmpty() ? rmiGateway.openSearch(query)
+                        : rmiGateway.fetchSearchPage(query, cursor, page);
+                searchResults = searchPage.results();
+                hasNextPage = searchPage.hasNextPage();
+                page = searchPage.pageNumber();
+                model.addAttribute("cursor", searchPage.cursor());
                 // Contextualized Analysis
                 model.addAttribute("contextualizedAnalysis", Perplexity.getContextualizedAnalysis(query));
             } else {
                 searchResults = rmiGateway.getWebsitesLinkingTo(query, page);
+                hasNextPage = searchResults.size() == 10;
                 model.addAttribute("contextualizedAnalysis", "Contextualized analysis unavailable for linked URLs.");
             }
 
@@ -63,7 +74,7 @@ public class ResultsController {
             // Pagination
             model.addAttribute("previousButtonDisabled", page <= 1);
             model.addAttribute("currentPage", page);
-            model.addAttribute("nextButtonDisabled", searchResults.size() != 10);
+            model.addAttribute("nextButtonDisabled", !hasNextPage);
         } catch (MalformedURLException | RemoteException | NotBoundException e) {
             return "redirect:/error";
         }
@@ -1,7 +1,20 @@
 package Springboot.controllers;
 
+import java.net.MalformedURLException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import Server.Controller.RMIGateway;
+import Server.Controller.RMIGatewayInterface;
+import Springboot.Application;
 
 /**
  * Controller class to handle search-related requests and redirects.
@@ -28,4 +41,26 @@ public class SearchController {
     public String search() {
         return "search";
     }
+
+    /**
+     * Suggests the completions of the word being typed in the search box.
+     * The search page debounces its requests, so one is sent per typing pause.
+     *
+     * @param prefix the prefix typed by the user
+     * @param limit  the maximum number of suggestions
+     * @return the suggested terms, or an empty list if the gateway is unreachable
+     */
+    @GetMapping("/suggest")
+    @ResponseBody
+    public List<String> suggest(@RequestParam(name = "prefix", required = true) String prefix,
+            @RequestParam(name = "limit", required = false, defaultValue = "8") int limit) {
+        try {
+            RMIGatewayInterface rmiGateway = (RMIGatewayInterface) Naming
+                    .lookup("rmi://" + Application.gatewayAddress + ":" + RMIGateway.PORT + "/"
+                            + RMIGateway.REMOTE_REFERENCE_NAME);
+            return rmiGateway.suggest(prefix, limit);
+        } catch (MalformedURLException | RemoteException | NotBoundException e) {
+            return Collections.emptyList();
+        }
+    }
 }
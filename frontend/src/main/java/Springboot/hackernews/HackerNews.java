@@ -8,6 +8,7 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.web.client.RestTemplate;
 
+import Analysis.Analyzer;
 import Server.Downloader.Crawling;
 
 /**
@@ -15,17 +16,26 @@ import Server.Downloader.Crawling;
  * stories.
  */
 public class HackerNews {
+    /**
+     * The Analyzer splitting the stories and the query into terms, like the
+     * downloaders do.
+     */
+    private static final Analyzer ANALYZER = new Analyzer(false, false);
 
     /**
      * Fetches the top stories from Hacker News and filters them based on the
      * provided query.
+     * A story matches when its text contains every term of the query, both
+     * being folded by the analyzer, so a query of several words matches the
+     * stories holding all of them in any order.
      *
      * @param query the query to search for in the top stories' content
-     * @return a list of URLs of the top stories that contain the query
+     * @return a list of URLs of the top stories that contain every query term
      */
     public static List<String> getTopStories(String query) {
         List<String> topStoriesURLs = new ArrayList<>();
         List<Integer> hackerNewsTopStories = new ArrayList<>();
+        List<String> queryTerms = ANALYZER.analyze(query);
 
         String topStoriesEndpoint = "https://hacker-news.firebaseio.com/v0/topstories.json?print=pretty";
 
@@ -58,9 +68,9 @@ public class HackerNews {
                     continue;
 
                 Document doc = Jsoup.connect(oneStory.url().toString()).get();
-                List<String> tokens = Crawling.getTokens(doc);
+                List<String> tokens = ANALYZER.analyze(doc.text());
 
-                if (!query.isEmpty() && tokens.contains(query)) {
+                if (!queryTerms.isEmpty() && tokens.containsAll(queryTerms)) {
                     topStoriesURLs.add(oneStory.url());
                     System.out.println("Found query in story: " + oneStory.url());
                 } else
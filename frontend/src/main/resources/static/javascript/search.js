@@ -0,0 +1,38 @@
+var SUGGEST_DELAY = 150;
+var suggestTimer = null;
+var suggestRequest = null;
+
+function showSuggestions(words, suggestions) {
+    var datalist = $('#suggestions');
+    datalist.empty();
+    $.each(suggestions, function (i, suggestion) {
+        // Complete the last word, keeping the ones before it
+        datalist.append($('<option>').attr('value', words.concat(suggestion).join(' ')));
+    });
+}
+
+function requestSuggestions(value) {
+    var words = value.trim().split(/\s+/);
+    var prefix = /\s$/.test(value) ? '' : words.pop();
+    if (suggestRequest !== null) {
+        suggestRequest.abort();
+        suggestRequest = null;
+    }
+    if (prefix === '') {
+        showSuggestions(words, []);
+        return;
+    }
+    suggestRequest = $.getJSON('/suggest', { prefix: prefix }, function (suggestions) {
+        showSuggestions(words, suggestions);
+    });
+}
+
+$(function () {
+    $('#query').on('input', function () {
+        var value = $(this).val();
+        clearTimeout(suggestTimer);
+        suggestTimer = setTimeout(function () {
+            requestSuggestions(value);
+        }, SUGGEST_DELAY);
+    });
+});